@@ -1,5 +1,7 @@
 package io.github.leffinger.crossyourheart;
 
+import android.database.Cursor;
+
 import androidx.room.testing.MigrationTestHelper;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -10,10 +12,19 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import io.github.leffinger.crossyourheart.io.PackedCellState;
 import io.github.leffinger.crossyourheart.room.Database;
+import io.github.leffinger.crossyourheart.room.DatabaseStats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
 public class AutoMigrationTest {
+    // Kept apart from the app's own database, which may be open in this process.
+    private static final String TEST_DB = "migration-test";
+
     @Rule
     public MigrationTestHelper helper;
 
@@ -25,12 +36,59 @@ public class AutoMigrationTest {
 
     @Test
     public void migrateAll() throws Exception {
-        SupportSQLiteDatabase db = helper.createDatabase(Database.DB_NAME, 1);
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
         db.close();
 
-        Database database = Database.getInstance(
-                InstrumentationRegistry.getInstrumentation().getTargetContext());
+        DatabaseStats stats = new DatabaseStats();
+        Database database = Database.builder(
+                InstrumentationRegistry.getInstrumentation().getTargetContext(), TEST_DB,
+                stats).build();
         database.getOpenHelper().getWritableDatabase();
         database.close();
+        assertTrue(stats.getOpenMillis() >= 0);
+    }
+
+    @Test
+    public void migrate5To6_packsPencilCells() throws Exception {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 5);
+        db.execSQL("INSERT INTO Puzzle (filename, solved, usePencil) VALUES ('a.puz', 0, 1)");
+        db.execSQL("INSERT INTO Puzzle (filename, solved, usePencil) VALUES ('b.puz', 0, 1)");
+        db.execSQL("INSERT INTO Cell VALUES ('a.puz', 0, 0, 0), ('a.puz', 2, 4, 1), " +
+                "('a.puz', 3, 1, 1), ('b.puz', 0, 0, 0)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 6, true, Database.MIGRATION_5_6);
+        try (Cursor cursor = db.query("SELECT filename, state FROM CellState")) {
+            // Puzzles without pencil marks get no row.
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("a.puz", cursor.getString(0));
+            PackedCellState state = PackedCellState.fromBytes(cursor.getBlob(1));
+            assertEquals(2, state.count(PackedCellState.PENCIL));
+            assertTrue(state.get(PackedCellState.PENCIL, 2, 4));
+            assertTrue(state.get(PackedCellState.PENCIL, 3, 1));
+            assertFalse(state.get(PackedCellState.PENCIL, 0, 0));
+        }
+        db.close();
+    }
+
+    @Test
+    public void migrate6To7_clearsFileSizes() throws Exception {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 6);
+        db.execSQL("INSERT INTO Puzzle (filename, solved, usePencil) VALUES ('a.puz', 0, 0)");
+        db.execSQL("INSERT INTO PuzFileMetadata (filename, headerChecksum, fileSize, " +
+                "lastModified) VALUES ('a.puz', 1234, 4096, 5678)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 7, true, Database.MIGRATION_6_7);
+        try (Cursor cursor = db.query(
+                "SELECT headerChecksum, fileSize, contentFingerprint FROM PuzFileMetadata")) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1234, cursor.getInt(0));
+            // Forces the next reconciliation to re-read the file and store its fingerprint.
+            assertEquals(-1, cursor.getLong(1));
+            assertEquals(0, cursor.getLong(2));
+        }
+        db.close();
     }
 }
@@ -0,0 +1,49 @@
+package io.github.leffinger.crossyourheart;
+
+import android.content.Context;
+
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.github.leffinger.crossyourheart.views.CellGlyphCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CellGlyphCacheTest {
+
+    private static CellGlyphCache getCache() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        return CellGlyphCache.getInstance(context);
+    }
+
+    @Test
+    @UiThreadTest
+    public void sameSize_sharesMeasurements() {
+        CellGlyphCache cache = getCache();
+        CellGlyphCache.Glyphs glyphs = cache.get(60);
+        assertSame(glyphs, cache.get(60));
+        assertNotSame(glyphs, cache.get(61));
+        assertSame(glyphs, cache.get(60));
+        assertSame(cache.getNumberString(123), cache.getNumberString(123));
+        assertEquals("123", cache.getNumberString(123));
+    }
+
+    @Test
+    @UiThreadTest
+    public void rebusEntries_shrinkToFit() {
+        CellGlyphCache.Glyphs glyphs = getCache().get(60);
+        float letter = glyphs.getLetterTextSize("W");
+        float rebus = glyphs.getLetterTextSize("HEART");
+        assertTrue(rebus < letter);
+        assertEquals(letter, glyphs.getLetterTextSize("W"), 0f);
+        assertEquals(letter, glyphs.getLetterTextSize("I"), 0f);
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.leffinger.crossyourheart;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.github.leffinger.crossyourheart.activities.PuzzleActivity;
+import io.github.leffinger.crossyourheart.activities.PuzzleClueListFragment;
+import io.github.leffinger.crossyourheart.activities.PuzzleFragment;
+import io.github.leffinger.crossyourheart.io.IOUtil;
+import io.github.leffinger.crossyourheart.room.Database;
+import io.github.leffinger.crossyourheart.room.Puzzle;
+import io.github.leffinger.crossyourheart.views.FrameStats;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Measures frame times while the clue list scrolls from top to bottom and back.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClueListScrollTest {
+    private static final String TAG = "ClueListScrollTest";
+    private static final String FILENAME = "clue-list-scroll-test.puz";
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L;
+
+    private Context mContext;
+    private Puzzle mPuzzle;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = IOUtil.getPuzzleFile(mContext, FILENAME);
+        file.getParentFile().mkdirs();
+        try (InputStream inputStream = ClueListScrollTest.class.getResourceAsStream(
+                "/mgwcc647.puz")) {
+            Files.write(ByteStreams.toByteArray(inputStream), file);
+        }
+        mPuzzle = new Puzzle(FILENAME);
+        mPuzzle.opened = true;
+        Database.getInstance(mContext).puzzleDao().insert(mPuzzle);
+    }
+
+    @After
+    public void tearDown() {
+        Database.getInstance(mContext).puzzleDao().deletePuzzle(mPuzzle);
+        IOUtil.getPuzzleFile(mContext, FILENAME).delete();
+    }
+
+    @Test
+    public void scrollClueList() throws InterruptedException {
+        try (ActivityScenario<PuzzleActivity> scenario = ActivityScenario.launch(
+                PuzzleActivity.newIntent(mContext, mPuzzle))) {
+            awaitFragment(scenario, PuzzleFragment.class);
+            scenario.onActivity(PuzzleActivity::onClueListViewSelected);
+            Fragment fragment = awaitFragment(scenario, PuzzleClueListFragment.class);
+            RecyclerView list = fragment.requireView().findViewById(R.id.list);
+
+            FrameStats frameStats = new FrameStats("Clue list scroll", 2048);
+            FrameRecorder recorder = new FrameRecorder(frameStats);
+            scenario.onActivity(
+                    activity -> Choreographer.getInstance().postFrameCallback(recorder));
+            int lastPosition = list.getAdapter().getItemCount() - 1;
+            smoothScrollTo(scenario, list, lastPosition);
+            smoothScrollTo(scenario, list, 0);
+            scenario.onActivity(activity -> recorder.stop());
+
+            Log.i(TAG, frameStats.toString());
+            assertTrue(frameStats.toString(), frameStats.getCount() > 0);
+            // Most frames make the deadline; an occasional miss is tolerated on slow devices.
+            assertTrue(frameStats.toString(),
+                    frameStats.getPercentileNanos(50) < 2 * FRAME_BUDGET_NANOS);
+        }
+    }
+
+    private static void smoothScrollTo(ActivityScenario<PuzzleActivity> scenario,
+                                       RecyclerView list, int position)
+            throws InterruptedException {
+        CountDownLatch idle = new CountDownLatch(1);
+        scenario.onActivity(activity -> {
+            list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrollStateChanged(@NonNull RecyclerView recyclerView,
+                                                 int newState) {
+                    if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                        recyclerView.removeOnScrollListener(this);
+                        idle.countDown();
+                    }
+                }
+            });
+            list.smoothScrollToPosition(position);
+        });
+        if (!idle.await(30, TimeUnit.SECONDS)) {
+            fail("scroll to " + position + " did not finish");
+        }
+    }
+
+    private static Fragment awaitFragment(ActivityScenario<PuzzleActivity> scenario,
+                                          Class<? extends Fragment> fragmentClass)
+            throws InterruptedException {
+        Fragment[] fragment = new Fragment[1];
+        for (int attempt = 0; attempt < 100; attempt++) {
+            scenario.onActivity(activity -> {
+                Fragment current =
+                        activity.getSupportFragmentManager().findFragmentById(R.id.container);
+                if (fragmentClass.isInstance(current) && current.getView() != null) {
+                    fragment[0] = current;
+                }
+            });
+            if (fragment[0] != null) {
+                return fragment[0];
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError(fragmentClass.getSimpleName() + " not shown");
+    }
+
+    /** Records the interval between consecutive frames until stopped. */
+    private static class FrameRecorder implements Choreographer.FrameCallback {
+        private final FrameStats mFrameStats;
+        private long mLastFrameNanos;
+        private boolean mStopped;
+
+        FrameRecorder(FrameStats frameStats) {
+            mFrameStats = frameStats;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mStopped) {
+                return;
+            }
+            if (mLastFrameNanos != 0) {
+                mFrameStats.record(frameTimeNanos - mLastFrameNanos);
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mStopped = true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.leffinger.crossyourheart;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile.ScrambleState;
+import io.github.leffinger.crossyourheart.room.Database;
+import io.github.leffinger.crossyourheart.room.Puzzle;
+import io.github.leffinger.crossyourheart.room.PuzzleQuery;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pages through an in-memory library with every sort order and checks that the pages add up to
+ * the same rows, in the same order, as sorting the whole table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PuzzleQueryTest {
+    private static final int NUM_PUZZLES = 237;
+    private static final int PAGE_SIZE = 20;
+
+    private Database mDatabase;
+    private List<Puzzle> mPuzzles;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDatabase = Room.inMemoryDatabaseBuilder(context, Database.class).build();
+        mPuzzles = new ArrayList<>();
+        for (int i = 0; i < NUM_PUZZLES; i++) {
+            // Few distinct titles and authors, so that ties on the sort column are common.
+            String title = i % 17 == 0 ? null : "Title " + (i % 7);
+            String author = "Author " + (i % 5);
+            mPuzzles.add(new Puzzle(String.format(Locale.US, "%05d.puz", i), title, author, "",
+                    i % 3 == 0, false, i % 2 == 0, ScrambleState.UNSCRAMBLED, false));
+        }
+        mDatabase.puzzleDao().insertAll(mPuzzles);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void newest() {
+        checkPages(PuzzleQuery.builder().build(), (a, b) -> b.filename.compareTo(a.filename),
+                null);
+    }
+
+    @Test
+    public void title() {
+        checkPages(PuzzleQuery.builder().setSort(PuzzleQuery.Sort.TITLE).build(),
+                (a, b) -> compare(a.title, a.filename, b.title, b.filename), null);
+    }
+
+    @Test
+    public void author_unsolved() {
+        checkPages(PuzzleQuery.builder().setSort(PuzzleQuery.Sort.AUTHOR).setSolved(false).build(),
+                (a, b) -> compare(a.author, a.filename, b.author, b.filename), p -> !p.solved);
+    }
+
+    /** Orders by value with NULLs first, as SQLite does, then by filename. */
+    private static int compare(String a, String aFilename, String b, String bFilename) {
+        if (a == null || b == null) {
+            if (a != b) {
+                return a == null ? -1 : 1;
+            }
+        } else if (!a.equals(b)) {
+            return a.compareTo(b);
+        }
+        return aFilename.compareTo(bFilename);
+    }
+
+    private void checkPages(PuzzleQuery query, Comparator<Puzzle> order, Filter filter) {
+        List<String> expected = new ArrayList<>();
+        List<Puzzle> sorted = new ArrayList<>(mPuzzles);
+        Collections.sort(sorted, order);
+        for (Puzzle puzzle : sorted) {
+            if (filter == null || filter.matches(puzzle)) {
+                expected.add(puzzle.filename);
+            }
+        }
+
+        List<String> actual = new ArrayList<>();
+        PuzzleQuery.Key after = null;
+        while (true) {
+            List<Object> args = new ArrayList<>();
+            String sql = query.toSql(after, PAGE_SIZE, args);
+            List<Puzzle> page =
+                    mDatabase.puzzleDao().getPage(new SimpleSQLiteQuery(sql, args.toArray()));
+            for (Puzzle puzzle : page) {
+                actual.add(puzzle.filename);
+            }
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+            Puzzle last = page.get(page.size() - 1);
+            after = query.keyOf(last.filename, last.title, last.author);
+        }
+        assertEquals(expected, actual);
+    }
+
+    private interface Filter {
+        boolean matches(Puzzle puzzle);
+    }
+}
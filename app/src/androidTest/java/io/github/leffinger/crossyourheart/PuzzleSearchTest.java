@@ -0,0 +1,105 @@
+package io.github.leffinger.crossyourheart;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.leffinger.crossyourheart.room.Database;
+import io.github.leffinger.crossyourheart.room.PuzzleSearchEntry;
+import io.github.leffinger.crossyourheart.room.SearchDao;
+import io.github.leffinger.crossyourheart.room.SearchRanker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Runs the search queries against a real FTS4 table. */
+@RunWith(AndroidJUnit4.class)
+public class PuzzleSearchTest {
+    private Database mDatabase;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mDatabase = Room.inMemoryDatabaseBuilder(context, Database.class).build();
+        List<PuzzleSearchEntry> entries = new ArrayList<>();
+        entries.add(PuzzleSearchEntry.create("a.puz", "River Crossing", "Ann Author", "",
+                new String[]{"Ford, e.g.", "Bridge builder"}));
+        entries.add(PuzzleSearchEntry.create("b.puz", "Sunday Puzzle", "Bob Builder", "",
+                new String[]{"Crossing guard's place", "Stop sign shape"}));
+        entries.add(PuzzleSearchEntry.create("c.puz", "Monday Puzzle", "Cat Constructor",
+                "Theme hint: rivers", new String[]{"Nile, for one", "Amazon, for one"}));
+        mDatabase.searchDao().insertAll(entries);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void titleMatchRanksFirst() {
+        List<String> ranked = search("crossing");
+        assertEquals(2, ranked.size());
+        assertEquals("a.puz", ranked.get(0));
+        assertEquals("b.puz", ranked.get(1));
+    }
+
+    @Test
+    public void prefixMatch() {
+        List<String> ranked = search("rive");
+        assertEquals(2, ranked.size());
+        assertTrue(ranked.contains("a.puz"));
+        assertTrue(ranked.contains("c.puz"));
+    }
+
+    @Test
+    public void allWordsMustMatch() {
+        assertEquals(Collections.singletonList("b.puz"), search("stop sign"));
+    }
+
+    @Test
+    public void deleteByRowId() {
+        mDatabase.searchDao()
+                 .deleteAll(Collections.singletonList(PuzzleSearchEntry.getRowId("a.puz")));
+        assertEquals(Collections.singletonList("b.puz"), search("crossing"));
+    }
+
+    @Test
+    public void snippet() {
+        String query = SearchRanker.toMatchQuery("nile");
+        List<SearchDao.Hit> hits = mDatabase.searchDao().getHits(query,
+                Collections.singletonList(PuzzleSearchEntry.getRowId("c.puz")));
+        assertEquals(1, hits.size());
+        assertTrue(hits.get(0).snippet, hits.get(0).snippet.contains("[Nile]"));
+    }
+
+    private List<String> search(String text) {
+        String query = SearchRanker.toMatchQuery(text);
+        List<SearchDao.Match> matches = mDatabase.searchDao().match(query);
+        Collections.sort(matches, (a, b) -> Double.compare(SearchRanker.score(b.matchInfo).score,
+                SearchRanker.score(a.matchInfo).score));
+        List<Long> rowIds = new ArrayList<>();
+        for (SearchDao.Match match : matches) {
+            rowIds.add(match.rowid);
+        }
+        List<String> filenames = new ArrayList<>();
+        for (long rowId : rowIds) {
+            for (SearchDao.Hit hit : mDatabase.searchDao()
+                                              .getHits(query, Collections.singletonList(rowId))) {
+                filenames.add(hit.filename);
+            }
+        }
+        return filenames;
+    }
+}
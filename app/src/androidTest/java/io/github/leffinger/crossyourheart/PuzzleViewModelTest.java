@@ -22,14 +22,17 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile;
+import io.github.leffinger.crossyourheart.io.PackedCellState;
 import io.github.leffinger.crossyourheart.io.PuzFile;
 import io.github.leffinger.crossyourheart.viewmodels.CellViewModel;
 import io.github.leffinger.crossyourheart.viewmodels.ClueViewModel;
 import io.github.leffinger.crossyourheart.viewmodels.PuzzleViewModel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Instrumented test, which will execute on an Android device.
@@ -123,6 +126,37 @@ public class PuzzleViewModelTest {
         assertEquals("B", down12.getText());
     }
 
+    @Test
+    public void restoreSavedMarks() throws IOException, InterruptedException {
+        InputStream inputStream = PuzzleViewModelTest.class.getResourceAsStream("/3x3.puz");
+        assertNotNull(inputStream);
+        AbstractPuzzleFile puzzleFile = PuzFile.verifyPuzFile(inputStream);
+        PackedCellState savedState = new PackedCellState(3, 3, false);
+        savedState.set(PackedCellState.PENCIL, 0, true);
+        savedState.set(PackedCellState.REVEALED, 2, true);
+        savedState.set(PackedCellState.MARKED_INCORRECT, 2, true);
+        savedState.set(PackedCellState.MARKED_CORRECT, 5, true);
+
+        PuzzleViewModel puzzleViewModel = new PuzzleViewModel();
+        puzzleViewModel.initialize(puzzleFile, mTemporaryFolder.newFile(), false, false,
+                savedState);
+        assertNotNull(getOrAwaitValue(puzzleViewModel.getCurrentClue(), "First clue"));
+
+        CellViewModel cell00 = puzzleViewModel.getCellViewModel(0, 0);
+        assertTrue(cell00.getPencil().getValue());
+        assertFalse(cell00.isRevealed().getValue());
+        assertEquals(1 << PackedCellState.PENCIL, cell00.getMarks());
+
+        CellViewModel cell02 = puzzleViewModel.getCellViewModel(0, 2);
+        assertTrue(cell02.isRevealed().getValue());
+        assertTrue(cell02.isMarkedIncorrect().getValue());
+        assertFalse(cell02.getPencil().getValue());
+
+        CellViewModel cell12 = puzzleViewModel.getCellViewModel(1, 2);
+        assertTrue(cell12.isMarkedCorrect().getValue());
+        assertEquals(0, puzzleViewModel.getCellViewModel(0, 1).getMarks());
+    }
+
     @Test
     public void loadAllClues() throws IOException, InterruptedException {
         InputStream inputStream = PuzzleViewModelTest.class.getResourceAsStream("/mgwcc647.puz");
@@ -0,0 +1,58 @@
+package io.github.leffinger.crossyourheart;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.leffinger.crossyourheart.activities.PuzzleFragment;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the saved instance state of the puzzle screen.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SavedStateSizeTest {
+    private static final String TAG = "SavedStateSizeTest";
+
+    private static int parcelledSize(Bundle bundle) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(bundle);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void puzzleFragmentState_independentOfPuzzleSize() throws IOException {
+        InputStream inputStream = SavedStateSizeTest.class.getResourceAsStream("/mgwcc647.puz");
+        assertNotNull(inputStream);
+        PuzFile puzFile = PuzFile.verifyPuzFile(inputStream);
+
+        Bundle state = new Bundle();
+        PuzzleFragment.writeInstanceState(state, "2021-01-01-mgwcc647.puz", true, false, true);
+        int size = parcelledSize(state);
+
+        // What used to be saved on every configuration change, for comparison.
+        Bundle oldState = new Bundle(state);
+        oldState.putSerializable("puzzle", puzFile);
+        int oldSize = parcelledSize(oldState);
+
+        Log.i(TAG,
+                "Saved state: " + size + " bytes; with serialized puzzle: " + oldSize + " bytes");
+        assertTrue("saved state is " + size + " bytes", size < 512);
+        assertTrue("serialized puzzle is only " + oldSize + " bytes", oldSize > 10 * size);
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.leffinger.crossyourheart;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by the whole app, so that loading a puzzle does not start threads of its own.
+ */
+public class AppExecutors {
+    private static AppExecutors sInstance;
+
+    private final ExecutorService mBackground;
+    private final ExecutorService mDatabaseQueries;
+    private final ExecutorService mDatabaseTransactions;
+    private final Executor mMainThread;
+
+    private AppExecutors() {
+        // Loading is mostly parsing and building objects, so there is little point in running
+        // more of it at once than there are cores.
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        mBackground = Executors.newFixedThreadPool(threads, newThreadFactory("background"));
+
+        // With write-ahead logging, SQLite serves a few readers alongside the single writer;
+        // more query threads than that would only queue for a connection.
+        mDatabaseQueries = Executors.newFixedThreadPool(4, newThreadFactory("db-query"));
+        mDatabaseTransactions =
+                Executors.newSingleThreadExecutor(newThreadFactory("db-transaction"));
+
+        Handler handler = new Handler(Looper.getMainLooper());
+        mMainThread = handler::post;
+    }
+
+    public static synchronized AppExecutors getInstance() {
+        if (sInstance == null) {
+            sInstance = new AppExecutors();
+        }
+        return sInstance;
+    }
+
+    /** For parsing, building view models, and other work that must stay off the UI thread. */
+    public ExecutorService background() {
+        return mBackground;
+    }
+
+    /** For Room's asynchronous queries. */
+    public ExecutorService databaseQueries() {
+        return mDatabaseQueries;
+    }
+
+    /** For Room's asynchronous transactions, which run one at a time anyway. */
+    public ExecutorService databaseTransactions() {
+        return mDatabaseTransactions;
+    }
+
+    /** Runs tasks on the UI thread, in order. */
+    public Executor mainThread() {
+        return mMainThread;
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -8,8 +8,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -26,8 +24,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executors;
 
+import io.github.leffinger.crossyourheart.AppExecutors;
 import io.github.leffinger.crossyourheart.R;
-import io.github.leffinger.crossyourheart.io.DuplicateFileException;
+import io.github.leffinger.crossyourheart.io.BulkImporter;
 import io.github.leffinger.crossyourheart.io.IOUtil;
 import io.github.leffinger.crossyourheart.io.PuzzleDirectory;
 import io.github.leffinger.crossyourheart.room.Database;
@@ -45,13 +44,24 @@ public class MainActivity extends AppCompatActivity implements PuzzleListFragmen
     private Puzzle mPuzzle;
     private Database mDatabase;
 
-    private static Puzzle loadUri(Context context, Uri uri)
-            throws DuplicateFileException, IOException {
-        try (InputStream inputStream = requireNonNull(
-                context.getContentResolver().openInputStream(uri))) {
-            return PuzzleDirectory.getInstance().loadInputStream(context, inputStream);
-        } catch (IOException e) {
-            throw new IOException("Failed to open puzzle file", e);
+    /** A file picked by the user, which may be a .zip archive of puzzle files. */
+    private static class UriSource implements BulkImporter.Source {
+        private final Context mContext;
+        private final Uri mUri;
+
+        UriSource(Context context, Uri uri) {
+            mContext = context.getApplicationContext();
+            mUri = uri;
+        }
+
+        @Override
+        public String getName() {
+            return mUri.getLastPathSegment();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return requireNonNull(mContext.getContentResolver().openInputStream(mUri));
         }
     }
 
@@ -116,7 +126,8 @@ public class MainActivity extends AppCompatActivity implements PuzzleListFragmen
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mDatabase.close();
+        // The database stays open for the life of the process.
+        Log.i(TAG, "Database: " + mDatabase.getStats());
     }
 
     @Override
@@ -194,45 +205,35 @@ public class MainActivity extends AppCompatActivity implements PuzzleListFragmen
 
     @Override
     public void onMultipleUrisSelected(List<Uri> uris) {
-        Handler handler = new Handler(Looper.getMainLooper());
-        Executors.newSingleThreadExecutor().execute(() -> {
-            int successCount = 0;
-            int dupeCount = 0;
-            int failCount = 0;
-            ArrayList<Puzzle> newPuzzles = new ArrayList<>();
-            Puzzle dupePuzzle = null;
-            for (int i = 0; i < uris.size(); i++) {
-                try {
-                    Puzzle puzzle = loadUri(MainActivity.this, uris.get(i));
-                    Log.i(TAG, "Successfully loaded " + puzzle.filename);
-                    successCount++;
-                    newPuzzles.add(puzzle);
-                } catch (DuplicateFileException e) {
-                    Log.i(TAG, "Duplicate file " + e.getDuplicatePuzzle().filename);
-                    dupeCount++;
-                    dupePuzzle = e.getDuplicatePuzzle();
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to load puzzle file", e);
-                    failCount++;
-                }
+        List<UriSource> sources = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            sources.add(new UriSource(this, uri));
+        }
+        AppExecutors executors = AppExecutors.getInstance();
+        executors.background().execute(() -> {
+            BulkImporter.Result result =
+                    PuzzleDirectory.getInstance().importAll(MainActivity.this, sources);
+            for (BulkImporter.Failure failure : result.failures) {
+                Log.e(TAG, "Failed to load puzzle file " + failure.name, failure.error);
             }
 
             // If the user tried to open exactly one file, go directly to that file.
             final Puzzle singlePuzzle;
-            if (uris.size() == 1 && successCount == 1) {
-                singlePuzzle = newPuzzles.get(0);
-            } else if (uris.size() == 1 && dupeCount == 1) {
-                singlePuzzle = dupePuzzle;
+            if (result.getTotal() == 1 && result.failures.isEmpty()) {
+                String filename = result.imported.isEmpty() ? result.duplicates.get(0) :
+                        result.imported.get(0);
+                singlePuzzle = mDatabase.puzzleDao().getPuzzle(filename);
             } else {
                 singlePuzzle = null;
             }
 
             final String message =
-                    getString(R.string.multiple_uris_result, uris.size(), successCount, dupeCount,
-                            failCount);
-            handler.post(() -> {
+                    getString(R.string.multiple_uris_result, result.getTotal(),
+                            result.imported.size(), result.duplicates.size(),
+                            result.failures.size());
+            executors.mainThread().execute(() -> {
                 PuzzleListFragment.setNewPuzzlesFragmentResult(getSupportFragmentManager(),
-                        newPuzzles.size());
+                        result.imported.size());
                 if (singlePuzzle != null) {
                     onPuzzleSelected(singlePuzzle);
                 } else {
@@ -5,8 +5,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -24,18 +22,20 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.preference.PreferenceManager;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.concurrent.Executors;
 
+import io.github.leffinger.crossyourheart.AppExecutors;
 import io.github.leffinger.crossyourheart.R;
 import io.github.leffinger.crossyourheart.databinding.TimerBinding;
 import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile;
 import io.github.leffinger.crossyourheart.io.IOUtil;
+import io.github.leffinger.crossyourheart.io.PackedCellState;
 import io.github.leffinger.crossyourheart.io.PuzFile;
+import io.github.leffinger.crossyourheart.io.PuzzleCache;
 import io.github.leffinger.crossyourheart.room.Database;
 import io.github.leffinger.crossyourheart.room.Puzzle;
 import io.github.leffinger.crossyourheart.room.PuzzleDao;
+import io.github.leffinger.crossyourheart.viewmodels.PuzzleLoadTimings;
 import io.github.leffinger.crossyourheart.viewmodels.PuzzleViewModel;
 
 public class PuzzleActivity extends AppCompatActivity implements PuzzleFragment.Callbacks {
@@ -91,23 +91,37 @@ public class PuzzleActivity extends AppCompatActivity implements PuzzleFragment.
             });
         }
 
-        Handler handler = new Handler(Looper.getMainLooper());
-        Executors.newSingleThreadExecutor().execute(() -> {
+        PuzzleLoadTimings timings = new PuzzleLoadTimings(mPuzzle.filename);
+        AppExecutors executors = AppExecutors.getInstance();
+        executors.background().execute(() -> {
             SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
             boolean startWithDownClues =
                     preferences.getBoolean(getString(R.string.preference_start_with_down_clues),
                             false);
 
+            // The puzzle list may already have parsed this puzzle.
             File file = IOUtil.getPuzzleFile(PuzzleActivity.this, mPuzzle.filename);
-            PuzFile puzFile;
-            try (FileInputStream inputStream = new FileInputStream(file)) {
-                puzFile = new PuzFile(inputStream);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            PuzzleCache cache = PuzzleCache.getInstance();
+            PuzFile puzFile = cache.take(file);
+            if (puzFile == null) {
+                try {
+                    puzFile = PuzFile.readPuzzleFile(file);
+                    puzFile.resolveClues();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
             }
-            handler.post(() -> {
-                mPuzzleViewModel.initialize(puzFile, file, startWithDownClues,
-                        mPuzzle.downsOnlyMode);
+            Log.i(TAG, "Puzzle cache: " + cache.getStats());
+
+            // Pencil, revealed and checked marks are kept outside the file.
+            PackedCellState cellState = Database.getInstance(getApplicationContext())
+                                                .cellStateDao()
+                                                .getCellState(mPuzzle.filename);
+            timings.endStage(PuzzleLoadTimings.PARSE);
+            PuzFile loadedPuzFile = puzFile;
+            executors.mainThread().execute(() -> {
+                mPuzzleViewModel.initialize(loadedPuzFile, file, startWithDownClues,
+                        mPuzzle.downsOnlyMode, cellState, timings);
                 mPuzzleViewModel.cellViewModelsReady().observe(this, ready -> {
                     if (!ready) return;
                     onViewModelReady();
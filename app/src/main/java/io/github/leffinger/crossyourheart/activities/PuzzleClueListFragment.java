@@ -1,10 +1,6 @@
 package io.github.leffinger.crossyourheart.activities;
 
 import android.content.Context;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.Rect;
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -16,32 +12,42 @@ import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.content.res.ResourcesCompat;
 import androidx.core.view.MenuProvider;
 import androidx.databinding.DataBindingUtil;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.lifecycle.ViewModelStoreOwner;
 import androidx.recyclerview.widget.ConcatAdapter;
-import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
 
 import io.github.leffinger.crossyourheart.R;
 import io.github.leffinger.crossyourheart.databinding.ClueListHeaderBinding;
 import io.github.leffinger.crossyourheart.databinding.FragmentClueBinding;
-import io.github.leffinger.crossyourheart.databinding.SimpleCellBinding;
+import io.github.leffinger.crossyourheart.viewmodels.CellViewModel;
 import io.github.leffinger.crossyourheart.viewmodels.ClueViewModel;
 import io.github.leffinger.crossyourheart.viewmodels.PuzzleViewModel;
+import io.github.leffinger.crossyourheart.views.EntryView;
+import io.github.leffinger.crossyourheart.views.GridState;
 
 /**
- * Displays a list of clues and entries.
+ * Displays a list of clues and entries. Each row draws its entry with a single {@link EntryView},
+ * and rows are rebound in place as the list scrolls.
  */
 public class PuzzleClueListFragment extends Fragment {
     private static final String TAG = "PuzzleClueListFragment";
 
+    // Cell state shown in the entries, other than contents.
+    private static final int[] CELL_FLAGS =
+            {GridState.SELECTED, GridState.HIGHLIGHTED, GridState.REFERENCED, GridState.PENCIL,
+             GridState.MARKED_INCORRECT, GridState.MARKED_CORRECT, GridState.REVEALED};
+
     private Context mContext;
     private PuzzleViewModel mPuzzleViewModel;
 
@@ -68,7 +74,10 @@ public class PuzzleClueListFragment extends Fragment {
         io.github.leffinger.crossyourheart.databinding.FragmentClueListBinding mClueListBinding =
                 DataBindingUtil.inflate(inflater, R.layout.fragment_clue_list, container, false);
 
-        ConcatAdapter concatAdapter = new ConcatAdapter(new ConcatAdapter.Config.Builder().build(),
+        // Across and down rows share view types, so a row scrolled out of one section can be
+        // rebound in the other.
+        ConcatAdapter concatAdapter = new ConcatAdapter(
+                new ConcatAdapter.Config.Builder().setIsolateViewTypes(false).build(),
                 new ClueListHeaderAdapter("ACROSS"),
                 new ClueListAdapter(true, mPuzzleViewModel.getNumAcrossClues()),
                 new ClueListHeaderAdapter("DOWN"),
@@ -115,8 +124,11 @@ public class PuzzleClueListFragment extends Fragment {
     }
 
     private static class ClueListHeader extends RecyclerView.ViewHolder {
+        private final ClueListHeaderBinding mBinding;
+
         public ClueListHeader(ClueListHeaderBinding binding) {
             super(binding.getRoot());
+            mBinding = binding;
         }
     }
 
@@ -130,17 +142,24 @@ public class PuzzleClueListFragment extends Fragment {
             this.headerText = headerText;
         }
 
+        @Override
+        public int getItemViewType(int position) {
+            return R.layout.clue_list_header;
+        }
+
         @NonNull
         @Override
         public ClueListHeader onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
             ClueListHeaderBinding binding = DataBindingUtil.inflate(LayoutInflater.from(mContext),
                     R.layout.clue_list_header, parent, false);
-            binding.setHeaderText(headerText);
             return new ClueListHeader(binding);
         }
 
         @Override
         public void onBindViewHolder(@NonNull ClueListHeader holder, int position) {
+            // The holder may have been created by the other header's adapter.
+            holder.mBinding.setHeaderText(headerText);
+            holder.mBinding.executePendingBindings();
         }
 
         @Override
@@ -154,63 +173,108 @@ public class PuzzleClueListFragment extends Fragment {
      */
     private class ClueHolder extends RecyclerView.ViewHolder {
         private final FragmentClueBinding mBinding;
+        // One per cell position, created as longer entries are bound and then reused.
+        private final List<CellBinder> mCellBinders = new ArrayList<>();
+        private int mNumBoundCells;
 
         public ClueHolder(FragmentClueBinding binding) {
             super(binding.getRoot());
             mBinding = binding;
-        }
-
-        private void bind(final ClueViewModel viewModel) {
-            mBinding.setViewModel(viewModel);
             mBinding.setLifecycleOwner(getViewLifecycleOwner());
-            mBinding.clueCells.setLayoutManager(
-                    new GridLayoutManager(mContext, Math.max(viewModel.getCells().size(), 10)));
-            mBinding.clueCells.setAdapter(new CellAdapter(viewModel));
-            mBinding.clueCells.setHasFixedSize(true);
-
-            mBinding.clueCells.addItemDecoration(new CellBorderDecoration(getResources().getDimensionPixelSize(R.dimen.cell_border_size)));
             mBinding.getRoot()
                     .setOnClickListener(
                             unused -> mPuzzleViewModel.selectClue(mBinding.getViewModel(), 0));
+            mBinding.clueEntry.setOnCellClickListener(
+                    position -> mPuzzleViewModel.selectClue(mBinding.getViewModel(), position));
         }
 
-        /* Handles drawing evenly sized and spaced borders around each cell. */
-        private class CellBorderDecoration extends RecyclerView.ItemDecoration {
-            private final Rect mBounds = new Rect();
-            private final Paint mPaint = new Paint();
-            private final int mCellBorderSize;
+        private void bind(final ClueViewModel viewModel) {
+            unbind();
+            mBinding.setViewModel(viewModel);
+            List<CellViewModel> cells = viewModel.getCells();
+            mBinding.clueEntry.setLength(cells.size());
+            while (mCellBinders.size() < cells.size()) {
+                mCellBinders.add(new CellBinder(mBinding.clueEntry, mCellBinders.size()));
+            }
+            for (int i = 0; i < cells.size(); i++) {
+                mCellBinders.get(i).bind(cells.get(i));
+            }
+            mNumBoundCells = cells.size();
+            // Bind the clue text now rather than on the next frame, which would lay out the row
+            // a second time.
+            mBinding.executePendingBindings();
+        }
 
-            public CellBorderDecoration(int cellBorderSize) {
-                mCellBorderSize = cellBorderSize;
-                mPaint.setStyle(Paint.Style.STROKE);
+        private void unbind() {
+            for (int i = 0; i < mNumBoundCells; i++) {
+                mCellBinders.get(i).unbind();
             }
+            mNumBoundCells = 0;
+        }
+    }
 
-            @Override
-            public void onDrawOver(@NonNull Canvas canvas, @NonNull RecyclerView parent,
-                                   @NonNull RecyclerView.State state) {
-                final int top = 0;
-                final int left = 0;
-                final int bottom = parent.getHeight();
-
-                // Draw vertical lines at the right of each child.
-                mPaint.setStrokeWidth(mCellBorderSize);
-                RecyclerView.LayoutManager layoutManager =
-                        Objects.requireNonNull(parent.getLayoutManager());
-                int right = 0;
-                for (int i = 0; i < parent.getChildCount(); i++) {
-                    final View child = parent.getChildAt(i);
-                    layoutManager.getDecoratedBoundsWithMargins(child, mBounds);
-                    right = mBounds.right;
-                    canvas.drawLine(right, top, right, bottom, mPaint);
-                }
+    /**
+     * Forwards the state of one cell to one position of an {@link EntryView}. The observers are
+     * created once and moved from cell to cell as the row is rebound.
+     */
+    private class CellBinder {
+        private final EntryView mEntryView;
+        private final int mPosition;
+        private final Observer<String> mContentsObserver;
+        private final List<Observer<Boolean>> mFlagObservers = new ArrayList<>();
+        private CellViewModel mCell;
+
+        private CellBinder(EntryView entryView, int position) {
+            mEntryView = entryView;
+            mPosition = position;
+            mContentsObserver = contents -> entryView.setCellContents(position, contents);
+            for (int flag : CELL_FLAGS) {
+                mFlagObservers.add(
+                        value -> entryView.setCellFlag(position, flag, value != null && value));
+            }
+        }
 
-                // Draw lines around the border (top/left/bottom).
-                mPaint.setStrokeWidth(mCellBorderSize * 2);
-                canvas.drawLine(left, top, right, top, mPaint);
-                canvas.drawLine(left, top, left, bottom, mPaint);
-                canvas.drawLine(left, bottom, right, bottom, mPaint);
+        private void bind(CellViewModel cell) {
+            mCell = cell;
+            mEntryView.setCellFlag(mPosition, GridState.CIRCLED, cell.isCircled());
+            LifecycleOwner owner = getViewLifecycleOwner();
+            cell.getContents().observe(owner, mContentsObserver);
+            for (int i = 0; i < CELL_FLAGS.length; i++) {
+                getFlag(cell, CELL_FLAGS[i]).observe(owner, mFlagObservers.get(i));
             }
         }
+
+        private void unbind() {
+            if (mCell == null) {
+                return;
+            }
+            mCell.getContents().removeObserver(mContentsObserver);
+            for (int i = 0; i < CELL_FLAGS.length; i++) {
+                getFlag(mCell, CELL_FLAGS[i]).removeObserver(mFlagObservers.get(i));
+            }
+            mCell = null;
+        }
+    }
+
+    private static LiveData<Boolean> getFlag(CellViewModel cell, int flag) {
+        switch (flag) {
+            case GridState.SELECTED:
+                return cell.getSelected();
+            case GridState.HIGHLIGHTED:
+                return cell.isHighlighted();
+            case GridState.REFERENCED:
+                return cell.getReferenced();
+            case GridState.PENCIL:
+                return cell.getPencil();
+            case GridState.MARKED_INCORRECT:
+                return cell.isMarkedIncorrect();
+            case GridState.MARKED_CORRECT:
+                return cell.isMarkedCorrect();
+            case GridState.REVEALED:
+                return cell.isRevealed();
+            default:
+                throw new IllegalArgumentException("not a cell flag: " + flag);
+        }
     }
 
     private class ClueListAdapter extends RecyclerView.Adapter<ClueHolder> {
@@ -222,6 +286,11 @@ public class PuzzleClueListFragment extends Fragment {
             this.mNumClues = mNumClues;
         }
 
+        @Override
+        public int getItemViewType(int position) {
+            return R.layout.fragment_clue;
+        }
+
         @NonNull
         @Override
         public ClueHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -237,56 +306,13 @@ public class PuzzleClueListFragment extends Fragment {
         }
 
         @Override
-        public int getItemCount() {
-            return mNumClues;
-        }
-    }
-
-    /**
-     * Holds a single cell of an entry.
-     */
-    private class CellHolder extends RecyclerView.ViewHolder {
-        private final SimpleCellBinding mBinding;
-
-        private CellHolder(SimpleCellBinding binding) {
-            super(binding.getRoot());
-            mBinding = binding;
-        }
-
-        private void bind(ClueViewModel clueViewModel, int position) {
-            mBinding.setCellViewModel(clueViewModel.getCells().get(position));
-            mBinding.setLifecycleOwner(getViewLifecycleOwner());
-            mBinding.getRoot()
-                    .setOnClickListener(
-                            unused -> mPuzzleViewModel.selectClue(clueViewModel, position));
-        }
-    }
-
-    private class CellAdapter extends RecyclerView.Adapter<CellHolder> {
-
-        private final ClueViewModel mClueViewModel;
-
-        private CellAdapter(ClueViewModel mClueViewModel) {
-            this.mClueViewModel = mClueViewModel;
-        }
-
-        @NonNull
-        @Override
-        public CellHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            LayoutInflater inflater = LayoutInflater.from(getActivity());
-            SimpleCellBinding binding =
-                    DataBindingUtil.inflate(inflater, R.layout.simple_cell, parent, false);
-            return new CellHolder(binding);
-        }
-
-        @Override
-        public void onBindViewHolder(@NonNull CellHolder holder, int position) {
-            holder.bind(mClueViewModel, position);
+        public void onViewRecycled(@NonNull ClueHolder holder) {
+            holder.unbind();
         }
 
         @Override
         public int getItemCount() {
-            return mClueViewModel.getCells().size();
+            return mNumClues;
         }
     }
 }
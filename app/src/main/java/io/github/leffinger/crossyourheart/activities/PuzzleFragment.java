@@ -34,44 +34,52 @@ import androidx.core.view.MenuProvider;
 import androidx.databinding.DataBindingUtil;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.lifecycle.ViewModelStoreOwner;
 import androidx.preference.PreferenceManager;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 import io.github.leffinger.crossyourheart.R;
 import io.github.leffinger.crossyourheart.databinding.FragmentPuzzleBinding;
 import io.github.leffinger.crossyourheart.databinding.SimpleCellBinding;
-import io.github.leffinger.crossyourheart.room.Cell;
+import io.github.leffinger.crossyourheart.io.CellStateWriter;
+import io.github.leffinger.crossyourheart.io.PackedCellState;
+import io.github.leffinger.crossyourheart.room.CellState;
 import io.github.leffinger.crossyourheart.room.Database;
 import io.github.leffinger.crossyourheart.room.Puzzle;
 import io.github.leffinger.crossyourheart.room.PuzzleDao;
 import io.github.leffinger.crossyourheart.viewmodels.CellViewModel;
 import io.github.leffinger.crossyourheart.viewmodels.ClueViewModel;
+import io.github.leffinger.crossyourheart.viewmodels.PuzzleLoadTimings;
 import io.github.leffinger.crossyourheart.viewmodels.PuzzleViewModel;
+import io.github.leffinger.crossyourheart.views.FrameStats;
+import io.github.leffinger.crossyourheart.views.GridCanvasView;
+import io.github.leffinger.crossyourheart.views.GridState;
 
 /**
  * Puzzle-solving activity.
  */
 public class PuzzleFragment extends Fragment {
     // Instance state arguments.
+    // Saved instance state is kept small: the puzzle itself comes from the retained view model
+    // or, after process death, from disk.
     public static final String ARG_FILENAME = "filename";
-    public static final String ARG_PUZZLE = "puzzle";
+    private static final String ARG_UNSAVED_CHANGES = "unsavedChanges";
     private static final String TAG = "PuzzleFragment";
     private static final String ARG_USE_PENCIL = "usePencil";
     private static final String ARG_DOWNS_ONLY_MODE = "downsOnlyMode";
     private static final String ARG_AUTOCHECK_MODE = "autocheckMode";
     // Activity request codes.
     private static final int REQUEST_CODE_REBUS_ENTRY = 0;
-    // Used to write puzzle file changes to disk in the background.
-    private final ExecutorService mExecutorService = Executors.newSingleThreadExecutor();
+    // Cell marks are written like autosave: after a quiet period, or at most this late.
+    private static final long CELL_STATE_QUIET_PERIOD_MILLIS = 500;
+    private static final long CELL_STATE_MAX_LATENCY_MILLIS = 3000;
 
     private boolean mInitialDownsOnlyMode;
     private boolean mAutocheckMode;
@@ -83,6 +91,9 @@ public class PuzzleFragment extends Fragment {
     private Menu mMenu;
     private boolean mUsePencil;
     private Typeface mTypeface;
+    private boolean mUseCanvasGrid;
+    // Saves each cell's marks, as a bitmask of PackedCellState marks.
+    private CellStateWriter<Integer> mMarksWriter;
 
     // State that is only available when the fragment is attached.
     private Database mDatabase;
@@ -113,8 +124,7 @@ public class PuzzleFragment extends Fragment {
     @Override
     public void onDetach() {
         super.onDetach();
-        Log.i(TAG, "Closing database");
-        mDatabase.close();
+        Log.i(TAG, "Database: " + mDatabase.getStats());
         mDatabase = null;
         mPuzzleViewModel = null;
         mPreferences = null;
@@ -125,6 +135,16 @@ public class PuzzleFragment extends Fragment {
         Log.e(TAG, "onCreate");
         super.onCreate(savedInstanceState);
 
+        if (savedInstanceState != null && !mPuzzleViewModel.isInitialized()) {
+            // The process was restarted. PuzzleActivity reloads the puzzle from disk and replaces
+            // this fragment with a new one.
+            if (savedInstanceState.getBoolean(ARG_UNSAVED_CHANGES)) {
+                Log.w(TAG, "Restoring " + savedInstanceState.getString(ARG_FILENAME) +
+                        " from disk; changes made just before the restart may be missing");
+            }
+            return;
+        }
+
         Bundle bundle;
         if (savedInstanceState != null) {
             bundle = savedInstanceState;
@@ -141,6 +161,8 @@ public class PuzzleFragment extends Fragment {
         mInitialDownsOnlyMode = bundle.getBoolean(ARG_DOWNS_ONLY_MODE,
                 mPuzzleViewModel.isDownsOnlyMode().getValue());
         mAutocheckMode = bundle.getBoolean(ARG_AUTOCHECK_MODE, false);
+        mUseCanvasGrid =
+                mPreferences.getBoolean(getString(R.string.preference_canvas_grid), false);
     }
 
     @Nullable
@@ -151,12 +173,23 @@ public class PuzzleFragment extends Fragment {
         mFragmentPuzzleBinding =
                 DataBindingUtil.inflate(inflater, R.layout.fragment_puzzle, container, false);
         mFragmentPuzzleBinding.setLifecycleOwner(getActivity());
-        mFragmentPuzzleBinding.puzzle.setPuzzleSize(mPuzzleViewModel.getNumRows(), mPuzzleViewModel.getNumColumns());
-
-        mGridLayoutManager = new GridLayoutManager(getActivity(), mPuzzleViewModel.getNumColumns(),
-                GridLayoutManager.VERTICAL, false);
-        mFragmentPuzzleBinding.puzzle.setLayoutManager(mGridLayoutManager);
-        mFragmentPuzzleBinding.puzzle.setAdapter(mCellAdapter);
+        mFragmentPuzzleBinding.setUseCanvasGrid(mUseCanvasGrid);
+        if (mUseCanvasGrid) {
+            mFragmentPuzzleBinding.grid.setPuzzleSize(mPuzzleViewModel.getNumRows(),
+                    mPuzzleViewModel.getNumColumns());
+            mFragmentPuzzleBinding.grid.setOnCellClickListener(
+                    (row, col) -> mPuzzleViewModel.selectCell(
+                            mPuzzleViewModel.getCellViewModel(row, col)));
+        } else {
+            mFragmentPuzzleBinding.puzzle.setPuzzleSize(mPuzzleViewModel.getNumRows(),
+                    mPuzzleViewModel.getNumColumns());
+
+            mGridLayoutManager =
+                    new GridLayoutManager(getActivity(), mPuzzleViewModel.getNumColumns(),
+                            GridLayoutManager.VERTICAL, false);
+            mFragmentPuzzleBinding.puzzle.setLayoutManager(mGridLayoutManager);
+            mFragmentPuzzleBinding.puzzle.setAdapter(mCellAdapter);
+        }
 
         Keyboard keyboard = new Keyboard(getActivity(), R.xml.keys_layout);
         mFragmentPuzzleBinding.keyboard.setKeyboard(keyboard);
@@ -170,24 +203,35 @@ public class PuzzleFragment extends Fragment {
     @Override
     public void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putString(ARG_FILENAME, mPuzzleViewModel.getFile().getName());
-        outState.putSerializable(ARG_PUZZLE, mPuzzleViewModel.getPuzzleFile());
-        outState.putBoolean(ARG_USE_PENCIL, mUsePencil);
-        outState.putBoolean(ARG_AUTOCHECK_MODE, mAutocheckMode);
+        if (!mPuzzleViewModel.isInitialized()) {
+            return;
+        }
+        boolean unsavedChanges = mPuzzleViewModel.hasUnsavedChanges();
+        if (unsavedChanges) {
+            // The process may be killed any time after this; start writing now.
+            mPuzzleViewModel.flushSave();
+        }
+        writeInstanceState(outState, mPuzzleViewModel.getFile().getName(), unsavedChanges,
+                mUsePencil, mAutocheckMode);
+    }
+
+    /**
+     * Writes everything this fragment keeps in its saved instance state: a few hundred bytes,
+     * however large the puzzle.
+     */
+    public static void writeInstanceState(Bundle outState, String filename,
+                                          boolean unsavedChanges, boolean usePencil,
+                                          boolean autocheckMode) {
+        outState.putString(ARG_FILENAME, filename);
+        outState.putBoolean(ARG_UNSAVED_CHANGES, unsavedChanges);
+        outState.putBoolean(ARG_USE_PENCIL, usePencil);
+        outState.putBoolean(ARG_AUTOCHECK_MODE, autocheckMode);
     }
 
     @Override
     public void onResume() {
         Log.i(TAG, "onResume");
         super.onResume();
-        if (isDetached()) {
-            return;
-        }
-
-        // Autocheck the grid, if enabled.
-        if (mAutocheckMode) {
-            mPuzzleViewModel.checkPuzzle();
-        }
     }
 
     @Override
@@ -199,16 +243,29 @@ public class PuzzleFragment extends Fragment {
     @Override
     public void onStop() {
         super.onStop();
-        try {
-            mExecutorService.awaitTermination(1000, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        // Saves pending changes and the timer in the background.
+        mPuzzleViewModel.flushSave();
+        Log.i(TAG, "Autosave stats: " + mPuzzleViewModel.getAutosaveStats());
+        if (mMarksWriter != null) {
+            mMarksWriter.flush();
+            Log.i(TAG, "Cell state writer stats: " + mMarksWriter.getStats());
         }
-        try {
-            mPuzzleViewModel.saveToFile();
-        } catch (IOException e) {
-            Log.e(TAG, String.format("Saving puzzle file %s failed",
-                    mPuzzleViewModel.getFile().getName()), e);
+
+        // Compare the two grid renderers by switching the setting and reading these lines.
+        FrameStats frameStats = mUseCanvasGrid ? mFragmentPuzzleBinding.grid.getFrameStats() :
+                mFragmentPuzzleBinding.puzzle.getFrameStats();
+        Log.i(TAG, String.format("Grid frame stats (%dx%d): %s", mPuzzleViewModel.getNumColumns(),
+                mPuzzleViewModel.getNumRows(), frameStats));
+        frameStats.reset();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mMarksWriter != null) {
+            // Observers are gone with the view; write anything left and release the thread.
+            mMarksWriter.shutdown();
+            mMarksWriter = null;
         }
     }
 
@@ -272,14 +329,7 @@ public class PuzzleFragment extends Fragment {
 
         // Persist changes in content to disk.
         mPuzzleViewModel.getContentsChanged()
-                        .observe(getActivity(), unused -> mExecutorService.submit(() -> {
-                            try {
-                                mPuzzleViewModel.saveToFile();
-                            } catch (IOException e) {
-                                Log.e(TAG, String.format("Saving puzzle file %s failed",
-                                        mPuzzleViewModel.getFile().getName()), e);
-                            }
-                        }));
+                        .observe(getActivity(), unused -> mPuzzleViewModel.requestSave());
 
         // Autocheck, if enabled.
         mPuzzleViewModel.getContentsChanged().observe(getViewLifecycleOwner(), cellViewModel -> {
@@ -298,37 +348,101 @@ public class PuzzleFragment extends Fragment {
 
         mPuzzleViewModel.cellViewModelsReady().observe(getViewLifecycleOwner(), ready -> {
             if (!ready) return;
-            // Populate pencil status for each cell.
+            if (mUseCanvasGrid) {
+                bindGridCanvas();
+            }
+
+            // Persist pencil, revealed and checked marks to DB, batching changes into one read
+            // and write of the puzzle's cell state row. The marks were restored when the view
+            // model was initialized, so only later changes are written.
             final PuzzleViewModel viewModel = mPuzzleViewModel;
             final Database database = mDatabase;
-            Executors.newSingleThreadExecutor().execute(() -> {
-                List<Cell> allCells =
-                        database.cellDao().getCellsForPuzzle(viewModel.getFile().getName());
-                for (Cell cell : allCells) {
-                    CellViewModel cellViewModel = viewModel.getCellViewModel(cell.row, cell.col);
-                    cellViewModel.getPencil().postValue(cell.pencil);
-                }
-            });
-
-            // Persist pencil state to DB.
-            for (int row = 0; row < viewModel.getNumRows(); row++) {
-                for (int col = 0; col < viewModel.getNumColumns(); col++) {
+            final String filename = viewModel.getFile().getName();
+            final int width = viewModel.getNumColumns();
+            final int height = viewModel.getNumRows();
+            CellStateWriter<Integer> marksWriter = new CellStateWriter<>(0,
+                    changes -> database.runInTransaction(() -> {
+                        PackedCellState state =
+                                database.cellStateDao().getCellState(filename);
+                        if (state == null) {
+                            state = new PackedCellState(width, height, true);
+                        } else if (state.getWidth() != width || state.getHeight() != height ||
+                                !state.hasTimestamps()) {
+                            state = state.resize(width, height, true);
+                        }
+                        long now = System.currentTimeMillis();
+                        for (Map.Entry<Integer, Integer> change : changes.entrySet()) {
+                            int cell = change.getKey();
+                            for (int mark = 0; mark < PackedCellState.NUM_MARKS; mark++) {
+                                state.set(mark, cell, (change.getValue() & (1 << mark)) != 0);
+                            }
+                            state.setTimestamp(cell, now);
+                        }
+                        database.cellStateDao().insert(new CellState(filename, state.toBytes()));
+                    }), e -> Log.e(TAG, "Saving cell state failed", e),
+                    CELL_STATE_QUIET_PERIOD_MILLIS, CELL_STATE_MAX_LATENCY_MILLIS);
+            mMarksWriter = marksWriter;
+
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
                     CellViewModel cellViewModel = viewModel.getCellViewModel(row, col);
                     if (cellViewModel == null) {
                         continue;
                     }
-                    cellViewModel.getPencil().observe(getViewLifecycleOwner(), pencil -> {
-                        AsyncTask.execute(() -> mDatabase.cellDao()
-                                                         .insert(new Cell(
-                                                                 viewModel.getFile().getName(),
-                                                                 cellViewModel.getRow(),
-                                                                 cellViewModel.getCol(), pencil)));
-                    });
+                    int offset = cellViewModel.getOffset();
+                    marksWriter.setStored(offset, cellViewModel.getMarks());
+                    Observer<Boolean> observer =
+                            unused -> marksWriter.put(offset, cellViewModel.getMarks());
+                    cellViewModel.getPencil().observe(getViewLifecycleOwner(), observer);
+                    cellViewModel.isRevealed().observe(getViewLifecycleOwner(), observer);
+                    cellViewModel.isMarkedCorrect().observe(getViewLifecycleOwner(), observer);
+                    cellViewModel.isMarkedIncorrect().observe(getViewLifecycleOwner(), observer);
                 }
             }
+
+            // The grid is interactive from here on. Later views of the same load (e.g. after
+            // rotation) are not counted.
+            PuzzleLoadTimings timings = viewModel.getLoadTimings();
+            if (timings != null && timings.getStageMillis(PuzzleLoadTimings.BIND) < 0) {
+                timings.endStage(PuzzleLoadTimings.BIND);
+                Log.i(TAG, "Load timings: " + timings);
+            }
         });
     }
 
+    /** Mirrors each cell's state into the canvas grid. */
+    private void bindGridCanvas() {
+        GridCanvasView grid = mFragmentPuzzleBinding.grid;
+        for (int row = 0; row < mPuzzleViewModel.getNumRows(); row++) {
+            for (int col = 0; col < mPuzzleViewModel.getNumColumns(); col++) {
+                CellViewModel cellViewModel = mPuzzleViewModel.getCellViewModel(row, col);
+                int cell = mPuzzleViewModel.getOffset(row, col);
+                if (cellViewModel == null) {
+                    grid.setCellFlag(cell, GridState.BLACK, true);
+                    continue;
+                }
+                grid.setCellNumber(cell, cellViewModel.getClueNumber());
+                grid.setCellFlag(cell, GridState.CIRCLED, cellViewModel.isCircled());
+                cellViewModel.getContents().observe(getViewLifecycleOwner(),
+                        contents -> grid.setCellContents(cell, contents));
+                observeCellFlag(cellViewModel.getSelected(), cell, GridState.SELECTED);
+                observeCellFlag(cellViewModel.isHighlighted(), cell, GridState.HIGHLIGHTED);
+                observeCellFlag(cellViewModel.getReferenced(), cell, GridState.REFERENCED);
+                observeCellFlag(cellViewModel.getPencil(), cell, GridState.PENCIL);
+                observeCellFlag(cellViewModel.isMarkedIncorrect(), cell,
+                        GridState.MARKED_INCORRECT);
+                observeCellFlag(cellViewModel.isMarkedCorrect(), cell, GridState.MARKED_CORRECT);
+                observeCellFlag(cellViewModel.isRevealed(), cell, GridState.REVEALED);
+            }
+        }
+    }
+
+    private void observeCellFlag(LiveData<Boolean> liveData, int cell, int flag) {
+        GridCanvasView grid = mFragmentPuzzleBinding.grid;
+        liveData.observe(getViewLifecycleOwner(),
+                value -> grid.setCellFlag(cell, flag, value != null && value));
+    }
+
     private void adjustViewport() {
         ClueViewModel clueViewModel = mPuzzleViewModel.getCurrentClue().getValue();
         CellViewModel cellViewModel = mPuzzleViewModel.getCurrentCell().getValue();
@@ -340,7 +454,13 @@ public class PuzzleFragment extends Fragment {
         List<CellViewModel> clueCells = clueViewModel.getCells();
         int firstCellInClue = clueCells.get(0).getOffset();
         int lastCellInClue = clueCells.get(clueCells.size() - 1).getOffset();
-        mFragmentPuzzleBinding.puzzle.adjustViewport(firstCellInClue, selectedCell, lastCellInClue);
+        if (mUseCanvasGrid) {
+            mFragmentPuzzleBinding.grid.adjustViewport(firstCellInClue, selectedCell,
+                    lastCellInClue);
+        } else {
+            mFragmentPuzzleBinding.puzzle.adjustViewport(firstCellInClue, selectedCell,
+                    lastCellInClue);
+        }
     }
 
     private boolean openClueListView() {
@@ -7,6 +7,7 @@ import android.app.AlertDialog;
 import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -20,6 +21,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ProgressBar;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -27,6 +29,7 @@ import androidx.core.view.MenuProvider;
 import androidx.databinding.DataBindingUtil;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
+import androidx.preference.PreferenceManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -34,16 +37,23 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.github.leffinger.crossyourheart.AppExecutors;
 import io.github.leffinger.crossyourheart.R;
 import io.github.leffinger.crossyourheart.databinding.AlertProgressBinding;
 import io.github.leffinger.crossyourheart.databinding.FragmentPuzzleFileBinding;
 import io.github.leffinger.crossyourheart.databinding.FragmentPuzzleListBinding;
 import io.github.leffinger.crossyourheart.io.IOUtil;
+import io.github.leffinger.crossyourheart.io.IndexDiff;
+import io.github.leffinger.crossyourheart.io.PuzzleCache;
 import io.github.leffinger.crossyourheart.io.PuzzleDirectory;
+import io.github.leffinger.crossyourheart.io.PuzzleScanner;
 import io.github.leffinger.crossyourheart.room.Database;
 import io.github.leffinger.crossyourheart.room.Puzzle;
+import io.github.leffinger.crossyourheart.room.PuzzleQuery;
 
 /**
  * Displays a list of puzzle files.
@@ -52,10 +62,26 @@ public class PuzzleListFragment extends Fragment {
     static final String REQUEST_KEY_ADD_PUZZLES = "addPuzzles";
     private static final String TAG = "PuzzleListFragment";
     private static final int REQUEST_CODE_OPEN_FILE = 0;
-    private volatile List<Puzzle> mPuzzles;
+    private static final String PREF_LIBRARY_SORT = "library_sort";
+    private static final String PREF_HIDE_SOLVED = "library_hide_solved";
+    private static final int PAGE_SIZE = 50;
+    // Start fetching the next page when the user scrolls this close to the end of the list.
+    private static final int PREFETCH_DISTANCE = 10;
+    // Pre-parse up to this many in-progress puzzles, looking this far down from the first
+    // visible row.
+    private static final int PREWARM_COUNT = 4;
+    private static final int PREWARM_SCAN_DISTANCE = 20;
+
+    // Only the pages loaded so far; accessed on the main thread.
+    private List<Puzzle> mPuzzles;
+    private PuzzleQuery mQuery;
+    private boolean mLoadingPage;
+    private boolean mEndReached;
+    // Incremented on every refresh, so that pages requested before it are dropped.
+    private int mGeneration;
     private PuzzleFileAdapter mAdapter;
     private Database mDatabase;
-    private RecyclerView.LayoutManager mLayoutManager;
+    private LinearLayoutManager mLayoutManager;
 
     public static PuzzleListFragment newInstance() {
         PuzzleListFragment fragment = new PuzzleListFragment();
@@ -91,52 +117,132 @@ public class PuzzleListFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        fetchPuzzleFiles();
+        refreshPuzzles(0);
+        reconcileIndex();
     }
 
+    private PuzzleQuery buildQuery() {
+        SharedPreferences preferences =
+                PreferenceManager.getDefaultSharedPreferences(requireContext());
+        PuzzleQuery.Sort sort;
+        try {
+            sort = PuzzleQuery.Sort.valueOf(
+                    preferences.getString(PREF_LIBRARY_SORT, PuzzleQuery.Sort.NEWEST.name()));
+        } catch (IllegalArgumentException e) {
+            sort = PuzzleQuery.Sort.NEWEST;
+        }
+        boolean hideSolved = preferences.getBoolean(PREF_HIDE_SOLVED, false);
+        return PuzzleQuery.builder().setSort(sort).setSolved(hideSolved ? false : null).build();
+    }
+
+    /**
+     * Reloads the list from the top, keeping as many rows as are currently loaded (plus
+     * numAdded) so that the scroll position survives.
+     */
     @SuppressLint("NotifyDataSetChanged")
-    private void fetchPuzzleFiles() {
-        // Fetch puzzles in a background task.
+    private void refreshPuzzles(int numAdded) {
+        Context context = requireContext();
+        PuzzleQuery query = buildQuery();
+        int limit = Math.max(PAGE_SIZE, mPuzzles.size() + numAdded);
+        int generation = ++mGeneration;
+        mLoadingPage = true;
         Handler handler = new Handler(Looper.getMainLooper());
-        Executors.newSingleThreadExecutor().execute(() -> {
-            mPuzzles = PuzzleDirectory.getInstance().getAllPuzzles(requireContext());
+        AppExecutors.getInstance().background().execute(() -> {
+            List<Puzzle> puzzles =
+                    PuzzleDirectory.getInstance().getPuzzles(context, query, null, limit);
             handler.post(() -> {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mQuery = query;
+                mPuzzles = puzzles;
+                mEndReached = puzzles.size() < limit;
+                mLoadingPage = false;
                 mAdapter.notifyDataSetChanged();
-                checkIndexAndOfferToReindex();
+                if (isAdded()) {
+                    prewarmPuzzleCache();
+                }
             });
         });
     }
 
-    private void fetchNewPuzzleFiles(int numPuzzles) {
+    /**
+     * Parses the in-progress puzzles that are most likely to be opened next, starting from the
+     * first visible row, so that opening one of them skips reading the file.
+     */
+    private void prewarmPuzzleCache() {
+        Context context = getContext();
+        if (context == null) {
+            return;
+        }
+        int first = Math.max(0, mLayoutManager.findFirstVisibleItemPosition());
+        int end = Math.min(mPuzzles.size(), first + PREWARM_SCAN_DISTANCE);
+        List<File> files = new ArrayList<>();
+        for (int i = first; i < end && files.size() < PREWARM_COUNT; i++) {
+            Puzzle puzzle = mPuzzles.get(i);
+            if (puzzle.opened && !puzzle.solved) {
+                files.add(IOUtil.getPuzzleFile(context, puzzle.filename));
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        AppExecutors.getInstance().background().execute(() -> {
+            PuzzleCache cache = PuzzleCache.getInstance();
+            int loaded = cache.prewarm(files);
+            Log.i(TAG, "Pre-warmed " + loaded + " puzzles; cache: " + cache.getStats());
+        });
+    }
+
+    /** Appends the next page, unless one is already on its way or there are no more rows. */
+    private void loadNextPage() {
+        if (mLoadingPage || mEndReached || mPuzzles.isEmpty()) {
+            return;
+        }
+        Context context = requireContext();
+        PuzzleQuery query = mQuery;
+        Puzzle last = mPuzzles.get(mPuzzles.size() - 1);
+        PuzzleQuery.Key after = query.keyOf(last.filename, last.title, last.author);
+        int generation = mGeneration;
+        mLoadingPage = true;
         Handler handler = new Handler(Looper.getMainLooper());
-        Executors.newSingleThreadExecutor().execute(() -> {
-            mPuzzles.addAll(0, mDatabase.puzzleDao().getFirstN(numPuzzles));
+        AppExecutors.getInstance().background().execute(() -> {
+            List<Puzzle> page =
+                    PuzzleDirectory.getInstance().getPuzzles(context, query, after, PAGE_SIZE);
             handler.post(() -> {
-                mAdapter.notifyItemRangeInserted(0, numPuzzles);
-                mLayoutManager.scrollToPosition(0);
+                if (generation != mGeneration) {
+                    return;
+                }
+                int start = mPuzzles.size();
+                mPuzzles.addAll(page);
+                mEndReached = page.size() < PAGE_SIZE;
+                mLoadingPage = false;
+                mAdapter.notifyItemRangeInserted(start, page.size());
             });
         });
     }
 
-    private void checkIndexAndOfferToReindex() {
+    private void fetchNewPuzzleFiles(int numPuzzles) {
+        refreshPuzzles(numPuzzles);
+        mLayoutManager.scrollToPosition(0);
+    }
+
+    private void reconcileIndex() {
         Handler handler = new Handler(Looper.getMainLooper());
         Executors.newSingleThreadExecutor().execute(() -> {
             Context context = getContext();
             if (context == null) {
-                Log.i(TAG, "Fragment detached; not checking index");
+                Log.i(TAG, "Fragment detached; not reconciling index");
+                return;
             }
 
-            PuzzleDirectory puzzleDirectory = PuzzleDirectory.getInstance();
-            if (!puzzleDirectory.databaseAndDirectoryHaveSameFiles(requireContext())) {
-                AlertDialog.Builder dialog =
-                        new AlertDialog.Builder(context).setTitle(R.string.reindex_alert)
-                                                        .setMessage(R.string.reindex_safe)
-                                                        .setPositiveButton(android.R.string.ok,
-                                                                (dialogInterface, i) -> reindexFiles())
-                                                        .setNegativeButton(android.R.string.cancel,
-                                                                null)
-                                                        .setCancelable(true);
-                handler.post(() -> dialog.create().show());
+            IndexDiff diff = PuzzleDirectory.getInstance().reconcile(context);
+            if (!diff.isEmpty()) {
+                handler.post(() -> {
+                    if (isAdded()) {
+                        refreshPuzzles(diff.added.size());
+                    }
+                });
             }
         });
     }
@@ -149,6 +255,14 @@ public class PuzzleListFragment extends Fragment {
                         container, false);
         binding.list.setLayoutManager(mLayoutManager);
         binding.list.setAdapter(mAdapter);
+        binding.list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prewarmPuzzleCache();
+                }
+            }
+        });
         return binding.getRoot();
     }
 
@@ -160,6 +274,24 @@ public class PuzzleListFragment extends Fragment {
             @Override
             public void onCreateMenu(@NonNull Menu menu, @NonNull MenuInflater menuInflater) {
                 menuInflater.inflate(R.menu.fragment_puzzle_list, menu);
+                SharedPreferences preferences =
+                        PreferenceManager.getDefaultSharedPreferences(requireContext());
+                PuzzleQuery query = buildQuery();
+                int sortItemId;
+                switch (query.getSort()) {
+                case TITLE:
+                    sortItemId = R.id.sort_by_title;
+                    break;
+                case AUTHOR:
+                    sortItemId = R.id.sort_by_author;
+                    break;
+                default:
+                    sortItemId = R.id.sort_by_newest;
+                    break;
+                }
+                menu.findItem(sortItemId).setChecked(true);
+                menu.findItem(R.id.hide_solved)
+                    .setChecked(preferences.getBoolean(PREF_HIDE_SOLVED, false));
             }
 
             @Override
@@ -181,6 +313,28 @@ public class PuzzleListFragment extends Fragment {
                     startActivity(SettingsActivity.newIntent(getContext(), R.xml.root_preferences));
                     return true;
                 }
+                if (itemId == R.id.sort_by_newest || itemId == R.id.sort_by_title ||
+                        itemId == R.id.sort_by_author) {
+                    PuzzleQuery.Sort sort = PuzzleQuery.Sort.NEWEST;
+                    if (itemId == R.id.sort_by_title) {
+                        sort = PuzzleQuery.Sort.TITLE;
+                    } else if (itemId == R.id.sort_by_author) {
+                        sort = PuzzleQuery.Sort.AUTHOR;
+                    }
+                    item.setChecked(true);
+                    PreferenceManager.getDefaultSharedPreferences(requireContext()).edit()
+                                     .putString(PREF_LIBRARY_SORT, sort.name()).apply();
+                    refreshPuzzles(0);
+                    mLayoutManager.scrollToPosition(0);
+                    return true;
+                }
+                if (itemId == R.id.hide_solved) {
+                    item.setChecked(!item.isChecked());
+                    PreferenceManager.getDefaultSharedPreferences(requireContext()).edit()
+                                     .putBoolean(PREF_HIDE_SOLVED, item.isChecked()).apply();
+                    refreshPuzzles(0);
+                    return true;
+                }
                 if (itemId == R.id.reindex_files) {
                     reindexFiles();
                     return true;
@@ -203,24 +357,29 @@ public class PuzzleListFragment extends Fragment {
         }, getViewLifecycleOwner());
     }
 
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-        Log.i(TAG, "Closing database");
-        mDatabase.close();
-    }
-
     private void reindexFiles() {
         AlertProgressBinding progressBinding =
                 DataBindingUtil.inflate(getLayoutInflater(), R.layout.alert_progress, null, false);
+        AtomicBoolean cancelled = new AtomicBoolean();
         AlertDialog progressDialog =
                 new AlertDialog.Builder(getContext()).setView(progressBinding.getRoot())
                                                      .setCancelable(false)
                                                      .setTitle("Reindexing files...")
+                                                     .setNegativeButton(android.R.string.cancel,
+                                                             (dialog, which) -> cancelled.set(
+                                                                     true))
                                                      .show();
         progressDialog.show();
 
         Handler handler = new Handler(Looper.getMainLooper());
+        ProgressBar progressBar = progressBinding.progressBar;
+        PuzzleScanner.ProgressListener progressListener = (done, total) -> handler.post(() -> {
+            progressBar.setMax(total);
+            // Workers report out of order; never move the bar backwards.
+            if (done > progressBar.getProgress()) {
+                progressBar.setProgress(done);
+            }
+        });
         Executors.newSingleThreadExecutor().execute(() -> {
             Context context = getContext();
             if (context == null) {
@@ -228,10 +387,16 @@ public class PuzzleListFragment extends Fragment {
                 return;
             }
 
-            List<File> corruptFiles = PuzzleDirectory.getInstance()
-                                                     .reindexFiles(context,
-                                                             progressBinding.progressBar);
-            mPuzzles = mDatabase.puzzleDao().getAll();
+            List<File> corruptFiles;
+            try {
+                corruptFiles = PuzzleDirectory.getInstance()
+                                              .reindexFiles(context, progressListener, cancelled);
+            } catch (CancellationException e) {
+                Log.i(TAG, "Reindex cancelled");
+                handler.post(progressDialog::dismiss);
+                return;
+            }
+            int numPuzzles = mDatabase.puzzleDao().count();
             AlertDialog.Builder alertDialogBuilder;
             if (!corruptFiles.isEmpty()) {
                 alertDialogBuilder = new AlertDialog.Builder(context).setMessage(
@@ -245,13 +410,13 @@ public class PuzzleListFragment extends Fragment {
                                                                              null);
             } else {
                 alertDialogBuilder = new AlertDialog.Builder(context).setMessage(
-                                                                             context.getString(R.string.reindexed_files, mPuzzles.size()))
+                                                                             context.getString(R.string.reindexed_files, numPuzzles))
                                                                      .setPositiveButton(
                                                                              android.R.string.ok,
                                                                              null);
             }
             handler.post(() -> {
-                mAdapter.notifyDataSetChanged();
+                refreshPuzzles(0);
                 progressDialog.dismiss();
                 alertDialogBuilder.show();
             });
@@ -298,12 +463,8 @@ public class PuzzleListFragment extends Fragment {
     }
 
     private void deletePuzzle(String filename) {
-        AsyncTask.execute(() -> {
-            if (!IOUtil.getPuzzleFile(getContext(), filename).delete()) {
-                Log.w(TAG, "deletePuzzle: failed to delete " + filename);
-            }
-            mDatabase.puzzleDao().deletePuzzle(new Puzzle(filename));
-        });
+        Context context = requireContext().getApplicationContext();
+        AsyncTask.execute(() -> PuzzleDirectory.getInstance().deletePuzzle(context, filename));
     }
 
     public interface Callbacks {
@@ -377,6 +538,9 @@ public class PuzzleListFragment extends Fragment {
         @Override
         public void onBindViewHolder(@NonNull PuzzleFileHolder holder, int position) {
             holder.bind(mPuzzles.get(position));
+            if (position >= mPuzzles.size() - PREFETCH_DISTANCE) {
+                loadNextPage();
+            }
         }
 
         @Override
@@ -7,17 +7,27 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Generic API for an on-disk puzzle file.
  */
 public abstract class AbstractPuzzleFile implements Serializable {
+    static final String BACKUP_SUFFIX = ".bk";
+
     public abstract int getNumClues();
 
     public abstract boolean isBlack(int row, int col);
 
+    /**
+     * Returns the cell's contents, or "" if it is empty. Implementations should return shared
+     * strings rather than allocating a new one per call, since this is called for every cell.
+     */
     public abstract String getCellContents(int row, int col);
 
+    /** Returns the first letter of the cell's contents, or 0 if it is empty. */
+    public abstract char getCellLetter(int row, int col);
+
     public abstract String getTitle();
 
     public abstract String getAuthor();
@@ -34,20 +44,56 @@ public abstract class AbstractPuzzleFile implements Serializable {
         return row * getWidth() + col;
     }
 
-    public void savePuzzleFile(File file) throws IOException {
-        File backupFile = new File(file.getAbsolutePath() + ".bk");
-        try (FileOutputStream outputStream = new FileOutputStream(backupFile)) {
-            savePuzzleFile(outputStream);
+    /**
+     * Saves the puzzle to disk.
+     *
+     * <p>If the file still holds the version of this puzzle that was last read or written, only
+     * the byte ranges that changed since then are rewritten (see {@link PuzzleFileJournal}).
+     * Otherwise the whole puzzle is written to a backup file, which is then moved into place.
+     *
+     * @return number of bytes written to the puzzle file
+     */
+    public long savePuzzleFile(File file) throws IOException {
+        long bytesWritten;
+        synchronized (PuzzleFileJournal.getLock(file)) {
+            List<PuzzleFileJournal.Patch> patches = getIncrementalPatches(file);
+            if (patches != null) {
+                bytesWritten = PuzzleFileJournal.applyPatches(file, patches);
+            } else {
+                // Any journal left behind is for an older version of the file; don't replay it
+                // later.
+                PuzzleFileJournal.getJournalFile(file).delete();
+                File backupFile = new File(file.getAbsolutePath() + BACKUP_SUFFIX);
+                try (FileOutputStream outputStream = new FileOutputStream(backupFile)) {
+                    savePuzzleFile(outputStream);
+                }
+                Files.move(backupFile, file);
+                bytesWritten = file.length();
+            }
         }
-        Files.move(backupFile, file);
+        onPuzzleFileSaved(file);
+        return bytesWritten;
     }
 
     protected abstract void savePuzzleFile(OutputStream outputStream) throws IOException;
 
+    /**
+     * Returns the patches needed to bring the on-disk file up to date, or null if the whole file
+     * needs to be rewritten.
+     */
+    protected List<PuzzleFileJournal.Patch> getIncrementalPatches(File file) throws IOException {
+        return null;
+    }
+
+    /** Called after the file has been brought up to date by {@link #savePuzzleFile(File)}. */
+    protected void onPuzzleFileSaved(File file) {
+    }
+
     public abstract void setCellContents(int row, int col, String contents);
 
     public abstract boolean isSolved();
 
+    /** Whether the cell's contents match the solution. Should not allocate. */
     public abstract boolean isCorrect(int row, int col);
 
     public abstract ScrambleState getScrambleState();
@@ -60,12 +106,43 @@ public abstract class AbstractPuzzleFile implements Serializable {
 
     public abstract String getSolution(int row, int col);
 
+    /** Returns the first letter of the cell's solution. */
+    public abstract char getSolutionLetter(int row, int col);
+
     public abstract TimerInfo getTimerInfo();
     public abstract void setTimerInfo(TimerInfo timerInfo);
 
     public abstract boolean isEmpty();
 
-    public abstract boolean[][] getClueReferences();
+    /** Number of cells that are not black. */
+    public abstract int getNumWhiteCells();
+
+    /** Number of white cells that have something in them. */
+    public abstract int getNumFilledCells();
+
+    public int getNumCellsRemaining() {
+        return getNumWhiteCells() - getNumFilledCells();
+    }
+
+    /** Percentage of white cells that are filled in, from 0 to 100. */
+    public int getPercentComplete() {
+        int numWhiteCells = getNumWhiteCells();
+        return numWhiteCells == 0 ? 100 : getNumFilledCells() * 100 / numWhiteCells;
+    }
+
+    /** Returns which clues mention which other clues, e.g. "see 15-Across". */
+    public abstract ClueReferences getClueReferenceIndex();
+
+    /**
+     * Returns {@code references[i][j]}, true if clue i mentions clue j.
+     *
+     * @deprecated takes space quadratic in the number of clues; use {@link
+     * #getClueReferenceIndex()}
+     */
+    @Deprecated
+    public boolean[][] getClueReferences() {
+        return getClueReferenceIndex().toMatrix();
+    }
 
     public enum ScrambleState {
         UNSCRAMBLED, LOCKED, SCRAMBLED, UNKNOWN
@@ -0,0 +1,247 @@
+package io.github.leffinger.crossyourheart.io;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind scheduler for puzzle autosave.
+ *
+ * <p>Callers report changes with {@link #markDirty()}. Any number of changes are coalesced into a
+ * single pending write, which runs once no further changes have arrived for the quiet period, or
+ * once the oldest unsaved change is older than the maximum latency, whichever comes first. Writes
+ * run one at a time on a dedicated background thread; none of the public methods block.
+ */
+public class AutosaveScheduler {
+    // After shutdown() there are no further changes to retry with, so the final write is retried
+    // a few times on its own before the changes are given up.
+    private static final int SHUTDOWN_RETRIES = 3;
+    private static final long SHUTDOWN_RETRY_DELAY_MILLIS = 250;
+
+    private final Writer mWriter;
+    private final Listener mListener;
+    private final long mQuietPeriodNanos;
+    private final long mMaxLatencyNanos;
+    private final ScheduledExecutorService mExecutorService =
+            Executors.newSingleThreadScheduledExecutor();
+
+    // All of the following are guarded by "this".
+    private Future<?> mPendingWrite;
+    private long mPendingWriteId;  // identifies the pending write, which is the last scheduled
+    private boolean mDirty;
+    private long mDirtySinceNanos;
+    private long mFlushRequestedNanos;
+    private boolean mShutdown;
+    private int mShutdownRetries;
+
+    private long mWritesRequested;
+    private long mWritesPerformed;
+    private long mWritesFailed;
+    private long mBytesWritten;
+    private long mFlushes;
+    private long mTotalFlushLatencyNanos;
+    private long mMaxFlushLatencyNanos;
+
+    /**
+     * @param writer            performs the actual write
+     * @param listener          notified when a write fails; may be null
+     * @param quietPeriodMillis how long to wait after the last change before writing
+     * @param maxLatencyMillis  longest a change may wait to be written while changes keep coming
+     */
+    public AutosaveScheduler(Writer writer, Listener listener, long quietPeriodMillis,
+                             long maxLatencyMillis) {
+        mWriter = writer;
+        mListener = listener;
+        mQuietPeriodNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis);
+        mMaxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(quietPeriodMillis,
+                maxLatencyMillis));
+    }
+
+    /** Records that there are unsaved changes, (re)starting the quiet period. */
+    public synchronized void markDirty() {
+        if (mShutdown) {
+            return;
+        }
+        mWritesRequested++;
+        long now = System.nanoTime();
+        if (!mDirty) {
+            mDirty = true;
+            mDirtySinceNanos = now;
+        }
+        if (mFlushRequestedNanos != 0) {
+            // A flush is already on its way; it will pick up this change too.
+            return;
+        }
+        long deadline = Math.min(now + mQuietPeriodNanos, mDirtySinceNanos + mMaxLatencyNanos);
+        schedule(deadline - now);
+    }
+
+    /**
+     * Writes any unsaved changes as soon as possible, without waiting for the quiet period.
+     *
+     * @return a future that completes once the write (if any) is done
+     */
+    public synchronized Future<?> flush() {
+        if (mShutdown) {
+            return mPendingWrite;
+        }
+        if (mFlushRequestedNanos == 0) {
+            mFlushRequestedNanos = System.nanoTime();
+            schedule(0);
+        }
+        return mPendingWrite;
+    }
+
+    /**
+     * Flushes unsaved changes, then stops accepting new ones. The writer thread is released once
+     * the final write succeeds, or has been retried a few times without success.
+     */
+    public synchronized void shutdown() {
+        if (mShutdown) {
+            return;
+        }
+        flush();
+        mShutdown = true;
+    }
+
+    /** Returns true if there are changes that have not started being written yet. */
+    public synchronized boolean isDirty() {
+        return mDirty;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mWritesRequested, mWritesPerformed, mWritesFailed, mBytesWritten,
+                mFlushes, mFlushes == 0 ? 0 : mTotalFlushLatencyNanos / mFlushes,
+                mMaxFlushLatencyNanos);
+    }
+
+    private void schedule(long delayNanos) {
+        if (mPendingWrite != null) {
+            // Has no effect if the write has already started; at worst we write twice.
+            mPendingWrite.cancel(false);
+        }
+        long id = ++mPendingWriteId;
+        mPendingWrite = mExecutorService.schedule(() -> writeIfDirty(id), delayNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /** Schedules another attempt from within the write that failed. */
+    private void retry(long delayNanos) {
+        // Don't cancel this write, which callers of flush() may be waiting on.
+        mPendingWrite = null;
+        schedule(delayNanos);
+    }
+
+    /** Called once the last scheduled write has run, to release the thread after shutdown(). */
+    private void onLastWriteDone() {
+        if (mShutdown) {
+            mExecutorService.shutdown();
+        }
+    }
+
+    private void writeIfDirty(long id) {
+        long flushRequestedNanos;
+        synchronized (this) {
+            flushRequestedNanos = mFlushRequestedNanos;
+            mFlushRequestedNanos = 0;
+            if (!mDirty) {
+                if (id == mPendingWriteId) {
+                    onLastWriteDone();
+                }
+                return;
+            }
+            mDirty = false;
+        }
+
+        long bytesWritten;
+        try {
+            bytesWritten = mWriter.write();
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                mWritesFailed++;
+                // Keep the changes around for the next attempt, and retry after the quiet period
+                // even if nothing else changes.
+                if (!mDirty) {
+                    mDirty = true;
+                    mDirtySinceNanos = System.nanoTime();
+                }
+                // Unless another write was scheduled while this one ran.
+                if (id == mPendingWriteId) {
+                    if (!mShutdown) {
+                        retry(mQuietPeriodNanos);
+                    } else if (mShutdownRetries < SHUTDOWN_RETRIES) {
+                        mShutdownRetries++;
+                        retry(TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_RETRY_DELAY_MILLIS));
+                    } else {
+                        onLastWriteDone();
+                    }
+                }
+            }
+            if (mListener != null) {
+                mListener.onWriteFailed(e instanceof IOException ? (IOException) e :
+                        new IOException(e));
+            }
+            return;
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            mWritesPerformed++;
+            mBytesWritten += bytesWritten;
+            if (flushRequestedNanos != 0) {
+                long latency = now - flushRequestedNanos;
+                mFlushes++;
+                mTotalFlushLatencyNanos += latency;
+                mMaxFlushLatencyNanos = Math.max(mMaxFlushLatencyNanos, latency);
+            }
+            if (id == mPendingWriteId) {
+                onLastWriteDone();
+            }
+        }
+    }
+
+    /** Saves the puzzle. Called on the scheduler's background thread. */
+    public interface Writer {
+        /** Returns the number of bytes written. */
+        long write() throws IOException;
+    }
+
+    public interface Listener {
+        void onWriteFailed(IOException e);
+    }
+
+    /** Snapshot of autosave counters. */
+    public final static class Stats {
+        public final long writesRequested;
+        public final long writesPerformed;
+        public final long writesFailed;
+        public final long bytesWritten;
+        public final long flushes;
+        public final long averageFlushLatencyNanos;
+        public final long maxFlushLatencyNanos;
+
+        public Stats(long writesRequested, long writesPerformed, long writesFailed,
+                     long bytesWritten, long flushes, long averageFlushLatencyNanos,
+                     long maxFlushLatencyNanos) {
+            this.writesRequested = writesRequested;
+            this.writesPerformed = writesPerformed;
+            this.writesFailed = writesFailed;
+            this.bytesWritten = bytesWritten;
+            this.flushes = flushes;
+            this.averageFlushLatencyNanos = averageFlushLatencyNanos;
+            this.maxFlushLatencyNanos = maxFlushLatencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "requested=%d performed=%d failed=%d bytes=%d flushes=%d " +
+                            "flushLatencyAvg=%.1fms flushLatencyMax=%.1fms", writesRequested,
+                    writesPerformed, writesFailed, bytesWritten, flushes,
+                    averageFlushLatencyNanos / 1e6, maxFlushLatencyNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package io.github.leffinger.crossyourheart.io;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports many puzzle files at once, e.g. everything picked in the file chooser or the contents of
+ * a .zip archive.
+ *
+ * <p>Work is split into stages that overlap:
+ * <ol>
+ *     <li>read: the calling thread reads each source into memory, one after another. Archives are
+ *     streamed entry by entry without being extracted to disk.
+ *     <li>verify: worker threads parse each file, check its checksums and look for duplicates
+ *     by {@link ContentFingerprint}: first in memory among the files being imported, then in the
+ *     library.
+ *     <li>write: the same workers save new puzzles to the puzzle directory.
+ *     <li>commit: a single thread adds written files to the library, a batch per transaction. A
+ *     batch holds whatever was written while the previous transaction ran.
+ * </ol>
+ *
+ * <p>How long each stage took is reported in {@link Result#stats}.
+ */
+public class BulkImporter {
+    /** Files larger than this are rejected, so that a bad archive can't exhaust memory. */
+    public static final int MAX_FILE_SIZE = 4 * 1024 * 1024;
+    static final int COMMIT_BATCH_SIZE = 256;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    private static final Entry END = new Entry("");
+
+    /** A file, or archive of files, to import. */
+    public interface Source {
+        /** Used to name the source in errors and logs. */
+        String getName();
+
+        InputStream open() throws IOException;
+    }
+
+    /** Where imported puzzles go. */
+    public interface Sink {
+        /**
+         * Returns the filename of a puzzle already in the library that this one duplicates, or
+         * null. Called from several worker threads at once.
+         */
+        String findDuplicate(PuzFile puzzle);
+
+        /**
+         * Saves the puzzle as a new file and returns the file's name. The file must not show up
+         * in the library, e.g. when it is reconciled, until it has been committed. Called from
+         * several worker threads at once.
+         */
+        String write(PuzFile puzzle) throws IOException;
+
+        /**
+         * Adds written files to the library in one transaction. Called from one thread at a time.
+         * Duplicates are checked again here, since another import may have added the same puzzle
+         * since {@link #findDuplicate} was called. An entry's own file never counts as a
+         * duplicate of it.
+         *
+         * @return for each entry, the filename of the puzzle it turned out to duplicate, or null
+         * if the entry was added
+         */
+        String[] commit(List<Entry> batch);
+
+        /** Deletes a written file that was not added to the library. */
+        void delete(String filename);
+    }
+
+    /** One puzzle file, read from a source or from an entry of an archive. */
+    public static final class Entry {
+        /** The source's name, followed by the entry's name for archives. */
+        public final String name;
+        long size;
+        PuzFile puzzle;
+        String filename;
+        String duplicateFilename;
+        Entry duplicateEntry;
+        boolean committed;
+        IOException error;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        public PuzFile getPuzzle() {
+            return puzzle;
+        }
+
+        /** Name of the file the puzzle was written to. */
+        public String getFilename() {
+            return filename;
+        }
+    }
+
+    /** An entry that could not be imported. */
+    public static final class Failure {
+        public final String name;
+        public final IOException error;
+
+        Failure(String name, IOException error) {
+            this.name = name;
+            this.error = error;
+        }
+    }
+
+    public static final class Result {
+        /** Filenames of the puzzles that were added, in the order they were read. */
+        public final List<String> imported;
+        /** For each entry that was a duplicate, the filename of the puzzle it duplicated. */
+        public final List<String> duplicates;
+        public final List<Failure> failures;
+        public final Stats stats;
+
+        Result(List<String> imported, List<String> duplicates, List<Failure> failures,
+               Stats stats) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.failures = failures;
+            this.stats = stats;
+        }
+
+        /** Number of puzzle files found, which exceeds the number of sources for archives. */
+        public int getTotal() {
+            return imported.size() + duplicates.size() + failures.size();
+        }
+    }
+
+    /** Throughput of one stage. */
+    public static final class StageStats {
+        public final String name;
+        public final int files;
+        public final long bytes;
+        /**
+         * Time spent in the stage. For the verify and write stages this is the combined time of
+         * all workers, so the rates are what a single worker sustains.
+         */
+        public final long nanos;
+
+        public StageStats(String name, int files, long bytes, long nanos) {
+            this.name = name;
+            this.files = files;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public double getFilesPerSecond() {
+            return nanos == 0 ? 0 : files * 1e9 / nanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d files, %.2f MB in %d ms (%.1f files/s, %.2f MB/s)", name, files,
+                    bytes / (1024.0 * 1024), nanos / 1000000, getFilesPerSecond(),
+                    getMegabytesPerSecond());
+        }
+    }
+
+    public static final class Stats {
+        public final StageStats read;
+        public final StageStats verify;
+        public final StageStats write;
+        public final StageStats commit;
+        /** Files committed and bytes read, over the whole import from start to finish. */
+        public final StageStats total;
+        public final int commitBatches;
+
+        Stats(StageStats read, StageStats verify, StageStats write, StageStats commit,
+              StageStats total, int commitBatches) {
+            this.read = read;
+            this.verify = verify;
+            this.write = write;
+            this.commit = commit;
+            this.total = total;
+            this.commitBatches = commitBatches;
+        }
+
+        @Override
+        public String toString() {
+            return total + "\n  " + read + "\n  " + verify + "\n  " + write + "\n  " + commit +
+                    " in " + commitBatches + " transactions";
+        }
+    }
+
+    private final Sink mSink;
+    private final int mParallelism;
+
+    private final Stage mRead = new Stage("read");
+    private final Stage mVerify = new Stage("verify");
+    private final Stage mWrite = new Stage("write");
+    private final Stage mCommit = new Stage("commit");
+    private final ConcurrentHashMap<Long, Entry> mSeen = new ConcurrentHashMap<>();
+    private final BlockingQueue<Entry> mCommitQueue = new LinkedBlockingQueue<>();
+    private final Semaphore mInFlight;
+    private int mCommitBatches;
+
+    /**
+     * @param parallelism number of worker threads for the verify and write stages
+     */
+    public BulkImporter(Sink sink, int parallelism) {
+        mSink = sink;
+        mParallelism = parallelism;
+        // Bounds the number of files held in memory between the read and write stages.
+        mInFlight = new Semaphore(4 * parallelism);
+    }
+
+    /**
+     * Imports every puzzle file in the given sources. Sources that are not .zip archives are read
+     * as single puzzle files. May only be called once per importer.
+     *
+     * @throws CancellationException if the calling thread was interrupted. Files that were
+     *                               written but not committed are deleted, as they are for
+     *                               any other exception.
+     */
+    public Result importAll(List<? extends Source> sources) {
+        long startNanos = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(mParallelism);
+        ExecutorService committer = Executors.newSingleThreadExecutor();
+        List<Entry> entries = new ArrayList<>();
+        try {
+            Future<?> commits = committer.submit(() -> {
+                commitLoop();
+                return null;
+            });
+            List<Future<?>> futures = new ArrayList<>();
+            for (Source source : sources) {
+                readSource(source, entries, futures, workers);
+            }
+            for (Future<?> future : futures) {
+                await(future);
+            }
+            mCommitQueue.add(END);
+            await(commits);
+            return collectResult(entries, System.nanoTime() - startNanos);
+        } catch (RuntimeException e) {
+            workers.shutdownNow();
+            committer.shutdownNow();
+            // Entries may still be queued for commit; wait until nothing can write or commit
+            // them before deleting their files.
+            awaitTermination(workers);
+            awaitTermination(committer);
+            deleteUncommitted(entries);
+            throw e;
+        } finally {
+            workers.shutdownNow();
+            committer.shutdownNow();
+        }
+    }
+
+    /** Deletes the files of entries that were written but never made it into the library. */
+    private void deleteUncommitted(List<Entry> entries) {
+        for (Entry entry : entries) {
+            // Duplicates found at commit, and failed batches, were already deleted by commit().
+            if (entry.filename != null && !entry.committed && entry.duplicateFilename == null &&
+                    entry.error == null) {
+                mSink.delete(entry.filename);
+            }
+        }
+    }
+
+    private void readSource(Source source, List<Entry> entries, List<Future<?>> futures,
+                            ExecutorService workers) {
+        long start = System.nanoTime();
+        try (InputStream inputStream = new BufferedInputStream(source.open())) {
+            if (!isZip(inputStream)) {
+                Entry entry = new Entry(source.getName());
+                entries.add(entry);
+                submit(entry, readEntry(inputStream), start, futures, workers);
+                return;
+            }
+            ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                if (zipEntry.isDirectory() || !isPuzzleFileName(zipEntry.getName())) {
+                    continue;
+                }
+                Entry entry = new Entry(source.getName() + "/" + zipEntry.getName());
+                entries.add(entry);
+                try {
+                    submit(entry, readEntry(zipInputStream), start, futures, workers);
+                } catch (IOException e) {
+                    // A bad entry doesn't affect the ones after it, unless the archive itself is
+                    // damaged, in which case getNextEntry() throws.
+                    entry.error = e;
+                }
+                start = System.nanoTime();
+            }
+        } catch (IOException e) {
+            Entry entry = new Entry(source.getName());
+            entry.error = new IOException("Failed to read " + source.getName(), e);
+            entries.add(entry);
+        }
+    }
+
+    private void submit(Entry entry, byte[] bytes, long readStart, List<Future<?>> futures,
+                        ExecutorService workers) {
+        entry.size = bytes.length;
+        mRead.record(bytes.length, System.nanoTime() - readStart);
+        try {
+            mInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        }
+        futures.add(workers.submit(() -> {
+            try {
+                process(entry, bytes);
+            } finally {
+                mInFlight.release();
+            }
+        }));
+    }
+
+    /** Verifies the entry and, unless it is a duplicate, writes it and queues it for commit. */
+    private void process(Entry entry, byte[] bytes) {
+        long start = System.nanoTime();
+        PuzFile puzzle;
+        try {
+            puzzle = PuzFile.verifyPuzFile(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            entry.error = e;
+            return;
+        } catch (RuntimeException e) {
+            // Garbage in the header can surface as, e.g., a negative array size.
+            entry.error = new IOException("Failed to parse " + entry.name, e);
+            return;
+        }
+
+        Entry first = mSeen.putIfAbsent(puzzle.getContentFingerprint(), entry);
+        if (first != null) {
+            entry.duplicateEntry = first;
+        } else {
+            entry.duplicateFilename = mSink.findDuplicate(puzzle);
+        }
+        mVerify.record(bytes.length, System.nanoTime() - start);
+        if (entry.duplicateEntry != null || entry.duplicateFilename != null) {
+            return;
+        }
+
+        start = System.nanoTime();
+        try {
+            entry.filename = mSink.write(puzzle);
+        } catch (IOException e) {
+            entry.error = new IOException("Failed to save " + entry.name, e);
+            return;
+        }
+        mWrite.record(bytes.length, System.nanoTime() - start);
+        entry.puzzle = puzzle;
+        mCommitQueue.add(entry);
+    }
+
+    private void commitLoop() throws InterruptedException {
+        List<Entry> batch = new ArrayList<>(COMMIT_BATCH_SIZE);
+        boolean done = false;
+        while (!done) {
+            batch.clear();
+            batch.add(mCommitQueue.take());
+            mCommitQueue.drainTo(batch, COMMIT_BATCH_SIZE - 1);
+            // Nothing is queued after the end marker.
+            if (batch.get(batch.size() - 1) == END) {
+                batch.remove(batch.size() - 1);
+                done = true;
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+            }
+        }
+    }
+
+    private void commit(List<Entry> batch) {
+        long start = System.nanoTime();
+        int committed = 0;
+        long bytes = 0;
+        try {
+            String[] duplicates = mSink.commit(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                Entry entry = batch.get(i);
+                if (duplicates[i] != null) {
+                    entry.duplicateFilename = duplicates[i];
+                    mSink.delete(entry.filename);
+                } else {
+                    entry.committed = true;
+                    committed++;
+                    bytes += entry.size;
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Entry entry : batch) {
+                entry.error = new IOException("Failed to add " + entry.name + " to library", e);
+                mSink.delete(entry.filename);
+            }
+        }
+        mCommitBatches++;
+        mCommit.record(committed, bytes, System.nanoTime() - start);
+    }
+
+    private Result collectResult(List<Entry> entries, long wallNanos) {
+        List<String> imported = new ArrayList<>();
+        List<String> duplicates = new ArrayList<>();
+        List<Failure> failures = new ArrayList<>();
+        long bytes = 0;
+        for (Entry entry : entries) {
+            bytes += entry.size;
+            if (entry.error != null) {
+                failures.add(new Failure(entry.name, entry.error));
+            } else if (entry.duplicateEntry != null) {
+                Entry first = entry.duplicateEntry;
+                if (first.committed) {
+                    duplicates.add(first.filename);
+                } else if (first.duplicateFilename != null) {
+                    duplicates.add(first.duplicateFilename);
+                } else {
+                    failures.add(new Failure(entry.name, new IOException(
+                            "Failed to import " + first.name + ", of which this is a copy",
+                            first.error)));
+                }
+            } else if (entry.duplicateFilename != null) {
+                duplicates.add(entry.duplicateFilename);
+            } else if (entry.committed) {
+                imported.add(entry.filename);
+            }
+        }
+        Stats stats = new Stats(mRead.snapshot(), mVerify.snapshot(), mWrite.snapshot(),
+                mCommit.snapshot(), new StageStats("total", imported.size(), bytes, wallNanos),
+                mCommitBatches);
+        return new Result(Collections.unmodifiableList(imported),
+                Collections.unmodifiableList(duplicates), Collections.unmodifiableList(failures),
+                stats);
+    }
+
+    private static byte[] readEntry(InputStream inputStream) throws IOException {
+        byte[] bytes = ByteStreams.toByteArray(ByteStreams.limit(inputStream, MAX_FILE_SIZE + 1));
+        if (bytes.length > MAX_FILE_SIZE) {
+            throw new IOException("File is larger than " + MAX_FILE_SIZE + " bytes");
+        }
+        return bytes;
+    }
+
+    private static boolean isZip(InputStream inputStream) throws IOException {
+        inputStream.mark(ZIP_MAGIC.length);
+        byte[] magic = new byte[ZIP_MAGIC.length];
+        int length = ByteStreams.read(inputStream, magic, 0, magic.length);
+        inputStream.reset();
+        for (int i = 0; i < ZIP_MAGIC.length; i++) {
+            if (i >= length || magic[i] != ZIP_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Skips, e.g., the resource forks that macOS adds to archives. */
+    private static boolean isPuzzleFileName(String name) {
+        int slash = name.lastIndexOf('/');
+        String baseName = name.substring(slash + 1);
+        return !baseName.startsWith(".") && !name.startsWith("__MACOSX/") &&
+                baseName.toLowerCase(Locale.US).endsWith(".puz");
+    }
+
+    /** Waits for the executor's tasks to finish, even if this thread is interrupted. */
+    private static void awaitTermination(ExecutorService executorService) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                // If this times out, any files written afterwards are swept up by the sink.
+                executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        }
+    }
+
+    private static final class Stage {
+        private final String mName;
+        private int mFiles;
+        private long mBytes;
+        private long mNanos;
+
+        Stage(String name) {
+            mName = name;
+        }
+
+        synchronized void record(long bytes, long nanos) {
+            record(1, bytes, nanos);
+        }
+
+        synchronized void record(int files, long bytes, long nanos) {
+            mFiles += files;
+            mBytes += bytes;
+            mNanos += nanos;
+        }
+
+        synchronized StageStats snapshot() {
+            return new StageStats(mName, mFiles, mBytes, mNanos);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.leffinger.crossyourheart.io;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+
+/**
+ * Write-behind buffer for per-cell state that is stored outside the puzzle file, such as whether
+ * an entry was made in pencil.
+ *
+ * <p>Callers report the current value of a cell with {@link #put}. Values that match what is
+ * already stored are dropped, so re-delivering a value (for example, when an observer first
+ * attaches) costs nothing. Real changes are accumulated, latest value per cell, and handed to the
+ * {@link Sink} in one batch, on the same quiet-period/maximum-latency schedule as
+ * {@link AutosaveScheduler}. All methods are thread-safe and none of them block on the sink.
+ *
+ * @param <T> cell state; compared with {@link Object#equals}
+ */
+public class CellStateWriter<T> {
+    private final T mDefaultValue;
+    private final Sink<T> mSink;
+    private final AutosaveScheduler mScheduler;
+
+    // Both guarded by "this". Stored values include those being written right now.
+    private final Map<Integer, T> mStored = new HashMap<>();
+    private final SortedMap<Integer, T> mPending = new TreeMap<>();
+
+    /**
+     * @param defaultValue      value of any cell that has never been stored
+     * @param sink              stores a batch of changes
+     * @param listener          notified when a batch fails; may be null. Failed changes are kept
+     *                          and retried with the next batch.
+     * @param quietPeriodMillis how long to wait after the last change before writing
+     * @param maxLatencyMillis  longest a change may wait while changes keep coming
+     */
+    public CellStateWriter(T defaultValue, Sink<T> sink, AutosaveScheduler.Listener listener,
+                           long quietPeriodMillis, long maxLatencyMillis) {
+        mDefaultValue = defaultValue;
+        mSink = sink;
+        mScheduler = new AutosaveScheduler(this::writePending, listener, quietPeriodMillis,
+                maxLatencyMillis);
+    }
+
+    /** Records a value that was read from storage, so that it is not written back. */
+    public synchronized void setStored(int cell, T value) {
+        mStored.put(cell, value);
+    }
+
+    /** Reports the current value of a cell. Schedules a write if it differs from storage. */
+    public synchronized void put(int cell, T value) {
+        if (value.equals(getStored(cell))) {
+            // Either nothing changed, or a pending change was undone before it was written.
+            mPending.remove(cell);
+            return;
+        }
+        mPending.put(cell, value);
+        mScheduler.markDirty();
+    }
+
+    /**
+     * Writes pending changes as soon as possible. Does not block.
+     *
+     * @return a future that completes once the write (if any) is done
+     */
+    public Future<?> flush() {
+        return mScheduler.flush();
+    }
+
+    /** Writes pending changes, then stops accepting new ones. Does not block. */
+    public void shutdown() {
+        mScheduler.shutdown();
+    }
+
+    /** Counters for this writer. {@code bytesWritten} counts cells. */
+    public AutosaveScheduler.Stats getStats() {
+        return mScheduler.getStats();
+    }
+
+    private T getStored(int cell) {
+        T stored = mStored.get(cell);
+        return stored == null ? mDefaultValue : stored;
+    }
+
+    private long writePending() throws IOException {
+        SortedMap<Integer, T> batch;
+        Map<Integer, T> previous = new HashMap<>();
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return 0;
+            }
+            batch = new TreeMap<>(mPending);
+            mPending.clear();
+            // Treat the batch as stored while it is being written, so that changes made in the
+            // meantime are compared against it.
+            for (Map.Entry<Integer, T> entry : batch.entrySet()) {
+                previous.put(entry.getKey(), getStored(entry.getKey()));
+                mStored.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        try {
+            mSink.write(batch);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                for (Map.Entry<Integer, T> entry : batch.entrySet()) {
+                    int cell = entry.getKey();
+                    mStored.put(cell, previous.get(cell));
+                    boolean changed = !entry.getValue().equals(previous.get(cell));
+                    if (changed && !mPending.containsKey(cell)) {
+                        mPending.put(cell, entry.getValue());
+                    }
+                }
+            }
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        return batch.size();
+    }
+
+    /** Stores a batch of changes. Called on a background thread. */
+    public interface Sink<T> {
+        /** @param changes new value of each changed cell, by cell offset */
+        void write(SortedMap<Integer, T> changes) throws IOException;
+    }
+}
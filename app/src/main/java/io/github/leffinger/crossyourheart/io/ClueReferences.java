@@ -0,0 +1,226 @@
+package io.github.leffinger.crossyourheart.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile.Clue;
+
+/**
+ * Which clues mention which other clues, e.g. "See 17-Across", "17- and 23-Across" or "17-20
+ * Across". Stored sparsely: for each clue, the sorted indices of the clues it mentions. Most clues
+ * mention none, and share one empty array.
+ *
+ * <p>Clues are identified by their index in the puzzle file. Immutable.
+ */
+public class ClueReferences {
+    private static final int[] NONE = new int[0];
+
+    // Longest range that is expanded, e.g. "1-20 Across". Anything longer is probably not a range
+    // of clues at all.
+    private static final int MAX_RANGE = 50;
+    private static final int MAX_DIGITS = 4;
+
+    // Numbers, words and the punctuation that can join references. U+2013 is an en dash.
+    private static final Pattern TOKEN = Pattern.compile("\\d+|\\p{L}+|[,&/\\-\\u2013]");
+
+    private final int[][] mReferences;
+    // Sorted lookup keys (see key()) and the index of the clue with each key.
+    private final int[] mKeys;
+    private final int[] mKeyClues;
+
+    private ClueReferences(int[][] references, int[] keys, int[] keyClues) {
+        mReferences = references;
+        mKeys = keys;
+        mKeyClues = keyClues;
+    }
+
+    /** Finds the references in the text of each clue. Numbers and directions must be resolved. */
+    public static ClueReferences find(Clue[] clues) {
+        // Sort (key, index) pairs by key.
+        long[] pairs = new long[clues.length];
+        for (int i = 0; i < clues.length; i++) {
+            pairs[i] = (long) key(clues[i].getNumber(), clues[i].isAcross()) << 32 | i;
+        }
+        Arrays.sort(pairs);
+        int[] keys = new int[clues.length];
+        int[] keyClues = new int[clues.length];
+        for (int i = 0; i < clues.length; i++) {
+            keys[i] = (int) (pairs[i] >>> 32);
+            keyClues[i] = (int) pairs[i];
+        }
+
+        ClueReferences index = new ClueReferences(new int[clues.length][], keys, keyClues);
+        List<String> tokens = new ArrayList<>();
+        int[] found = new int[16];
+        for (int i = 0; i < clues.length; i++) {
+            tokenize(clues[i].getText(), tokens);
+            int numFound = 0;
+            for (int k = 0; k < tokens.size(); k++) {
+                String token = tokens.get(k);
+                boolean across = token.equalsIgnoreCase("across");
+                if (!across && !token.equalsIgnoreCase("down")) {
+                    continue;
+                }
+                // Walk backwards over the numbers that precede the direction.
+                int j = k - 1;
+                if (j >= 0 && isDash(tokens.get(j))) {
+                    j--;
+                }
+                while (j >= 0 && isNumber(tokens.get(j))) {
+                    int last = Integer.parseInt(tokens.get(j));
+                    int first = last;
+                    j--;
+                    int rangeStart = skipRangeOperator(tokens, j);
+                    if (rangeStart >= 0) {
+                        first = Integer.parseInt(tokens.get(rangeStart));
+                        j = rangeStart - 1;
+                    }
+                    if (numFound + MAX_RANGE + 1 > found.length) {
+                        found = Arrays.copyOf(found, found.length * 2 + MAX_RANGE + 1);
+                    }
+                    numFound = index.addRange(first, last, across, found, numFound);
+                    j = skipListSeparator(tokens, j);
+                }
+            }
+            index.mReferences[i] = toSortedSet(found, numFound);
+        }
+        return index;
+    }
+
+    /** Returns the number of clues. */
+    public int size() {
+        return mReferences.length;
+    }
+
+    /**
+     * Returns the sorted indices of the clues that the given clue mentions. The array is shared;
+     * do not modify it.
+     */
+    public int[] getReferences(int clue) {
+        return mReferences[clue];
+    }
+
+    /** Returns true if clue {@code from} mentions clue {@code to}. */
+    public boolean references(int from, int to) {
+        return Arrays.binarySearch(mReferences[from], to) >= 0;
+    }
+
+    /** Returns the index of the clue with the given number and direction, or -1. */
+    public int indexOf(int number, boolean across) {
+        int i = Arrays.binarySearch(mKeys, key(number, across));
+        return i >= 0 ? mKeyClues[i] : -1;
+    }
+
+    /**
+     * Returns the references as a matrix: {@code matrix[i][j]} is true if clue i mentions clue j.
+     * Takes space quadratic in the number of clues.
+     */
+    public boolean[][] toMatrix() {
+        boolean[][] matrix = new boolean[mReferences.length][mReferences.length];
+        for (int i = 0; i < mReferences.length; i++) {
+            for (int j : mReferences[i]) {
+                matrix[i][j] = true;
+            }
+        }
+        return matrix;
+    }
+
+    private static int key(int number, boolean across) {
+        return number * 2 + (across ? 0 : 1);
+    }
+
+    /** Adds the clues numbered first to last in the given direction that exist. */
+    private int addRange(int first, int last, boolean across, int[] found, int numFound) {
+        if (first > last || last - first > MAX_RANGE) {
+            first = last;
+        }
+        for (int number = first; number <= last; number++) {
+            int clue = indexOf(number, across);
+            if (clue >= 0) {
+                found[numFound++] = clue;
+            }
+        }
+        return numFound;
+    }
+
+    /**
+     * If the token before index {@code end + 1} ends a range ("17-", "17 to", "17- through"),
+     * returns the index of the range's first number; otherwise -1.
+     */
+    private static int skipRangeOperator(List<String> tokens, int end) {
+        if (end < 1) {
+            return -1;
+        }
+        String operator = tokens.get(end);
+        int j;
+        if (isDash(operator)) {
+            j = end - 1;
+        } else if (operator.equalsIgnoreCase("to") || operator.equalsIgnoreCase("through") ||
+                operator.equalsIgnoreCase("thru")) {
+            j = end - 1;
+            if (isDash(tokens.get(j))) {
+                j--;
+            }
+        } else {
+            return -1;
+        }
+        return j >= 0 && isNumber(tokens.get(j)) ? j : -1;
+    }
+
+    /**
+     * Skips list separators (",", "and", "or", "&", "/", or a combination such as ", and") and a
+     * dash after the number before them. Returns the index of that number, or -1 if the list does
+     * not continue.
+     */
+    private static int skipListSeparator(List<String> tokens, int end) {
+        int j = end;
+        while (j >= 0 && isListSeparator(tokens.get(j))) {
+            j--;
+        }
+        if (j == end) {
+            return -1;
+        }
+        if (j >= 0 && isDash(tokens.get(j))) {
+            j--;
+        }
+        return j >= 0 && isNumber(tokens.get(j)) ? j : -1;
+    }
+
+    private static void tokenize(String text, List<String> tokens) {
+        tokens.clear();
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+    }
+
+    private static boolean isNumber(String token) {
+        return token.length() <= MAX_DIGITS && Character.isDigit(token.charAt(0));
+    }
+
+    private static boolean isDash(String token) {
+        return token.equals("-") || token.equals("\u2013");
+    }
+
+    private static boolean isListSeparator(String token) {
+        return token.equals(",") || token.equals("&") || token.equals("/") ||
+                token.equalsIgnoreCase("and") || token.equalsIgnoreCase("or");
+    }
+
+    private static int[] toSortedSet(int[] values, int length) {
+        if (length == 0) {
+            return NONE;
+        }
+        Arrays.sort(values, 0, length);
+        int unique = 1;
+        for (int i = 1; i < length; i++) {
+            if (values[i] != values[unique - 1]) {
+                values[unique++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, unique);
+    }
+}
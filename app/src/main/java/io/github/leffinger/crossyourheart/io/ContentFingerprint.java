@@ -0,0 +1,67 @@
+package io.github.leffinger.crossyourheart.io;
+
+/**
+ * A 64-bit hash of what makes two puz files the same puzzle: the grid size, the solution and the
+ * clue texts. Unlike a checksum of the whole file, it doesn't change as the puzzle is solved, so a
+ * file that was already imported is recognized even after the solver has filled in some cells.
+ *
+ * <p>It is fed as the file is parsed, so computing it does not take a second pass over the data.
+ * The hash is FNV-1a, finished with a mixing step so that the low bits are usable on their own.
+ */
+public final class ContentFingerprint {
+    /** Stored for files whose fingerprint is not known yet. Never returned by {@link #get()}. */
+    public static final long UNKNOWN = 0;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long mHash = FNV_OFFSET_BASIS;
+
+    public ContentFingerprint(int width, int height) {
+        updateByte(width);
+        updateByte(height);
+    }
+
+    /** Computes the fingerprint of a whole puzzle at once. */
+    public static long of(int width, int height, byte[] solution, String[] clueTexts) {
+        ContentFingerprint fingerprint = new ContentFingerprint(width, height);
+        fingerprint.updateSolution(solution);
+        for (String clueText : clueTexts) {
+            fingerprint.updateClue(clueText);
+        }
+        return fingerprint.get();
+    }
+
+    public void updateSolution(byte[] solution) {
+        long hash = mHash;
+        for (byte b : solution) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        mHash = hash;
+    }
+
+    /** Adds the next clue. Clue texts are decoded as ISO-8859-1, so each char is one byte. */
+    public void updateClue(String clueText) {
+        long hash = mHash;
+        for (int i = 0; i < clueText.length(); i++) {
+            hash = (hash ^ (clueText.charAt(i) & 0xff)) * FNV_PRIME;
+        }
+        // Ends the clue with a zero byte, as in the file. Clues can't contain one, so the
+        // boundaries between clues are unambiguous.
+        mHash = hash * FNV_PRIME;
+    }
+
+    public long get() {
+        long hash = mHash;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == UNKNOWN ? 1 : hash;
+    }
+
+    private void updateByte(int value) {
+        mHash = (mHash ^ (value & 0xff)) * FNV_PRIME;
+    }
+}
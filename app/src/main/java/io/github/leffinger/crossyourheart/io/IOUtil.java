@@ -14,4 +14,18 @@ public class IOUtil {
     public static File getPuzzleFile(Context context, String filename) {
         return new File(getPuzzleDir(context), filename);
     }
+
+    /**
+     * Lists puzzle files, skipping backup and journal files left behind by interrupted saves, and
+     * files that are still being imported.
+     */
+    public static File[] listPuzzleFiles(Context context) {
+        return getPuzzleDir(context).listFiles((dir, name) -> isPuzzleFilename(name));
+    }
+
+    static boolean isPuzzleFilename(String filename) {
+        return !filename.endsWith(AbstractPuzzleFile.BACKUP_SUFFIX) &&
+                !filename.endsWith(PuzzleFileJournal.JOURNAL_SUFFIX) &&
+                !filename.endsWith(PuzzleDirectory.IMPORT_SUFFIX);
+    }
 }
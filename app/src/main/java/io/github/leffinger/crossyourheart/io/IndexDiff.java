@@ -0,0 +1,80 @@
+package io.github.leffinger.crossyourheart.io;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Differences between the puzzle directory and the index, found by comparing each file's size
+ * and modification time with the values recorded when it was last indexed. Only the files listed
+ * here need to be parsed again.
+ */
+public class IndexDiff {
+    /** Files on disk that are not in the index. */
+    public final List<File> added;
+    /** Indexed files whose size or modification time has changed. */
+    public final List<File> changed;
+    /** Indexed filenames that are no longer on disk. */
+    public final List<String> removed;
+
+    private IndexDiff(List<File> added, List<File> changed, List<String> removed) {
+        this.added = added;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    /**
+     * Compares a directory listing with the indexed fingerprints.
+     *
+     * @param files   the puzzle files currently on disk
+     * @param indexed fingerprint of each indexed file, keyed by filename
+     */
+    public static IndexDiff compute(File[] files, Map<String, Fingerprint> indexed) {
+        Map<String, Fingerprint> unmatched = new HashMap<>(indexed);
+        List<File> added = new ArrayList<>();
+        List<File> changed = new ArrayList<>();
+        for (File file : files) {
+            Fingerprint fingerprint = unmatched.remove(file.getName());
+            if (fingerprint == null) {
+                added.add(file);
+            } else if (!fingerprint.matches(file)) {
+                changed.add(file);
+            }
+        }
+        List<String> removed = new ArrayList<>(unmatched.keySet());
+        Collections.sort(removed);
+        return new IndexDiff(added, changed, removed);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + added.size() + " changed=" + changed.size() + " removed=" +
+                removed.size();
+    }
+
+    /** Size and modification time of a puzzle file. */
+    public static final class Fingerprint {
+        public final long fileSize;
+        public final long lastModified;
+
+        public Fingerprint(long fileSize, long lastModified) {
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+
+        public static Fingerprint of(File file) {
+            return new Fingerprint(file.length(), file.lastModified());
+        }
+
+        boolean matches(File file) {
+            return fileSize == file.length() && lastModified == file.lastModified();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.leffinger.crossyourheart.io;
+
+/**
+ * Computes the checksums in the header of a puz file: the header (CIB) checksum, the eight masked
+ * checksum bytes and the overall file checksum.
+ *
+ * <p>These are all built from the same regions of the file, and the masked checksums need each
+ * region on its own while the file checksum needs them chained. Rather than going over each
+ * region once per checksum, the regions are fed in file order and every running checksum is
+ * updated in the same pass. Text is checksummed straight from the clue strings, without encoding
+ * them to bytes first.
+ *
+ * <p>The checksum itself is a 16-bit rotate right by one followed by an add. The carry out of the
+ * add feeds the next rotate, so bytes can't be combined ahead of time with a table or a wider
+ * word; instead the rotate is done without branching.
+ */
+public final class PuzChecksums {
+    private static final byte[] MASK = "ICHEATED".getBytes();
+
+    private final int mHeaderChecksum;
+    private int mFileChecksum;
+    private int mSolutionChecksum;
+    private int mGridChecksum;
+    private int mTextChecksum;
+
+    public PuzChecksums(int width, int height, int numClues, int unknownBitmask,
+                        int scrambledTag) {
+        int cksum = update(0, (byte) width);
+        cksum = update(cksum, (byte) height);
+        cksum = updateShort(cksum, numClues);
+        cksum = updateShort(cksum, unknownBitmask);
+        cksum = updateShort(cksum, scrambledTag);
+        mHeaderChecksum = cksum;
+        mFileChecksum = cksum;
+    }
+
+    /** Adds one step of the checksum. */
+    public static int update(int cksum, byte b) {
+        return ((cksum >>> 1 | cksum << 15) + (b & 0xFF)) & 0xFFFF;
+    }
+
+    /** Checksums a region, e.g. the data of an extra section. */
+    public static int update(int cksum, byte[] data) {
+        for (byte b : data) {
+            cksum = ((cksum >>> 1 | cksum << 15) + (b & 0xFF)) & 0xFFFF;
+        }
+        return cksum;
+    }
+
+    private static int updateShort(int cksum, int value) {
+        cksum = update(cksum, (byte) value);
+        return update(cksum, (byte) (value >> 8));
+    }
+
+    public void addSolution(byte[] solution) {
+        int file = mFileChecksum;
+        int region = mSolutionChecksum;
+        for (byte b : solution) {
+            file = ((file >>> 1 | file << 15) + (b & 0xFF)) & 0xFFFF;
+            region = ((region >>> 1 | region << 15) + (b & 0xFF)) & 0xFFFF;
+        }
+        mFileChecksum = file;
+        mSolutionChecksum = region;
+    }
+
+    public void addGrid(byte[] grid) {
+        int file = mFileChecksum;
+        int region = mGridChecksum;
+        for (byte b : grid) {
+            file = ((file >>> 1 | file << 15) + (b & 0xFF)) & 0xFFFF;
+            region = ((region >>> 1 | region << 15) + (b & 0xFF)) & 0xFFFF;
+        }
+        mFileChecksum = file;
+        mGridChecksum = region;
+    }
+
+    /**
+     * Adds the title, author, copyright or note. Unlike clues, these are checksummed with their
+     * null terminator, and not at all if they are empty.
+     */
+    public void addString(byte[] text) {
+        if (text.length == 0) {
+            return;
+        }
+        int file = mFileChecksum;
+        int region = mTextChecksum;
+        for (byte b : text) {
+            file = ((file >>> 1 | file << 15) + (b & 0xFF)) & 0xFFFF;
+            region = ((region >>> 1 | region << 15) + (b & 0xFF)) & 0xFFFF;
+        }
+        mFileChecksum = update(file, (byte) 0);
+        mTextChecksum = update(region, (byte) 0);
+    }
+
+    /** Adds the next clue, as it would be encoded in ISO-8859-1. */
+    public void addClue(String text) {
+        int file = mFileChecksum;
+        int region = mTextChecksum;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            // Characters outside ISO-8859-1 are written as '?'.
+            int b = c <= 0xFF ? c : '?';
+            file = ((file >>> 1 | file << 15) + b) & 0xFFFF;
+            region = ((region >>> 1 | region << 15) + b) & 0xFFFF;
+        }
+        mFileChecksum = file;
+        mTextChecksum = region;
+    }
+
+    public int getHeaderChecksum() {
+        return mHeaderChecksum;
+    }
+
+    /** Valid once the solution, grid and all text have been added. */
+    public int getFileChecksum() {
+        return mFileChecksum;
+    }
+
+    /** Valid once the solution, grid and all text have been added. */
+    public byte[] getMaskedChecksums() {
+        int[] checksums = {mHeaderChecksum, mSolutionChecksum, mGridChecksum, mTextChecksum};
+        byte[] masked = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            masked[i] = (byte) (MASK[i] ^ checksums[i]);
+            masked[i + 4] = (byte) (MASK[i + 4] ^ (checksums[i] >> 8));
+        }
+        return masked;
+    }
+}
@@ -4,20 +4,20 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.io.LittleEndianDataInputStream;
 import com.google.common.io.LittleEndianDataOutputStream;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -40,6 +40,20 @@ public class PuzFile extends AbstractPuzzleFile {
     private static final String RUSR_SECTION_NAME = "RUSR";
     private static final String LTIM_SECTION_NAME = "LTIM";
     private static final String GEXT_SECTION_NAME = "GEXT";
+    // Shared single-letter strings, indexed by ISO-8859-1 byte value, so that reading a cell
+    // doesn't allocate.
+    private static final String[] LETTERS = new String[256];
+
+    static {
+        for (int i = 0; i < LETTERS.length; i++) {
+            LETTERS[i] = String.valueOf((char) i).intern();
+        }
+    }
+
+    // Size of the fixed-length header that precedes the solution grid.
+    private static final int HEADER_LENGTH = 0x34;
+    // Changed byte ranges closer together than this are written as a single patch.
+    private static final int PATCH_MERGE_DISTANCE = 8;
     final int mFileChecksum;
     final int mHeaderChecksum;
     final byte[] mMaskedChecksums;
@@ -59,78 +73,78 @@ public class PuzFile extends AbstractPuzzleFile {
     final Clue[] mClues;
     final byte[] mNote;
     final Map<String, Section> mExtraSections;
-    final int[] mAcrossClueMapping;
-    final int[] mDownClueMapping;
-    final byte[][] mUserRebusEntries;
-    final boolean[][] mClueReferences;
-    final String[] mSolutionWithRebuses;
+    // Of the solution and clues as read; see ContentFingerprint.
+    final long mContentFingerprint;
+    // acrossClueMapping[offset] is 0 if no across clue is associated with that offset, and
+    // clueIndex+1 otherwise. Same for downClueMapping. Both are null until clues are resolved.
+    private volatile int[] mAcrossClueMapping;
+    private int[] mDownClueMapping;
+    // User entries longer than one letter, keyed by offset.
+    final SparseStringArray mUserRebusEntries;
+    private transient ClueReferences mClueReferences;
+    // Solutions longer than one letter, keyed by offset.
+    final SparseStringArray mSolutionRebuses;
     TimerInfo mTimerInfo;
+    // Running totals, kept up to date by setCellContents() so that progress queries are O(1).
+    private int mNumWhiteCells;
+    private int mNumFilledCells;
+    private int mNumMatchingCells;  // grid bytes equal to solution bytes, black cells included
+    // For scrambled puzzles: the scrambled checksum after each white cell, in column-major
+    // order. Entries from mScrambledPrefixValid onwards are stale.
+    private transient int[] mScrambledPrefix;
+    private transient int[] mScrambledPosition;  // offset -> position, -1 for black cells
+    private transient int[] mScrambledOffsets;  // position -> offset
+    private transient int mScrambledPrefixValid;
+    // What is currently on disk, if known. Used to save incrementally.
+    private transient DiskImage mDiskImage;
+    // What will be on disk once the save in progress completes.
+    private transient DiskImage mPendingDiskImage;
 
     public PuzFile(InputStream inputStream) throws IOException {
-        LittleEndianDataInputStream dataInputStream = new LittleEndianDataInputStream(inputStream);
+        this(PuzReader.of(inputStream));
+    }
 
+    private PuzFile(PuzReader reader) throws IOException {
         // Get header info.
-        mFileChecksum = dataInputStream.readUnsignedShort();
-        byte[] magic = readNullTerminatedByteString(dataInputStream);
-
-        // Error out early if the magic string is wrong (not a puz file at all).
-        String magicString = new String(magic, ISO_8859_1);
-        if (!magicString.equals(MAGIC)) {
-            throw new IOException("Wrong file magic; is this a puz file?");
-        }
-
-        mHeaderChecksum = dataInputStream.readUnsignedShort();
-        mMaskedChecksums = new byte[8];
-        if (dataInputStream.read(mMaskedChecksums) == -1) {
-            throw new EOFException();
-        }
-        mVersionString = new byte[4];
-        if (dataInputStream.read(mVersionString) == -1) {
-            throw new EOFException();
-        }
-
+        PuzHeader header = new PuzHeader(reader);
+        mFileChecksum = header.mFileChecksum;
+        mHeaderChecksum = header.mHeaderChecksum;
+        mMaskedChecksums = header.mMaskedChecksums;
+        mVersionString = header.mVersionString;
         mIncludeNoteInTextChecksum = includeNoteInTextChecksum();
-        if (dataInputStream.skipBytes(2) != 2) {  // skip junk
-            throw new EOFException();
-        }
-        mScrambledChecksum = dataInputStream.readUnsignedShort();
-        if (dataInputStream.skipBytes(12) != 12) {  // skip junk
-            throw new EOFException();
-        }
-
-        // Get basic puzzle info: width, height, etc.
-        mWidth = dataInputStream.readByte();
-        mHeight = dataInputStream.readByte();
-        mNumClues = dataInputStream.readUnsignedShort();
-        mUnknownBitmask = dataInputStream.readUnsignedShort();
-        mScrambledTag = dataInputStream.readUnsignedShort();
+        mScrambledChecksum = header.mScrambledChecksum;
+        mWidth = header.mWidth;
+        mHeight = header.mHeight;
+        mNumClues = header.mNumClues;
+        mUnknownBitmask = header.mUnknownBitmask;
+        mScrambledTag = header.mScrambledTag;
 
         // Read the solution grid and puzzle state.
         int puzzleSize = mWidth * mHeight;
         mSolution = new byte[puzzleSize];
-        if (dataInputStream.read(mSolution) < puzzleSize) {
-            throw new EOFException();
-        }
+        reader.readFully(mSolution);
         mGrid = new byte[puzzleSize];
-        if (dataInputStream.read(mGrid) < puzzleSize) {
-            throw new EOFException();
-        }
+        reader.readFully(mGrid);
+        ContentFingerprint fingerprint = new ContentFingerprint(mWidth, mHeight);
+        fingerprint.updateSolution(mSolution);
 
         // Read variable-length strings: title, author, clues, etc.
-        mTitle = readNullTerminatedByteString(dataInputStream);
-        mAuthor = readNullTerminatedByteString(dataInputStream);
-        mCopyright = readNullTerminatedByteString(dataInputStream);
-        final byte[][] clueTexts = new byte[mNumClues][];
+        mTitle = reader.readNullTerminatedBytes();
+        mAuthor = reader.readNullTerminatedBytes();
+        mCopyright = reader.readNullTerminatedBytes();
+        final String[] clueTexts = new String[mNumClues];
         for (int i = 0; i < mNumClues; i++) {
-            clueTexts[i] = readNullTerminatedByteString(dataInputStream);
+            clueTexts[i] = reader.readNullTerminatedString();
+            fingerprint.updateClue(clueTexts[i]);
         }
-        mNote = readNullTerminatedByteString(dataInputStream);
+        mContentFingerprint = fingerprint.get();
+        mNote = reader.readNullTerminatedBytes();
 
         // Read extra sections. Each of these start with a four-byte key with the name of the
         // section, and include a length and checksum.
         mExtraSections = new LinkedHashMap<>();  // maintains order of sections
         while (true) {
-            Section section = Section.readSection(dataInputStream);
+            Section section = Section.readSection(reader);
             if (section == null) {
                 break;
             }
@@ -138,23 +152,57 @@ public class PuzFile extends AbstractPuzzleFile {
         }
         mUserRebusEntries = getRebusUserEntries();
         mTimerInfo = parseTimerInfo();
-        mSolutionWithRebuses = getSolutionWithRebuses();
+        mSolutionRebuses = getSolutionRebuses();
+        countCells();
 
-        // Clue assignment. This is not part of the file format, but we do it here so that
-        // (1) we don't have to redo this math whenever we create a ViewModel and (2) we can fail
-        // loading if there is an issue assigning clues.
+        // Clue numbers and directions are not part of the file format. They are worked out on
+        // first use (see resolveClues()), since most operations on a puzzle file don't need them.
         mClues = new Clue[mNumClues];
         for (int i = 0; i < mNumClues; i++) {
-            mClues[i] = new Clue(new String(clueTexts[i], ISO_8859_1));
+            mClues[i] = new Clue(clueTexts[i]);
         }
-        // acrossClueMapping[offset] is 0 if no across clue is associated with that offset, and
-        // clueIndex+1 otherwise. Same for downClueMapping.
-        mAcrossClueMapping = new int[puzzleSize];
-        mDownClueMapping = new int[puzzleSize];
-        assignClues();
+    }
+
+    /**
+     * Loads a puz file from disk, first finishing any save that was interrupted. The layout of the
+     * file is remembered, so that saving back to the same file only rewrites what has changed.
+     *
+     * @param file puzzle file
+     * @return parsed puz file
+     * @throws IOException if loading fails
+     */
+    public static PuzFile readPuzzleFile(File file) throws IOException {
+        byte[] bytes;
+        long lastModified;
+        synchronized (PuzzleFileJournal.getLock(file)) {
+            bytes = PuzzleFileJournal.readFile(file);
+            lastModified = file.lastModified();
+        }
+        PuzFile puzFile = parse(ByteBuffer.wrap(bytes));
+
+        int gridOffset = HEADER_LENGTH + puzFile.mSolution.length;
+        int sectionsOffset = puzFile.getSectionsOffset();
+        if (sectionsOffset <= bytes.length) {
+            DiskImage diskImage = new DiskImage(Arrays.copyOf(bytes, HEADER_LENGTH),
+                    Arrays.copyOfRange(bytes, gridOffset, gridOffset + puzFile.mGrid.length),
+                    sectionsOffset, Arrays.copyOfRange(bytes, sectionsOffset, bytes.length));
+            diskImage.bind(file, bytes.length, lastModified);
+            puzFile.mDiskImage = diskImage;
+        }
+        return puzFile;
+    }
 
-        // Identify clues that reference each other. Again, this isn't in the file format.
-        mClueReferences = findClueReferences();
+    /**
+     * Parses a puz file from a buffer, e.g. a memory-mapped file. Equivalent to {@link
+     * #PuzFile(InputStream)}, but strings are located by scanning the buffer rather than reading a
+     * byte at a time.
+     *
+     * @param buffer puzzle file data, from the buffer's position to its limit
+     * @return parsed puz file
+     * @throws IOException if loading fails
+     */
+    public static PuzFile parse(ByteBuffer buffer) throws IOException {
+        return new PuzFile(PuzReader.of(buffer));
     }
 
     /**
@@ -162,14 +210,17 @@ public class PuzFile extends AbstractPuzzleFile {
      *
      * @param inputStream puzzle file data
      * @return parsed puz file
-     * @throws IOException if loading fails or any checksum is wrong
+     * @throws IOException if loading fails, any checksum is wrong, or clues can't be assigned
      */
     public static PuzFile verifyPuzFile(InputStream inputStream) throws IOException {
         PuzFile puzzleLoader = new PuzFile(inputStream);
+        puzzleLoader.resolveClues();
+
+        PuzChecksums checksums = puzzleLoader.computeChecksums(puzzleLoader.mGrid);
 
         // Verify header checksum.
         final int headerChecksum = puzzleLoader.getHeaderChecksum();
-        final int computedHeaderChecksum = puzzleLoader.computeHeaderChecksum();
+        final int computedHeaderChecksum = checksums.getHeaderChecksum();
         if (headerChecksum != computedHeaderChecksum) {
             throw new IOException(String.format("Bad header checksum. Expected 0x%04X, got 0x%04X",
                                                 headerChecksum, computedHeaderChecksum));
@@ -177,7 +228,7 @@ public class PuzFile extends AbstractPuzzleFile {
 
         // Verify masked checksums.
         final byte[] maskedChecksums = puzzleLoader.getMaskedChecksums();
-        final byte[] computedMaskedChecksums = puzzleLoader.computeMaskedChecksums();
+        final byte[] computedMaskedChecksums = checksums.getMaskedChecksums();
         for (int i = 0; i < 8; i++) {
             if (maskedChecksums[i] != computedMaskedChecksums[i]) {
                 throw new IOException(
@@ -188,7 +239,7 @@ public class PuzFile extends AbstractPuzzleFile {
 
         // Verify file checksum.
         final int fileChecksum = puzzleLoader.getFileChecksum();
-        final int computedFileChecksum = puzzleLoader.computeFileChecksum();
+        final int computedFileChecksum = checksums.getFileChecksum();
         if (fileChecksum != computedFileChecksum) {
             throw new IOException(
                     String.format("Bad file checksum. Expected 0x%04X, got 0x%04X", fileChecksum,
@@ -197,7 +248,7 @@ public class PuzFile extends AbstractPuzzleFile {
 
         // Verify extra section checksums.
         for (Section section : puzzleLoader.mExtraSections.values()) {
-            int computedChecksum = checksumRegion(section.data, 0);
+            int computedChecksum = PuzChecksums.update(0, section.data);
             if (section.checksum != computedChecksum) {
                 throw new IOException(
                         String.format("Bad checksum for section %s: expected %04X, got %04X",
@@ -217,54 +268,34 @@ public class PuzFile extends AbstractPuzzleFile {
         return puzzleLoader;
     }
 
-    private static byte[] readNullTerminatedByteString(
-            LittleEndianDataInputStream dataInputStream) throws IOException {
-        byte[] bytes = new byte[8];
-        int length = 0;
-        while (true) {
-            byte b = dataInputStream.readByte();
-            if (b == 0) {
-                break;
-            }
-            if (length >= bytes.length) {
-                bytes = Arrays.copyOf(bytes, length * 2);
-            }
-            bytes[length++] = b;
-        }
-        return Arrays.copyOf(bytes, length);
-    }
-
     private static void writeNullTerminatedByteString(byte[] bytes,
                                                       LittleEndianDataOutputStream dataOutputStream) throws IOException {
         dataOutputStream.write(bytes);
         dataOutputStream.writeByte(0);
     }
 
-    private static int checksumRegion(byte[] data, int cksum) {
-        for (byte b : data) {
-            cksum = checksumByte(b, cksum);
-        }
-        return cksum;
-    }
-
-    private static int checksumByte(byte b, int cksum) {
-        if ((cksum & 0x1) != 0) {
-            cksum >>= 1;
-            cksum += 0x8000;
-        } else {
-            cksum >>= 1;
+    /**
+     * Appends patches for the bytes that differ between two equal-length versions of a region.
+     */
+    private static void addPatches(List<PuzzleFileJournal.Patch> patches, int offset,
+                                   byte[] oldBytes, byte[] newBytes) {
+        int i = 0;
+        while (i < newBytes.length) {
+            if (oldBytes[i] == newBytes[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end = i + 1;
+            for (int j = end; j < newBytes.length && j - end <= PATCH_MERGE_DISTANCE; j++) {
+                if (oldBytes[j] != newBytes[j]) {
+                    end = j + 1;
+                }
+            }
+            patches.add(new PuzzleFileJournal.Patch(offset + start,
+                    Arrays.copyOfRange(newBytes, start, end)));
+            i = end;
         }
-        cksum += (0xFF & b);
-        cksum &= 0xFFFF;
-        return cksum;
-    }
-
-    private static int checksumShort(int i, int cksum) {
-        byte b1 = (byte) (i & 0xFF);
-        byte b2 = (byte) ((i >> 8) & 0xFF);
-        cksum = checksumByte(b1, cksum);
-        cksum = checksumByte(b2, cksum);
-        return cksum;
     }
 
     /**
@@ -286,13 +317,12 @@ public class PuzFile extends AbstractPuzzleFile {
     /**
      * Match clue texts with blank cells in the grid.
      *
-     * <p>This method assumes that mWidth, mHeight, mClues, mNumClues, mAcrossClueMapping, and
-     * mDownClueMapping have been initialized. It updates mClues, mAcrossClueMapping, and
-     * mDownClueMapping.
+     * <p>This method assumes that mWidth, mHeight, mClues and mNumClues have been initialized. It
+     * updates mClues, acrossClueMapping, and downClueMapping.
      *
      * @throws IOException if unable to match
      */
-    private void assignClues() throws IOException {
+    private void assignClues(int[] acrossClueMapping, int[] downClueMapping) throws IOException {
         ArrayList<CandidateClue> candidateClues = new ArrayList<>(mNumClues);
 
         // Find across clues (chunks of 1 or more contiguous cells).
@@ -391,47 +421,56 @@ public class PuzFile extends AbstractPuzzleFile {
             if (candidateClue.isAcross) {
                 for (int i = 0; i < candidateClue.length; i++) {
                     int offset = candidateClue.offset + i;
-                    mAcrossClueMapping[offset] = clueIndex;
+                    acrossClueMapping[offset] = clueIndex;
                 }
             } else {
                 for (int i = 0; i < candidateClue.length; i++) {
                     int offset = candidateClue.offset + i * mWidth;
-                    mDownClueMapping[offset] = clueIndex;
+                    downClueMapping[offset] = clueIndex;
                 }
             }
         }
     }
 
-    private boolean[][] findClueReferences() {
-        boolean[][] clueReferences = new boolean[mClues.length][mClues.length];
-        Pattern pattern = Pattern.compile(".*\\b(\\d+)[ -](Across|across|Down|down)\\b.*");
-        for (int i = 0; i < mClues.length; i++) {
-            Clue clue = mClues[i];
-            Matcher m = pattern.matcher(clue.getText());
-            if (m.matches()) {
-                int num = Integer.parseInt(Objects.requireNonNull(m.group(1)));
-                boolean across = Objects.requireNonNull(m.group(2)).equalsIgnoreCase("Across");
-                for (int j = 0; j < mClues.length; j++) {
-                    Clue otherClue = mClues[j];
-                    if (otherClue.getNumber() == num && across == otherClue.isAcross()) {
-                        clueReferences[i][j] = true;
-                    }
-                }
+    /**
+     * Works out clue numbers and directions, and which cells belong to which clue. Clue accessors
+     * do this on first use; call it up front to find out about a malformed grid via an
+     * IOException rather than an IllegalStateException.
+     *
+     * @throws IOException if the grid doesn't match the number of clues
+     */
+    public synchronized void resolveClues() throws IOException {
+        if (mAcrossClueMapping != null) {
+            return;
+        }
+        int[] acrossClueMapping = new int[mGrid.length];
+        int[] downClueMapping = new int[mGrid.length];
+        assignClues(acrossClueMapping, downClueMapping);
+        mDownClueMapping = downClueMapping;
+        mAcrossClueMapping = acrossClueMapping;  // volatile write publishes both
+    }
+
+    private void ensureCluesResolved() {
+        if (mAcrossClueMapping == null) {
+            try {
+                resolveClues();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
             }
         }
-        return clueReferences;
     }
 
-    private byte[][] getRebusUserEntries() throws IOException {
-        byte[][] rebusUserEntries = new byte[mWidth * mHeight][];
+    private SparseStringArray getRebusUserEntries() throws IOException {
+        SparseStringArray rebusUserEntries = new SparseStringArray();
         if (mExtraSections.containsKey(RUSR_SECTION_NAME)) {
             Section rusrSection = mExtraSections.get(RUSR_SECTION_NAME);
             assert rusrSection != null;
-            LittleEndianDataInputStream stream =
-                    new LittleEndianDataInputStream(new ByteArrayInputStream(rusrSection.data));
+            PuzReader reader = PuzReader.of(ByteBuffer.wrap(rusrSection.data));
             for (int i = 0; i < mWidth * mHeight; i++) {
-                byte[] rebusEntry = readNullTerminatedByteString(stream);
-                rebusUserEntries[i] = rebusEntry.length == 0 ? null : rebusEntry;
+                String rebusEntry = reader.readNullTerminatedString();
+                if (!rebusEntry.isEmpty()) {
+                    rebusUserEntries.put(i, rebusEntry);
+                }
             }
         }
         return rebusUserEntries;
@@ -454,15 +493,11 @@ public class PuzFile extends AbstractPuzzleFile {
         return new TimerInfo(elapsedTimeSecs, isRunning);
     }
 
-    private String[] getSolutionWithRebuses() throws IOException {
-        String[] solutionWithRebuses = new String[mSolution.length];
-        for (int i = 0; i < mSolution.length; i++) {
-            solutionWithRebuses[i] = new String(new byte[]{mSolution[i]}, ISO_8859_1);
-        }
-
+    private SparseStringArray getSolutionRebuses() throws IOException {
+        SparseStringArray solutionRebuses = new SparseStringArray();
         if (!(mExtraSections.containsKey(RTBL_SECTION_NAME) &&
                 mExtraSections.containsKey(GRBS_SECTION_NAME))) {
-            return solutionWithRebuses;
+            return solutionRebuses;
         }
 
         Map<Byte, String> rebusTable = new LinkedHashMap<>();
@@ -489,21 +524,81 @@ public class PuzFile extends AbstractPuzzleFile {
                 throw new IOException(
                         "Square should be a rebus, but there is no corresponding entry in the table");
             }
-            solutionWithRebuses[i] = rebusTable.get(index);
+            solutionRebuses.put(i, rebusTable.get(index));
         }
 
-        return solutionWithRebuses;
+        return solutionRebuses;
     }
 
     @Override
     protected void savePuzzleFile(OutputStream outputStream) throws IOException {
+        // Work from a copy of the grid, so that the checksums match the grid that is written even
+        // if the grid is modified while saving.
+        byte[] grid = mGrid.clone();
+        byte[] header = serializeHeader(grid);
+        byte[] sections = serializeSections();
+
         LittleEndianDataOutputStream dataOutputStream =
                 new LittleEndianDataOutputStream(outputStream);
+        dataOutputStream.write(header);
+        dataOutputStream.write(mSolution);
+        dataOutputStream.write(grid);
+        writeNullTerminatedByteString(mTitle, dataOutputStream);
+        writeNullTerminatedByteString(mAuthor, dataOutputStream);
+        writeNullTerminatedByteString(mCopyright, dataOutputStream);
+        for (Clue clue : mClues) {
+            byte[] bytes = clue.getText().getBytes(ISO_8859_1);
+            writeNullTerminatedByteString(bytes, dataOutputStream);
+        }
+        writeNullTerminatedByteString(mNote, dataOutputStream);
+        dataOutputStream.write(sections);
+
+        mPendingDiskImage = new DiskImage(header, grid, getSectionsOffset(), sections);
+    }
+
+    @Override
+    protected List<PuzzleFileJournal.Patch> getIncrementalPatches(File file) throws IOException {
+        DiskImage diskImage = mDiskImage;
+        if (diskImage == null || !diskImage.isCurrent(file)) {
+            return null;
+        }
+
+        byte[] grid = mGrid.clone();
+        byte[] header = serializeHeader(grid);
+        byte[] sections = serializeSections();
+        if (sections.length != diskImage.sections.length) {
+            // A section was added, removed or resized (e.g. the timer gained a digit), so
+            // everything after it has moved.
+            return null;
+        }
+
+        List<PuzzleFileJournal.Patch> patches = new ArrayList<>();
+        addPatches(patches, 0, diskImage.header, header);
+        addPatches(patches, HEADER_LENGTH + mSolution.length, diskImage.grid, grid);
+        addPatches(patches, diskImage.sectionsOffset, diskImage.sections, sections);
+        mPendingDiskImage = new DiskImage(header, grid, diskImage.sectionsOffset, sections);
+        return patches;
+    }
+
+    @Override
+    protected void onPuzzleFileSaved(File file) {
+        DiskImage diskImage = mPendingDiskImage;
+        mPendingDiskImage = null;
+        if (diskImage != null) {
+            diskImage.bind(file, file.length(), file.lastModified());
+        }
+        mDiskImage = diskImage;
+    }
 
-        dataOutputStream.writeShort(computeFileChecksum());
+    /** Serializes everything that precedes the solution: checksums, dimensions, etc. */
+    private byte[] serializeHeader(byte[] grid) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_LENGTH);
+        LittleEndianDataOutputStream dataOutputStream = new LittleEndianDataOutputStream(header);
+        PuzChecksums checksums = computeChecksums(grid);
+        dataOutputStream.writeShort(checksums.getFileChecksum());
         writeNullTerminatedByteString(MAGIC.getBytes(ISO_8859_1), dataOutputStream);
-        dataOutputStream.writeShort(computeHeaderChecksum());
-        dataOutputStream.write(computeMaskedChecksums());
+        dataOutputStream.writeShort(checksums.getHeaderChecksum());
+        dataOutputStream.write(checksums.getMaskedChecksums());
         dataOutputStream.write(mVersionString);
         dataOutputStream.writeShort(0);
         dataOutputStream.writeShort(mScrambledChecksum);
@@ -514,23 +609,30 @@ public class PuzFile extends AbstractPuzzleFile {
         dataOutputStream.writeShort(mNumClues);
         dataOutputStream.writeShort(mUnknownBitmask);
         dataOutputStream.writeShort(mScrambledTag);
-        dataOutputStream.write(mSolution);
-        dataOutputStream.write(mGrid);
-        writeNullTerminatedByteString(mTitle, dataOutputStream);
-        writeNullTerminatedByteString(mAuthor, dataOutputStream);
-        writeNullTerminatedByteString(mCopyright, dataOutputStream);
-        for (Clue clue : mClues) {
-            byte[] bytes = clue.getText().getBytes(ISO_8859_1);
-            writeNullTerminatedByteString(bytes, dataOutputStream);
-        }
-        writeNullTerminatedByteString(mNote, dataOutputStream);
+        return header.toByteArray();
+    }
 
-        // Write extra sections.
+    /** Serializes the extra sections that follow the note. */
+    private byte[] serializeSections() throws IOException {
+        ByteArrayOutputStream sections = new ByteArrayOutputStream();
+        LittleEndianDataOutputStream dataOutputStream = new LittleEndianDataOutputStream(sections);
         writeSectionIfPresent(GRBS_SECTION_NAME, dataOutputStream);
         writeSectionIfPresent(RTBL_SECTION_NAME, dataOutputStream);
         writeUserRebusSection(dataOutputStream);
         writeSectionIfPresent(GEXT_SECTION_NAME, dataOutputStream);
         writeTimerSection(dataOutputStream);
+        return sections.toByteArray();
+    }
+
+    /** File offset of the first extra section, i.e. the byte after the note's terminator. */
+    private int getSectionsOffset() {
+        int offset = HEADER_LENGTH + mSolution.length + mGrid.length;
+        offset += mTitle.length + mAuthor.length + mCopyright.length + mNote.length + 4;
+        for (Clue clue : mClues) {
+            // Clue texts are decoded as ISO-8859-1, so there is one byte per character.
+            offset += clue.getText().length() + 1;
+        }
+        return offset;
     }
 
     /**
@@ -577,11 +679,14 @@ public class PuzFile extends AbstractPuzzleFile {
     private void writeUserRebusSection(
             LittleEndianDataOutputStream dataOutputStream) throws IOException {
         ByteArrayOutputStream rusrSectionData = new ByteArrayOutputStream();
+        // May run on the autosave thread while the UI thread enters a rebus.
+        SparseStringArray.Snapshot userRebusEntries = mUserRebusEntries.snapshot();
         boolean shouldWrite = false;
-        for (byte[] userRebusEntry : mUserRebusEntries) {
+        for (int i = 0; i < mGrid.length; i++) {
+            String userRebusEntry = userRebusEntries.get(i);
             if (userRebusEntry != null) {
                 shouldWrite = true;
-                rusrSectionData.write(userRebusEntry);
+                rusrSectionData.write(userRebusEntry.getBytes(ISO_8859_1));
             }
             rusrSectionData.write('\0');
         }
@@ -594,7 +699,7 @@ public class PuzFile extends AbstractPuzzleFile {
                               LittleEndianDataOutputStream outputStream) throws IOException {
         outputStream.write(name.getBytes());
         outputStream.writeShort(data.length);
-        outputStream.writeShort(checksumRegion(data, 0));
+        outputStream.writeShort(PuzChecksums.update(0, data));
         outputStream.write(data);
         outputStream.write('\0');
     }
@@ -607,6 +712,11 @@ public class PuzFile extends AbstractPuzzleFile {
         return mHeaderChecksum;
     }
 
+    /** Identifies the puzzle regardless of how far it has been solved. */
+    public long getContentFingerprint() {
+        return mContentFingerprint;
+    }
+
     @Override
     public int getWidth() {
         return mWidth;
@@ -631,63 +741,37 @@ public class PuzFile extends AbstractPuzzleFile {
     }
 
     public int computeHeaderChecksum() {
-        int cksum;
-        cksum = checksumByte(mWidth, 0);
-        cksum = checksumByte(mHeight, cksum);
-        cksum = checksumShort(mNumClues, cksum);
-        cksum = checksumShort(mUnknownBitmask, cksum);
-        cksum = checksumShort(mScrambledTag, cksum);
-        return cksum;
+        return new PuzChecksums(mWidth, mHeight, mNumClues, mUnknownBitmask,
+                mScrambledTag).getHeaderChecksum();
     }
 
     public byte[] getMaskedChecksums() {
         return mMaskedChecksums;
     }
 
-    private int computeTextChecksum(int cksum) {
-        // For some reason, the title/author/copyright/note include the null terminator in the
-        // computation, but not the clues.
-        if (mTitle.length > 0) {
-            cksum = checksumRegion(mTitle, cksum);
-            cksum = checksumByte((byte) 0, cksum);
-        }
-        if (mAuthor.length > 0) {
-            cksum = checksumRegion(mAuthor, cksum);
-            cksum = checksumByte((byte) 0, cksum);
-        }
-        if (mCopyright.length > 0) {
-            cksum = checksumRegion(mCopyright, cksum);
-            cksum = checksumByte((byte) 0, cksum);
-        }
+    /**
+     * Computes every header checksum for this puzzle with the given grid, in one pass over the
+     * solution, grid and text.
+     */
+    private PuzChecksums computeChecksums(byte[] grid) {
+        PuzChecksums checksums =
+                new PuzChecksums(mWidth, mHeight, mNumClues, mUnknownBitmask, mScrambledTag);
+        checksums.addSolution(mSolution);
+        checksums.addGrid(grid);
+        checksums.addString(mTitle);
+        checksums.addString(mAuthor);
+        checksums.addString(mCopyright);
         for (Clue clue : mClues) {
-            cksum = checksumRegion(clue.getText().getBytes(ISO_8859_1), cksum);
+            checksums.addClue(clue.getText());
         }
-
-        if (mIncludeNoteInTextChecksum && mNote.length > 0) {
-            cksum = checksumRegion(mNote, cksum);
-            cksum = checksumByte((byte) 0, cksum);
+        if (mIncludeNoteInTextChecksum) {
+            checksums.addString(mNote);
         }
-
-        return cksum;
+        return checksums;
     }
 
     public byte[] computeMaskedChecksums() {
-        final int headerChecksum = computeHeaderChecksum();
-        final int solutionChecksum = checksumRegion(mSolution, 0);
-        final int gridChecksum = checksumRegion(mGrid, 0);
-        final int partialChecksum = computeTextChecksum(0);
-
-        final byte[] computedMaskedChecksums = new byte[8];
-        computedMaskedChecksums[0] = (byte) ('I' ^ (headerChecksum & 0xFF));
-        computedMaskedChecksums[1] = (byte) ('C' ^ (solutionChecksum & 0xFF));
-        computedMaskedChecksums[2] = (byte) ('H' ^ (gridChecksum & 0xFF));
-        computedMaskedChecksums[3] = (byte) ('E' ^ (partialChecksum & 0xFF));
-        computedMaskedChecksums[4] = (byte) ('A' ^ ((headerChecksum >> 8) & 0xFF));
-        computedMaskedChecksums[5] = (byte) ('T' ^ ((solutionChecksum >> 8) & 0xFF));
-        computedMaskedChecksums[6] = (byte) ('E' ^ ((gridChecksum >> 8) & 0xFF));
-        computedMaskedChecksums[7] = (byte) ('D' ^ ((partialChecksum >> 8) & 0xFF));
-
-        return computedMaskedChecksums;
+        return computeChecksums(mGrid).getMaskedChecksums();
     }
 
     public int getFileChecksum() {
@@ -695,11 +779,7 @@ public class PuzFile extends AbstractPuzzleFile {
     }
 
     public int computeFileChecksum() {
-        int cksum = computeHeaderChecksum();
-        cksum = checksumRegion(mSolution, cksum);
-        cksum = checksumRegion(mGrid, cksum);
-        cksum = computeTextChecksum(cksum);
-        return cksum;
+        return computeChecksums(mGrid).getFileChecksum();
     }
 
     @Override
@@ -717,22 +797,57 @@ public class PuzFile extends AbstractPuzzleFile {
         if (getScrambleState() != ScrambleState.UNSCRAMBLED) {
             return true;
         }
-        String entry = getCellContents(row, col);
-        String solution = mSolutionWithRebuses[getOffset(row, col)];
-        return entry.equals(solution) || entry.equals(solution.substring(0, 1));
+        // A rebus entry must match the rebus solution exactly; a single letter may match either
+        // a single-letter solution or the first letter of a rebus.
+        int offset = getOffset(row, col);
+        String userRebusEntry = mUserRebusEntries.get(offset);
+        String solutionRebus = mSolutionRebuses.get(offset);
+        if (userRebusEntry != null) {
+            return userRebusEntry.equals(solutionRebus);
+        }
+        byte contents = mGrid[offset];
+        if (contents == '-') {
+            return false;
+        }
+        char solution = solutionRebus != null ? solutionRebus.charAt(0) : toChar(mSolution[offset]);
+        return toChar(contents) == solution;
     }
 
     @Override
     public String getCellContents(int row, int col) {
         int offset = getOffset(row, col);
-        if (mUserRebusEntries[offset] != null) {
-            return new String(mUserRebusEntries[offset], ISO_8859_1);
+        String userRebusEntry = mUserRebusEntries.get(offset);
+        if (userRebusEntry != null) {
+            return userRebusEntry;
         }
         byte contents = mGrid[offset];
         if (contents == '-') {
             return "";
         }
-        return new String(new byte[]{contents}, ISO_8859_1);
+        return LETTERS[contents & 0xff];
+    }
+
+    @Override
+    public char getCellLetter(int row, int col) {
+        int offset = getOffset(row, col);
+        String userRebusEntry = mUserRebusEntries.get(offset);
+        if (userRebusEntry != null) {
+            return userRebusEntry.charAt(0);
+        }
+        byte contents = mGrid[offset];
+        return contents == '-' ? 0 : toChar(contents);
+    }
+
+    @Override
+    public char getSolutionLetter(int row, int col) {
+        int offset = getOffset(row, col);
+        String solutionRebus = mSolutionRebuses.get(offset);
+        return solutionRebus != null ? solutionRebus.charAt(0) : toChar(mSolution[offset]);
+    }
+
+    private static char toChar(byte b) {
+        // ISO-8859-1 maps each byte to the char with the same value.
+        return (char) (b & 0xff);
     }
 
     @Override
@@ -743,22 +858,21 @@ public class PuzFile extends AbstractPuzzleFile {
         } else {
             shortEntry = value.toUpperCase().getBytes(ISO_8859_1)[0];
         }
-        mGrid[getOffset(row, col)] = shortEntry;
+        int offset = getOffset(row, col);
+        updateCounts(offset, mGrid[offset], shortEntry);
+        mGrid[offset] = shortEntry;
 
-        if (value.length() > 1) {
-            mUserRebusEntries[getOffset(row, col)] = value.getBytes(ISO_8859_1);
-        } else {
-            mUserRebusEntries[getOffset(row, col)] = null;
-        }
+        mUserRebusEntries.put(offset, value.length() > 1 ? value : null);
     }
 
     @Override
     public boolean isSolved() {
         switch (getScrambleState()) {
         case UNSCRAMBLED:
-            return Arrays.equals(mSolution, mGrid);
+            return mNumMatchingCells == mGrid.length;
         case SCRAMBLED:
-            return getComputedScrambledChecksum() == mScrambledChecksum;
+            return isScrambledSolved(mNumWhiteCells, mNumFilledCells,
+                    getComputedScrambledChecksum(), mScrambledChecksum);
         default:
             return false;
         }
@@ -766,17 +880,76 @@ public class PuzFile extends AbstractPuzzleFile {
 
     @Override
     public boolean isEmpty() {
-        for (byte b : mGrid) {
-            if (!(b == '.' || b == '-')) {
-                return false;
+        return mNumFilledCells == 0;
+    }
+
+    @Override
+    public int getNumWhiteCells() {
+        return mNumWhiteCells;
+    }
+
+    @Override
+    public int getNumFilledCells() {
+        return mNumFilledCells;
+    }
+
+    static boolean isFilled(byte contents) {
+        return !(contents == '.' || contents == '-');
+    }
+
+    /**
+     * Whether a scrambled grid is solved. Only a 16-bit checksum of the solution is known, which a
+     * grid with empty cells can happen to match, so every white cell must be filled in as well.
+     * Shared with {@link PuzHeader}, so that both agree on which puzzles are solved.
+     */
+    static boolean isScrambledSolved(int numWhiteCells, int numFilledCells,
+                                     int computedScrambledChecksum, int scrambledChecksum) {
+        return numFilledCells == numWhiteCells && computedScrambledChecksum == scrambledChecksum;
+    }
+
+    private void countCells() {
+        for (int i = 0; i < mGrid.length; i++) {
+            if (mSolution[i] != '.') {
+                mNumWhiteCells++;
+            }
+            if (isFilled(mGrid[i])) {
+                mNumFilledCells++;
+            }
+            if (mGrid[i] == mSolution[i]) {
+                mNumMatchingCells++;
+            }
+        }
+    }
+
+    private void updateCounts(int offset, byte oldContents, byte newContents) {
+        if (oldContents == newContents) {
+            return;
+        }
+        if (isFilled(oldContents)) {
+            mNumFilledCells--;
+        }
+        if (isFilled(newContents)) {
+            mNumFilledCells++;
+        }
+        if (oldContents == mSolution[offset]) {
+            mNumMatchingCells--;
+        }
+        if (newContents == mSolution[offset]) {
+            mNumMatchingCells++;
+        }
+        if (mScrambledPrefix != null) {
+            int position = mScrambledPosition[offset];
+            if (position >= 0) {
+                mScrambledPrefixValid = Math.min(mScrambledPrefixValid, position);
             }
         }
-        return true;
     }
 
     @Override
     public String getSolution(int row, int col) {
-        return mSolutionWithRebuses[getOffset(row, col)];
+        int offset = getOffset(row, col);
+        String solutionRebus = mSolutionRebuses.get(offset);
+        return solutionRebus != null ? solutionRebus : LETTERS[mSolution[offset] & 0xff];
     }
 
     private Section findSection(String sectionName) {
@@ -798,32 +971,62 @@ public class PuzFile extends AbstractPuzzleFile {
         mTimerInfo = timerInfo;
     }
 
-    private int getComputedScrambledChecksum() {
+    /** Computes the scrambled checksum of a grid from scratch. */
+    static int computeScrambledChecksum(byte[] grid, int width, int height) {
         int computedScrambledChecksum = 0;
-        for (int i = 0; i < mWidth; i++) {
-            for (int j = 0; j < mHeight; j++) {
-                byte contents = mGrid[getOffset(j, i)];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                byte contents = grid[j * width + i];
                 if (contents == '.') {
                     continue;
                 }
-                computedScrambledChecksum = checksumByte(contents, computedScrambledChecksum);
+                computedScrambledChecksum =
+                        PuzChecksums.update(computedScrambledChecksum, contents);
             }
         }
         return computedScrambledChecksum;
     }
 
+    /**
+     * Computes the scrambled checksum of the grid. The checksum is a running rotate-and-add over
+     * the white cells in column-major order, so it can't be updated in place; instead the checksum
+     * after each cell is cached, and only the cells from the first edited one onwards are redone.
+     */
+    int getComputedScrambledChecksum() {
+        if (mScrambledPrefix == null) {
+            mScrambledPosition = new int[mGrid.length];
+            mScrambledOffsets = new int[mNumWhiteCells];
+            Arrays.fill(mScrambledPosition, -1);
+            int position = 0;
+            for (int i = 0; i < mWidth; i++) {
+                for (int j = 0; j < mHeight; j++) {
+                    int offset = getOffset(j, i);
+                    if (mSolution[offset] != '.') {
+                        mScrambledOffsets[position] = offset;
+                        mScrambledPosition[offset] = position++;
+                    }
+                }
+            }
+            mScrambledPrefix = new int[position];
+            mScrambledPrefixValid = 0;
+        }
+        if (mScrambledPrefix.length == 0) {
+            return 0;
+        }
+
+        int position = mScrambledPrefixValid;
+        int cksum = position == 0 ? 0 : mScrambledPrefix[position - 1];
+        for (; position < mScrambledPrefix.length; position++) {
+            cksum = PuzChecksums.update(cksum, mGrid[mScrambledOffsets[position]]);
+            mScrambledPrefix[position] = cksum;
+        }
+        mScrambledPrefixValid = position;
+        return cksum;
+    }
+
     @Override
     public ScrambleState getScrambleState() {
-        switch (mScrambledTag) {
-        case 0x0:
-            return ScrambleState.UNSCRAMBLED;
-        case 0x2:
-            return ScrambleState.LOCKED;
-        case 0x4:
-            return ScrambleState.SCRAMBLED;
-        default:
-            return ScrambleState.UNKNOWN;
-        }
+        return PuzHeader.getScrambleState(mScrambledTag);
     }
 
     public String getRtblString() {
@@ -887,21 +1090,29 @@ public class PuzFile extends AbstractPuzzleFile {
 
     @Override
     public Clue getClue(int i) {
+        ensureCluesResolved();
         return mClues[i];
     }
 
     @Override
     public int getAcrossClueIndex(int row, int col) {
+        ensureCluesResolved();
         return mAcrossClueMapping[getOffset(row, col)] - 1;
     }
 
     @Override
     public int getDownClueIndex(int row, int col) {
+        ensureCluesResolved();
         return mDownClueMapping[getOffset(row, col)] - 1;
     }
 
     @Override
-    public boolean[][] getClueReferences() {
+    public synchronized ClueReferences getClueReferenceIndex() {
+        if (mClueReferences == null) {
+            // Identify clues that reference each other. Again, this isn't in the file format.
+            ensureCluesResolved();
+            mClueReferences = ClueReferences.find(mClues);
+        }
         return mClueReferences;
     }
 
@@ -939,6 +1150,40 @@ public class PuzFile extends AbstractPuzzleFile {
         }
     }
 
+    /**
+     * The parts of a puzzle file that can change after it has been parsed, as of the last time it
+     * was read or written. Everything between the grid and the extra sections (title, clues, etc.)
+     * stays the same for the lifetime of a PuzFile.
+     */
+    private static class DiskImage {
+        final byte[] header;
+        final byte[] grid;
+        final int sectionsOffset;
+        final byte[] sections;
+        private File mFile;
+        private long mLength;
+        private long mLastModified;
+
+        DiskImage(byte[] header, byte[] grid, int sectionsOffset, byte[] sections) {
+            this.header = header;
+            this.grid = grid;
+            this.sectionsOffset = sectionsOffset;
+            this.sections = sections;
+        }
+
+        void bind(File file, long length, long lastModified) {
+            mFile = file.getAbsoluteFile();
+            mLength = length;
+            mLastModified = lastModified;
+        }
+
+        /** Whether the file has been left alone since this image was taken. */
+        boolean isCurrent(File file) {
+            return file.getAbsoluteFile().equals(mFile) && file.length() == mLength &&
+                    file.lastModified() == mLastModified;
+        }
+    }
+
     private static class Section implements Serializable {
         final String name;
         final int length;
@@ -952,22 +1197,19 @@ public class PuzFile extends AbstractPuzzleFile {
             this.data = data;
         }
 
-        public static Section readSection(
-                LittleEndianDataInputStream dataInputStream) throws IOException {
+        static Section readSection(PuzReader reader) throws IOException {
             final byte[] sectionNameBytes = new byte[4];
-            if (dataInputStream.read(sectionNameBytes) < 4) {
+            if (reader.read(sectionNameBytes) < 4) {
                 // No more data
                 return null;
             }
 
             String sectionName = new String(sectionNameBytes);
-            int length = dataInputStream.readUnsignedShort();
-            int checksum = dataInputStream.readUnsignedShort();
+            int length = reader.readUnsignedShort();
+            int checksum = reader.readUnsignedShort();
             byte[] data = new byte[length];
-            if (dataInputStream.read(data) < length) {
-                throw new EOFException();
-            }
-            dataInputStream.readByte();  // null terminator
+            reader.readFully(data);
+            reader.readByte();  // null terminator
             return new Section(sectionName, length, checksum, data);
         }
     }
@@ -0,0 +1,263 @@
+package io.github.leffinger.crossyourheart.io;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lightweight view of a puz file, for operations over the whole library that don't need a full
+ * {@link PuzFile}.
+ *
+ * <p>The header tier has the fixed-size header plus the title, author and copyright; the solution
+ * and grid are skipped over, and clues are not read at all. The grid tier additionally keeps the
+ * solution and grid, so that {@link #isSolved()} and {@link #isEmpty()} can be answered. The
+ * text tier additionally reads the clue texts and the note, for the search index. No tier assigns
+ * clues or looks for clue references.
+ */
+public class PuzHeader {
+    private static final String MAGIC = "ACROSS&DOWN";
+
+    final int mFileChecksum;
+    final int mHeaderChecksum;
+    final byte[] mMaskedChecksums;
+    final byte[] mVersionString;
+    final int mScrambledChecksum;
+    final byte mWidth;
+    final byte mHeight;
+    final int mNumClues;
+    final int mUnknownBitmask;
+    final int mScrambledTag;
+
+    private String mTitle;
+    private String mAuthor;
+    private String mCopyright;
+    private byte[] mSolution;
+    private byte[] mGrid;
+    private String[] mClueTexts;
+    private String mNote;
+    private long mContentFingerprint = ContentFingerprint.UNKNOWN;
+
+    /** Reads the fixed-size header that precedes the solution. */
+    PuzHeader(PuzReader reader) throws IOException {
+        mFileChecksum = reader.readUnsignedShort();
+        byte[] magic = reader.readNullTerminatedBytes();
+
+        // Error out early if the magic string is wrong (not a puz file at all).
+        String magicString = new String(magic, ISO_8859_1);
+        if (!magicString.equals(MAGIC)) {
+            throw new IOException("Wrong file magic; is this a puz file?");
+        }
+
+        mHeaderChecksum = reader.readUnsignedShort();
+        mMaskedChecksums = new byte[8];
+        reader.readFully(mMaskedChecksums);
+        mVersionString = new byte[4];
+        reader.readFully(mVersionString);
+
+        reader.skipFully(2);  // skip junk
+        mScrambledChecksum = reader.readUnsignedShort();
+        reader.skipFully(12);  // skip junk
+
+        // Get basic puzzle info: width, height, etc.
+        mWidth = reader.readByte();
+        mHeight = reader.readByte();
+        mNumClues = reader.readUnsignedShort();
+        mUnknownBitmask = reader.readUnsignedShort();
+        mScrambledTag = reader.readUnsignedShort();
+    }
+
+    /**
+     * Reads the header tier from a buffer.
+     *
+     * @param buffer   puzzle file data, from the buffer's position to its limit
+     * @param withGrid whether to also keep the solution and grid
+     */
+    public static PuzHeader parse(ByteBuffer buffer, boolean withGrid) throws IOException {
+        return parse(buffer, withGrid, false);
+    }
+
+    /**
+     * Reads the header tier from a buffer.
+     *
+     * @param buffer   puzzle file data, from the buffer's position to its limit
+     * @param withGrid whether to also keep the solution and grid
+     * @param withText whether to also read the clue texts and note
+     */
+    public static PuzHeader parse(ByteBuffer buffer, boolean withGrid, boolean withText)
+            throws IOException {
+        PuzReader reader = PuzReader.of(buffer);
+        PuzHeader header = new PuzHeader(reader);
+        int puzzleSize = header.mWidth * header.mHeight;
+        if (withGrid) {
+            header.mSolution = new byte[puzzleSize];
+            reader.readFully(header.mSolution);
+            header.mGrid = new byte[puzzleSize];
+            reader.readFully(header.mGrid);
+        } else {
+            reader.skipFully(2 * puzzleSize);
+        }
+        header.mTitle = reader.readNullTerminatedString();
+        header.mAuthor = reader.readNullTerminatedString();
+        header.mCopyright = reader.readNullTerminatedString();
+        if (withText) {
+            ContentFingerprint fingerprint = null;
+            if (withGrid) {
+                fingerprint = new ContentFingerprint(header.mWidth, header.mHeight);
+                fingerprint.updateSolution(header.mSolution);
+            }
+            header.mClueTexts = new String[header.mNumClues];
+            for (int i = 0; i < header.mNumClues; i++) {
+                header.mClueTexts[i] = reader.readNullTerminatedString();
+                if (fingerprint != null) {
+                    fingerprint.updateClue(header.mClueTexts[i]);
+                }
+            }
+            header.mNote = reader.readNullTerminatedString();
+            if (fingerprint != null) {
+                header.mContentFingerprint = fingerprint.get();
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Reads the header tier of a puz file on disk, first finishing any save that was interrupted.
+     */
+    public static PuzHeader readPuzzleFile(File file, boolean withGrid) throws IOException {
+        return readPuzzleFile(file, withGrid, false);
+    }
+
+    /**
+     * Reads the header tier of a puz file on disk, first finishing any save that was interrupted.
+     */
+    public static PuzHeader readPuzzleFile(File file, boolean withGrid, boolean withText)
+            throws IOException {
+        return parse(ByteBuffer.wrap(PuzzleFileJournal.readFile(file)), withGrid, withText);
+    }
+
+    static AbstractPuzzleFile.ScrambleState getScrambleState(int scrambledTag) {
+        switch (scrambledTag) {
+        case 0x0:
+            return AbstractPuzzleFile.ScrambleState.UNSCRAMBLED;
+        case 0x2:
+            return AbstractPuzzleFile.ScrambleState.LOCKED;
+        case 0x4:
+            return AbstractPuzzleFile.ScrambleState.SCRAMBLED;
+        default:
+            return AbstractPuzzleFile.ScrambleState.UNKNOWN;
+        }
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getAuthor() {
+        return mAuthor;
+    }
+
+    public String getCopyright() {
+        return mCopyright;
+    }
+
+    public int getFileChecksum() {
+        return mFileChecksum;
+    }
+
+    public int getHeaderChecksum() {
+        return mHeaderChecksum;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getNumClues() {
+        return mNumClues;
+    }
+
+    public AbstractPuzzleFile.ScrambleState getScrambleState() {
+        return getScrambleState(mScrambledTag);
+    }
+
+    /** Clue texts in file order, i.e. sorted by number with across before down. */
+    public String[] getClueTexts() {
+        checkHasText();
+        return mClueTexts;
+    }
+
+    public String getNote() {
+        checkHasText();
+        return mNote;
+    }
+
+    /**
+     * Returns the same fingerprint as {@link PuzFile#getContentFingerprint()}, or {@link
+     * ContentFingerprint#UNKNOWN} unless both the grid and text tiers were loaded.
+     */
+    public long getContentFingerprint() {
+        return mContentFingerprint;
+    }
+
+    /** Whether the text tier was loaded. */
+    public boolean hasText() {
+        return mClueTexts != null;
+    }
+
+    /** Whether the grid tier was loaded. */
+    public boolean hasGrid() {
+        return mGrid != null;
+    }
+
+    public boolean isSolved() {
+        checkHasGrid();
+        switch (getScrambleState()) {
+        case UNSCRAMBLED:
+            return Arrays.equals(mSolution, mGrid);
+        case SCRAMBLED:
+            int numWhiteCells = 0;
+            int numFilledCells = 0;
+            for (int i = 0; i < mGrid.length; i++) {
+                if (mSolution[i] != '.') {
+                    numWhiteCells++;
+                }
+                if (PuzFile.isFilled(mGrid[i])) {
+                    numFilledCells++;
+                }
+            }
+            return PuzFile.isScrambledSolved(numWhiteCells, numFilledCells,
+                    PuzFile.computeScrambledChecksum(mGrid, mWidth, mHeight), mScrambledChecksum);
+        default:
+            return false;
+        }
+    }
+
+    public boolean isEmpty() {
+        checkHasGrid();
+        for (byte b : mGrid) {
+            if (!(b == '.' || b == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkHasText() {
+        if (mClueTexts == null) {
+            throw new IllegalStateException("Text was not loaded");
+        }
+    }
+
+    private void checkHasGrid() {
+        if (mGrid == null) {
+            throw new IllegalStateException("Grid was not loaded");
+        }
+    }
+}
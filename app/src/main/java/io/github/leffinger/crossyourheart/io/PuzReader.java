@@ -0,0 +1,206 @@
+package io.github.leffinger.crossyourheart.io;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.google.common.io.LittleEndianDataInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Little-endian reader for the primitives that make up a puz file. There are two
+ * implementations: one over an InputStream, which reads strings a byte at a time, and one over a
+ * ByteBuffer (heap or memory-mapped), which finds string terminators by scanning the buffer and
+ * decodes strings straight out of it.
+ */
+abstract class PuzReader {
+
+    static PuzReader of(InputStream inputStream) {
+        return new StreamReader(inputStream);
+    }
+
+    /** Reads from the buffer's position to its limit. The buffer's position is advanced. */
+    static PuzReader of(ByteBuffer buffer) {
+        return new BufferReader(buffer);
+    }
+
+    abstract int readUnsignedShort() throws IOException;
+
+    abstract byte readByte() throws IOException;
+
+    /** Fills the array, or throws EOFException if there isn't enough data. */
+    abstract void readFully(byte[] bytes) throws IOException;
+
+    /**
+     * Reads up to bytes.length bytes, returning how many were read (-1 at the end of the data).
+     */
+    abstract int read(byte[] bytes) throws IOException;
+
+    abstract void skipFully(int n) throws IOException;
+
+    /** Reads a null-terminated string, not including the terminator. */
+    abstract byte[] readNullTerminatedBytes() throws IOException;
+
+    /** Reads a null-terminated ISO-8859-1 string, not including the terminator. */
+    String readNullTerminatedString() throws IOException {
+        return new String(readNullTerminatedBytes(), ISO_8859_1);
+    }
+
+    private static final class StreamReader extends PuzReader {
+        private final LittleEndianDataInputStream mDataInputStream;
+
+        StreamReader(InputStream inputStream) {
+            mDataInputStream = new LittleEndianDataInputStream(inputStream);
+        }
+
+        @Override
+        int readUnsignedShort() throws IOException {
+            return mDataInputStream.readUnsignedShort();
+        }
+
+        @Override
+        byte readByte() throws IOException {
+            return mDataInputStream.readByte();
+        }
+
+        @Override
+        void readFully(byte[] bytes) throws IOException {
+            mDataInputStream.readFully(bytes);
+        }
+
+        @Override
+        int read(byte[] bytes) throws IOException {
+            return mDataInputStream.read(bytes);
+        }
+
+        @Override
+        void skipFully(int n) throws IOException {
+            if (mDataInputStream.skipBytes(n) != n) {
+                throw new EOFException();
+            }
+        }
+
+        @Override
+        byte[] readNullTerminatedBytes() throws IOException {
+            byte[] bytes = new byte[8];
+            int length = 0;
+            while (true) {
+                byte b = mDataInputStream.readByte();
+                if (b == 0) {
+                    break;
+                }
+                if (length >= bytes.length) {
+                    bytes = Arrays.copyOf(bytes, length * 2);
+                }
+                bytes[length++] = b;
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class BufferReader extends PuzReader {
+        private final ByteBuffer mBuffer;
+
+        BufferReader(ByteBuffer buffer) {
+            mBuffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        int readUnsignedShort() throws IOException {
+            try {
+                return mBuffer.getShort() & 0xffff;
+            } catch (BufferUnderflowException e) {
+                throw new EOFException();
+            }
+        }
+
+        @Override
+        byte readByte() throws IOException {
+            try {
+                return mBuffer.get();
+            } catch (BufferUnderflowException e) {
+                throw new EOFException();
+            }
+        }
+
+        @Override
+        void readFully(byte[] bytes) throws IOException {
+            try {
+                mBuffer.get(bytes);
+            } catch (BufferUnderflowException e) {
+                throw new EOFException();
+            }
+        }
+
+        @Override
+        int read(byte[] bytes) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            int length = Math.min(bytes.length, mBuffer.remaining());
+            mBuffer.get(bytes, 0, length);
+            return length;
+        }
+
+        @Override
+        void skipFully(int n) throws IOException {
+            if (mBuffer.remaining() < n) {
+                throw new EOFException();
+            }
+            mBuffer.position(mBuffer.position() + n);
+        }
+
+        @Override
+        byte[] readNullTerminatedBytes() throws IOException {
+            int length = findTerminator();
+            byte[] bytes = new byte[length];
+            mBuffer.get(bytes);
+            mBuffer.get();  // terminator
+            return bytes;
+        }
+
+        @Override
+        String readNullTerminatedString() throws IOException {
+            int length = findTerminator();
+            String string;
+            if (mBuffer.hasArray()) {
+                string = new String(mBuffer.array(), mBuffer.arrayOffset() + mBuffer.position(),
+                        length, ISO_8859_1);
+            } else {
+                byte[] bytes = new byte[length];
+                mBuffer.get(bytes);
+                mBuffer.position(mBuffer.position() - length);
+                string = new String(bytes, ISO_8859_1);
+            }
+            mBuffer.position(mBuffer.position() + length + 1);
+            return string;
+        }
+
+        /** Returns the length of the string at the current position, without consuming it. */
+        private int findTerminator() throws EOFException {
+            int start = mBuffer.position();
+            int limit = mBuffer.limit();
+            if (mBuffer.hasArray()) {
+                byte[] array = mBuffer.array();
+                int offset = mBuffer.arrayOffset();
+                for (int i = start; i < limit; i++) {
+                    if (array[offset + i] == 0) {
+                        return i - start;
+                    }
+                }
+            } else {
+                for (int i = start; i < limit; i++) {
+                    if (mBuffer.get(i) == 0) {
+                        return i - start;
+                    }
+                }
+            }
+            throw new EOFException();
+        }
+    }
+}
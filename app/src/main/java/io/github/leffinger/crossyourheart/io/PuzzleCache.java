@@ -0,0 +1,200 @@
+package io.github.leffinger.crossyourheart.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsed puzzle files, kept so that opening a puzzle can skip reading and parsing it. The puzzle
+ * list pre-warms the cache with the puzzles that are likely to be opened next.
+ *
+ * <p>Entries are tied to the size and modification time the file had when it was read, and are
+ * only handed out while the file still matches. {@link #take} removes the entry, so a
+ * {@link PuzFile} that is being played (and modified) is never shared with the cache. The least
+ * recently used entries are evicted once the estimated memory use exceeds the budget.
+ *
+ * <p>Thread-safe. Parsing happens outside the lock.
+ */
+public class PuzzleCache {
+    private static PuzzleCache sInstance;
+
+    private final long mMaxBytes;
+
+    // All guarded by "this". Access order, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<File, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+    private long mLoads;
+    private long mEvictions;
+
+    public PuzzleCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /** Returns the app-wide cache, sized to a small share of the heap. */
+    public static synchronized PuzzleCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new PuzzleCache(Math.min(8 << 20, Runtime.getRuntime().maxMemory() / 64));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Removes and returns the parsed puzzle if it is cached and the file has not changed since it
+     * was read. Clues are already resolved.
+     *
+     * @return the cached puzzle, or null on a miss
+     */
+    public synchronized PuzFile take(File file) {
+        Entry entry = mEntries.remove(file);
+        if (entry != null) {
+            mBytes -= entry.mBytes;
+            if (entry.matches(file)) {
+                mHits++;
+                return entry.mPuzFile;
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Reads and parses each file that is not already cached, most likely to be opened first.
+     * Older entries are evicted to make room, but once the files given here fill the cache, the
+     * rest are skipped. Blocks; call from a background thread. Files that fail to load are
+     * skipped too.
+     *
+     * @return the number of files read
+     */
+    public int prewarm(List<File> files) {
+        Set<File> batch = new HashSet<>();
+        int loaded = 0;
+        for (File file : files) {
+            batch.add(file);
+            synchronized (this) {
+                Entry entry = mEntries.get(file);
+                if (entry != null && entry.matches(file)) {
+                    continue;
+                }
+            }
+            Entry entry;
+            try {
+                entry = load(file);
+            } catch (IOException | RuntimeException e) {
+                continue;
+            }
+            loaded++;
+            if (!put(file, entry, batch)) {
+                break;
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mHits, mMisses, mLoads, mEvictions, mEntries.size(), mBytes);
+    }
+
+    private static Entry load(File file) throws IOException {
+        if (PuzzleFileJournal.getJournalFile(file).exists()) {
+            // An interrupted save; reading the file for real will finish it.
+            throw new IOException("journal pending for " + file);
+        }
+        // Taken before reading, so a change made while reading makes the entry stale.
+        long length = file.length();
+        long lastModified = file.lastModified();
+        PuzFile puzFile = PuzFile.readPuzzleFile(file);
+        puzFile.resolveClues();
+        return new Entry(puzFile, length, lastModified, estimateBytes(puzFile, length));
+    }
+
+    /** @return false if the entry did not fit without evicting one of {@code keep} */
+    private synchronized boolean put(File file, Entry entry, Set<File> keep) {
+        mLoads++;
+        Entry previous = mEntries.remove(file);
+        if (previous != null) {
+            mBytes -= previous.mBytes;
+        }
+        if (entry.mBytes > mMaxBytes) {
+            return false;
+        }
+        mEntries.put(file, entry);
+        mBytes += entry.mBytes;
+        Iterator<Map.Entry<File, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes) {
+            Map.Entry<File, Entry> eldest = iterator.next();
+            iterator.remove();
+            mBytes -= eldest.getValue().mBytes;
+            mEvictions++;
+            if (keep.contains(eldest.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rough heap footprint of a parsed puzzle: the copy of the file kept for incremental saves,
+     * the parsed grids and strings, and the per-cell clue mappings.
+     */
+    static long estimateBytes(PuzFile puzFile, long fileLength) {
+        long bytes = 512 + 2 * fileLength + 8L * puzFile.getWidth() * puzFile.getHeight();
+        for (int i = 0; i < puzFile.getNumClues(); i++) {
+            bytes += 48 + 2L * puzFile.getClue(i).getText().length();
+        }
+        return bytes;
+    }
+
+    private static final class Entry {
+        final PuzFile mPuzFile;
+        final long mLength;
+        final long mLastModified;
+        final long mBytes;
+
+        Entry(PuzFile puzFile, long length, long lastModified, long bytes) {
+            mPuzFile = puzFile;
+            mLength = length;
+            mLastModified = lastModified;
+            mBytes = bytes;
+        }
+
+        boolean matches(File file) {
+            return file.length() == mLength && file.lastModified() == mLastModified &&
+                    !PuzzleFileJournal.getJournalFile(file).exists();
+        }
+    }
+
+    /** Snapshot of cache counters. */
+    public final static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long loads;
+        public final long evictions;
+        public final int entries;
+        public final long bytes;
+
+        public Stats(long hits, long misses, long loads, long evictions, int entries,
+                     long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loads = loads;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "hits=%d misses=%d loads=%d evictions=%d entries=%d bytes=%d", hits, misses,
+                    loads, evictions, entries, bytes);
+        }
+    }
+}
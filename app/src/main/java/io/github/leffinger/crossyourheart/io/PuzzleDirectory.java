@@ -3,25 +3,40 @@ package io.github.leffinger.crossyourheart.io;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.util.Log;
-import android.widget.ProgressBar;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import com.google.common.collect.Lists;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.github.leffinger.crossyourheart.room.Database;
 import io.github.leffinger.crossyourheart.room.PuzFileMetadata;
+import io.github.leffinger.crossyourheart.room.PuzFileMetadataDao;
 import io.github.leffinger.crossyourheart.room.Puzzle;
+import io.github.leffinger.crossyourheart.room.PuzzleDao;
+import io.github.leffinger.crossyourheart.room.PuzzleQuery;
+import io.github.leffinger.crossyourheart.room.PuzzleSearchEntry;
+import io.github.leffinger.crossyourheart.room.SearchDao;
+import io.github.leffinger.crossyourheart.room.SearchRanker;
+import io.github.leffinger.crossyourheart.room.SearchResult;
 
 /** Guards access to the puzzle directory. */
 public class PuzzleDirectory {
@@ -29,18 +44,44 @@ public class PuzzleDirectory {
     private static final SimpleDateFormat FORMAT =
             new SimpleDateFormat("yyMMddHHmmss", Locale.getDefault());
     private static final String TAG = "PuzzleDirectory";
+    private static final int INSERT_BATCH_SIZE = 256;
+    // Added to the names of imported files until they are committed, so that reconcile() skips
+    // them.
+    static final String IMPORT_SUFFIX = ".import";
 
     // Singleton instance
     private static final PuzzleDirectory mInstance = new PuzzleDirectory();
 
+    // Names of the files that imports are writing right now, so that sweeping leftover imports
+    // doesn't delete them.
+    private final Set<String> mImportsInProgress =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     public static PuzzleDirectory getInstance() {
         return mInstance;
     }
 
-    /** Fetches the list of all puzzle files. */
-    public synchronized List<Puzzle> getAllPuzzles(Context context) {
+    /**
+     * Fetches one page of the library.
+     *
+     * @param after key of the last puzzle on the previous page, or null for the first page
+     */
+    public synchronized List<Puzzle> getPuzzles(Context context, PuzzleQuery query,
+                                                PuzzleQuery.Key after, int limit) {
         Database database = Database.getInstance(context.getApplicationContext());
-        return database.puzzleDao().getAll();
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(after, limit, args);
+        return database.puzzleDao().getPage(new SimpleSQLiteQuery(sql, args.toArray()));
+    }
+
+    /** Returns a new, unique name for a puzzle file. */
+    private static String newFilename() {
+        String date;
+        synchronized (FORMAT) {
+            // SimpleDateFormat is not thread-safe.
+            date = FORMAT.format(Calendar.getInstance().getTime());
+        }
+        return String.format("%s-%s.puz", date, UUID.randomUUID());
     }
 
     /** Copies the input stream into the puzzle directory and adds it to the database. */
@@ -52,15 +93,13 @@ public class PuzzleDirectory {
 
             // Check to see if we have already loaded this file.
             List<Puzzle> matchingPuzzles = database.puzzleDao()
-                                                   .getMatchingPuzFiles(puzzleLoader.getTitle(),
-                                                           puzzleLoader.getAuthor(),
-                                                           puzzleLoader.getHeaderChecksum());
+                                                   .getMatchingPuzFiles(
+                                                           puzzleLoader.getContentFingerprint());
             if (!matchingPuzzles.isEmpty()) {
                 throw new DuplicateFileException(matchingPuzzles.get(0));
             }
 
-            String date = FORMAT.format(Calendar.getInstance().getTime());
-            String filename = String.format("%s-%s.puz", date, UUID.randomUUID());
+            String filename = newFilename();
             File puzzleFile = IOUtil.getPuzzleFile(context, filename);
             try {
                 puzzleLoader.savePuzzleFile(puzzleFile);
@@ -70,7 +109,16 @@ public class PuzzleDirectory {
                                 !puzzleLoader.isEmpty(), puzzleLoader.getScrambleState(), false);
                 database.puzzleDao().insert(puzzle);
                 database.puzFileMetadataDao()
-                        .insert(new PuzFileMetadata(filename, puzzleLoader.getHeaderChecksum()));
+                        .insert(new PuzFileMetadata(filename, puzzleLoader.getHeaderChecksum(),
+                                puzzleFile.length(), puzzleFile.lastModified(),
+                                puzzleLoader.getContentFingerprint()));
+                String[] clues = new String[puzzleLoader.getNumClues()];
+                for (int i = 0; i < clues.length; i++) {
+                    clues[i] = puzzleLoader.getClue(i).getText();
+                }
+                database.searchDao().insertAll(Collections.singletonList(
+                        PuzzleSearchEntry.create(filename, puzzleLoader.getTitle(),
+                                puzzleLoader.getAuthor(), puzzleLoader.getNote(), clues)));
                 return puzzle;
             } catch (IOException e) {
                 throw new IOException("Failed to save puzzle file", e);
@@ -81,58 +129,415 @@ public class PuzzleDirectory {
     }
 
     /**
-     * Compares the set of filenames in the puzzle directory to the set of filenames in the database
-     * and returns true if they are the same.
+     * Imports many files or .zip archives of files at once (see {@link BulkImporter}). Unlike
+     * {@link #loadInputStream}, this object's lock is held only while each batch of rows is
+     * committed, not while files are read, verified and written.
+     */
+    public BulkImporter.Result importAll(Context context,
+                                         List<? extends BulkImporter.Source> sources) {
+        deleteAbandonedImports(context);
+        BulkImporter importer = new BulkImporter(new LibrarySink(context),
+                PuzzleScanner.getDefaultParallelism());
+        BulkImporter.Result result = importer.importAll(sources);
+        Log.i(TAG, "Imported " + result.getTotal() + " files: " + result.stats);
+        return result;
+    }
+
+    /**
+     * Deletes files left behind by imports that never committed them, e.g. because the process
+     * was killed in the middle of a large archive.
      */
-    public synchronized boolean databaseAndDirectoryHaveSameFiles(Context context) {
+    private void deleteAbandonedImports(Context context) {
+        File[] files = IOUtil.getPuzzleDir(context).listFiles(
+                (dir, name) -> name.contains(IMPORT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            String filename = name.substring(0, name.indexOf(IMPORT_SUFFIX));
+            if (mImportsInProgress.contains(filename)) {
+                continue;
+            }
+            if (file.delete()) {
+                Log.i(TAG, "Deleted abandoned import " + name);
+            } else {
+                Log.w(TAG, "Failed to delete abandoned import " + name);
+            }
+        }
+    }
+
+    /** Adds imported puzzles to the puzzle directory and the database. */
+    private class LibrarySink implements BulkImporter.Sink {
+        private final Context mContext;
+        private final Database mDatabase;
+
+        LibrarySink(Context context) {
+            mContext = context.getApplicationContext();
+            mDatabase = Database.getInstance(mContext);
+        }
+
+        @Override
+        public String findDuplicate(PuzFile puzzle) {
+            return findDuplicate(puzzle, null);
+        }
+
+        /** Returns a puzzle that duplicates this one, other than the file itself, or null. */
+        private String findDuplicate(PuzFile puzzle, String filename) {
+            for (Puzzle match : mDatabase.puzzleDao()
+                                         .getMatchingPuzFiles(puzzle.getContentFingerprint())) {
+                if (!match.filename.equals(filename)) {
+                    return match.filename;
+                }
+            }
+            return null;
+        }
+
+        /** Writes under a temporary name, which the commit renames. */
+        @Override
+        public String write(PuzFile puzzle) throws IOException {
+            String filename = newFilename();
+            mImportsInProgress.add(filename);
+            try {
+                puzzle.savePuzzleFile(getImportFile(filename));
+            } catch (IOException e) {
+                delete(filename);
+                throw e;
+            }
+            return filename;
+        }
+
+        @Override
+        public String[] commit(List<BulkImporter.Entry> batch) {
+            String[] duplicates = new String[batch.size()];
+            List<Puzzle> puzzles = new ArrayList<>(batch.size());
+            List<PuzFileMetadata> metadata = new ArrayList<>(batch.size());
+            List<PuzzleSearchEntry> searchEntries = new ArrayList<>(batch.size());
+            synchronized (PuzzleDirectory.this) {
+                mDatabase.runInTransaction(() -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        PuzFile puzzle = batch.get(i).getPuzzle();
+                        String filename = batch.get(i).getFilename();
+                        duplicates[i] = findDuplicate(puzzle, filename);
+                        if (duplicates[i] != null) {
+                            continue;
+                        }
+                        File file = IOUtil.getPuzzleFile(mContext, filename);
+                        if (!getImportFile(filename).renameTo(file)) {
+                            // Rolls back the batch; the importer then deletes its files.
+                            throw new IllegalStateException("Failed to rename " + filename);
+                        }
+                        mImportsInProgress.remove(filename);
+                        puzzles.add(new Puzzle(filename, puzzle.getTitle(), puzzle.getAuthor(),
+                                puzzle.getCopyright(), puzzle.isSolved(), false,
+                                !puzzle.isEmpty(), puzzle.getScrambleState(), false));
+                        metadata.add(new PuzFileMetadata(filename, puzzle.getHeaderChecksum(),
+                                file.length(), file.lastModified(),
+                                puzzle.getContentFingerprint()));
+                        String[] clues = new String[puzzle.getNumClues()];
+                        for (int j = 0; j < clues.length; j++) {
+                            clues[j] = puzzle.getClue(j).getText();
+                        }
+                        searchEntries.add(PuzzleSearchEntry.create(filename, puzzle.getTitle(),
+                                puzzle.getAuthor(), puzzle.getNote(), clues));
+                    }
+                    mDatabase.puzzleDao().insertAll(puzzles);
+                    mDatabase.puzFileMetadataDao().insertAll(metadata);
+                    insertSearchEntries(mDatabase, searchEntries);
+                });
+            }
+            return duplicates;
+        }
+
+        /** Deletes the file, whether or not it was renamed before the commit failed. */
+        @Override
+        public void delete(String filename) {
+            File file = IOUtil.getPuzzleFile(mContext, filename);
+            File importFile = getImportFile(filename);
+            if (!file.delete() && !importFile.delete()) {
+                Log.w(TAG, "Failed to delete " + filename);
+            }
+            mImportsInProgress.remove(filename);
+        }
+
+        private File getImportFile(String filename) {
+            return IOUtil.getPuzzleFile(mContext, filename + IMPORT_SUFFIX);
+        }
+    }
+
+    /**
+     * Brings the database up to date with the puzzle directory, parsing only files that were added
+     * or changed since they were last indexed and deleting rows only for files that are gone.
+     * Files that cannot be read are logged and left out of the index.
+     *
+     * @return what was found to differ; the database was not touched if it is empty
+     */
+    public IndexDiff reconcile(Context context) {
         Database database = Database.getInstance(context.getApplicationContext());
-        Set<String> dbFilenames = new HashSet<>(database.puzzleDao().getFiles());
-        String[] files = IOUtil.getPuzzleDir(context).list();
+        deleteAbandonedImports(context);
+
+        long startNanos = System.nanoTime();
+        Map<String, IndexDiff.Fingerprint> indexed = new HashMap<>();
+        for (PuzFileMetadataDao.Fingerprint fingerprint : database.puzFileMetadataDao()
+                                                                  .getFingerprints()) {
+            indexed.put(fingerprint.filename,
+                    new IndexDiff.Fingerprint(fingerprint.fileSize, fingerprint.lastModified));
+        }
+        File[] files = IOUtil.listPuzzleFiles(context);
         assert files != null;
-        Set<String> dirFilenames = new HashSet<>(Arrays.asList(files));
-        return dbFilenames.equals(dirFilenames);
+        IndexDiff diff = IndexDiff.compute(files, indexed);
+        if (diff.isEmpty()) {
+            return diff;
+        }
+
+        List<File> toScan = new ArrayList<>(diff.added.size() + diff.changed.size());
+        toScan.addAll(diff.added);
+        toScan.addAll(diff.changed);
+        List<PuzzleScanner.Result> results =
+                PuzzleScanner.scan(toScan, PuzzleScanner.getDefaultParallelism(), null,
+                        new AtomicBoolean());
+
+        List<Puzzle> added = new ArrayList<>();
+        List<PuzzleDao.FileContentsUpdate> changed = new ArrayList<>();
+        List<PuzFileMetadata> metadata = new ArrayList<>();
+        List<PuzzleSearchEntry> searchEntries = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            PuzzleScanner.Result result = results.get(i);
+            if (result.error != null) {
+                Log.e(TAG, "Failed to load puzzle file " + result.file.getName(), result.error);
+                continue;
+            }
+            PuzHeader header = result.header;
+            if (i < diff.added.size()) {
+                added.add(newPuzzle(result));
+            } else {
+                changed.add(new PuzzleDao.FileContentsUpdate(result.file.getName(),
+                        header.getTitle(), header.getAuthor(), header.getCopyright(),
+                        header.isSolved(), header.getScrambleState()));
+            }
+            metadata.add(newMetadata(result));
+            searchEntries.add(newSearchEntry(result));
+        }
+
+        synchronized (this) {
+            database.runInTransaction(() -> {
+                database.puzzleDao().insertAll(added);
+                database.puzzleDao().updateFileContents(changed);
+                database.puzFileMetadataDao().insertAll(metadata);
+                List<Puzzle> deleted = findDeletedPuzzles(context, diff.removed);
+                database.puzzleDao().deletePuzzles(deleted);
+
+                List<String> staleSearchEntries = new ArrayList<>(toScan.size() + deleted.size());
+                for (File file : toScan) {
+                    staleSearchEntries.add(file.getName());
+                }
+                for (Puzzle puzzle : deleted) {
+                    staleSearchEntries.add(puzzle.filename);
+                }
+                deleteSearchEntries(database, staleSearchEntries);
+                insertSearchEntries(database, searchEntries);
+            });
+        }
+        Log.i(TAG, String.format(Locale.US, "Reconciled index (%s) in %d ms", diff,
+                (System.nanoTime() - startNanos) / 1000000));
+        return diff;
     }
 
-    /** Rebuilds the puzzle database from the contents of the puzzle directory. */
-    public synchronized List<File> reindexFiles(Context context, ProgressBar progressBar) {
+    /**
+     * Rebuilds the puzzle database from the contents of the puzzle directory and returns the files
+     * that could not be read.
+     *
+     * <p>Files are parsed in parallel without holding this object's lock, so imports and deletes
+     * are not blocked meanwhile. The results are then written in batches inside one transaction,
+     * which also removes rows for files that are no longer on disk.
+     *
+     * @param listener  progress callback; called from worker threads
+     * @param cancelled set to abandon the reindex; nothing is written if it is set before the
+     *                  transaction starts
+     * @throws CancellationException if the reindex was cancelled
+     */
+    public List<File> reindexFiles(Context context, PuzzleScanner.ProgressListener listener,
+                                   AtomicBoolean cancelled) {
         Database database = Database.getInstance(context.getApplicationContext());
 
-        // Current list of files (existing files will be updated; missing files will be
-        // deleted).
-        Set<String> currentFiles = new HashSet<>(database.puzzleDao().getFiles());
-        Set<String> foundFiles = new HashSet<>();
-
-        // Scan and update puzzle files.
-        File puzzleDir = IOUtil.getPuzzleDir(context);
-        File[] files = puzzleDir.listFiles();
+        long startNanos = System.nanoTime();
+        File[] files = IOUtil.listPuzzleFiles(context);
         assert files != null;
-        progressBar.setMax(files.length);
+        List<PuzzleScanner.Result> results =
+                PuzzleScanner.scan(Arrays.asList(files), PuzzleScanner.getDefaultParallelism(),
+                        listener, cancelled);
+        long scannedNanos = System.nanoTime();
+
+        List<Puzzle> puzzles = new ArrayList<>(results.size());
+        List<PuzFileMetadata> metadata = new ArrayList<>(results.size());
+        List<PuzzleSearchEntry> searchEntries = new ArrayList<>(results.size());
         List<File> corruptFiles = new ArrayList<>();
-        for (int i = 0; i < files.length; i++) {
-            File file = files[i];
-            foundFiles.add(file.getName());
-            try (FileInputStream inputStream = new FileInputStream(file)) {
-                PuzFile puzzleLoader = new PuzFile(inputStream);
-                database.puzzleDao().insert(new Puzzle(file.getName(), puzzleLoader.getTitle(), puzzleLoader.getAuthor(), puzzleLoader.getCopyright(), puzzleLoader.isSolved(), false, !puzzleLoader.isEmpty(), puzzleLoader.getScrambleState(), false));
-                database.puzFileMetadataDao().insert(new PuzFileMetadata(file.getName(), puzzleLoader.getHeaderChecksum()));
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to load puzzle file " + file.getName(), e);
-                corruptFiles.add(file);
+        for (PuzzleScanner.Result result : results) {
+            if (result.error != null) {
+                Log.e(TAG, "Failed to load puzzle file " + result.file.getName(), result.error);
+                corruptFiles.add(result.file);
+                continue;
             }
-            progressBar.setProgress(i + 1);
+            puzzles.add(newPuzzle(result));
+            metadata.add(newMetadata(result));
+            searchEntries.add(newSearchEntry(result));
         }
 
-        // Delete DB rows for puzzles that were in the DB but not on disk.
-        currentFiles.removeAll(foundFiles);
-        Log.i(TAG, "Removing " + currentFiles.size() + " files from DB");
-        List<Puzzle> toBeDeleted = new ArrayList<>();
-        for (String missingFile : currentFiles) {
-            toBeDeleted.add(new Puzzle(missingFile));
+        synchronized (this) {
+            database.runInTransaction(() -> {
+                if (cancelled.get()) {
+                    throw new CancellationException();
+                }
+                for (List<Puzzle> batch : Lists.partition(puzzles, INSERT_BATCH_SIZE)) {
+                    database.puzzleDao().insertAll(batch);
+                }
+                for (List<PuzFileMetadata> batch : Lists.partition(metadata,
+                        INSERT_BATCH_SIZE)) {
+                    database.puzFileMetadataDao().insertAll(batch);
+                }
+
+                // Delete DB rows for puzzles that are no longer on disk.
+                List<Puzzle> toBeDeleted =
+                        findDeletedPuzzles(context, database.puzzleDao().getFiles());
+                Log.i(TAG, "Removing " + toBeDeleted.size() + " files from DB");
+                database.puzzleDao().deletePuzzles(toBeDeleted);
+
+                // Rebuild the search index for every file that was read.
+                List<String> staleSearchEntries = new ArrayList<>(files.length);
+                for (File file : files) {
+                    staleSearchEntries.add(file.getName());
+                }
+                for (Puzzle puzzle : toBeDeleted) {
+                    staleSearchEntries.add(puzzle.filename);
+                }
+                deleteSearchEntries(database, staleSearchEntries);
+                insertSearchEntries(database, searchEntries);
+            });
         }
-        database.puzzleDao().deletePuzzles(toBeDeleted);
+        long writtenNanos = System.nanoTime();
+        Log.i(TAG, String.format(Locale.US, "Reindexed %d files: scan %d ms, write %d ms",
+                files.length, (scannedNanos - startNanos) / 1000000,
+                (writtenNanos - scannedNanos) / 1000000));
         return corruptFiles;
     }
 
+    private static Puzzle newPuzzle(PuzzleScanner.Result result) {
+        PuzHeader header = result.header;
+        return new Puzzle(result.file.getName(), header.getTitle(), header.getAuthor(),
+                header.getCopyright(), header.isSolved(), false, !header.isEmpty(),
+                header.getScrambleState(), false);
+    }
+
+    private static PuzFileMetadata newMetadata(PuzzleScanner.Result result) {
+        return new PuzFileMetadata(result.file.getName(), result.header.getHeaderChecksum(),
+                result.fingerprint.fileSize, result.fingerprint.lastModified,
+                result.header.getContentFingerprint());
+    }
+
+    private static PuzzleSearchEntry newSearchEntry(PuzzleScanner.Result result) {
+        PuzHeader header = result.header;
+        return PuzzleSearchEntry.create(result.file.getName(), header.getTitle(),
+                header.getAuthor(), header.getNote(), header.getClueTexts());
+    }
+
+    private static void deleteSearchEntries(Database database, List<String> filenames) {
+        List<Long> rowIds = new ArrayList<>(filenames.size());
+        for (String filename : filenames) {
+            rowIds.add(PuzzleSearchEntry.getRowId(filename));
+        }
+        for (List<Long> batch : Lists.partition(rowIds, SearchRanker.MAX_BIND_ARGS)) {
+            database.searchDao().deleteAll(batch);
+        }
+    }
+
+    private static void insertSearchEntries(Database database, List<PuzzleSearchEntry> entries) {
+        for (List<PuzzleSearchEntry> batch : Lists.partition(entries, INSERT_BATCH_SIZE)) {
+            database.searchDao().insertAll(batch);
+        }
+    }
+
+    /**
+     * Returns rows for the given files that are not on disk. The directory is checked again rather
+     * than relying on an earlier listing, which may predate an import.
+     */
+    private static List<Puzzle> findDeletedPuzzles(Context context, List<String> filenames) {
+        List<Puzzle> deleted = new ArrayList<>();
+        for (String filename : filenames) {
+            if (!IOUtil.getPuzzleFile(context, filename).exists()) {
+                deleted.add(new Puzzle(filename));
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Searches titles, authors, notes and clues across the library.
+     *
+     * <p>Every word of the query must match the start of a word in the puzzle. Matches are ranked
+     * in memory (see {@link SearchRanker}), and only the top results are read in full.
+     *
+     * @return up to limit results, best first
+     */
+    public List<SearchResult> search(Context context, String query, int limit) {
+        String matchQuery = SearchRanker.toMatchQuery(query);
+        if (matchQuery == null) {
+            return Collections.emptyList();
+        }
+        Database database = Database.getInstance(context.getApplicationContext());
+        long startNanos = System.nanoTime();
+
+        // Keep the best matches in a min-heap of bounded size.
+        List<SearchDao.Match> matches = database.searchDao().match(matchQuery);
+        PriorityQueue<ScoredMatch> best = new PriorityQueue<>(Math.max(1, limit),
+                (a, b) -> Double.compare(a.score.score, b.score.score));
+        for (SearchDao.Match match : matches) {
+            best.add(new ScoredMatch(match.rowid, SearchRanker.score(match.matchInfo)));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        Map<Long, SearchRanker.Score> scores = new HashMap<>();
+        for (ScoredMatch match : best) {
+            scores.put(match.rowId, match.score);
+        }
+
+        List<SearchResult> results = new ArrayList<>(scores.size());
+        for (List<Long> batch : Lists.partition(new ArrayList<>(scores.keySet()),
+                SearchRanker.MAX_BIND_ARGS)) {
+            for (SearchDao.Hit hit : database.searchDao().getHits(matchQuery, batch)) {
+                SearchRanker.Score score = scores.get(hit.rowid);
+                results.add(new SearchResult(hit.filename, hit.title, hit.author, hit.snippet,
+                        score.bestField, score.score));
+            }
+        }
+        Collections.sort(results, (a, b) -> Double.compare(b.score, a.score));
+        Log.i(TAG, String.format(Locale.US, "Search: %d matches in %d ms", matches.size(),
+                (System.nanoTime() - startNanos) / 1000000));
+        return results;
+    }
+
+    private static final class ScoredMatch {
+        final long rowId;
+        final SearchRanker.Score score;
+
+        ScoredMatch(long rowId, SearchRanker.Score score) {
+            this.rowId = rowId;
+            this.score = score;
+        }
+    }
+
+    /** Deletes a puzzle file along with its database rows. */
+    public synchronized void deletePuzzle(Context context, String filename) {
+        if (!IOUtil.getPuzzleFile(context, filename).delete()) {
+            Log.w(TAG, "deletePuzzle: failed to delete " + filename);
+        }
+        Database database = Database.getInstance(context.getApplicationContext());
+        database.runInTransaction(() -> {
+            database.puzzleDao().deletePuzzle(new Puzzle(filename));
+            deleteSearchEntries(database, Collections.singletonList(filename));
+        });
+    }
+
     /** Deletes files from the puzzle directory. Returns true if successful. */
     public synchronized boolean deleteFiles(List<File> files) {
         boolean success = true;
@@ -0,0 +1,179 @@
+package io.github.leffinger.crossyourheart.io;
+
+import com.google.common.io.Files;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Applies in-place patches to a puzzle file without giving up crash safety.
+ *
+ * <p>Patches are first written to a journal file next to the puzzle file and synced to disk. Only
+ * then are they written into the puzzle file itself, after which the journal is deleted. If the
+ * process dies while the puzzle file is being patched, the journal is still intact and {@link
+ * #readFile(File)} finishes the job the next time the file is read. If the process dies while the
+ * journal is being written, the journal fails its checksum and is discarded, leaving the puzzle
+ * file as it was before the save started.
+ *
+ * <p>Saves and reads of the same file, e.g. by the puzzle being solved and a background scan of
+ * the library, are serialized on a per-file lock (see {@link #getLock(File)}), so that a reader
+ * never replays a journal that a save is still applying, or reads a half-patched file.
+ */
+final class PuzzleFileJournal {
+    static final String JOURNAL_SUFFIX = ".jnl";
+    private static final int MAGIC = 0x4A4E4C31;  // "JNL1"
+    // One lock per puzzle file, keyed by absolute path. Never removed; there is one entry per file
+    // that has been read or saved, which is bounded by the size of the library.
+    private static final ConcurrentHashMap<String, Object> sLocks = new ConcurrentHashMap<>();
+
+    private PuzzleFileJournal() {
+    }
+
+    static File getJournalFile(File file) {
+        return new File(file.getAbsolutePath() + JOURNAL_SUFFIX);
+    }
+
+    /** Returns the lock that guards the file and its journal. */
+    static Object getLock(File file) {
+        String path = file.getAbsolutePath();
+        Object lock = sLocks.get(path);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = sLocks.putIfAbsent(path, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Durably applies the patches to the file.
+     *
+     * @return number of bytes written to the puzzle file (not counting the journal)
+     */
+    static long applyPatches(File file, List<Patch> patches) throws IOException {
+        if (patches.isEmpty()) {
+            return 0;
+        }
+        File journalFile = getJournalFile(file);
+        synchronized (getLock(file)) {
+            try (FileOutputStream outputStream = new FileOutputStream(journalFile)) {
+                outputStream.write(encode(patches));
+                outputStream.getFD().sync();
+            }
+            long bytesWritten = writePatches(file, patches);
+            if (!journalFile.delete()) {
+                throw new IOException("Failed to delete journal " + journalFile);
+            }
+            return bytesWritten;
+        }
+    }
+
+    /** Reads the whole puzzle file, first finishing any save that was interrupted. */
+    static byte[] readFile(File file) throws IOException {
+        synchronized (getLock(file)) {
+            replay(file);
+            return Files.toByteArray(file);
+        }
+    }
+
+    /** Finishes applying any patches left behind by an interrupted save. */
+    private static void replay(File file) throws IOException {
+        File journalFile = getJournalFile(file);
+        if (!journalFile.exists()) {
+            return;
+        }
+        List<Patch> patches = decode(Files.toByteArray(journalFile));
+        if (patches != null) {
+            writePatches(file, patches);
+        }
+        if (!journalFile.delete()) {
+            throw new IOException("Failed to delete journal " + journalFile);
+        }
+    }
+
+    private static long writePatches(File file, List<Patch> patches) throws IOException {
+        long bytesWritten = 0;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            for (Patch patch : patches) {
+                ByteBuffer buffer = ByteBuffer.wrap(patch.data);
+                long position = patch.offset;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                bytesWritten += patch.data.length;
+            }
+            channel.force(false);
+        }
+        return bytesWritten;
+    }
+
+    private static byte[] encode(List<Patch> patches) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(patches.size());
+        for (Patch patch : patches) {
+            dataOutputStream.writeLong(patch.offset);
+            dataOutputStream.writeInt(patch.data.length);
+            dataOutputStream.write(patch.data);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(byteArrayOutputStream.toByteArray());
+        dataOutputStream.writeLong(crc.getValue());
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /** Returns the journaled patches, or null if the journal is incomplete or corrupt. */
+    private static List<Patch> decode(byte[] journal) throws IOException {
+        if (journal.length < 16) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(journal, 0, journal.length - 8);
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(journal));
+        if (dataInputStream.readInt() != MAGIC) {
+            return null;
+        }
+        dataInputStream.skipBytes(journal.length - 12);
+        if (dataInputStream.readLong() != crc.getValue()) {
+            return null;
+        }
+
+        dataInputStream = new DataInputStream(new ByteArrayInputStream(journal, 4, journal.length));
+        int count = dataInputStream.readInt();
+        List<Patch> patches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long offset = dataInputStream.readLong();
+            byte[] data = new byte[dataInputStream.readInt()];
+            dataInputStream.readFully(data);
+            patches.add(new Patch(offset, data));
+        }
+        return patches;
+    }
+
+    /** A run of bytes to be written at a fixed offset in the file. */
+    static final class Patch {
+        final long offset;
+        final byte[] data;
+
+        Patch(long offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.leffinger.crossyourheart.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the grid and text tiers of many puzzle files on a bounded pool of worker threads. Used
+ * when rebuilding or reconciling the index, where parsing dominates and the files are independent
+ * of each other.
+ */
+public class PuzzleScanner {
+
+    /** Receives progress updates while files are being scanned. */
+    public interface ProgressListener {
+        /**
+         * Called once per file, from whichever worker thread finished it. Calls may overlap and
+         * may arrive out of order, but each value of {@code done} is reported exactly once.
+         */
+        void onProgress(int done, int total);
+    }
+
+    /** The outcome of scanning one file: either a header or the error that prevented reading it. */
+    public static final class Result {
+        public final File file;
+        /** Taken just before the file was read, so a later write shows up as a change. */
+        public final IndexDiff.Fingerprint fingerprint;
+        public final PuzHeader header;
+        public final IOException error;
+
+        Result(File file, IndexDiff.Fingerprint fingerprint, PuzHeader header,
+               IOException error) {
+            this.file = file;
+            this.fingerprint = fingerprint;
+            this.header = header;
+            this.error = error;
+        }
+    }
+
+    /** Uses one worker per core, up to a small limit; beyond that the disk is the bottleneck. */
+    public static int getDefaultParallelism() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Scans the given files and returns one result per file, in the same order.
+     *
+     * @param parallelism number of worker threads
+     * @param listener    progress callback; may be null
+     * @param cancelled   checked before each file is read; once set, remaining files are skipped
+     * @throws CancellationException if the scan was cancelled before it finished
+     */
+    public static List<Result> scan(List<File> files, int parallelism, ProgressListener listener,
+                                    AtomicBoolean cancelled) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        AtomicInteger done = new AtomicInteger();
+        try {
+            List<Future<Result>> futures = new ArrayList<>(files.size());
+            for (File file : files) {
+                futures.add(executor.submit(() -> {
+                    if (cancelled.get()) {
+                        throw new CancellationException();
+                    }
+                    Result result = scanFile(file);
+                    if (listener != null) {
+                        listener.onProgress(done.incrementAndGet(), files.size());
+                    }
+                    return result;
+                }));
+            }
+
+            List<Result> results = new ArrayList<>(files.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        throw (CancellationException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted");
+                }
+            }
+            if (cancelled.get()) {
+                throw new CancellationException();
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result scanFile(File file) {
+        IndexDiff.Fingerprint fingerprint = IndexDiff.Fingerprint.of(file);
+        try {
+            PuzHeader header = PuzHeader.readPuzzleFile(file, true, true);
+            return new Result(file, fingerprint, header, null);
+        } catch (IOException e) {
+            return new Result(file, fingerprint, null, e);
+        } catch (RuntimeException e) {
+            // Garbage in the header can surface as, e.g., a negative array size.
+            return new Result(file, fingerprint, null,
+                    new IOException("Failed to read " + file.getName(), e));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.leffinger.crossyourheart.io;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Maps cell offsets to strings, for the few cells of a grid that hold a rebus. Keys are kept
+ * sorted in a primitive array, so lookups don't allocate.
+ *
+ * <p>The arrays are copied on write and published through a volatile field, so the autosave
+ * thread can read them while the UI thread changes cells. Writes are rare (only when a rebus is
+ * entered or cleared) and the arrays small, so the copies are cheap.
+ */
+final class SparseStringArray implements Serializable {
+    private static final Snapshot EMPTY = new Snapshot(new int[0], new String[0]);
+
+    private volatile Snapshot mSnapshot = EMPTY;
+
+    /** Returns the value for the key, or null if there is none. */
+    String get(int key) {
+        return mSnapshot.get(key);
+    }
+
+    /**
+     * Returns the current contents, which later calls to {@link #put} don't change. Use this to
+     * read many keys consistently from another thread.
+     */
+    Snapshot snapshot() {
+        return mSnapshot;
+    }
+
+    /** Sets the value for the key. A null value removes the key. */
+    synchronized void put(int key, String value) {
+        Snapshot snapshot = mSnapshot;
+        int[] keys = snapshot.mKeys;
+        String[] values = snapshot.mValues;
+        int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            if (value == null) {
+                int[] newKeys = new int[keys.length - 1];
+                String[] newValues = new String[keys.length - 1];
+                System.arraycopy(keys, 0, newKeys, 0, i);
+                System.arraycopy(values, 0, newValues, 0, i);
+                System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+                System.arraycopy(values, i + 1, newValues, i, keys.length - i - 1);
+                mSnapshot = new Snapshot(newKeys, newValues);
+            } else if (!value.equals(values[i])) {
+                String[] newValues = values.clone();
+                newValues[i] = value;
+                mSnapshot = new Snapshot(keys, newValues);
+            }
+            return;
+        }
+        if (value == null) {
+            return;
+        }
+
+        i = ~i;
+        int[] newKeys = new int[keys.length + 1];
+        String[] newValues = new String[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, i);
+        System.arraycopy(values, 0, newValues, 0, i);
+        newKeys[i] = key;
+        newValues[i] = value;
+        System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+        System.arraycopy(values, i, newValues, i + 1, keys.length - i);
+        mSnapshot = new Snapshot(newKeys, newValues);
+    }
+
+    int size() {
+        return mSnapshot.mKeys.length;
+    }
+
+    /** Immutable contents of the array at one point in time. */
+    static final class Snapshot implements Serializable {
+        private final int[] mKeys;
+        private final String[] mValues;
+
+        private Snapshot(int[] keys, String[] values) {
+            mKeys = keys;
+            mValues = values;
+        }
+
+        /** Returns the value for the key, or null if there is none. */
+        String get(int key) {
+            if (mKeys.length == 0) {
+                return null;
+            }
+            int i = Arrays.binarySearch(mKeys, key);
+            return i >= 0 ? mValues[i] : null;
+        }
+    }
+}
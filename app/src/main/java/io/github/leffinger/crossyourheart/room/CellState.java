@@ -0,0 +1,30 @@
+package io.github.leffinger.crossyourheart.room;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+
+import io.github.leffinger.crossyourheart.io.PackedCellState;
+
+/**
+ * Cell state that cannot be stored in the puzzle file itself, such as pencil marks, for a whole
+ * puzzle in one row. {@link #state} is encoded by {@link PackedCellState}.
+ */
+@Entity(primaryKeys = {"filename"}, foreignKeys = {
+        @ForeignKey(entity = Puzzle.class, parentColumns = {"filename"},
+                    childColumns = {"filename"}, onDelete = ForeignKey.CASCADE)})
+public class CellState {
+    @ColumnInfo
+    public @NonNull
+    String filename;
+
+    @ColumnInfo
+    public @NonNull
+    byte[] state;
+
+    public CellState(@NonNull String filename, @NonNull byte[] state) {
+        this.filename = filename;
+        this.state = state;
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.leffinger.crossyourheart.room;
+
+import android.util.Log;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.io.IOException;
+
+import io.github.leffinger.crossyourheart.io.PackedCellState;
+
+@Dao
+public interface CellStateDao {
+
+    /** Returns the encoded state of every cell in the puzzle, or null if none was saved. */
+    @Query("SELECT state FROM cellstate WHERE filename = :filename")
+    byte[] getState(String filename);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(CellState cellState);
+
+    /** Returns the decoded state of the puzzle, or null if none was saved or it is unreadable. */
+    default PackedCellState getCellState(String filename) {
+        byte[] bytes = getState(filename);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return PackedCellState.fromBytes(bytes);
+        } catch (IOException e) {
+            Log.e("CellStateDao", "Discarding unreadable cell state for " + filename, e);
+            return null;
+        }
+    }
+}
@@ -1,23 +1,187 @@
 package io.github.leffinger.crossyourheart.room;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
+import androidx.annotation.NonNull;
 import androidx.room.AutoMigration;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
 
-@androidx.room.Database(entities = {Puzzle.class, Cell.class, PuzFileMetadata.class}, version = 2,
-                        autoMigrations = {@AutoMigration(from = 1, to = 2)})
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.leffinger.crossyourheart.AppExecutors;
+import io.github.leffinger.crossyourheart.io.PackedCellState;
+
+@androidx.room.Database(entities = {Puzzle.class, CellState.class, PuzFileMetadata.class,
+                                    PuzzleSearchEntry.class}, version = 7,
+                        autoMigrations = {@AutoMigration(from = 1, to = 2),
+                                          @AutoMigration(from = 2, to = 3),
+                                          @AutoMigration(from = 3, to = 4)})
 public abstract class Database extends RoomDatabase {
     public final static String DB_NAME = "puzzles2";
 
-    public static Database getInstance(Context applicationContext) {
-        return Room.databaseBuilder(applicationContext, Database.class, DB_NAME).build();
+    /**
+     * Adds the search index. It starts out empty, so the stored fingerprints are cleared; the
+     * next reconciliation then re-reads every file and fills it in.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `PuzzleSearchEntry` USING " +
+                    "FTS4(`filename` TEXT NOT NULL, `title` TEXT, `author` TEXT, `notes` TEXT, " +
+                    "`clues` TEXT, notindexed=`filename`)");
+            database.execSQL("UPDATE `PuzFileMetadata` SET `fileSize` = -1");
+        }
+    };
+
+    /**
+     * Replaces the Cell table, which had one row per cell, with one {@link CellState} row per
+     * puzzle. Only pencil marks were ever stored there, so only cells marked in pencil are
+     * carried over. Grid widths are not known here; each puzzle is laid out by the largest row and
+     * column it has, and resized to the real grid when it is next loaded.
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `CellState` (`filename` TEXT NOT NULL, " +
+                    "`state` BLOB NOT NULL, PRIMARY KEY(`filename`), FOREIGN KEY(`filename`) " +
+                    "REFERENCES `Puzzle`(`filename`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+
+            Map<String, List<int[]>> pencilCells = new LinkedHashMap<>();
+            try (Cursor cursor = database.query(
+                    "SELECT `filename`, `row`, `col` FROM `Cell` WHERE `pencil` != 0")) {
+                while (cursor.moveToNext()) {
+                    List<int[]> cells = pencilCells.get(cursor.getString(0));
+                    if (cells == null) {
+                        cells = new ArrayList<>();
+                        pencilCells.put(cursor.getString(0), cells);
+                    }
+                    cells.add(new int[]{cursor.getInt(1), cursor.getInt(2)});
+                }
+            }
+            for (Map.Entry<String, List<int[]>> entry : pencilCells.entrySet()) {
+                int height = 0;
+                int width = 0;
+                for (int[] cell : entry.getValue()) {
+                    height = Math.max(height, cell[0] + 1);
+                    width = Math.max(width, cell[1] + 1);
+                }
+                PackedCellState state = new PackedCellState(width, height, false);
+                for (int[] cell : entry.getValue()) {
+                    state.set(PackedCellState.PENCIL, cell[0] * width + cell[1], true);
+                }
+                ContentValues values = new ContentValues();
+                values.put("filename", entry.getKey());
+                values.put("state", state.toBytes());
+                database.insert("CellState", SQLiteDatabase.CONFLICT_REPLACE, values);
+            }
+            database.execSQL("DROP TABLE `Cell`");
+        }
+    };
+
+    /**
+     * Adds content fingerprints, which replace the title, author and header checksum for finding
+     * duplicates. Like {@link #MIGRATION_4_5}, this clears the stored file sizes so that the next
+     * reconciliation re-reads every file and fills them in.
+     */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `PuzFileMetadata` ADD COLUMN `contentFingerprint` " +
+                    "INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE INDEX IF NOT EXISTS " +
+                    "`index_PuzFileMetadata_contentFingerprint` ON `PuzFileMetadata` " +
+                    "(`contentFingerprint`)");
+            database.execSQL("UPDATE `PuzFileMetadata` SET `fileSize` = -1");
+        }
+    };
+
+    private static Database sInstance;
+
+    private DatabaseStats mStats = new DatabaseStats();
+    private volatile PuzzleDao mPuzzleDao;
+    private volatile CellStateDao mCellStateDao;
+    private volatile PuzFileMetadataDao mPuzFileMetadataDao;
+    private volatile SearchDao mSearchDao;
+
+    /**
+     * Returns the app's database, opening it on first use. It stays open for the life of the
+     * process, so callers must not close it.
+     */
+    public static synchronized Database getInstance(Context context) {
+        if (sInstance == null) {
+            DatabaseStats stats = new DatabaseStats();
+            sInstance = builder(context, DB_NAME, stats).build();
+            sInstance.mStats = stats;
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns a builder configured like the app's database: migrations, write-ahead logging,
+     * the shared executors, and timing of the first open into {@code stats}.
+     */
+    public static Builder<Database> builder(Context context, String name, DatabaseStats stats) {
+        AppExecutors executors = AppExecutors.getInstance();
+        return Room.databaseBuilder(context.getApplicationContext(), Database.class, name)
+                   .addMigrations(MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7)
+                   .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                   .setQueryExecutor(executors.databaseQueries())
+                   .setTransactionExecutor(executors.databaseTransactions())
+                   .openHelperFactory(new TimedOpenHelperFactory(
+                           new FrameworkSQLiteOpenHelperFactory(), stats));
+    }
+
+    /** Open time and per-method DAO latency since the database was opened. */
+    public DatabaseStats getStats() {
+        return mStats;
+    }
+
+    public PuzzleDao puzzleDao() {
+        if (mPuzzleDao == null) {
+            mPuzzleDao = mStats.wrap(PuzzleDao.class, createPuzzleDao());
+        }
+        return mPuzzleDao;
     }
 
-    public abstract PuzzleDao puzzleDao();
+    public CellStateDao cellStateDao() {
+        if (mCellStateDao == null) {
+            mCellStateDao = mStats.wrap(CellStateDao.class, createCellStateDao());
+        }
+        return mCellStateDao;
+    }
+
+    public PuzFileMetadataDao puzFileMetadataDao() {
+        if (mPuzFileMetadataDao == null) {
+            mPuzFileMetadataDao =
+                    mStats.wrap(PuzFileMetadataDao.class, createPuzFileMetadataDao());
+        }
+        return mPuzFileMetadataDao;
+    }
+
+    public SearchDao searchDao() {
+        if (mSearchDao == null) {
+            mSearchDao = mStats.wrap(SearchDao.class, createSearchDao());
+        }
+        return mSearchDao;
+    }
+
+    // Implemented by Room. Callers get the timed wrappers above.
+
+    protected abstract PuzzleDao createPuzzleDao();
+
+    protected abstract CellStateDao createCellStateDao();
 
-    public abstract CellDao cellDao();
+    protected abstract PuzFileMetadataDao createPuzFileMetadataDao();
 
-    public abstract PuzFileMetadataDao puzFileMetadataDao();
+    protected abstract SearchDao createSearchDao();
 }
@@ -0,0 +1,145 @@
+package io.github.leffinger.crossyourheart.room;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How long the database took to open, and how long each DAO method takes. DAOs are timed by
+ * wrapping them with {@link #wrap}; every call through the wrapper is recorded under
+ * "Dao.method", overloads together.
+ *
+ * <p>Thread-safe.
+ */
+public class DatabaseStats {
+    private final ConcurrentHashMap<String, Timer> mTimers = new ConcurrentHashMap<>();
+    private volatile long mOpenNanos = -1;
+
+    public void recordOpen(long nanos) {
+        mOpenNanos = nanos;
+    }
+
+    /** Returns how long opening (and creating or migrating) the database took, or -1. */
+    public long getOpenMillis() {
+        return mOpenNanos < 0 ? -1 : mOpenNanos / 1_000_000;
+    }
+
+    public void record(String name, long nanos) {
+        getTimer(name).record(nanos);
+    }
+
+    /**
+     * Returns a DAO that forwards every call to {@code dao} and records how long it took.
+     * Exceptions are passed through unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T wrap(Class<T> daoClass, T dao) {
+        ConcurrentHashMap<Method, Timer> timers = new ConcurrentHashMap<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return invoke(method, dao, args);
+            }
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                timer = getTimer(daoClass.getSimpleName() + "." + method.getName());
+                timers.put(method, timer);
+            }
+            long start = System.nanoTime();
+            try {
+                return invoke(method, dao, args);
+            } finally {
+                timer.record(System.nanoTime() - start);
+            }
+        };
+        return (T) Proxy.newProxyInstance(daoClass.getClassLoader(), new Class<?>[]{daoClass},
+                handler);
+    }
+
+    /** Returns the methods that have been called, most total time first. */
+    public List<MethodStats> getMethodStats() {
+        List<MethodStats> stats = new ArrayList<>();
+        for (Timer timer : mTimers.values()) {
+            stats.add(timer.snapshot());
+        }
+        Collections.sort(stats, (a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("open=").append(getOpenMillis()).append("ms");
+        for (MethodStats stats : getMethodStats()) {
+            builder.append("\n  ").append(stats);
+        }
+        return builder.toString();
+    }
+
+    private Timer getTimer(String name) {
+        Timer timer = mTimers.get(name);
+        if (timer == null) {
+            Timer newTimer = new Timer(name);
+            timer = mTimers.putIfAbsent(name, newTimer);
+            if (timer == null) {
+                timer = newTimer;
+            }
+        }
+        return timer;
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class Timer {
+        private final String mName;
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        Timer(String name) {
+            mName = name;
+        }
+
+        synchronized void record(long nanos) {
+            mCount++;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+        }
+
+        synchronized MethodStats snapshot() {
+            return new MethodStats(mName, mCount, mTotalNanos, mMaxNanos);
+        }
+    }
+
+    /** Calls to one DAO method. */
+    public final static class MethodStats {
+        public final String name;
+        public final long count;
+        public final long totalNanos;
+        public final long maxNanos;
+
+        public MethodStats(String name, long count, long totalNanos, long maxNanos) {
+            this.name = name;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: calls=%d mean=%.2fms max=%.2fms total=%.1fms",
+                    name, count, count == 0 ? 0 : totalNanos / 1e6 / count, maxNanos / 1e6,
+                    totalNanos / 1e6);
+        }
+    }
+}
@@ -4,11 +4,12 @@ import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.ForeignKey;
+import androidx.room.Index;
 
 /**
  * Metadata specific to PUZ format.
  */
-@Entity(primaryKeys = {"filename"}, foreignKeys = {
+@Entity(primaryKeys = {"filename"}, indices = {@Index("contentFingerprint")}, foreignKeys = {
         @ForeignKey(entity = Puzzle.class, parentColumns = {"filename"},
                     childColumns = {"filename"}, onDelete = ForeignKey.CASCADE)})
 public class PuzFileMetadata {
@@ -19,8 +20,27 @@ public class PuzFileMetadata {
     @ColumnInfo
     public int headerChecksum;
 
-    public PuzFileMetadata(@NonNull String filename, int headerChecksum) {
+    /** Size of the file when it was last indexed, or 0 if unknown. */
+    @ColumnInfo(defaultValue = "0")
+    public long fileSize;
+
+    /** Modification time of the file when it was last indexed, or 0 if unknown. */
+    @ColumnInfo(defaultValue = "0")
+    public long lastModified;
+
+    /**
+     * Identifies the puzzle for finding duplicates, or 0 if not known yet (see {@link
+     * io.github.leffinger.crossyourheart.io.ContentFingerprint}).
+     */
+    @ColumnInfo(defaultValue = "0")
+    public long contentFingerprint;
+
+    public PuzFileMetadata(@NonNull String filename, int headerChecksum, long fileSize,
+                           long lastModified, long contentFingerprint) {
         this.filename = filename;
         this.headerChecksum = headerChecksum;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.contentFingerprint = contentFingerprint;
     }
 }
@@ -3,9 +3,31 @@ package io.github.leffinger.crossyourheart.room;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
 
 @Dao
 public interface PuzFileMetadataDao {
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     void insert(PuzFileMetadata puzFileMetadata);
+
+    /** Inserts or replaces metadata, e.g. to refresh the fingerprints of re-indexed files. */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<PuzFileMetadata> puzFileMetadata);
+
+    /**
+     * Returns the fingerprint of every indexed puzzle. Puzzles without metadata get a size of -1,
+     * which never matches a file on disk.
+     */
+    @Query("SELECT p.filename, IFNULL(m.fileSize, -1) AS fileSize, " +
+                   "IFNULL(m.lastModified, -1) AS lastModified FROM puzzle p LEFT JOIN " +
+                   "puzfilemetadata m ON p.filename = m.filename")
+    List<Fingerprint> getFingerprints();
+
+    class Fingerprint {
+        public String filename;
+        public long fileSize;
+        public long lastModified;
+    }
 }
@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import java.io.Serializable;
@@ -11,7 +12,13 @@ import java.io.Serializable;
 import io.github.leffinger.crossyourheart.R;
 import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile.ScrambleState;
 
-@Entity
+/**
+ * One row per puzzle file. The indices back the sorts and filters in {@link PuzzleQuery}; each
+ * ends with filename so that keyset pagination can walk them in order.
+ */
+@Entity(indices = {@Index({"title", "filename"}), @Index({"author", "filename"}),
+                   @Index({"solved", "filename"}), @Index({"opened", "filename"}),
+                   @Index({"scrambleState", "filename"})})
 public class Puzzle implements Serializable {
     @PrimaryKey
     public @NonNull
@@ -5,28 +5,43 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import java.util.List;
 
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile.ScrambleState;
+
 @Dao
 public interface PuzzleDao {
     @Query("SELECT * FROM puzzle ORDER BY filename DESC")
     List<Puzzle> getAll();
 
-    @Query("SELECT * FROM puzzle ORDER BY filename DESC LIMIT :n")
-    List<Puzzle> getFirstN(int n);
-
     @Query("SELECT filename FROM puzzle")
     List<String> getFiles();
 
-    @Query("SELECT * FROM puzzle p JOIN puzfilemetadata m ON p.filename = m.filename WHERE title " +
-                   "= :title AND author = :author AND headerChecksum = :headerChecksum")
-    List<Puzzle> getMatchingPuzFiles(String title, String author, int headerChecksum);
+    @Query("SELECT COUNT(*) FROM puzzle")
+    int count();
+
+    @Query("SELECT * FROM puzzle WHERE filename = :filename")
+    Puzzle getPuzzle(String filename);
+
+    /** Runs a query built by {@link PuzzleQuery}. */
+    @RawQuery
+    List<Puzzle> getPage(SupportSQLiteQuery query);
+
+    /** Returns puzzles with the given content fingerprint, i.e. copies of the same puzzle. */
+    @Query("SELECT p.* FROM puzzle p JOIN puzfilemetadata m ON p.filename = m.filename WHERE " +
+                   "m.contentFingerprint = :contentFingerprint")
+    List<Puzzle> getMatchingPuzFiles(long contentFingerprint);
 
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     void insert(Puzzle puzzle);
 
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertAll(List<Puzzle> puzzles);
+
     @Update(entity = Puzzle.class)
     void updateSolved(SolvedUpdate solvedUpdate);
 
@@ -39,6 +54,9 @@ public interface PuzzleDao {
     @Update(entity = Puzzle.class)
     void updateDownsOnlyMode(DownsOnlyModeUpdate downsOnlyModeUpdate);
 
+    @Update(entity = Puzzle.class)
+    void updateFileContents(List<FileContentsUpdate> fileContentsUpdates);
+
     @Delete
     void deletePuzzles(List<Puzzle> puzzles);
 
@@ -84,4 +102,24 @@ public interface PuzzleDao {
             this.downsOnlyMode = downsOnlyMode;
         }
     }
+
+    /** Columns that are derived from the puzzle file itself. */
+    class FileContentsUpdate {
+        String filename;
+        String title;
+        String author;
+        String copyright;
+        boolean solved;
+        ScrambleState scrambleState;
+
+        public FileContentsUpdate(String filename, String title, String author, String copyright,
+                                  boolean solved, ScrambleState scrambleState) {
+            this.filename = filename;
+            this.title = title;
+            this.author = author;
+            this.copyright = copyright;
+            this.solved = solved;
+            this.scrambleState = scrambleState;
+        }
+    }
 }
@@ -0,0 +1,171 @@
+package io.github.leffinger.crossyourheart.room;
+
+import java.util.List;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile.ScrambleState;
+
+/**
+ * A sorted, filtered view of the puzzle library, read a page at a time.
+ *
+ * <p>Pages use keyset pagination: each page starts after the sort key of the last row of the
+ * previous page, rather than at an OFFSET, so reading page n costs the same as reading page 1.
+ * Filename breaks ties, which makes every key unique. The filters and sort columns are covered by
+ * indices on {@link Puzzle}.
+ */
+public class PuzzleQuery {
+    public enum Sort {
+        /** Most recently imported first; filenames start with the import date. */
+        NEWEST(null, "filename DESC"),
+        TITLE("title", "title ASC, filename ASC"),
+        AUTHOR("author", "author ASC, filename ASC");
+
+        private final String mColumn;
+        private final String mOrderBy;
+
+        Sort(String column, String orderBy) {
+            mColumn = column;
+            mOrderBy = orderBy;
+        }
+    }
+
+    private final Sort mSort;
+    private final Boolean mSolved;
+    private final Boolean mOpened;
+    private final String mAuthor;
+    private final ScrambleState mScrambleState;
+
+    private PuzzleQuery(Builder builder) {
+        mSort = builder.mSort;
+        mSolved = builder.mSolved;
+        mOpened = builder.mOpened;
+        mAuthor = builder.mAuthor;
+        mScrambleState = builder.mScrambleState;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Sort getSort() {
+        return mSort;
+    }
+
+    /** Returns the key of a row, to pass as the start of the next page. */
+    public Key keyOf(String filename, String title, String author) {
+        switch (mSort) {
+        case TITLE:
+            return new Key(title, filename);
+        case AUTHOR:
+            return new Key(author, filename);
+        default:
+            return new Key(null, filename);
+        }
+    }
+
+    /**
+     * Builds the SQL for one page.
+     *
+     * @param after key of the last row of the previous page, or null for the first page
+     * @param limit maximum number of rows
+     * @param args  receives the bind arguments, in order
+     */
+    public String toSql(Key after, int limit, List<Object> args) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM puzzle WHERE 1");
+        if (mSolved != null) {
+            sql.append(" AND solved = ?");
+            args.add(mSolved ? 1 : 0);
+        }
+        if (mOpened != null) {
+            sql.append(" AND opened = ?");
+            args.add(mOpened ? 1 : 0);
+        }
+        if (mAuthor != null) {
+            sql.append(" AND author = ?");
+            args.add(mAuthor);
+        }
+        if (mScrambleState != null) {
+            sql.append(" AND scrambleState = ?");
+            args.add(mScrambleState.name());
+        }
+        if (after != null) {
+            appendKeyset(sql, after, args);
+        }
+        sql.append(" ORDER BY ").append(mSort.mOrderBy).append(" LIMIT ?");
+        args.add(limit);
+        return sql.toString();
+    }
+
+    private void appendKeyset(StringBuilder sql, Key after, List<Object> args) {
+        String column = mSort.mColumn;
+        if (column == null) {
+            sql.append(" AND filename < ?");
+            args.add(after.filename);
+        } else if (after.sortValue == null) {
+            // NULLs sort first, so everything non-NULL comes after them.
+            sql.append(" AND (").append(column).append(" IS NOT NULL OR (").append(column)
+               .append(" IS NULL AND filename > ?))");
+            args.add(after.filename);
+        } else {
+            sql.append(" AND (").append(column).append(" > ? OR (").append(column)
+               .append(" = ? AND filename > ?))");
+            args.add(after.sortValue);
+            args.add(after.sortValue);
+            args.add(after.filename);
+        }
+    }
+
+    /** Position of a row in the sort order. */
+    public static final class Key {
+        final String sortValue;
+        final String filename;
+
+        Key(String sortValue, String filename) {
+            this.sortValue = sortValue;
+            this.filename = filename;
+        }
+    }
+
+    public static final class Builder {
+        private Sort mSort = Sort.NEWEST;
+        private Boolean mSolved;
+        private Boolean mOpened;
+        private String mAuthor;
+        private ScrambleState mScrambleState;
+
+        private Builder() {
+        }
+
+        public Builder setSort(Sort sort) {
+            mSort = sort;
+            return this;
+        }
+
+        /** Only puzzles whose solved flag matches; null (the default) for all. */
+        public Builder setSolved(Boolean solved) {
+            mSolved = solved;
+            return this;
+        }
+
+        /** Only puzzles whose opened flag matches; null (the default) for all. */
+        public Builder setOpened(Boolean opened) {
+            mOpened = opened;
+            return this;
+        }
+
+        /** Only puzzles by exactly this author; null (the default) for all. */
+        public Builder setAuthor(String author) {
+            mAuthor = author;
+            return this;
+        }
+
+        /** Only puzzles in this scramble state; null (the default) for all. */
+        public Builder setScrambleState(ScrambleState scrambleState) {
+            mScrambleState = scrambleState;
+            return this;
+        }
+
+        public PuzzleQuery build() {
+            return new PuzzleQuery(this);
+        }
+    }
+}
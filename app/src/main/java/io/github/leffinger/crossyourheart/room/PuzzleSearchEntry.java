@@ -0,0 +1,66 @@
+package io.github.leffinger.crossyourheart.room;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.PrimaryKey;
+
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Full-text search row for one puzzle: its title, author, note and all of its clues. FTS tables
+ * can't have foreign keys or secondary indices, so the rowid is derived from the filename, which
+ * lets a puzzle's row be found without scanning the table.
+ */
+@Fts4(notIndexed = {"filename"})
+@Entity
+public class PuzzleSearchEntry {
+    /** Clue texts are stored in a single column, one per line. */
+    public static final String CLUE_SEPARATOR = "\n";
+
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public long rowId;
+
+    @ColumnInfo
+    public @NonNull
+    String filename;
+
+    @ColumnInfo
+    public String title;
+
+    @ColumnInfo
+    public String author;
+
+    @ColumnInfo
+    public String notes;
+
+    @ColumnInfo
+    public String clues;
+
+    public PuzzleSearchEntry(long rowId, @NonNull String filename, String title, String author,
+                             String notes, String clues) {
+        this.rowId = rowId;
+        this.filename = filename;
+        this.title = title;
+        this.author = author;
+        this.notes = notes;
+        this.clues = clues;
+    }
+
+    public static PuzzleSearchEntry create(@NonNull String filename, String title, String author,
+                                           String notes, String[] clues) {
+        return new PuzzleSearchEntry(getRowId(filename), filename, title, author, notes,
+                Joiner.on(CLUE_SEPARATOR).join(clues));
+    }
+
+    /** Stable, positive rowid for a filename. */
+    public static long getRowId(String filename) {
+        return Hashing.murmur3_128().hashString(filename, StandardCharsets.UTF_8).asLong() &
+                Long.MAX_VALUE;
+    }
+}
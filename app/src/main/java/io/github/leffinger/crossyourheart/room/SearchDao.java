@@ -0,0 +1,42 @@
+package io.github.leffinger.crossyourheart.room;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface SearchDao {
+    @Insert
+    void insertAll(List<PuzzleSearchEntry> entries);
+
+    /** At most {@link SearchRanker#MAX_BIND_ARGS} rowids per call. */
+    @Query("DELETE FROM PuzzleSearchEntry WHERE rowid IN (:rowIds)")
+    void deleteAll(List<Long> rowIds);
+
+    /** First pass of a search: every match, with just enough to rank it. */
+    @Query("SELECT rowid, matchinfo(PuzzleSearchEntry, 'pcnx') AS matchInfo FROM " +
+                   "PuzzleSearchEntry WHERE PuzzleSearchEntry MATCH :query")
+    List<Match> match(String query);
+
+    /** Second pass of a search: display columns for the top-ranked rows. */
+    @Query("SELECT rowid, filename, title, author, snippet(PuzzleSearchEntry, '[', ']', " +
+                   "'...', -1, 12) AS snippet FROM PuzzleSearchEntry WHERE " +
+                   "PuzzleSearchEntry MATCH :query AND rowid IN (:rowIds)")
+    List<Hit> getHits(String query, List<Long> rowIds);
+
+    class Match {
+        public long rowid;
+        public byte[] matchInfo;
+    }
+
+    class Hit {
+        public long rowid;
+        public String filename;
+        public String title;
+        public String author;
+        /** The best-matching passage, with matched terms in square brackets. */
+        public String snippet;
+    }
+}
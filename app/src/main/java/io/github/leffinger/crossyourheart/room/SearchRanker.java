@@ -0,0 +1,121 @@
+package io.github.leffinger.crossyourheart.room;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns user input into an FTS query and ranks the matches.
+ *
+ * <p>FTS4 has no built-in ranking, so each match carries its {@code matchinfo(..., 'pcnx')} blob
+ * and is scored here: for every query term and column, the term's frequency in the row, weighted
+ * by column and by how rare the term is across the library (a BM25-style IDF, without length
+ * normalization).
+ */
+public class SearchRanker {
+    /** Stay well below SQLite's limit on bound parameters per statement. */
+    public static final int MAX_BIND_ARGS = 500;
+
+    /** Searchable columns of {@link PuzzleSearchEntry}, by their position in the FTS table. */
+    public enum Field {
+        TITLE(1, 4.0),
+        AUTHOR(2, 2.0),
+        NOTES(3, 1.0),
+        CLUES(4, 1.0);
+
+        final int mColumn;
+        final double mWeight;
+
+        Field(int column, double weight) {
+            mColumn = column;
+            mWeight = weight;
+        }
+
+        static Field forColumn(int column) {
+            for (Field field : values()) {
+                if (field.mColumn == column) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    /**
+     * Converts free text into an FTS query: every word must appear, as a prefix of some token.
+     * Anything that could be FTS syntax is dropped, so the result is always a valid query.
+     *
+     * @return the query, or null if the input has no words
+     */
+    public static String toMatchQuery(String input) {
+        Matcher matcher = TOKEN.matcher(input);
+        List<String> terms = new ArrayList<>();
+        while (matcher.find()) {
+            terms.add(matcher.group().toLowerCase(Locale.US) + "*");
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String term : terms) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(term);
+        }
+        return query.toString();
+    }
+
+    /** Score of one match, and the field that contributed most to it. */
+    public static final class Score {
+        public final double score;
+        public final Field bestField;
+
+        Score(double score, Field bestField) {
+            this.score = score;
+            this.bestField = bestField;
+        }
+    }
+
+    /** Scores a match from its {@code matchinfo(..., 'pcnx')} blob. */
+    public static Score score(byte[] matchInfo) {
+        // The blob is an array of 32-bit unsigned integers in native byte order.
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int numPhrases = buffer.getInt(0);
+        int numColumns = buffer.getInt(4);
+        long numRows = buffer.getInt(8) & 0xffffffffL;
+        double[] columnScores = new double[numColumns];
+        for (int phrase = 0; phrase < numPhrases; phrase++) {
+            for (int column = 0; column < numColumns; column++) {
+                Field field = Field.forColumn(column);
+                if (field == null) {
+                    continue;
+                }
+                int offset = 12 + 12 * (phrase * numColumns + column);
+                int hitsThisRow = buffer.getInt(offset);
+                int rowsWithHits = buffer.getInt(offset + 8);
+                if (hitsThisRow == 0) {
+                    continue;
+                }
+                double idf = Math.log((numRows - rowsWithHits + 0.5) / (rowsWithHits + 0.5) + 1);
+                columnScores[column] += field.mWeight * hitsThisRow * idf;
+            }
+        }
+        double score = 0;
+        int bestColumn = -1;
+        for (int column = 0; column < numColumns; column++) {
+            score += columnScores[column];
+            if (columnScores[column] > 0 &&
+                    (bestColumn < 0 || columnScores[column] > columnScores[bestColumn])) {
+                bestColumn = column;
+            }
+        }
+        return new Score(score, Field.forColumn(bestColumn));
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.leffinger.crossyourheart.room;
+
+/** One puzzle that matched a library search. */
+public class SearchResult {
+    public final String filename;
+    public final String title;
+    public final String author;
+    /** The best-matching passage, with matched terms in square brackets. */
+    public final String snippet;
+    /** The field that contributed most to the score, e.g. a clue or the title. */
+    public final SearchRanker.Field matchedField;
+    public final double score;
+
+    public SearchResult(String filename, String title, String author, String snippet,
+                        SearchRanker.Field matchedField, double score) {
+        this.filename = filename;
+        this.title = title;
+        this.author = author;
+        this.snippet = snippet;
+        this.matchedField = matchedField;
+        this.score = score;
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.leffinger.crossyourheart.room;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+
+/**
+ * Wraps another open helper factory to time the first open of the database, which includes
+ * creating or migrating it and Room's schema validation.
+ */
+class TimedOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+    private static final String TAG = "TimedOpenHelperFactory";
+
+    private final SupportSQLiteOpenHelper.Factory mDelegate;
+    private final DatabaseStats mStats;
+
+    TimedOpenHelperFactory(SupportSQLiteOpenHelper.Factory delegate, DatabaseStats stats) {
+        mDelegate = delegate;
+        mStats = stats;
+    }
+
+    @NonNull
+    @Override
+    public SupportSQLiteOpenHelper create(
+            @NonNull SupportSQLiteOpenHelper.Configuration configuration) {
+        return new TimedOpenHelper(mDelegate.create(configuration));
+    }
+
+    private class TimedOpenHelper implements SupportSQLiteOpenHelper {
+        private final SupportSQLiteOpenHelper mDelegate;
+        private volatile boolean mOpened;
+
+        TimedOpenHelper(SupportSQLiteOpenHelper delegate) {
+            mDelegate = delegate;
+        }
+
+        @Nullable
+        @Override
+        public String getDatabaseName() {
+            return mDelegate.getDatabaseName();
+        }
+
+        @Override
+        public void setWriteAheadLoggingEnabled(boolean enabled) {
+            mDelegate.setWriteAheadLoggingEnabled(enabled);
+        }
+
+        @NonNull
+        @Override
+        public SupportSQLiteDatabase getWritableDatabase() {
+            if (mOpened) {
+                return mDelegate.getWritableDatabase();
+            }
+            synchronized (this) {
+                long start = System.nanoTime();
+                SupportSQLiteDatabase database = mDelegate.getWritableDatabase();
+                recordOpen(start);
+                return database;
+            }
+        }
+
+        @NonNull
+        @Override
+        public SupportSQLiteDatabase getReadableDatabase() {
+            if (mOpened) {
+                return mDelegate.getReadableDatabase();
+            }
+            synchronized (this) {
+                long start = System.nanoTime();
+                SupportSQLiteDatabase database = mDelegate.getReadableDatabase();
+                recordOpen(start);
+                return database;
+            }
+        }
+
+        @Override
+        public void close() {
+            mDelegate.close();
+        }
+
+        private void recordOpen(long start) {
+            if (!mOpened) {
+                mOpened = true;
+                mStats.recordOpen(System.nanoTime() - start);
+                Log.i(TAG, "Opened " + getDatabaseName() + " in " + mStats.getOpenMillis() + "ms");
+            }
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package io.github.leffinger.crossyourheart.viewmodels;
 
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.Observer;
+
+import io.github.leffinger.crossyourheart.io.PackedCellState;
 
 public class CellViewModel {
     private static final String TAG = "CellViewModel";
@@ -16,9 +16,11 @@ public class CellViewModel {
     private final MutableLiveData<Boolean> mMarkedCorrect;
     private final MutableLiveData<Boolean> mRevealed;
     private final MutableLiveData<Boolean> mPencil;
-    private final MediatorLiveData<Boolean> mHighlighted;
-    private final MediatorLiveData<Boolean> mSelected;
-    private final MediatorLiveData<Boolean> mReferenced;
+    // Selection state is pushed in by the PuzzleViewModel's GridSelection, and only when it
+    // changes.
+    private final MutableLiveData<Boolean> mHighlighted;
+    private final MutableLiveData<Boolean> mSelected;
+    private final MutableLiveData<Boolean> mReferenced;
     private int mClueNumber;  // if this is the first cell in one or both directions
     private ClueViewModel mAcrossClue;
     private ClueViewModel mDownClue;
@@ -29,9 +31,11 @@ public class CellViewModel {
      * @param col             column for this cell (0-indexed)
      * @param contents        initial contents of the cell
      * @param isCircled       whether the cell should be circled
+     * @param savedState      saved marks for the whole puzzle, laid out like the grid; may be
+     *                        null
      */
     public CellViewModel(PuzzleViewModel puzzleViewModel, int row, int col, String contents,
-                         boolean isCircled) {
+                         boolean isCircled, PackedCellState savedState) {
         mPuzzleViewModel = puzzleViewModel;
         mRow = row;
         mCol = col;
@@ -40,48 +44,18 @@ public class CellViewModel {
         mClueNumber = 0;
 
         mContents = new MutableLiveData<>(contents);
-        mSelected = new MediatorLiveData<>();
-        mMarkedIncorrect = new MutableLiveData<>(false);
-        mMarkedCorrect = new MutableLiveData<>(false);
-        mRevealed = new MutableLiveData<>(false);
-        mPencil = new MutableLiveData<>(false);
-        mHighlighted = new MediatorLiveData<>();
-        mReferenced = new MediatorLiveData<>();
-
-        // Set up LiveData observer for whether this cell is currently selected.
-        mSelected.addSource(mPuzzleViewModel.getCurrentCell(),
-                            selectedCell -> mSelected.setValue(selectedCell == this));
-
-        // Set up LiveData observers for whether this cell should be highlighted (is part of the
-        // current clue).
-        Observer<Object> observer = o -> {
-            if (mPuzzleViewModel.getAcrossFocus().getValue()) {
-                mHighlighted
-                        .setValue(getAcrossClue() == mPuzzleViewModel.getCurrentClue().getValue());
-            } else {
-                mHighlighted
-                        .setValue(getDownClue() == mPuzzleViewModel.getCurrentClue().getValue());
-            }
-        };
-        mHighlighted.addSource(mPuzzleViewModel.getAcrossFocus(), observer);
-        mHighlighted.addSource(mPuzzleViewModel.getCurrentClue(), observer);
-    }
-
-    private void arrangeReferencedLiveData() {
-        if (mAcrossClue == null || mDownClue == null) {
-            return;
-        }
-
-        // Set up LiveData observers for whether this cell is referenced by the current clue.
-        Observer<Object> observer = o -> {
-            Boolean acrossReferenced = mAcrossClue.isReferenced().getValue();
-            boolean acrossReferencedUnboxed = acrossReferenced == null ? false : acrossReferenced;
-            Boolean downReferenced = mDownClue.isReferenced().getValue();
-            boolean downReferencedUnboxed = downReferenced == null ? false : downReferenced;
-            mReferenced.setValue(acrossReferencedUnboxed || downReferencedUnboxed);
-        };
-        mReferenced.addSource(mAcrossClue.isReferenced(), observer);
-        mReferenced.addSource(mDownClue.isReferenced(), observer);
+        mSelected = new MutableLiveData<>(false);
+        int offset = puzzleViewModel.getOffset(row, col);
+        mMarkedIncorrect = new MutableLiveData<>(savedState != null &&
+                savedState.get(PackedCellState.MARKED_INCORRECT, offset));
+        mMarkedCorrect = new MutableLiveData<>(savedState != null &&
+                savedState.get(PackedCellState.MARKED_CORRECT, offset));
+        mRevealed = new MutableLiveData<>(
+                savedState != null && savedState.get(PackedCellState.REVEALED, offset));
+        mPencil = new MutableLiveData<>(
+                savedState != null && savedState.get(PackedCellState.PENCIL, offset));
+        mHighlighted = new MutableLiveData<>(false);
+        mReferenced = new MutableLiveData<>(false);
     }
 
     public int getRow() {
@@ -108,7 +82,6 @@ public class CellViewModel {
 
     public void setAcrossClue(ClueViewModel acrossClue) {
         mAcrossClue = acrossClue;
-        arrangeReferencedLiveData();
     }
 
     public ClueViewModel getDownClue() {
@@ -117,7 +90,6 @@ public class CellViewModel {
 
     public void setDownClue(ClueViewModel downClue) {
         mDownClue = downClue;
-        arrangeReferencedLiveData();
     }
 
     public LiveData<String> getContents() {
@@ -135,7 +107,7 @@ public class CellViewModel {
         mRevealed.setValue(false);
 
         // this triggers updates, e.g. autocheck, so do it last
-        mContents.setValue(newContents);
+        setContentsValue(newContents);
         return oldContents;
     }
 
@@ -171,7 +143,7 @@ public class CellViewModel {
             mMarkedIncorrect.setValue(true);
         }
         String solution = mPuzzleViewModel.getSolution(mRow, mCol);
-        mContents.setValue(solution);
+        setContentsValue(solution);
         mRevealed.setValue(true);
     }
 
@@ -185,8 +157,52 @@ public class CellViewModel {
 
     public LiveData<Boolean> getReferenced() { return mReferenced; }
 
+    /**
+     * Returns the marks that are saved outside the puzzle file, with bit
+     * {@code 1 << PackedCellState.PENCIL} set if the cell is in pencil, and so on.
+     */
+    public int getMarks() {
+        int marks = 0;
+        if (mPencil.getValue()) {
+            marks |= 1 << PackedCellState.PENCIL;
+        }
+        if (mRevealed.getValue()) {
+            marks |= 1 << PackedCellState.REVEALED;
+        }
+        if (mMarkedCorrect.getValue()) {
+            marks |= 1 << PackedCellState.MARKED_CORRECT;
+        }
+        if (mMarkedIncorrect.getValue()) {
+            marks |= 1 << PackedCellState.MARKED_INCORRECT;
+        }
+        return marks;
+    }
+
+    /**
+     * Applies a new selection state.
+     *
+     * @param state some combination of {@link GridSelection#SELECTED},
+     *              {@link GridSelection#HIGHLIGHTED} and {@link GridSelection#REFERENCED}
+     */
+    void setSelectionState(int state) {
+        setIfChanged(mSelected, (state & GridSelection.SELECTED) != 0);
+        setIfChanged(mHighlighted, (state & GridSelection.HIGHLIGHTED) != 0);
+        setIfChanged(mReferenced, (state & GridSelection.REFERENCED) != 0);
+    }
+
+    private void setContentsValue(String contents) {
+        mContents.setValue(contents);
+        mPuzzleViewModel.onContentsChanged(this);
+    }
+
+    private static void setIfChanged(MutableLiveData<Boolean> liveData, boolean value) {
+        if (liveData.getValue() != value) {
+            liveData.setValue(value);
+        }
+    }
+
     public void reset() {
-        mContents.setValue("");
+        setContentsValue("");
         mMarkedCorrect.setValue(false);
         mMarkedIncorrect.setValue(false);
         mRevealed.setValue(false);
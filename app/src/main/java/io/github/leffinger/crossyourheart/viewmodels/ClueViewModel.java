@@ -1,7 +1,7 @@
 package io.github.leffinger.crossyourheart.viewmodels;
 
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,21 +14,22 @@ public class ClueViewModel {
     private final boolean mAcross;
     private final int mNumber;  // actual clue number
     private final String mText;
+    private final int mClueIndex;  // index within all clues, as in the puzzle file
     private int mIndex;  // index within across or down clues
     private final List<CellViewModel> mCells = new ArrayList<>();
-    private final List<ClueViewModel> mReferences = new ArrayList<>();
-    private final MediatorLiveData<Boolean> mIsReferenced;
+    private final MutableLiveData<Boolean> mIsReferenced = new MutableLiveData<>(false);
     private ClueViewModel mNextClue;
     private ClueViewModel mPreviousClue;
 
-    public ClueViewModel(PuzzleViewModel puzzleViewModel, boolean across, int number, String text) {
+    public ClueViewModel(int clueIndex, boolean across, int number, String text) {
+        mClueIndex = clueIndex;
         mAcross = across;
         mNumber = number;
         mText = text;
+    }
 
-        mIsReferenced = new MediatorLiveData<>();
-        mIsReferenced.addSource(puzzleViewModel.getCurrentClue(), currentClue -> mIsReferenced
-                .setValue(mReferences.contains(currentClue)));
+    public int getClueIndex() {
+        return mClueIndex;
     }
 
     public boolean isAcross() {
@@ -87,14 +88,14 @@ public class ClueViewModel {
         mCells.add(cellViewModel);
     }
 
-    public void addReference(ClueViewModel otherClue) {
-        mReferences.add(otherClue);
-    }
-
     public LiveData<Boolean> isReferenced() {
         return mIsReferenced;
     }
 
+    void setReferenced(boolean referenced) {
+        mIsReferenced.setValue(referenced);
+    }
+
     @Override
     public String toString() {
         return "ClueViewModel{" + "mAcross=" + mAcross + ", mNumber=" + mNumber + '}';
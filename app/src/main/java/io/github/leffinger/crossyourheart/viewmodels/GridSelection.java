@@ -0,0 +1,240 @@
+package io.github.leffinger.crossyourheart.viewmodels;
+
+import io.github.leffinger.crossyourheart.io.ClueReferences;
+
+/**
+ * Selection and highlight state for the whole grid.
+ *
+ * <p>Each cell is selected (it is the current cell), highlighted (it is part of the current clue)
+ * or referenced (it is part of a clue that the current clue mentions, e.g. "see 15-Across"), in
+ * any combination. When the selection moves, only the cells that could have changed are
+ * examined: the old and new current cells, the cells of the old and new current clues, and the
+ * cells of the clues that either of them references. Listeners hear only about cells and clues
+ * whose state actually changed, so the cost of a move depends on the length of the clues involved
+ * and not on the size of the grid.
+ *
+ * <p>Cells are identified by their offset in the grid ({@code row * width + col}) and clues by
+ * their index in the puzzle file. Not thread-safe; call from the main thread.
+ */
+public class GridSelection {
+    public static final int SELECTED = 1;
+    public static final int HIGHLIGHTED = 1 << 1;
+    public static final int REFERENCED = 1 << 2;
+
+    private static final int[] NO_CELLS = new int[0];
+
+    /** Receives the cells and clues whose state changed. */
+    public interface Listener {
+        /** @param state some combination of SELECTED, HIGHLIGHTED and REFERENCED */
+        void onCellStateChanged(int cell, int state);
+
+        void onClueReferencedChanged(int clue, boolean referenced);
+    }
+
+    private final int[] mAcrossClue;
+    private final int[] mDownClue;
+    private final int[][] mClueCells;
+    private final int[][] mReferencedClues;
+    private final byte[] mCellState;
+    private final boolean[] mClueReferenced;
+    private final Listener mListener;
+
+    private int mCell = -1;
+    private int mClue = -1;
+
+    // Work done by the most recent call to select().
+    private int mLastVisited;
+    private int mLastDispatched;
+
+    /**
+     * @param acrossClue     for each cell, the index of its across clue, or -1
+     * @param downClue       for each cell, the index of its down clue, or -1
+     * @param clueReferences which clues mention which other clues
+     * @param listener       receives changes
+     */
+    public GridSelection(int[] acrossClue, int[] downClue, ClueReferences clueReferences,
+                         Listener listener) {
+        if (acrossClue.length != downClue.length) {
+            throw new IllegalArgumentException("acrossClue and downClue must have the same length");
+        }
+        mAcrossClue = acrossClue;
+        mDownClue = downClue;
+        mListener = listener;
+        int numClues = clueReferences.size();
+        mCellState = new byte[acrossClue.length];
+        mClueReferenced = new boolean[numClues];
+
+        // Invert the cell -> clue mapping. Cells are visited in offset order, which is also the
+        // order of the cells within each clue.
+        int[] clueLengths = new int[numClues];
+        for (int cell = 0; cell < acrossClue.length; cell++) {
+            if (acrossClue[cell] >= 0) {
+                clueLengths[acrossClue[cell]]++;
+            }
+            if (downClue[cell] >= 0) {
+                clueLengths[downClue[cell]]++;
+            }
+        }
+        mClueCells = new int[numClues][];
+        for (int clue = 0; clue < numClues; clue++) {
+            mClueCells[clue] = clueLengths[clue] == 0 ? NO_CELLS : new int[clueLengths[clue]];
+            clueLengths[clue] = 0;
+        }
+        for (int cell = 0; cell < acrossClue.length; cell++) {
+            if (acrossClue[cell] >= 0) {
+                mClueCells[acrossClue[cell]][clueLengths[acrossClue[cell]]++] = cell;
+            }
+            if (downClue[cell] >= 0) {
+                mClueCells[downClue[cell]][clueLengths[downClue[cell]]++] = cell;
+            }
+        }
+
+        mReferencedClues = new int[numClues][];
+        for (int clue = 0; clue < numClues; clue++) {
+            mReferencedClues[clue] = clueReferences.getReferences(clue);
+        }
+    }
+
+    public int getCell() {
+        return mCell;
+    }
+
+    public int getClue() {
+        return mClue;
+    }
+
+    /** Returns the cells of a clue, in reading order. */
+    public int[] getClueCells(int clue) {
+        return mClueCells[clue];
+    }
+
+    public int getCellState(int cell) {
+        return mCellState[cell];
+    }
+
+    public boolean isClueReferenced(int clue) {
+        return mClueReferenced[clue];
+    }
+
+    /** Number of cells examined by the most recent call to {@link #select}. */
+    public int getLastVisited() {
+        return mLastVisited;
+    }
+
+    /** Number of cell and clue changes reported by the most recent call to {@link #select}. */
+    public int getLastDispatched() {
+        return mLastDispatched;
+    }
+
+    /**
+     * Moves the selection.
+     *
+     * @param cell the current cell, or -1 for none
+     * @param clue the current clue, or -1 for none
+     */
+    public void select(int cell, int clue) {
+        mLastVisited = 0;
+        mLastDispatched = 0;
+        int oldCell = mCell;
+        int oldClue = mClue;
+        if (cell == oldCell && clue == oldClue) {
+            return;
+        }
+        mCell = cell;
+        mClue = clue;
+
+        if (clue != oldClue) {
+            // Clear the old references first, so that clues referenced by both the old and the
+            // new clue end up set, and then report the clues that actually changed.
+            if (oldClue >= 0) {
+                for (int referenced : mReferencedClues[oldClue]) {
+                    mClueReferenced[referenced] = false;
+                }
+            }
+            if (clue >= 0) {
+                for (int referenced : mReferencedClues[clue]) {
+                    mClueReferenced[referenced] = true;
+                }
+            }
+            if (oldClue >= 0) {
+                for (int referenced : mReferencedClues[oldClue]) {
+                    if (!mClueReferenced[referenced]) {
+                        dispatchClue(referenced, false);
+                    }
+                }
+            }
+            if (clue >= 0) {
+                for (int referenced : mReferencedClues[clue]) {
+                    if (!contains(oldClue >= 0 ? mReferencedClues[oldClue] : null, referenced)) {
+                        dispatchClue(referenced, true);
+                    }
+                }
+            }
+        }
+
+        update(oldCell);
+        update(cell);
+        if (clue != oldClue) {
+            updateClue(oldClue);
+            updateClue(clue);
+        }
+    }
+
+    private void updateClue(int clue) {
+        if (clue < 0) {
+            return;
+        }
+        updateAll(mClueCells[clue]);
+        for (int referenced : mReferencedClues[clue]) {
+            updateAll(mClueCells[referenced]);
+        }
+    }
+
+    private void updateAll(int[] cells) {
+        for (int cell : cells) {
+            update(cell);
+        }
+    }
+
+    /** Recomputes the state of one cell and reports it if it changed. */
+    private void update(int cell) {
+        if (cell < 0) {
+            return;
+        }
+        mLastVisited++;
+        int across = mAcrossClue[cell];
+        int down = mDownClue[cell];
+        int state = 0;
+        if (cell == mCell) {
+            state |= SELECTED;
+        }
+        if (mClue >= 0 && (across == mClue || down == mClue)) {
+            state |= HIGHLIGHTED;
+        }
+        if ((across >= 0 && mClueReferenced[across]) || (down >= 0 && mClueReferenced[down])) {
+            state |= REFERENCED;
+        }
+        if (state != mCellState[cell]) {
+            mCellState[cell] = (byte) state;
+            mLastDispatched++;
+            mListener.onCellStateChanged(cell, state);
+        }
+    }
+
+    private void dispatchClue(int clue, boolean referenced) {
+        mLastDispatched++;
+        mListener.onClueReferencedChanged(clue, referenced);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        if (values == null) {
+            return false;
+        }
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.leffinger.crossyourheart.viewmodels;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Wall time of each stage of opening a puzzle, from reading the file to the first interactive
+ * grid. Stages run one after another, possibly on different threads; each one ends where the next
+ * begins.
+ */
+public class PuzzleLoadTimings {
+    /** Reading and parsing the puzzle file and its saved state. Background thread. */
+    public static final String PARSE = "parse";
+    /** Building the cell and clue view models. Background thread. */
+    public static final String BUILD = "build";
+    /** Connecting the view models to each other. UI thread. */
+    public static final String WIRE = "wire";
+    /** Binding the grid to the view models. UI thread. */
+    public static final String BIND = "bind";
+
+    private final String mName;
+    private final Clock mClock;
+    private final long mStartNanos;
+
+    // All guarded by "this".
+    private long mLastNanos;
+    private final List<String> mStages = new ArrayList<>();
+    private final List<Long> mStageNanos = new ArrayList<>();
+
+    /** Starts timing now. */
+    public PuzzleLoadTimings(String name) {
+        this(name, System::nanoTime);
+    }
+
+    public PuzzleLoadTimings(String name, Clock clock) {
+        mName = name;
+        mClock = clock;
+        mStartNanos = clock.nanoTime();
+        mLastNanos = mStartNanos;
+    }
+
+    /** Records that a stage has finished; it started when the previous one finished. */
+    public synchronized void endStage(String stage) {
+        long now = mClock.nanoTime();
+        mStages.add(stage);
+        mStageNanos.add(now - mLastNanos);
+        mLastNanos = now;
+    }
+
+    /** Returns the duration of a finished stage, or -1 if it has not finished. */
+    public synchronized long getStageMillis(String stage) {
+        int index = mStages.indexOf(stage);
+        return index < 0 ? -1 : mStageNanos.get(index) / 1_000_000;
+    }
+
+    /** Returns the time from the start to the end of the latest finished stage. */
+    public synchronized long getTotalMillis() {
+        return (mLastNanos - mStartNanos) / 1_000_000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder(mName).append(':');
+        for (int i = 0; i < mStages.size(); i++) {
+            builder.append(String.format(Locale.US, " %s=%dms", mStages.get(i),
+                    mStageNanos.get(i) / 1_000_000));
+        }
+        return builder.append(String.format(Locale.US, " total=%dms", getTotalMillis()))
+                      .toString();
+    }
+
+    /** Source of {@link System#nanoTime()}; replaceable in tests. */
+    public interface Clock {
+        long nanoTime();
+    }
+}
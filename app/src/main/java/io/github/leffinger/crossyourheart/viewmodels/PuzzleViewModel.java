@@ -1,7 +1,5 @@
 package io.github.leffinger.crossyourheart.viewmodels;
 
-import android.annotation.SuppressLint;
-import android.os.AsyncTask;
 import android.util.Log;
 
 import androidx.lifecycle.LiveData;
@@ -18,10 +16,17 @@ import java.util.List;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.github.leffinger.crossyourheart.AppExecutors;
 import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile;
+import io.github.leffinger.crossyourheart.io.AutosaveScheduler;
+import io.github.leffinger.crossyourheart.io.PackedCellState;
 
 public class PuzzleViewModel extends ViewModel {
     private static final String TAG = "PuzzleViewModel";
+    // Autosave waits for this long after the last change before writing...
+    private static final long AUTOSAVE_QUIET_PERIOD_MILLIS = 500;
+    // ...but never holds on to a change for longer than this.
+    private static final long AUTOSAVE_MAX_LATENCY_MILLIS = 3000;
     /**
      * True if the currently active clue is an Across, false if Down.
      */
@@ -39,9 +44,9 @@ public class PuzzleViewModel extends ViewModel {
      */
     private final MediatorLiveData<String> mCurrentClueText = new MediatorLiveData<>();
     /**
-     * Listens for changes to cell contents.
+     * The cell whose contents changed most recently.
      */
-    private final MediatorLiveData<CellViewModel> mContentsChanged = new MediatorLiveData<>();
+    private final MutableLiveData<CellViewModel> mContentsChanged = new MutableLiveData<>();
     /**
      * History of actions. Enables "undo" functionality.
      */
@@ -67,9 +72,17 @@ public class PuzzleViewModel extends ViewModel {
      */
     private final MutableLiveData<Boolean> mCellViewModelsReady = new MutableLiveData<>(false);
 
+    private PuzzleLoadTimings mLoadTimings;
+
     /** Ensures that initialize() is only called once. */
     private final AtomicBoolean mInitialized = new AtomicBoolean(false);
 
+    /** Writes changes to the puzzle file in the background. */
+    private final AutosaveScheduler mAutosaveScheduler =
+            new AutosaveScheduler(this::saveToFile, e -> Log.e(TAG,
+                    String.format("Saving puzzle file %s failed", mFile.getName()), e),
+                    AUTOSAVE_QUIET_PERIOD_MILLIS, AUTOSAVE_MAX_LATENCY_MILLIS);
+
     /**
      * Representation of on-disk puzzle file.
      */
@@ -88,6 +101,12 @@ public class PuzzleViewModel extends ViewModel {
 
     private float mAverageWordLength;
 
+    /**
+     * Which cells are selected, highlighted and referenced. Tells only the affected cells and
+     * clues when the selection moves.
+     */
+    private GridSelection mGridSelection;
+
     public PuzzleViewModel() {
 
     }
@@ -132,9 +151,24 @@ public class PuzzleViewModel extends ViewModel {
         return previousClue;
     }
 
-    @SuppressLint("StaticFieldLeak")
     public void initialize(AbstractPuzzleFile puzzleFile, File file, boolean startWithDownClues,
                            boolean downsOnlyMode) {
+        initialize(puzzleFile, file, startWithDownClues, downsOnlyMode, null,
+                new PuzzleLoadTimings(file.getName()));
+    }
+
+    /**
+     * Builds the view models on a background thread, then connects them on the UI thread and
+     * sets {@link #cellViewModelsReady()}.
+     *
+     * @param savedState marks saved outside the puzzle file (pencil, revealed, checked), or null.
+     *                   They are restored as each cell is created, so nothing has to be replayed
+     *                   or re-checked afterwards.
+     * @param timings    timings of the load so far; the build and wiring stages are added to it
+     */
+    public void initialize(AbstractPuzzleFile puzzleFile, File file, boolean startWithDownClues,
+                           boolean downsOnlyMode, PackedCellState savedState,
+                           PuzzleLoadTimings timings) {
         if (!mInitialized.compareAndSet(false, true)) {
             // already initialized
             return;
@@ -142,90 +176,104 @@ public class PuzzleViewModel extends ViewModel {
 
         mPuzzleFile = puzzleFile;
         mFile = file;
+        mLoadTimings = timings;
+
+        // Do as much as possible off the UI thread; only the MediatorLiveData wiring has to be
+        // done on the UI thread.
+        AppExecutors executors = AppExecutors.getInstance();
+        executors.background().execute(() -> {
+            // Construct a structure of ClueViewModels linked to CellViewModels, and vice versa.
+            ClueViewModel[] clues = new ClueViewModel[mPuzzleFile.getNumClues()];
+            for (int i = 0; i < clues.length; i++) {
+                AbstractPuzzleFile.Clue clue = mPuzzleFile.getClue(i);
+                clues[i] = new ClueViewModel(i, clue.isAcross(), clue.getNumber(),
+                        clue.getText());
+            }
 
-        // Do as much as possible off the UI thread, but some tasks (e.g. addSource) must be done
-        // on the UI thread.
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-                // Construct a structure of ClueViewModels linked to CellViewModels, and vice versa.
-                ClueViewModel[] clues = new ClueViewModel[mPuzzleFile.getNumClues()];
-                for (int i = 0; i < clues.length; i++) {
-                    AbstractPuzzleFile.Clue clue = mPuzzleFile.getClue(i);
-                    clues[i] = new ClueViewModel(PuzzleViewModel.this, clue.isAcross(),
-                            clue.getNumber(), clue.getText());
-                }
-
-                // Save clues for later retrieval.
-                mAcrossClues = new ArrayList<>();
-                mDownClues = new ArrayList<>();
-                for (ClueViewModel clue : clues) {
-                    if (clue.isAcross()) {
-                        clue.setIndex(mAcrossClues.size());
-                        mAcrossClues.add(clue);
-                    } else {
-                        clue.setIndex(mDownClues.size());
-                        mDownClues.add(clue);
-                    }
+            // Save clues for later retrieval.
+            mAcrossClues = new ArrayList<>();
+            mDownClues = new ArrayList<>();
+            for (ClueViewModel clue : clues) {
+                if (clue.isAcross()) {
+                    clue.setIndex(mAcrossClues.size());
+                    mAcrossClues.add(clue);
+                } else {
+                    clue.setIndex(mDownClues.size());
+                    mDownClues.add(clue);
                 }
+            }
 
-                mGrid = new CellViewModel[getNumRows()][getNumColumns()];
-                for (int row = 0; row < getNumRows(); row++) {
-                    for (int col = 0; col < getNumColumns(); col++) {
-                        if (mPuzzleFile.isBlack(row, col)) {
-                            continue;
-                        }
-
-                        mGrid[row][col] = new CellViewModel(PuzzleViewModel.this, row, col,
-                                mPuzzleFile.getCellContents(row, col),
-                                mPuzzleFile.isCircled(row, col));
+            PackedCellState cellState = savedState;
+            if (cellState != null && (cellState.getWidth() != getNumColumns() ||
+                    cellState.getHeight() != getNumRows())) {
+                cellState = cellState.resize(getNumColumns(), getNumRows(),
+                        cellState.hasTimestamps());
+            }
 
-                        int acrossClueIndex = mPuzzleFile.getAcrossClueIndex(row, col);
-                        if (acrossClueIndex >= 0) {
-                            mGrid[row][col].setAcrossClue(clues[acrossClueIndex]);
-                            clues[acrossClueIndex].addCell(mGrid[row][col]);
-                        }
+            mGrid = new CellViewModel[getNumRows()][getNumColumns()];
+            int[] acrossClues = new int[getNumRows() * getNumColumns()];
+            int[] downClues = new int[acrossClues.length];
+            for (int row = 0; row < getNumRows(); row++) {
+                for (int col = 0; col < getNumColumns(); col++) {
+                    int offset = getOffset(row, col);
+                    if (mPuzzleFile.isBlack(row, col)) {
+                        acrossClues[offset] = downClues[offset] = -1;
+                        continue;
+                    }
+                    int acrossClueIndex = mPuzzleFile.getAcrossClueIndex(row, col);
+                    int downClueIndex = mPuzzleFile.getDownClueIndex(row, col);
+                    acrossClues[offset] = acrossClueIndex;
+                    downClues[offset] = downClueIndex;
+
+                    mGrid[row][col] = new CellViewModel(PuzzleViewModel.this, row, col,
+                            mPuzzleFile.getCellContents(row, col),
+                            mPuzzleFile.isCircled(row, col), cellState);
+
+                    if (acrossClueIndex >= 0) {
+                        mGrid[row][col].setAcrossClue(clues[acrossClueIndex]);
+                        clues[acrossClueIndex].addCell(mGrid[row][col]);
+                    }
 
-                        int downClueIndex = mPuzzleFile.getDownClueIndex(row, col);
-                        if (downClueIndex >= 0) {
-                            mGrid[row][col].setDownClue(clues[downClueIndex]);
-                            clues[downClueIndex].addCell(mGrid[row][col]);
-                        }
+                    if (downClueIndex >= 0) {
+                        mGrid[row][col].setDownClue(clues[downClueIndex]);
+                        clues[downClueIndex].addCell(mGrid[row][col]);
                     }
                 }
+            }
 
-                // Link Clue objects in a doubly-linked circular list.
-                linkClues(clues);
+            // Link Clue objects in a doubly-linked circular list.
+            linkClues(clues);
 
-                // Compute average word length.
-                int totalLetters = 0;
-                for (ClueViewModel clue : clues) {
-                    totalLetters += clue.getCells().size();
-                }
-                mAverageWordLength = ((float) totalLetters) / clues.length;
-
-                // Adds clue references (e.g. "see 15-Across") to ClueViewModels.
-                boolean[][] clueReferences = mPuzzleFile.getClueReferences();
-                for (int i = 0; i < clues.length; i++) {
-                    for (int j = 0; j < clues.length; j++) {
-                        if (clueReferences[i][j]) {
-                            clues[j].addReference(clues[i]);
-                        }
-                    }
+            // Compute average word length.
+            int totalLetters = 0;
+            for (ClueViewModel clue : clues) {
+                totalLetters += clue.getCells().size();
+            }
+            mAverageWordLength = ((float) totalLetters) / clues.length;
+
+            // Selection state, including clue references (e.g. "see 15-Across").
+            mGridSelection = new GridSelection(acrossClues, downClues,
+                    mPuzzleFile.getClueReferenceIndex(), new GridSelection.Listener() {
+                @Override
+                public void onCellStateChanged(int cell, int state) {
+                    int width = getNumColumns();
+                    mGrid[cell / width][cell % width].setSelectionState(state);
                 }
 
-                mAcrossFocus.postValue(!startWithDownClues);
-                mIsSolved.postValue(puzzleFile.isSolved());
-                mTimerInfo.postValue(puzzleFile.getTimerInfo());
+                @Override
+                public void onClueReferencedChanged(int clue, boolean referenced) {
+                    clues[clue].setReferenced(referenced);
+                }
+            });
 
-                selectFirstCell();
+            mAcrossFocus.postValue(!startWithDownClues);
+            mIsSolved.postValue(puzzleFile.isSolved());
+            mTimerInfo.postValue(puzzleFile.getTimerInfo());
 
-                return null;
-            }
+            selectFirstCell();
+            timings.endStage(PuzzleLoadTimings.BUILD);
 
-            @SuppressLint("StaticFieldLeak")
-            @Override
-            protected void onPostExecute(Void aVoid) {
+            executors.mainThread().execute(() -> {
                 mDownsOnlyMode.setValue(downsOnlyMode);
 
                 // When across/down focus changes, or the current cell changes, update the currently
@@ -262,6 +310,10 @@ public class PuzzleViewModel extends ViewModel {
                         Log.i(TAG, String.format("Selecting clue %d-%s", newClue.getNumber(),
                                 newClue.isAcross() ? "A" : "D"));
                     }
+
+                    // Tell only the cells and clues that changed.
+                    mGridSelection.select(currentCell.getOffset(),
+                            newClue == null ? -1 : newClue.getClueIndex());
                 };
                 mCurrentClue.addSource(mAcrossFocus, observer);
                 mCurrentClue.addSource(mCurrentCell, observer);
@@ -273,9 +325,7 @@ public class PuzzleViewModel extends ViewModel {
                     if (clue == null) {
                         return;
                     }
-                    boolean downsOnlyMode = mDownsOnlyMode.getValue();
-
-                    if (clue.isAcross() && downsOnlyMode) {
+                    if (clue.isAcross() && mDownsOnlyMode.getValue()) {
                         mCurrentClueText.setValue("--");
                     } else {
                         mCurrentClueText.setValue(clue.getText());
@@ -284,25 +334,23 @@ public class PuzzleViewModel extends ViewModel {
                 mCurrentClueText.addSource(mCurrentClue, clueTextObserver);
                 mCurrentClueText.addSource(mDownsOnlyMode, clueTextObserver);
 
-                // When text changes, trigger updates.
-                for (int row = 0; row < getNumRows(); row++) {
-                    for (int col = 0; col < getNumColumns(); col++) {
-                        CellViewModel cellViewModel = mGrid[row][col];
-                        if (cellViewModel == null) {
-                            continue;
-                        }
-                        mContentsChanged.addSource(cellViewModel.getContents(), contents -> {
-                            mPuzzleFile.setCellContents(cellViewModel.getRow(),
-                                    cellViewModel.getCol(), contents);
-                            mIsSolved.setValue(mPuzzleFile.isSolved());
-                            mContentsChanged.setValue(cellViewModel);
-                        });
-                    }
-                }
-
+                timings.endStage(PuzzleLoadTimings.WIRE);
                 mCellViewModelsReady.setValue(true);
-            }
-        }.execute();
+            });
+        });
+    }
+
+    /** Timings of the current load, for the view to add its stages to. Null until initialized. */
+    public PuzzleLoadTimings getLoadTimings() {
+        return mLoadTimings;
+    }
+
+    /** Called by a cell after its contents change. */
+    void onContentsChanged(CellViewModel cellViewModel) {
+        mPuzzleFile.setCellContents(cellViewModel.getRow(), cellViewModel.getCol(),
+                cellViewModel.getContents().getValue());
+        mIsSolved.setValue(mPuzzleFile.isSolved());
+        mContentsChanged.setValue(cellViewModel);
     }
 
     public CellViewModel getCellViewModel(int row, int col) {
@@ -559,9 +607,52 @@ public class PuzzleViewModel extends ViewModel {
         }
     }
 
-    public void saveToFile() throws IOException {
+    /**
+     * Saves the puzzle synchronously. Prefer {@link #requestSave()} and {@link #flushSave()}, which
+     * write in the background.
+     *
+     * @return number of bytes written
+     */
+    public long saveToFile() throws IOException {
         mPuzzleFile.setTimerInfo(mTimerInfo.getValue());
-        mPuzzleFile.savePuzzleFile(mFile);
+        return mPuzzleFile.savePuzzleFile(mFile);
+    }
+
+    /** Schedules a background save. Bursts of requests are coalesced into a single write. */
+    public void requestSave() {
+        mAutosaveScheduler.markDirty();
+    }
+
+    /**
+     * Saves the puzzle (including the timer) in the background as soon as possible. Does not
+     * block.
+     */
+    public void flushSave() {
+        mAutosaveScheduler.markDirty();
+        mAutosaveScheduler.flush();
+    }
+
+    /** Returns true if the puzzle has changes that are not yet on their way to disk. */
+    public boolean hasUnsavedChanges() {
+        return mAutosaveScheduler.isDirty();
+    }
+
+    /** Returns true once {@link #initialize} has been called, e.g. false after process death. */
+    public boolean isInitialized() {
+        return mInitialized.get();
+    }
+
+    public AutosaveScheduler.Stats getAutosaveStats() {
+        return mAutosaveScheduler.getStats();
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        if (mInitialized.get()) {
+            mAutosaveScheduler.shutdown();
+            Log.i(TAG, "Autosave stats: " + mAutosaveScheduler.getStats());
+        }
     }
 
     public PuzzleInfoViewModel getPuzzleInfoViewModel() {
@@ -0,0 +1,147 @@
+package io.github.leffinger.crossyourheart.views;
+
+import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.leffinger.crossyourheart.R;
+
+/**
+ * Text sizes, baselines and stroke widths for drawing puzzle cells, shared by every cell of the
+ * same size. Every cell in a grid is the same size, so each value is computed once per grid rather
+ * than once per cell per draw, and looking it up again allocates nothing.
+ *
+ * <p>Grids are zoomed by scaling the canvas, not by resizing cells, so zooming never creates new
+ * entries. Use from the main thread only.
+ */
+public class CellGlyphCache {
+    // Proportions of the cell size.
+    private static final float NUMBER_SIZE = 0.3f;
+    private static final float NUMBER_PADDING = 0.05f;
+    private static final float CIRCLE_STROKE = 0.02f;
+    private static final float INCORRECT_STROKE = 0.05f;
+    private static final float LETTER_SIZE = 0.7f;
+    private static final float MAX_LETTER_WIDTH = 0.9f;
+
+    // Grids come in only a few cell sizes, e.g. one per orientation.
+    private static final int MAX_SIZES = 8;
+
+    private static CellGlyphCache sInstance;
+
+    private final Typeface mTypeface;
+    private final SparseArray<Glyphs> mGlyphs = new SparseArray<>();
+    private Glyphs mLastGlyphs;
+    private String[] mNumberStrings = new String[0];
+
+    private CellGlyphCache(Typeface typeface) {
+        mTypeface = typeface;
+    }
+
+    public static CellGlyphCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CellGlyphCache(Typeface.create(
+                    context.getResources().getString(R.string.default_font_family),
+                    Typeface.NORMAL));
+        }
+        return sInstance;
+    }
+
+    public Typeface getTypeface() {
+        return mTypeface;
+    }
+
+    /** Returns the measurements for cells that are {@code cellSize} pixels wide. */
+    public Glyphs get(int cellSize) {
+        if (mLastGlyphs != null && mLastGlyphs.mCellSize == cellSize) {
+            return mLastGlyphs;
+        }
+        Glyphs glyphs = mGlyphs.get(cellSize);
+        if (glyphs == null) {
+            if (mGlyphs.size() >= MAX_SIZES) {
+                mGlyphs.clear();
+            }
+            glyphs = new Glyphs(cellSize, mTypeface);
+            mGlyphs.put(cellSize, glyphs);
+        }
+        mLastGlyphs = glyphs;
+        return glyphs;
+    }
+
+    /** Returns the text of a clue number, creating each string only once. */
+    public String getNumberString(int number) {
+        if (number >= mNumberStrings.length) {
+            String[] numberStrings = new String[Math.max(number + 1, mNumberStrings.length * 2)];
+            System.arraycopy(mNumberStrings, 0, numberStrings, 0, mNumberStrings.length);
+            mNumberStrings = numberStrings;
+        }
+        if (mNumberStrings[number] == null) {
+            mNumberStrings[number] = String.valueOf(number);
+        }
+        return mNumberStrings[number];
+    }
+
+    /** Measurements for one cell size. */
+    public static final class Glyphs {
+        private final int mCellSize;
+        private final Paint mMeasurePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final Map<String, Float> mLetterTextSizes = new HashMap<>();
+        private final float mBaselineOffsetRatio;
+
+        private Glyphs(int cellSize, Typeface typeface) {
+            mCellSize = cellSize;
+            mMeasurePaint.setTypeface(typeface);
+
+            // Font metrics scale linearly with the text size, so one ratio centers any size.
+            mMeasurePaint.setTextSize(cellSize);
+            Paint.FontMetrics metrics = mMeasurePaint.getFontMetrics();
+            mBaselineOffsetRatio = -(metrics.ascent + metrics.descent) / 2 / cellSize;
+        }
+
+        public int getCellSize() {
+            return mCellSize;
+        }
+
+        public float getNumberTextSize() {
+            return mCellSize * NUMBER_SIZE;
+        }
+
+        public float getNumberPadding() {
+            return mCellSize * NUMBER_PADDING;
+        }
+
+        public float getCircleStrokeWidth() {
+            return mCellSize * CIRCLE_STROKE;
+        }
+
+        public float getIncorrectStrokeWidth() {
+            return mCellSize * INCORRECT_STROKE;
+        }
+
+        /**
+         * Returns the largest text size, up to a fixed proportion of the cell, at which the
+         * contents fit across the cell. Rebus entries get smaller sizes.
+         */
+        public float getLetterTextSize(String contents) {
+            Float textSize = mLetterTextSizes.get(contents);
+            if (textSize == null) {
+                textSize = mCellSize * LETTER_SIZE;
+                mMeasurePaint.setTextSize(textSize);
+                float width = mMeasurePaint.measureText(contents);
+                if (width > mCellSize * MAX_LETTER_WIDTH) {
+                    textSize *= mCellSize * MAX_LETTER_WIDTH / width;
+                }
+                mLetterTextSizes.put(contents, textSize);
+            }
+            return textSize;
+        }
+
+        /** Distance from the vertical center of a cell to the baseline of text of this size. */
+        public float getBaselineOffset(float textSize) {
+            return textSize * mBaselineOffsetRatio;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.leffinger.crossyourheart.views;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import io.github.leffinger.crossyourheart.R;
+
+/**
+ * Draws single cells onto a canvas: background, clue number, contents, circle and incorrect
+ * slash, according to {@link GridState} flags. Shared by the views that draw cells themselves
+ * instead of laying out one {@link CellView} per cell. Use from the main thread only.
+ */
+public class CellPainter {
+    private final Paint mCellPaint = new Paint();
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mNumberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mCirclePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mIncorrectPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final int mWhiteColor;
+    private final int mSelectedColor;
+    private final int mHighlightedColor;
+    private final int mReferencedColor;
+    private final int mEntryTextColor;
+    private final int mPencilTextColor;
+    private final int mMarkedCorrectTextColor;
+    private final int mRevealedTextColor;
+
+    private final CellGlyphCache mGlyphCache;
+    // Measurements for the current cell size.
+    private CellGlyphCache.Glyphs mGlyphs;
+
+    public CellPainter(Context context) {
+        Resources resources = context.getResources();
+        mWhiteColor = resources.getColor(R.color.colorWhiteSquare, null);
+        mSelectedColor = resources.getColor(R.color.colorSelectedSquare, null);
+        mHighlightedColor = resources.getColor(R.color.colorHighlightedSquare, null);
+        mReferencedColor = resources.getColor(R.color.colorReferenced, null);
+        mEntryTextColor = resources.getColor(R.color.colorEntryText, null);
+        mPencilTextColor = resources.getColor(R.color.colorEntryTextPencil, null);
+        mMarkedCorrectTextColor = resources.getColor(R.color.colorMarkedCorrect, null);
+        mRevealedTextColor = resources.getColor(R.color.colorRevealed, null);
+
+        mCellPaint.setStyle(Paint.Style.FILL);
+
+        mGlyphCache = CellGlyphCache.getInstance(context);
+        mTextPaint.setTypeface(mGlyphCache.getTypeface());
+        mTextPaint.setTextAlign(Paint.Align.CENTER);
+
+        mNumberPaint.setColor(mEntryTextColor);
+        mNumberPaint.setStyle(Paint.Style.FILL);
+        mNumberPaint.setTypeface(mGlyphCache.getTypeface());
+
+        mCirclePaint.setColor(resources.getColor(R.color.colorBlackSquare, null));
+        mCirclePaint.setStyle(Paint.Style.STROKE);
+
+        mIncorrectPaint.setColor(resources.getColor(R.color.colorIncorrectSlash, null));
+        mIncorrectPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+    }
+
+    /** Picks up the measurements for a new cell size. Call before drawing. */
+    public void setCellSize(int cellSize) {
+        if (mGlyphs != null && mGlyphs.getCellSize() == cellSize) {
+            return;
+        }
+        mGlyphs = mGlyphCache.get(cellSize);
+        mNumberPaint.setTextSize(mGlyphs.getNumberTextSize());
+        mCirclePaint.setStrokeWidth(mGlyphs.getCircleStrokeWidth());
+        mIncorrectPaint.setStrokeWidth(mGlyphs.getIncorrectStrokeWidth());
+    }
+
+    /**
+     * Draws a white cell within the given bounds, which exclude borders.
+     *
+     * @param flags    some combination of the {@link GridState} flags other than BLACK
+     * @param contents never null
+     * @param number   clue number, or 0
+     */
+    public void drawCell(Canvas canvas, RectF bounds, int flags, String contents, int number) {
+        if ((flags & GridState.SELECTED) != 0) {
+            mCellPaint.setColor(mSelectedColor);
+        } else if ((flags & GridState.HIGHLIGHTED) != 0) {
+            mCellPaint.setColor(mHighlightedColor);
+        } else if ((flags & GridState.REFERENCED) != 0) {
+            mCellPaint.setColor(mReferencedColor);
+        } else {
+            mCellPaint.setColor(mWhiteColor);
+        }
+        canvas.drawRect(bounds, mCellPaint);
+
+        if (number > 0) {
+            canvas.drawText(mGlyphCache.getNumberString(number),
+                    bounds.left + mGlyphs.getNumberPadding(),
+                    bounds.top + mGlyphs.getNumberTextSize(), mNumberPaint);
+        }
+
+        if (!contents.isEmpty()) {
+            if ((flags & GridState.REVEALED) != 0) {
+                mTextPaint.setColor(mRevealedTextColor);
+            } else if ((flags & GridState.MARKED_CORRECT) != 0) {
+                mTextPaint.setColor(mMarkedCorrectTextColor);
+            } else if ((flags & GridState.PENCIL) != 0) {
+                mTextPaint.setColor(mPencilTextColor);
+            } else {
+                mTextPaint.setColor(mEntryTextColor);
+            }
+            float textSize = mGlyphs.getLetterTextSize(contents);
+            mTextPaint.setTextSize(textSize);
+            canvas.drawText(contents, bounds.centerX(),
+                    bounds.centerY() + mGlyphs.getBaselineOffset(textSize), mTextPaint);
+        }
+
+        if ((flags & GridState.CIRCLED) != 0) {
+            float radius = bounds.width() / 2f;
+            canvas.drawCircle(bounds.centerX(), bounds.centerY(), radius, mCirclePaint);
+        }
+
+        if ((flags & GridState.MARKED_INCORRECT) != 0) {
+            canvas.drawLine(bounds.right, bounds.top, bounds.left, bounds.bottom,
+                    mIncorrectPaint);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.util.AttributeSet;
+import android.util.TypedValue;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -19,6 +20,9 @@ public class CellView extends androidx.appcompat.widget.AppCompatTextView {
     private final Paint mNumberPaint = new Paint();
     private final Paint mCirclePaint = new Paint();
     private final Paint mIncorrectPaint = new Paint();
+    private final CellGlyphCache mGlyphCache;
+    // Measurements for the current size, shared with every other cell of the same size.
+    private CellGlyphCache.Glyphs mGlyphs;
 
     private boolean mIsSelected;
     private boolean mIsCircled;
@@ -40,6 +44,8 @@ public class CellView extends androidx.appcompat.widget.AppCompatTextView {
 
         mIncorrectPaint.setColor(getResources().getColor(R.color.colorIncorrectSlash, null));
         mIncorrectPaint.setStyle(Paint.Style.FILL_AND_STROKE);
+
+        mGlyphCache = CellGlyphCache.getInstance(context);
     }
 
     public void setCellNumber(int cellNumber) {
@@ -92,6 +98,33 @@ public class CellView extends androidx.appcompat.widget.AppCompatTextView {
         super.onMeasure(widthMeasureSpec, widthMeasureSpec);
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mGlyphs = mGlyphCache.get(w);
+        mNumberPaint.setTextSize(mGlyphs.getNumberTextSize());
+        mCirclePaint.setStrokeWidth(mGlyphs.getCircleStrokeWidth());
+        mIncorrectPaint.setStrokeWidth(mGlyphs.getIncorrectStrokeWidth());
+        updateTextSize();
+    }
+
+    @Override
+    protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        super.onTextChanged(text, start, lengthBefore, lengthAfter);
+        // Also called from the TextView constructor, before any cell size is known.
+        if (mGlyphs != null) {
+            updateTextSize();
+        }
+    }
+
+    /** Sizes the entry to fit the cell, replacing TextView autosizing. */
+    private void updateTextSize() {
+        float textSize = mGlyphs.getLetterTextSize(getText().toString());
+        if (textSize != getTextSize()) {
+            setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
+        }
+    }
+
     @Override
     public void setSelected(boolean selected) {
         if (mIsSelected != selected) {
@@ -191,24 +224,23 @@ public class CellView extends androidx.appcompat.widget.AppCompatTextView {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        if (mGlyphs == null) {
+            return;
+        }
 
         int width = getWidth();
 
         if (mCellNumber > 0) {
-            float padding = width * 0.05f;
-            float height = width * 0.3f;
-            mNumberPaint.setTextSize(height);
-            canvas.drawText(String.valueOf(mCellNumber), padding, height, mNumberPaint);
+            canvas.drawText(mGlyphCache.getNumberString(mCellNumber), mGlyphs.getNumberPadding(),
+                    mGlyphs.getNumberTextSize(), mNumberPaint);
         }
 
         if (mIsCircled) {
             float radius = width / 2f;
-            mCirclePaint.setStrokeWidth(width * 0.02f);
             canvas.drawCircle(radius, radius, radius, mCirclePaint);
         }
 
         if (mIsMarkedIncorrect) {
-            mIncorrectPaint.setStrokeWidth(width * 0.05f);
             canvas.drawLine(width, 0, 0, width, mIncorrectPaint);
         }
     }
@@ -0,0 +1,151 @@
+package io.github.leffinger.crossyourheart.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.github.leffinger.crossyourheart.R;
+
+/**
+ * Draws the cells of one entry in a row, in a single View. Used by the clue list, where a nested
+ * list of data-bound {@link CellView}s per clue made binding a row expensive enough to drop frames
+ * while scrolling.
+ *
+ * <p>Cells are square and sized as if the entry had at least {@link #MIN_CELLS} cells, so that
+ * short entries are not drawn huge. The view is meant to be rebound to a different entry with
+ * {@link #setLength(int)}; the state is reused when the length does not change.
+ */
+public class EntryView extends View {
+    public static final int MIN_CELLS = 10;
+
+    private final GestureDetector mGestureDetector;
+    private final CellPainter mCellPainter;
+    private final Paint mBorderPaint = new Paint();
+    private final int mCellBorderSize;
+    private final RectF mCellBounds = new RectF();
+
+    private GridState mState = new GridState(0, 1);
+    private OnCellClickListener mOnCellClickListener;
+
+    public interface OnCellClickListener {
+        /** @param position index of the cell within the entry */
+        void onCellClick(int position);
+    }
+
+    public EntryView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        mCellBorderSize = getResources().getDimensionPixelSize(R.dimen.cell_border_size);
+        mCellPainter = new CellPainter(context);
+        mBorderPaint.setColor(getResources().getColor(R.color.colorBlackSquare, null));
+        mBorderPaint.setStyle(Paint.Style.FILL);
+
+        mGestureDetector =
+                new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(@NonNull MotionEvent e) {
+                        return getPosition(e.getX()) >= 0;
+                    }
+
+                    @Override
+                    public boolean onSingleTapUp(@NonNull MotionEvent e) {
+                        int position = getPosition(e.getX());
+                        if (position < 0) {
+                            return false;
+                        }
+                        mOnCellClickListener.onCellClick(position);
+                        return true;
+                    }
+                });
+    }
+
+    /** Empties the view and sizes it for an entry of the given length. */
+    public void setLength(int length) {
+        if (length != mState.getWidth()) {
+            mState = new GridState(length, 1);
+            requestLayout();
+        } else {
+            mState.clear();
+        }
+        invalidate();
+    }
+
+    public int getLength() {
+        return mState.getWidth();
+    }
+
+    public void setOnCellClickListener(OnCellClickListener listener) {
+        mOnCellClickListener = listener;
+    }
+
+    public void setCellFlag(int position, int flag, boolean value) {
+        if (mState.setFlag(position, flag, value)) {
+            invalidate();
+        }
+    }
+
+    public void setCellContents(int position, String contents) {
+        if (mState.setContents(position, contents)) {
+            invalidate();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return mGestureDetector.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        int height = Math.round(width / (float) getNumSlots());
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int length = mState.getWidth();
+        if (length == 0 || getWidth() == 0) {
+            return;
+        }
+        mState.clearDirty();
+        float pitch = getCellPitch();
+        mCellPainter.setCellSize(Math.round(pitch));
+
+        // Borders show through between the cells.
+        canvas.drawRect(0, 0, length * pitch, pitch, mBorderPaint);
+        for (int position = 0; position < length; position++) {
+            // Same layout as the grid: a border on the right and bottom of every cell, and on
+            // the top, plus the left of the first cell.
+            mCellBounds.set(position * pitch + (position == 0 ? mCellBorderSize : 0),
+                    mCellBorderSize, (position + 1) * pitch - mCellBorderSize,
+                    pitch - mCellBorderSize);
+            mCellPainter.drawCell(canvas, mCellBounds, mState.getFlags(position),
+                    mState.getContents(position), mState.getNumber(position));
+        }
+    }
+
+    private int getNumSlots() {
+        return Math.max(mState.getWidth(), MIN_CELLS);
+    }
+
+    private float getCellPitch() {
+        return ((float) getWidth()) / getNumSlots();
+    }
+
+    /** Returns the cell at the given x coordinate, or -1 if there is none or no listener. */
+    private int getPosition(float x) {
+        if (mOnCellClickListener == null || getWidth() == 0 || x < 0) {
+            return -1;
+        }
+        int position = (int) (x / getCellPitch());
+        return position < mState.getWidth() ? position : -1;
+    }
+}
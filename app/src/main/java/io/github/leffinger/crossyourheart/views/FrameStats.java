@@ -0,0 +1,87 @@
+package io.github.leffinger.crossyourheart.views;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Time spent per frame in one view's layout and draw passes. Keeps the most recent samples for
+ * percentiles, plus running totals since the last reset. Not thread-safe; record from the UI
+ * thread.
+ */
+public class FrameStats {
+    /** Frames that take longer than this miss a 60 Hz vsync on their own. */
+    static final long FRAME_BUDGET_NANOS = 16_666_667L;
+
+    private final String mName;
+    private final long[] mSamples;
+    private int mNext;
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private long mOverBudget;
+
+    /**
+     * @param name     identifies the renderer in {@link #toString()}
+     * @param capacity number of recent samples kept for percentiles
+     */
+    public FrameStats(String name, int capacity) {
+        mName = name;
+        mSamples = new long[capacity];
+    }
+
+    public void record(long nanos) {
+        mSamples[mNext] = nanos;
+        mNext = (mNext + 1) % mSamples.length;
+        mCount++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+        if (nanos > FRAME_BUDGET_NANOS) {
+            mOverBudget++;
+        }
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    public long getOverBudget() {
+        return mOverBudget;
+    }
+
+    /**
+     * Returns the given percentile (0-100) of the retained samples, using the nearest-rank
+     * method, or 0 if nothing has been recorded.
+     */
+    public long getPercentileNanos(int percentile) {
+        int size = (int) Math.min(mCount, mSamples.length);
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * size);
+        return sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    public void reset() {
+        mNext = 0;
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+        mOverBudget = 0;
+    }
+
+    @Override
+    public String toString() {
+        double mean = mCount == 0 ? 0 : mTotalNanos / 1e6 / mCount;
+        return String.format(Locale.US,
+                "%s: frames=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms " +
+                        "overBudget=%d", mName, mCount, mean, getPercentileNanos(50) / 1e6,
+                getPercentileNanos(90) / 1e6, getPercentileNanos(99) / 1e6, mMaxNanos / 1e6,
+                mOverBudget);
+    }
+}
@@ -0,0 +1,241 @@
+package io.github.leffinger.crossyourheart.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.github.leffinger.crossyourheart.R;
+
+/**
+ * Draws the whole puzzle grid in a single View, from a {@link GridState}. This is an alternative to
+ * {@link PuzzleView}, which lays out one {@link CellView} per cell: on large grids, measuring and
+ * laying out hundreds of auto-sized TextViews dominates the frame.
+ *
+ * <p>Only cells inside the current clip are drawn, and state changes invalidate only the rectangle
+ * around the changed cells. Cells are drawn by a {@link CellPainter}.
+ */
+public class GridCanvasView extends View {
+    private final ScaleGestureDetector mScaleGestureDetector;
+    private final GestureDetector mGestureDetector;
+    private final GridViewport mViewport = new GridViewport(this);
+    private final int mCellBorderSize;
+    private final FrameStats mFrameStats = new FrameStats("Canvas grid", 512);
+
+    private final Rect mClipBounds = new Rect();
+    private final RectF mCellBounds = new RectF();
+    private final RectF mEntryBounds = new RectF();
+    private final RectF mSelectedBounds = new RectF();
+    private final float[] mTouchPoint = new float[2];
+    private final Runnable mInvalidateDirty = this::invalidateDirty;
+
+    private final CellPainter mCellPainter;
+
+    private GridState mState;
+    private OnCellClickListener mOnCellClickListener;
+    private boolean mInvalidatePosted;
+
+    public interface OnCellClickListener {
+        void onCellClick(int row, int col);
+    }
+
+    public GridCanvasView(@NonNull Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        mCellBorderSize = getResources().getDimensionPixelSize(R.dimen.cell_border_size);
+        mCellPainter = new CellPainter(context);
+
+        mScaleGestureDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        mViewport.scale(detector.getScaleFactor());
+                        return true;
+                    }
+                });
+        mGestureDetector =
+                new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(@NonNull MotionEvent e) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onScroll(@NonNull MotionEvent e1, @NonNull MotionEvent e2,
+                                            float distanceX, float distanceY) {
+                        mViewport.scroll(distanceX, distanceY);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onSingleTapUp(@NonNull MotionEvent e) {
+                        return performCellClick(e.getX(), e.getY());
+                    }
+                });
+    }
+
+    /** Creates an empty state for a grid of the given size. */
+    public void setPuzzleSize(int numRows, int numCols) {
+        mState = new GridState(numCols, numRows);
+        mViewport.setPuzzleSize(numRows, numCols);
+        invalidate();
+    }
+
+    public void setOnCellClickListener(OnCellClickListener listener) {
+        mOnCellClickListener = listener;
+    }
+
+    /** Time spent drawing the grid, per frame. */
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    public void setCellFlag(int cell, int flag, boolean value) {
+        if (mState.setFlag(cell, flag, value)) {
+            postInvalidateDirty();
+        }
+    }
+
+    public void setCellContents(int cell, String contents) {
+        if (mState.setContents(cell, contents)) {
+            postInvalidateDirty();
+        }
+    }
+
+    public void setCellNumber(int cell, int number) {
+        if (mState.setNumber(cell, number)) {
+            postInvalidateDirty();
+        }
+    }
+
+    /** Pans so that the current entry, or at least the selected cell, is visible. */
+    public void adjustViewport(int firstCellOffset, int selectedCellOffset, int lastCellOffset) {
+        getCellBounds(firstCellOffset, mCellBounds);
+        mEntryBounds.left = mCellBounds.left;
+        mEntryBounds.top = mCellBounds.top;
+        getCellBounds(lastCellOffset, mCellBounds);
+        mEntryBounds.right = mCellBounds.right;
+        mEntryBounds.bottom = mCellBounds.bottom;
+        getCellBounds(selectedCellOffset, mSelectedBounds);
+        mViewport.ensureVisible(mEntryBounds, mSelectedBounds);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getPointerCount() == 1) {
+            return mGestureDetector.onTouchEvent(event);
+        }
+        return mScaleGestureDetector.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mState == null || getWidth() == 0) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        mState.clearDirty();
+
+        float pitch = getCellPitch();
+        mCellPainter.setCellSize(Math.round(pitch));
+
+        canvas.save();
+        canvas.concat(mViewport.getTransformMatrix());
+        canvas.getClipBounds(mClipBounds);
+        int firstRow = Math.max(0, (int) (mClipBounds.top / pitch));
+        int lastRow = Math.min(mState.getHeight() - 1, (int) (mClipBounds.bottom / pitch));
+        int firstCol = Math.max(0, (int) (mClipBounds.left / pitch));
+        int lastCol = Math.min(mState.getWidth() - 1, (int) (mClipBounds.right / pitch));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                drawCell(canvas, row * mState.getWidth() + col);
+            }
+        }
+        canvas.restore();
+
+        mFrameStats.record(SystemClock.elapsedRealtimeNanos() - start);
+    }
+
+    private void drawCell(Canvas canvas, int cell) {
+        int flags = mState.getFlags(cell);
+        if ((flags & GridState.BLACK) != 0) {
+            // The view's background shows through.
+            return;
+        }
+        getCellBounds(cell, mCellBounds);
+        mCellPainter.drawCell(canvas, mCellBounds, flags, mState.getContents(cell),
+                mState.getNumber(cell));
+    }
+
+    /** Width of one cell plus its border, in unscaled puzzle coordinates. */
+    private float getCellPitch() {
+        return ((float) getWidth()) / mState.getWidth();
+    }
+
+    /** Bounds of a cell, excluding borders, in unscaled puzzle coordinates. */
+    private void getCellBounds(int cell, RectF bounds) {
+        float pitch = getCellPitch();
+        int row = cell / mState.getWidth();
+        int col = cell % mState.getWidth();
+        // Same layout as PuzzleView: every cell has a border on its right and bottom, and the
+        // first row and column also have one on the top and left.
+        bounds.set(col * pitch + (col == 0 ? mCellBorderSize : 0),
+                row * pitch + (row == 0 ? mCellBorderSize : 0),
+                (col + 1) * pitch - mCellBorderSize, (row + 1) * pitch - mCellBorderSize);
+    }
+
+    private boolean performCellClick(float x, float y) {
+        if (mState == null || mOnCellClickListener == null) {
+            return false;
+        }
+        mTouchPoint[0] = x;
+        mTouchPoint[1] = y;
+        mViewport.getReverseTransformMatrix().mapPoints(mTouchPoint);
+        float pitch = getCellPitch();
+        int row = (int) Math.floor(mTouchPoint[1] / pitch);
+        int col = (int) Math.floor(mTouchPoint[0] / pitch);
+        if (row < 0 || row >= mState.getHeight() || col < 0 || col >= mState.getWidth()) {
+            return false;
+        }
+        if (mState.hasFlag(row * mState.getWidth() + col, GridState.BLACK)) {
+            return false;
+        }
+        mOnCellClickListener.onCellClick(row, col);
+        return true;
+    }
+
+    /** Coalesces changes made in the same frame into one invalidation. */
+    private void postInvalidateDirty() {
+        if (!mInvalidatePosted) {
+            mInvalidatePosted = true;
+            postOnAnimation(mInvalidateDirty);
+        }
+    }
+
+    private void invalidateDirty() {
+        mInvalidatePosted = false;
+        if (!mState.isDirty() || getWidth() == 0) {
+            return;
+        }
+        float pitch = getCellPitch();
+        mCellBounds.set(mState.getDirtyLeft() * pitch, mState.getDirtyTop() * pitch,
+                (mState.getDirtyRight() + 1) * pitch, (mState.getDirtyBottom() + 1) * pitch);
+        mViewport.getTransformMatrix().mapRect(mCellBounds);
+        mCellBounds.roundOut(mClipBounds);
+        invalidate(mClipBounds);
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.leffinger.crossyourheart.views;
+
+import java.util.Arrays;
+
+/**
+ * Everything {@link GridCanvasView} draws, as flat arrays indexed by cell offset
+ * ({@code row * width + col}). Setters report whether anything changed, and changed cells are
+ * accumulated into a dirty rectangle so that only that part of the grid has to be redrawn.
+ */
+public class GridState {
+    public static final int BLACK = 1;
+    public static final int CIRCLED = 1 << 1;
+    public static final int SELECTED = 1 << 2;
+    public static final int HIGHLIGHTED = 1 << 3;
+    public static final int REFERENCED = 1 << 4;
+    public static final int PENCIL = 1 << 5;
+    public static final int MARKED_INCORRECT = 1 << 6;
+    public static final int MARKED_CORRECT = 1 << 7;
+    public static final int REVEALED = 1 << 8;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mFlags;
+    private final String[] mContents;
+    private final int[] mNumbers;
+
+    // Rows and columns (inclusive) of the cells changed since the last clearDirty().
+    private int mDirtyTop;
+    private int mDirtyLeft;
+    private int mDirtyBottom;
+    private int mDirtyRight;
+
+    public GridState(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mFlags = new int[width * height];
+        mContents = new String[width * height];
+        mNumbers = new int[width * height];
+        markAllDirty();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFlags(int cell) {
+        return mFlags[cell];
+    }
+
+    public boolean hasFlag(int cell, int flag) {
+        return (mFlags[cell] & flag) != 0;
+    }
+
+    /** Returns the contents of a cell; never null. */
+    public String getContents(int cell) {
+        String contents = mContents[cell];
+        return contents == null ? "" : contents;
+    }
+
+    /** Returns the clue number shown in a cell, or 0. */
+    public int getNumber(int cell) {
+        return mNumbers[cell];
+    }
+
+    /** @return true if the flag changed */
+    public boolean setFlag(int cell, int flag, boolean value) {
+        int flags = value ? mFlags[cell] | flag : mFlags[cell] & ~flag;
+        if (flags == mFlags[cell]) {
+            return false;
+        }
+        mFlags[cell] = flags;
+        markDirty(cell);
+        return true;
+    }
+
+    /** @return true if the contents changed */
+    public boolean setContents(int cell, String contents) {
+        if (getContents(cell).equals(contents == null ? "" : contents)) {
+            return false;
+        }
+        mContents[cell] = contents;
+        markDirty(cell);
+        return true;
+    }
+
+    /** @return true if the number changed */
+    public boolean setNumber(int cell, int number) {
+        if (mNumbers[cell] == number) {
+            return false;
+        }
+        mNumbers[cell] = number;
+        markDirty(cell);
+        return true;
+    }
+
+    public boolean isDirty() {
+        return mDirtyTop <= mDirtyBottom;
+    }
+
+    public int getDirtyTop() {
+        return mDirtyTop;
+    }
+
+    public int getDirtyLeft() {
+        return mDirtyLeft;
+    }
+
+    /** Inclusive. */
+    public int getDirtyBottom() {
+        return mDirtyBottom;
+    }
+
+    /** Inclusive. */
+    public int getDirtyRight() {
+        return mDirtyRight;
+    }
+
+    /** Empties every cell and clears every flag. */
+    public void clear() {
+        Arrays.fill(mFlags, 0);
+        Arrays.fill(mContents, null);
+        Arrays.fill(mNumbers, 0);
+        markAllDirty();
+    }
+
+    public void markAllDirty() {
+        mDirtyTop = 0;
+        mDirtyLeft = 0;
+        mDirtyBottom = mHeight - 1;
+        mDirtyRight = mWidth - 1;
+    }
+
+    public void clearDirty() {
+        mDirtyTop = mHeight;
+        mDirtyLeft = mWidth;
+        mDirtyBottom = -1;
+        mDirtyRight = -1;
+    }
+
+    private void markDirty(int cell) {
+        int row = cell / mWidth;
+        int col = cell % mWidth;
+        mDirtyTop = Math.min(mDirtyTop, row);
+        mDirtyLeft = Math.min(mDirtyLeft, col);
+        mDirtyBottom = Math.max(mDirtyBottom, row);
+        mDirtyRight = Math.max(mDirtyRight, col);
+    }
+}
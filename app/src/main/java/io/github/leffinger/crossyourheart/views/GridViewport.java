@@ -0,0 +1,112 @@
+package io.github.leffinger.crossyourheart.views;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.view.View;
+
+/**
+ * Zoom and pan state for a view that draws the puzzle grid. At a scale factor of 1.0 the puzzle
+ * is exactly as wide as the view.
+ */
+class GridViewport {
+    private final View mView;
+    private final Matrix mTransformMatrix = new Matrix();
+    private final Matrix mReverseTransformMatrix = new Matrix();
+    private int mNumRows = 0;
+    private int mNumCols = 0;
+
+    private float mCurrentTranslateX = 0;
+    private float mCurrentTranslateY = 0;
+    private float mScaleFactor = 1.f;
+
+    GridViewport(View view) {
+        mView = view;
+    }
+
+    void setPuzzleSize(int numRows, int numCols) {
+        mNumRows = numRows;
+        mNumCols = numCols;
+    }
+
+    /** Maps puzzle coordinates to view coordinates. */
+    Matrix getTransformMatrix() {
+        return mTransformMatrix;
+    }
+
+    /** Maps view coordinates (e.g. touch events) to puzzle coordinates. */
+    Matrix getReverseTransformMatrix() {
+        return mReverseTransformMatrix;
+    }
+
+    void scale(float scaleFactor) {
+        mScaleFactor *= scaleFactor;
+        adjustMatrixAndInvalidate();
+    }
+
+    void scroll(float distanceX, float distanceY) {
+        mCurrentTranslateX += distanceX;
+        mCurrentTranslateY += distanceY;
+        adjustMatrixAndInvalidate();
+    }
+
+    /**
+     * Pans so that the current entry is visible, or at least the selected cell if the entry does
+     * not fit. Both rectangles are in puzzle coordinates; {@code entry} is overwritten.
+     */
+    void ensureVisible(RectF entry, RectF selectedCell) {
+        // If the full entry is wider and/or higher than the viewport, focus on the selected cell.
+        if (entry.width() * mScaleFactor > mView.getWidth()) {
+            entry.left = selectedCell.left;
+            entry.right = selectedCell.right;
+        }
+        if (entry.height() * mScaleFactor > mView.getHeight()) {
+            entry.top = selectedCell.top;
+            entry.bottom = selectedCell.bottom;
+        }
+
+        // If the selected area is not fully visible, adjust the viewport to make it visible.
+        mTransformMatrix.mapRect(entry);
+        if (entry.left < 0) {
+            mCurrentTranslateX += entry.left;
+        } else if (entry.right > mView.getWidth()) {
+            mCurrentTranslateX += entry.right - mView.getWidth();
+        }
+        if (entry.top < 0) {
+            mCurrentTranslateY += entry.top;
+        } else if (entry.bottom > mView.getHeight()) {
+            mCurrentTranslateY += entry.bottom - mView.getHeight();
+        }
+
+        adjustMatrixAndInvalidate();
+    }
+
+    void adjustMatrixAndInvalidate() {
+        int width = mView.getWidth();
+        int height = mView.getHeight();
+        if (width == 0 || mNumCols == 0) {
+            return;
+        }
+
+        // The puzzle's width (at scale 1.0) is always equal to the view's width.
+        // The puzzle's height can be inferred from this width and the puzzle ratio.
+        float puzzleHeight = mNumRows * ((float) width) / mNumCols;
+
+        // Don't let the object get too small or too large.
+        float minScaleFactor = Math.min(1f, height / puzzleHeight);
+        mScaleFactor = Math.max(minScaleFactor, Math.min(mScaleFactor, 5.0f));
+
+        // Don't move past the edges of the puzzle.
+        float maxTranslateX = width * (mScaleFactor - 1);
+        mCurrentTranslateX = Math.max(0f, Math.min(maxTranslateX, mCurrentTranslateX));
+        float maxTranslateY = (puzzleHeight * mScaleFactor - height) * 1.05f;
+        mCurrentTranslateY = Math.max(0f, Math.min(maxTranslateY, mCurrentTranslateY));
+
+        // Record the actual transformation as a matrix.
+        mTransformMatrix.setScale(mScaleFactor, mScaleFactor);
+        mTransformMatrix.postTranslate(-mCurrentTranslateX, -mCurrentTranslateY);
+        mTransformMatrix.invert(mReverseTransformMatrix);
+
+        // Redraw the canvas.
+        mView.invalidate();
+    }
+}
@@ -2,9 +2,9 @@ package io.github.leffinger.crossyourheart.views;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -25,25 +25,21 @@ public class PuzzleView extends RecyclerView {
 
     private final ScaleGestureDetector mScaleGestureDetector;
     private final GestureDetector mGestureDetector;
-    private final Matrix mTransformMatrix = new Matrix();
-    private final Matrix mReverseTransformMatrix = new Matrix();
+    private final GridViewport mViewport = new GridViewport(this);
     private final Rect mTempBounds = new Rect();
     private final RectF mBounds = new RectF();
-    private int mNumRows = 0;
+    private final RectF mSelectedBounds = new RectF();
+    private final FrameStats mFrameStats = new FrameStats("RecyclerView grid", 512);
+    private long mPendingLayoutNanos;
     private int mNumCols = 0;
 
-    private float mCurrentTranslateX = 0;
-    private float mCurrentTranslateY = 0;
-    private float mScaleFactor = 1.f;
-
     public PuzzleView(@NonNull Context context, @Nullable AttributeSet attrs) {
         super(context, attrs);
         mScaleGestureDetector = new ScaleGestureDetector(context,
                 new ScaleGestureDetector.SimpleOnScaleGestureListener() {
                     @Override
                     public boolean onScale(ScaleGestureDetector detector) {
-                        mScaleFactor *= detector.getScaleFactor();
-                        adjustMatrixAndInvalidate();
+                        mViewport.scale(detector.getScaleFactor());
                         return true;
                     }
                 });
@@ -52,9 +48,7 @@ public class PuzzleView extends RecyclerView {
                     @Override
                     public boolean onScroll(@NonNull MotionEvent e1, @NonNull MotionEvent e2,
                                             float distanceX, float distanceY) {
-                        mCurrentTranslateX += distanceX;
-                        mCurrentTranslateY += distanceY;
-                        adjustMatrixAndInvalidate();
+                        mViewport.scroll(distanceX, distanceY);
                         return true;
                     }
                 });
@@ -65,8 +59,13 @@ public class PuzzleView extends RecyclerView {
     }
 
     public void setPuzzleSize(int numRows, int numCols) {
-        mNumRows = numRows;
         mNumCols = numCols;
+        mViewport.setPuzzleSize(numRows, numCols);
+    }
+
+    /** Time spent measuring, laying out and drawing the cells, per frame. */
+    public FrameStats getFrameStats() {
+        return mFrameStats;
     }
 
     public void adjustViewport(int firstCellOffset, int selectedCellOffset, int lastCellOffset) {
@@ -88,31 +87,9 @@ public class PuzzleView extends RecyclerView {
         mBounds.right = mTempBounds.right;
         mBounds.bottom = mTempBounds.bottom;
 
-        // If the full entry is wider and/or higher than the viewport, focus on the selected cell.
         layoutManager.getDecoratedBoundsWithMargins(selectedCell, mTempBounds);
-        if (mBounds.width() * mScaleFactor > getWidth()) {
-            mBounds.left = mTempBounds.left;
-            mBounds.right = mTempBounds.right;
-        }
-        if (mBounds.height() * mScaleFactor > getHeight()) {
-            mBounds.top = mTempBounds.top;
-            mBounds.bottom = mTempBounds.bottom;
-        }
-
-        // If the selected area is not fully visible, adjust the viewport to make it visible.
-        mTransformMatrix.mapRect(mBounds);
-        if (mBounds.left < 0) {
-            mCurrentTranslateX += mBounds.left;
-        } else if (mBounds.right > getWidth()) {
-            mCurrentTranslateX += mBounds.right - getWidth();
-        }
-        if (mBounds.top < 0) {
-            mCurrentTranslateY += mBounds.top;
-        } else if (mBounds.bottom > getHeight()) {
-            mCurrentTranslateY += mBounds.bottom - getHeight();
-        }
-
-        adjustMatrixAndInvalidate();
+        mSelectedBounds.set(mTempBounds);
+        mViewport.ensureVisible(mBounds, mSelectedBounds);
     }
 
     @Override
@@ -120,12 +97,29 @@ public class PuzzleView extends RecyclerView {
         return true;
     }
 
+    @Override
+    protected void onMeasure(int widthSpec, int heightSpec) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        super.onMeasure(widthSpec, heightSpec);
+        mPendingLayoutNanos += SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        super.onLayout(changed, l, t, r, b);
+        mPendingLayoutNanos += SystemClock.elapsedRealtimeNanos() - start;
+    }
+
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        long start = SystemClock.elapsedRealtimeNanos();
         canvas.save();
-        canvas.setMatrix(mTransformMatrix);
+        canvas.setMatrix(mViewport.getTransformMatrix());
         super.dispatchDraw(canvas);
         canvas.restore();
+        mFrameStats.record(SystemClock.elapsedRealtimeNanos() - start + mPendingLayoutNanos);
+        mPendingLayoutNanos = 0;
     }
 
     @Override
@@ -138,37 +132,13 @@ public class PuzzleView extends RecyclerView {
 
         // Reverse-transform the touch event so that it goes to the correct position.
         MotionEvent transformEvent = MotionEvent.obtain(event);
-        transformEvent.transform(mReverseTransformMatrix);
+        transformEvent.transform(mViewport.getReverseTransformMatrix());
         boolean returnVal = super.dispatchTouchEvent(transformEvent);
         transformEvent.recycle();
 
         return returnVal;
     }
 
-    private void adjustMatrixAndInvalidate() {
-        // The puzzle's width (at scale 1.0) is always equal to getWidth().
-        // The puzzle's height can be inferred from this width and the puzzle ratio.
-        float puzzleHeight = mNumRows * ((float) getWidth()) / mNumCols;
-
-        // Don't let the object get too small or too large.
-        float minScaleFactor = Math.min(1f, getHeight() / puzzleHeight);
-        mScaleFactor = Math.max(minScaleFactor, Math.min(mScaleFactor, 5.0f));
-
-        // Don't move past the edges of the puzzle.
-        float maxTranslateX = getWidth() * (mScaleFactor - 1);
-        mCurrentTranslateX = Math.max(0f, Math.min(maxTranslateX, mCurrentTranslateX));
-        float maxTranslateY = (puzzleHeight * mScaleFactor - getHeight()) * 1.05f;
-        mCurrentTranslateY = Math.max(0f, Math.min(maxTranslateY, mCurrentTranslateY));
-
-        // Record the actual transformation as a matrix.
-        mTransformMatrix.setScale(mScaleFactor, mScaleFactor);
-        mTransformMatrix.postTranslate(-mCurrentTranslateX, -mCurrentTranslateY);
-        mTransformMatrix.invert(mReverseTransformMatrix);
-
-        // Redraw the canvas.
-        invalidate();
-    }
-
     private class CellBorderDecoration extends RecyclerView.ItemDecoration {
         private final int mCellBorderSize;
 
@@ -0,0 +1,150 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.leffinger.crossyourheart.io.AutosaveScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for coalescing autosave.
+ */
+public class AutosaveSchedulerTest {
+
+    @Test
+    public void burstOfChanges_coalescedIntoOneWrite() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        AutosaveScheduler scheduler = new AutosaveScheduler(() -> {
+            writes.incrementAndGet();
+            return 10;
+        }, null, 60_000, 60_000);
+
+        for (int i = 0; i < 30; i++) {
+            scheduler.markDirty();
+        }
+        assertEquals(0, writes.get());
+        scheduler.flush().get();
+        assertEquals(1, writes.get());
+
+        AutosaveScheduler.Stats stats = scheduler.getStats();
+        assertEquals(30, stats.writesRequested);
+        assertEquals(1, stats.writesPerformed);
+        assertEquals(10, stats.bytesWritten);
+        assertEquals(1, stats.flushes);
+
+        // Nothing left to write.
+        scheduler.flush().get();
+        assertEquals(1, writes.get());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void quietPeriod_writesAfterChangesStop() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        AutosaveScheduler scheduler = new AutosaveScheduler(() -> {
+            writes.incrementAndGet();
+            return 1;
+        }, null, 50, 60_000);
+
+        scheduler.markDirty();
+        scheduler.markDirty();
+        Thread.sleep(500);
+        assertEquals(1, writes.get());
+        assertEquals(0, scheduler.getStats().flushes);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void maxLatency_writesWhileChangesKeepComing() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        AutosaveScheduler scheduler = new AutosaveScheduler(() -> {
+            writes.incrementAndGet();
+            return 1;
+        }, null, 200, 300);
+
+        // Keep changing more often than the quiet period for about a second.
+        for (int i = 0; i < 20; i++) {
+            scheduler.markDirty();
+            Thread.sleep(50);
+        }
+        assertTrue("writes: " + writes.get(), writes.get() >= 2);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void failedWrite_retriedOnNextFlush() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AutosaveScheduler scheduler = new AutosaveScheduler(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("disk full");
+            }
+            return 1;
+        }, e -> failures.incrementAndGet(), 60_000, 60_000);
+
+        scheduler.markDirty();
+        scheduler.flush().get();
+        assertEquals(1, failures.get());
+
+        scheduler.flush().get();
+        assertEquals(2, attempts.get());
+        AutosaveScheduler.Stats stats = scheduler.getStats();
+        assertEquals(1, stats.writesFailed);
+        assertEquals(1, stats.writesPerformed);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void failedWrite_runtimeException_retriedAfterQuietPeriod() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AutosaveScheduler scheduler = new AutosaveScheduler(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("bad state");
+            }
+            return 1;
+        }, e -> failures.incrementAndGet(), 50, 60_000);
+
+        scheduler.markDirty();
+        Thread.sleep(500);
+        assertEquals(1, failures.get());
+        // Retried without another change or flush.
+        assertEquals(2, attempts.get());
+        assertFalse(scheduler.isDirty());
+        AutosaveScheduler.Stats stats = scheduler.getStats();
+        assertEquals(1, stats.writesFailed);
+        assertEquals(1, stats.writesPerformed);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void failedWrite_afterShutdown_retried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AutosaveScheduler scheduler = new AutosaveScheduler(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("transient");
+            }
+            return 1;
+        }, e -> failures.incrementAndGet(), 60_000, 60_000);
+
+        scheduler.markDirty();
+        scheduler.shutdown();
+        for (int i = 0; i < 100 && attempts.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, attempts.get());
+        assertEquals(1, failures.get());
+        assertFalse(scheduler.isDirty());
+        assertEquals(1, scheduler.getStats().writesPerformed);
+
+        // Changes after shutdown are still ignored.
+        scheduler.markDirty();
+        assertFalse(scheduler.isDirty());
+    }
+}
@@ -0,0 +1,292 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import io.github.leffinger.crossyourheart.io.BulkImporter;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkImporterTest {
+    private static final String[] PUZZLES =
+            {"Nov0596.puz", "Sep0520.puz", "Mar2920.puz", "wsj200827.puz", "mgwcc636.puz"};
+
+    /** Keeps the library in memory. */
+    private static class FakeSink implements BulkImporter.Sink {
+        final Map<String, PuzFile> mWritten = new ConcurrentHashMap<>();
+        final Map<String, String> mLibrary = new ConcurrentHashMap<>();
+        final Set<String> mDeleted = Collections.synchronizedSet(new HashSet<>());
+        final AtomicInteger mCommits = new AtomicInteger();
+        // Simulates another import adding the same puzzles after findDuplicate().
+        final Map<String, String> mAddedConcurrently = new ConcurrentHashMap<>();
+
+        static String key(PuzFile puzzle) {
+            return puzzle.getTitle() + "/" + puzzle.getAuthor();
+        }
+
+        @Override
+        public String findDuplicate(PuzFile puzzle) {
+            return mLibrary.get(key(puzzle));
+        }
+
+        @Override
+        public String write(PuzFile puzzle) {
+            String filename = "file" + mWritten.size() + "-" + System.identityHashCode(puzzle);
+            mWritten.put(filename, puzzle);
+            return filename;
+        }
+
+        @Override
+        public synchronized String[] commit(List<BulkImporter.Entry> batch) {
+            mCommits.incrementAndGet();
+            mLibrary.putAll(mAddedConcurrently);
+            String[] duplicates = new String[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                String key = key(batch.get(i).getPuzzle());
+                duplicates[i] = mLibrary.get(key);
+                if (duplicates[i] == null) {
+                    mLibrary.put(key, batch.get(i).getFilename());
+                }
+            }
+            return duplicates;
+        }
+
+        @Override
+        public void delete(String filename) {
+            mDeleted.add(filename);
+        }
+    }
+
+    private static class BytesSource implements BulkImporter.Source {
+        final String mName;
+        final byte[] mBytes;
+
+        BytesSource(String name, byte[] bytes) {
+            mName = name;
+            mBytes = bytes;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public InputStream open() {
+            return new ByteArrayInputStream(mBytes);
+        }
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream inputStream = BulkImporterTest.class.getResourceAsStream("/" + name)) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    private static List<BulkImporter.Source> sources(String... names) throws IOException {
+        List<BulkImporter.Source> sources = new ArrayList<>();
+        for (String name : names) {
+            sources.add(new BytesSource(name, readResource(name)));
+        }
+        return sources;
+    }
+
+    private static byte[] zip(String... names) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            zipOutputStream.putNextEntry(new ZipEntry("puzzles/"));
+            zipOutputStream.putNextEntry(new ZipEntry("puzzles/README.txt"));
+            zipOutputStream.write("not a puzzle".getBytes());
+            for (String name : names) {
+                zipOutputStream.putNextEntry(new ZipEntry("puzzles/" + name));
+                zipOutputStream.write(readResource(name));
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void importAll_files() throws IOException {
+        FakeSink sink = new FakeSink();
+        BulkImporter.Result result = new BulkImporter(sink, 4).importAll(sources(PUZZLES));
+
+        assertEquals(PUZZLES.length, result.imported.size());
+        assertTrue(result.duplicates.isEmpty());
+        assertTrue(result.failures.isEmpty());
+        assertEquals(PUZZLES.length, sink.mLibrary.size());
+        assertEquals(new HashSet<>(result.imported), new HashSet<>(sink.mLibrary.values()));
+        for (int i = 0; i < PUZZLES.length; i++) {
+            PuzFile expected = PuzFile.verifyPuzFile(
+                    new ByteArrayInputStream(readResource(PUZZLES[i])));
+            PuzFile written = sink.mWritten.get(result.imported.get(i));
+            assertEquals(expected.getTitle(), written.getTitle());
+        }
+
+        BulkImporter.Stats stats = result.stats;
+        assertEquals(PUZZLES.length, stats.read.files);
+        assertEquals(PUZZLES.length, stats.verify.files);
+        assertEquals(PUZZLES.length, stats.write.files);
+        assertEquals(PUZZLES.length, stats.commit.files);
+        assertEquals(PUZZLES.length, stats.total.files);
+        assertEquals(stats.read.bytes, stats.commit.bytes);
+        assertEquals(sink.mCommits.get(), stats.commitBatches);
+        assertTrue(stats.toString(), stats.commitBatches <= PUZZLES.length);
+    }
+
+    @Test
+    public void importAll_streamsZipEntries() throws IOException {
+        FakeSink sink = new FakeSink();
+        List<BulkImporter.Source> sources = new ArrayList<>();
+        sources.add(new BytesSource("puzzles.zip", zip(PUZZLES)));
+        BulkImporter.Result result = new BulkImporter(sink, 2).importAll(sources);
+
+        // Directories and files that aren't puzzles are skipped.
+        assertEquals(PUZZLES.length, result.getTotal());
+        assertEquals(PUZZLES.length, result.imported.size());
+        assertEquals(PUZZLES.length, sink.mLibrary.size());
+    }
+
+    @Test
+    public void importAll_duplicates() throws IOException {
+        FakeSink sink = new FakeSink();
+        new BulkImporter(sink, 4).importAll(sources(PUZZLES[0]));
+        String existing = sink.mLibrary.values().iterator().next();
+
+        // A puzzle already in the library, and one repeated within the import.
+        List<BulkImporter.Source> sources = sources(PUZZLES[0], PUZZLES[1], PUZZLES[2]);
+        sources.add(new BytesSource("copies.zip", zip(PUZZLES[1])));
+        BulkImporter.Result result = new BulkImporter(sink, 4).importAll(sources);
+
+        assertEquals(4, result.getTotal());
+        assertEquals(2, result.imported.size());
+        assertEquals(2, result.duplicates.size());
+        assertEquals(existing, result.duplicates.get(0));
+        // Either copy may be the one that is imported.
+        assertTrue(result.imported.contains(result.duplicates.get(1)));
+        assertEquals(3, sink.mLibrary.size());
+        // Duplicates are found before they are written.
+        assertEquals(3, sink.mWritten.size());
+        assertTrue(sink.mDeleted.isEmpty());
+    }
+
+    @Test
+    public void importAll_duplicateFoundAtCommit() throws IOException {
+        FakeSink sink = new FakeSink();
+        PuzFile puzzle = PuzFile.verifyPuzFile(new ByteArrayInputStream(readResource(PUZZLES[0])));
+        sink.mAddedConcurrently.put(FakeSink.key(puzzle), "other-import");
+
+        BulkImporter.Result result = new BulkImporter(sink, 1).importAll(sources(PUZZLES[0]));
+
+        assertTrue(result.imported.isEmpty());
+        assertEquals(Collections.singletonList("other-import"), result.duplicates);
+        assertEquals(sink.mWritten.keySet(), sink.mDeleted);
+        assertEquals(0, result.stats.commit.files);
+    }
+
+    @Test
+    public void importAll_failures() throws IOException {
+        FakeSink sink = new FakeSink();
+        byte[] corrupt = readResource(PUZZLES[0]);
+        corrupt[corrupt.length / 2] ^= 0x55;
+        List<BulkImporter.Source> sources = sources(PUZZLES[1]);
+        sources.add(new BytesSource("corrupt.puz", corrupt));
+        sources.add(new BytesSource("empty.puz", new byte[0]));
+        sources.add(new BulkImporter.Source() {
+            @Override
+            public String getName() {
+                return "missing.puz";
+            }
+
+            @Override
+            public InputStream open() throws IOException {
+                throw new IOException("No such file");
+            }
+        });
+        BulkImporter.Result result = new BulkImporter(sink, 4).importAll(sources);
+
+        assertEquals(1, result.imported.size());
+        assertEquals(3, result.failures.size());
+        assertEquals("corrupt.puz", result.failures.get(0).name);
+        assertEquals("empty.puz", result.failures.get(1).name);
+        assertEquals("missing.puz", result.failures.get(2).name);
+        assertEquals(1, sink.mLibrary.size());
+    }
+
+    @Test
+    public void importAll_exception_deletesUncommittedFiles() throws IOException {
+        PuzFile poison = PuzFile.verifyPuzFile(new ByteArrayInputStream(readResource(PUZZLES[4])));
+        CountDownLatch commitStarted = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        FakeSink sink = new FakeSink() {
+            @Override
+            public String write(PuzFile puzzle) {
+                // Keeps the first batch down to the first puzzle.
+                if (!mWritten.isEmpty()) {
+                    await(commitStarted);
+                }
+                return super.write(puzzle);
+            }
+
+            @Override
+            public String findDuplicate(PuzFile puzzle) {
+                if (key(puzzle).equals(key(poison))) {
+                    throw new IllegalStateException("database closed");
+                }
+                return super.findDuplicate(puzzle);
+            }
+
+            @Override
+            public synchronized String[] commit(List<BulkImporter.Entry> batch) {
+                // Holds up the first batch until the import is shut down, so that the entries
+                // written after it are still queued.
+                commitStarted.countDown();
+                await(never);
+                return super.commit(batch);
+            }
+        };
+
+        try {
+            new BulkImporter(sink, 1).importAll(sources(PUZZLES));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        // Every written file either made it into the library or was deleted.
+        Set<String> committed = new HashSet<>(sink.mLibrary.values());
+        for (String filename : sink.mWritten.keySet()) {
+            assertTrue(filename, committed.contains(filename) != sink.mDeleted.contains(filename));
+        }
+        assertEquals(4, sink.mWritten.size());
+        assertEquals(1, committed.size());
+        assertEquals(3, sink.mDeleted.size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shows that reading and checking cells does not allocate: checking the whole grid twice as many
+ * times does not allocate more. Timing the checks only runs with -Dbenchmark=true.
+ */
+public class CellAllocationTest {
+    private static final int ITERATIONS = 1000;
+    // The smallest object the JVM allocates. Any allocation per check, or even per pass over the
+    // grid, adds at least this much for every extra pass. One-off allocations the JVM makes on
+    // this thread while it is measured (e.g. as the loop is recompiled) don't.
+    private static final long MIN_OBJECT_BYTES = 16;
+
+    @Test
+    public void checkFullGrid_doesNotAllocate() throws IOException {
+        checkAllocation("/Nov0596.puz");
+    }
+
+    @Test
+    public void checkFullGrid_withRebuses_doesNotAllocate() throws IOException {
+        checkAllocation("/wsj200827.puz");
+    }
+
+    @Test
+    public void checkFullGrid_benchmark() throws IOException {
+        Assume.assumeTrue("Run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        for (String filename : new String[]{"/Nov0596.puz", "/wsj200827.puz"}) {
+            PuzFile puzFile = load(filename);
+            for (int i = 0; i < ITERATIONS; i++) {
+                checkAll(puzFile);
+            }
+            int sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += checkAll(puzFile);
+            }
+            long elapsed = System.nanoTime() - start;
+            long checks = (long) ITERATIONS * puzFile.getNumWhiteCells();
+            System.out.printf("%s: %d checks, %.1f ns/check (%d correct)%n", filename, checks,
+                    (double) elapsed / checks, sink);
+        }
+    }
+
+    private void checkAllocation(String filename) throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        PuzFile puzFile = load(filename);
+        // Warm up, so that class loading and JIT compilation are out of the way.
+        int expected = checkAll(puzFile);
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(expected, checkAll(puzFile));
+        }
+        long once = allocatedBytes(threadBean, puzFile, ITERATIONS);
+        long twice = allocatedBytes(threadBean, puzFile, 2 * ITERATIONS);
+
+        assertTrue("allocated " + once + " bytes, then " + twice + " bytes",
+                twice - once < ITERATIONS * MIN_OBJECT_BYTES);
+    }
+
+    /** Loads the puzzle and fills in half of the grid, so that both outcomes are exercised. */
+    private static PuzFile load(String filename) throws IOException {
+        PuzFile puzFile;
+        try (InputStream inputStream = CellAllocationTest.class.getResourceAsStream(filename)) {
+            puzFile = new PuzFile(inputStream);
+        }
+        int cells = 0;
+        for (int row = 0; row < puzFile.getHeight(); row++) {
+            for (int col = 0; col < puzFile.getWidth(); col++) {
+                if (!puzFile.isBlack(row, col)) {
+                    cells++;
+                    if (cells % 2 == 0) {
+                        puzFile.setCellContents(row, col, puzFile.getSolution(row, col));
+                    }
+                }
+            }
+        }
+        return puzFile;
+    }
+
+    /** Returns the bytes this thread allocated while checking the whole grid that many times. */
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threadBean,
+                                       PuzFile puzFile, int iterations) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        int correct = 0;
+        for (int i = 0; i < iterations; i++) {
+            correct += checkAll(puzFile);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(correct > 0);
+        return allocated;
+    }
+
+    private static int checkAll(PuzFile puzFile) {
+        int correct = 0;
+        for (int row = 0; row < puzFile.getHeight(); row++) {
+            for (int col = 0; col < puzFile.getWidth(); col++) {
+                if (puzFile.isBlack(row, col)) {
+                    continue;
+                }
+                if (puzFile.isCorrect(row, col) &&
+                        puzFile.getCellContents(row, col).length() > 0 &&
+                        puzFile.getSolution(row, col).charAt(0) ==
+                                puzFile.getCellLetter(row, col)) {
+                    correct++;
+                }
+            }
+        }
+        return correct;
+    }
+}
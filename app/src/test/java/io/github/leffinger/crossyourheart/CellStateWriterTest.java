@@ -0,0 +1,106 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.leffinger.crossyourheart.io.CellStateWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for batched per-cell state writes.
+ */
+public class CellStateWriterTest {
+
+    private static CellStateWriter<Boolean> newWriter(List<SortedMap<Integer, Boolean>> batches) {
+        return new CellStateWriter<>(false, changes -> batches.add(new TreeMap<>(changes)), null,
+                60_000, 60_000);
+    }
+
+    @Test
+    public void unchangedValues_notWritten() throws Exception {
+        List<SortedMap<Integer, Boolean>> batches = new ArrayList<>();
+        CellStateWriter<Boolean> writer = newWriter(batches);
+
+        // Observers attaching to a fresh puzzle report the default for every cell.
+        for (int cell = 0; cell < 225; cell++) {
+            writer.put(cell, false);
+        }
+        // Values loaded from the database are reported back unchanged.
+        writer.setStored(7, true);
+        writer.put(7, true);
+
+        writer.flush().get();
+        assertTrue(batches.isEmpty());
+        assertEquals(0, writer.getStats().writesRequested);
+        writer.shutdown();
+    }
+
+    @Test
+    public void burstOfChanges_writtenAsOneBatch() throws Exception {
+        List<SortedMap<Integer, Boolean>> batches = new ArrayList<>();
+        CellStateWriter<Boolean> writer = newWriter(batches);
+
+        for (int cell = 0; cell < 15; cell++) {
+            writer.put(cell, true);
+        }
+        writer.put(3, false);  // undone before it was written
+        writer.put(20, true);
+        writer.put(20, false);
+        writer.put(20, true);
+
+        writer.flush().get();
+        assertEquals(1, batches.size());
+        SortedMap<Integer, Boolean> batch = batches.get(0);
+        assertEquals(15, batch.size());
+        assertTrue(!batch.containsKey(3));
+        assertEquals(true, batch.get(20));
+        assertEquals(15, writer.getStats().bytesWritten);
+
+        // Written values are now stored, so repeating them writes nothing.
+        writer.put(0, true);
+        writer.flush().get();
+        assertEquals(1, batches.size());
+
+        // Clearing a written value is a change.
+        writer.put(0, false);
+        writer.flush().get();
+        assertEquals(2, batches.size());
+        assertEquals(false, batches.get(1).get(0));
+        writer.shutdown();
+    }
+
+    @Test
+    public void failedBatch_retriedOnNextFlush() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        List<SortedMap<Integer, Boolean>> batches = new ArrayList<>();
+        CellStateWriter<Boolean> writer = new CellStateWriter<>(false, changes -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("database locked");
+            }
+            batches.add(new TreeMap<>(changes));
+        }, e -> failures.incrementAndGet(), 60_000, 60_000);
+
+        writer.put(1, true);
+        writer.put(2, true);
+        writer.flush().get();
+        assertEquals(1, failures.get());
+        assertTrue(batches.isEmpty());
+
+        // A change made after the failure joins the retried batch.
+        writer.put(3, true);
+        writer.flush().get();
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+        assertEquals(1, writer.getStats().writesFailed);
+        writer.shutdown();
+    }
+}
@@ -0,0 +1,278 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.Files;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.leffinger.crossyourheart.io.PuzChecksums;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares {@link PuzChecksums} with a straightforward implementation that checksums each region
+ * once per checksum, over every puzzle in the test resources: both must produce the same
+ * checksums, and their times are reported JMH-style (warmup iterations, then measured iterations
+ * with mean and standard deviation). The timing only runs with -Dbenchmark=true.
+ */
+public class ChecksumBenchmarkTest {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final int PASSES_PER_ITERATION = 200;
+    private static final int HEADER_LENGTH = 0x34;
+
+    private static List<Regions> sCorpus;
+
+    @BeforeClass
+    public static void readCorpus() throws URISyntaxException, IOException {
+        File resourceDir =
+                new File(ChecksumBenchmarkTest.class.getResource("/3x3.puz").toURI())
+                        .getParentFile();
+        File[] files = resourceDir.listFiles((dir, name) -> name.endsWith(".puz"));
+        assert files != null;
+        Arrays.sort(files);
+        sCorpus = new ArrayList<>();
+        for (File file : files) {
+            sCorpus.add(new Regions(file.getName(), Files.toByteArray(file)));
+        }
+    }
+
+    @Test
+    public void singlePass_matchesReference() {
+        assertFalse(sCorpus.isEmpty());
+        int matchingFiles = 0;
+        for (Regions regions : sCorpus) {
+            Result expected = reference(regions);
+            Result actual = singlePass(regions);
+            assertEquals(regions.name, expected.headerChecksum, actual.headerChecksum);
+            assertEquals(regions.name, expected.fileChecksum, actual.fileChecksum);
+            assertArrayEquals(regions.name, expected.maskedChecksums, actual.maskedChecksums);
+            if (actual.fileChecksum == regions.storedFileChecksum &&
+                    Arrays.equals(actual.maskedChecksums, regions.storedMaskedChecksums)) {
+                matchingFiles++;
+            }
+        }
+        // Every file in the corpus was written with correct checksums.
+        assertEquals(sCorpus.size(), matchingFiles);
+    }
+
+    @Test
+    public void compareImplementations() {
+        Assume.assumeTrue("Run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        report("reference", measure(ChecksumBenchmarkTest::reference));
+        report("single", measure(ChecksumBenchmarkTest::singlePass));
+    }
+
+    private static Result singlePass(Regions regions) {
+        PuzChecksums checksums =
+                new PuzChecksums(regions.width, regions.height, regions.clues.length,
+                        regions.unknownBitmask, regions.scrambledTag);
+        checksums.addSolution(regions.solution);
+        checksums.addGrid(regions.grid);
+        checksums.addString(regions.title);
+        checksums.addString(regions.author);
+        checksums.addString(regions.copyright);
+        for (String clue : regions.clues) {
+            checksums.addClue(clue);
+        }
+        if (regions.includeNote) {
+            checksums.addString(regions.note);
+        }
+        return new Result(checksums.getHeaderChecksum(), checksums.getFileChecksum(),
+                checksums.getMaskedChecksums());
+    }
+
+    /** Checksums each region separately for each checksum that covers it. */
+    private static Result reference(Regions regions) {
+        int header = checksumByte((byte) regions.width, 0);
+        header = checksumByte((byte) regions.height, header);
+        header = checksumShort(regions.clues.length, header);
+        header = checksumShort(regions.unknownBitmask, header);
+        header = checksumShort(regions.scrambledTag, header);
+
+        int solution = checksumRegion(regions.solution, 0);
+        int grid = checksumRegion(regions.grid, 0);
+        int text = textChecksum(regions, 0);
+        byte[] masked = new byte[8];
+        int[] parts = {header, solution, grid, text};
+        byte[] mask = "ICHEATED".getBytes(ISO_8859_1);
+        for (int i = 0; i < 4; i++) {
+            masked[i] = (byte) (mask[i] ^ (parts[i] & 0xFF));
+            masked[i + 4] = (byte) (mask[i + 4] ^ ((parts[i] >> 8) & 0xFF));
+        }
+
+        int file = checksumRegion(regions.solution, header);
+        file = checksumRegion(regions.grid, file);
+        file = textChecksum(regions, file);
+        return new Result(header, file, masked);
+    }
+
+    private static int textChecksum(Regions regions, int cksum) {
+        for (byte[] text : new byte[][]{regions.title, regions.author, regions.copyright}) {
+            if (text.length > 0) {
+                cksum = checksumRegion(text, cksum);
+                cksum = checksumByte((byte) 0, cksum);
+            }
+        }
+        for (String clue : regions.clues) {
+            cksum = checksumRegion(clue.getBytes(ISO_8859_1), cksum);
+        }
+        if (regions.includeNote && regions.note.length > 0) {
+            cksum = checksumRegion(regions.note, cksum);
+            cksum = checksumByte((byte) 0, cksum);
+        }
+        return cksum;
+    }
+
+    private static int checksumRegion(byte[] data, int cksum) {
+        for (byte b : data) {
+            cksum = checksumByte(b, cksum);
+        }
+        return cksum;
+    }
+
+    private static int checksumByte(byte b, int cksum) {
+        if ((cksum & 0x1) != 0) {
+            cksum >>= 1;
+            cksum += 0x8000;
+        } else {
+            cksum >>= 1;
+        }
+        cksum += (0xFF & b);
+        cksum &= 0xFFFF;
+        return cksum;
+    }
+
+    private static int checksumShort(int i, int cksum) {
+        cksum = checksumByte((byte) (i & 0xFF), cksum);
+        return checksumByte((byte) ((i >> 8) & 0xFF), cksum);
+    }
+
+    /** Returns the mean time per file, in microseconds, for each measured iteration. */
+    private static double[] measure(Implementation implementation) {
+        double[] results = new double[MEASUREMENT_ITERATIONS];
+        int sink = 0;
+        for (int iteration = -WARMUP_ITERATIONS; iteration < MEASUREMENT_ITERATIONS;
+             iteration++) {
+            long start = System.nanoTime();
+            for (int pass = 0; pass < PASSES_PER_ITERATION; pass++) {
+                for (Regions regions : sCorpus) {
+                    sink += implementation.compute(regions).fileChecksum;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (iteration >= 0) {
+                results[iteration] = elapsed / 1e3 / PASSES_PER_ITERATION / sCorpus.size();
+            }
+        }
+        if (sink == 42) {
+            System.out.println();  // keep the JIT from discarding the work
+        }
+        return results;
+    }
+
+    private static void report(String name, double[] results) {
+        double mean = 0;
+        for (double result : results) {
+            mean += result;
+        }
+        mean /= results.length;
+        double variance = 0;
+        for (double result : results) {
+            variance += (result - mean) * (result - mean);
+        }
+        double stddev = Math.sqrt(variance / (results.length - 1));
+        System.out.println(String.format(Locale.US, "%-10s %8.2f +/- %6.2f us/file (%d files)",
+                name, mean, stddev, sCorpus.size()));
+    }
+
+    private interface Implementation {
+        Result compute(Regions regions);
+    }
+
+    private static final class Result {
+        final int headerChecksum;
+        final int fileChecksum;
+        final byte[] maskedChecksums;
+
+        Result(int headerChecksum, int fileChecksum, byte[] maskedChecksums) {
+            this.headerChecksum = headerChecksum;
+            this.fileChecksum = fileChecksum;
+            this.maskedChecksums = maskedChecksums;
+        }
+    }
+
+    /** The checksummed regions of a puz file, split out of the raw bytes. */
+    private static final class Regions {
+        final String name;
+        final int storedFileChecksum;
+        final byte[] storedMaskedChecksums = new byte[8];
+        final boolean includeNote;
+        final int width;
+        final int height;
+        final int unknownBitmask;
+        final int scrambledTag;
+        final byte[] solution;
+        final byte[] grid;
+        final byte[] title;
+        final byte[] author;
+        final byte[] copyright;
+        final String[] clues;
+        final byte[] note;
+
+        Regions(String name, byte[] bytes) {
+            this.name = name;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            storedFileChecksum = buffer.getShort(0) & 0xFFFF;
+            buffer.position(0x10);
+            buffer.get(storedMaskedChecksums);
+            // Versions 1.3 and later include the note.
+            String version = new String(bytes, 0x18, 3, ISO_8859_1);
+            includeNote = version.compareTo("1.3") >= 0;
+            width = bytes[0x2C] & 0xFF;
+            height = bytes[0x2D] & 0xFF;
+            int numClues = buffer.getShort(0x2E) & 0xFFFF;
+            unknownBitmask = buffer.getShort(0x30) & 0xFFFF;
+            scrambledTag = buffer.getShort(0x32) & 0xFFFF;
+
+            int offset = HEADER_LENGTH;
+            solution = Arrays.copyOfRange(bytes, offset, offset + width * height);
+            offset += width * height;
+            grid = Arrays.copyOfRange(bytes, offset, offset + width * height);
+            offset += width * height;
+            int[] position = {offset};
+            title = readString(bytes, position);
+            author = readString(bytes, position);
+            copyright = readString(bytes, position);
+            clues = new String[numClues];
+            for (int i = 0; i < numClues; i++) {
+                clues[i] = new String(readString(bytes, position), ISO_8859_1);
+            }
+            note = readString(bytes, position);
+        }
+
+        private static byte[] readString(byte[] bytes, int[] position) {
+            int start = position[0];
+            int end = start;
+            while (bytes[end] != 0) {
+                end++;
+            }
+            position[0] = end + 1;
+            return Arrays.copyOfRange(bytes, start, end);
+        }
+    }
+}
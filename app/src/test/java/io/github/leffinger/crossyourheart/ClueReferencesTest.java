@@ -0,0 +1,131 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile.Clue;
+import io.github.leffinger.crossyourheart.io.ClueReferences;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for finding clues that mention other clues.
+ */
+public class ClueReferencesTest {
+    // Clues 0-4 are 1, 5, 17, 20 and 23 Across; clues 5-9 are 1, 2, 3, 17 and 45 Down.
+    private static final int[] NUMBERS = {1, 5, 17, 20, 23, 1, 2, 3, 17, 45};
+
+    private static ClueReferences find(String... texts) {
+        Clue[] clues = new Clue[NUMBERS.length];
+        for (int i = 0; i < clues.length; i++) {
+            clues[i] = new Clue(i < texts.length ? texts[i] : "");
+            clues[i].setNumber(NUMBERS[i]);
+            clues[i].setAcross(i < 5);
+        }
+        return ClueReferences.find(clues);
+    }
+
+    @Test
+    public void single() {
+        ClueReferences references = find("See 17-Across", "Like 2 down", "Across the way");
+        assertArrayEquals(new int[]{2}, references.getReferences(0));
+        assertArrayEquals(new int[]{6}, references.getReferences(1));
+        assertArrayEquals(new int[0], references.getReferences(2));
+        assertTrue(references.references(0, 2));
+        assertFalse(references.references(2, 0));
+    }
+
+    @Test
+    public void list() {
+        ClueReferences references = find("17- and 23-Across", "17-, 20-, and 23-Across",
+                "1, 2 & 45 Down", "1-/3-Down", "17- or 45-Down");
+        assertArrayEquals(new int[]{2, 4}, references.getReferences(0));
+        assertArrayEquals(new int[]{2, 3, 4}, references.getReferences(1));
+        assertArrayEquals(new int[]{5, 6, 9}, references.getReferences(2));
+        assertArrayEquals(new int[]{5, 7}, references.getReferences(3));
+        assertArrayEquals(new int[]{8, 9}, references.getReferences(4));
+    }
+
+    @Test
+    public void range() {
+        ClueReferences references = find("17-23 Across", "1- through 3-Down",
+                "1 to 3 Down, in a way", "1\u20135 Across");
+        assertArrayEquals(new int[]{2, 3, 4}, references.getReferences(0));
+        assertArrayEquals(new int[]{5, 6, 7}, references.getReferences(1));
+        assertArrayEquals(new int[]{5, 6, 7}, references.getReferences(2));
+        assertArrayEquals(new int[]{0, 1}, references.getReferences(3));
+    }
+
+    @Test
+    public void bothDirections() {
+        ClueReferences references = find("With 17-Across and 17-Down, a theme",
+                "1-Across, 2-Down");
+        assertArrayEquals(new int[]{2, 8}, references.getReferences(0));
+        assertArrayEquals(new int[]{0, 6}, references.getReferences(1));
+    }
+
+    @Test
+    public void notReferences() {
+        ClueReferences references = find("Downs and ups", "It's 9 to 5", "Number 4 Across",
+                "Upside-down", "Count down 3, 2, 1", "12345 Down");
+        for (int i = 0; i < NUMBERS.length; i++) {
+            assertArrayEquals("clue " + i, new int[0], references.getReferences(i));
+        }
+    }
+
+    @Test
+    public void indexOf() {
+        ClueReferences references = find();
+        assertEquals(10, references.size());
+        assertEquals(2, references.indexOf(17, true));
+        assertEquals(8, references.indexOf(17, false));
+        assertEquals(-1, references.indexOf(5, false));
+    }
+
+    @Test
+    public void toMatrix() {
+        boolean[][] matrix = find("See 17-Across").toMatrix();
+        assertEquals(NUMBERS.length, matrix.length);
+        assertTrue(matrix[0][2]);
+        assertFalse(matrix[2][0]);
+    }
+
+    /** Everything the old single-reference pattern found is still found. */
+    @Test
+    public void findsSingleReferencesInRealPuzzles() throws IOException {
+        Pattern oldPattern = Pattern.compile(".*\\b(\\d+)[ -](Across|across|Down|down)\\b.*");
+        String[] files = {"075_WoodenIdols.puz", "076_ExtremelyOnline.puz", "Mar2920.puz",
+                          "Nov0596.puz", "Sep0520.puz", "mgwcc636.puz", "wsj200827.puz"};
+        int found = 0;
+        for (String name : files) {
+            PuzFile puzFile;
+            try (InputStream inputStream = ClueReferencesTest.class.getResourceAsStream(
+                    "/" + name)) {
+                puzFile = PuzFile.verifyPuzFile(inputStream);
+            }
+            puzFile.resolveClues();
+            ClueReferences references = puzFile.getClueReferenceIndex();
+            for (int i = 0; i < puzFile.getNumClues(); i++) {
+                Matcher m = oldPattern.matcher(puzFile.getClue(i).getText());
+                if (m.matches()) {
+                    int target = references.indexOf(Integer.parseInt(m.group(1)),
+                            m.group(2).equalsIgnoreCase("across"));
+                    if (target >= 0) {
+                        assertTrue(name + ": " + puzFile.getClue(i).getText(),
+                                references.references(i, target));
+                        found++;
+                    }
+                }
+            }
+        }
+        assertTrue(found > 0);
+    }
+}
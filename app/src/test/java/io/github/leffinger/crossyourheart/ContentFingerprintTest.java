@@ -0,0 +1,82 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.Files;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.leffinger.crossyourheart.io.ContentFingerprint;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContentFingerprintTest {
+
+    @Test
+    public void unchangedBySolving() throws IOException {
+        PuzFile puzFile =
+                new PuzFile(ContentFingerprintTest.class.getResourceAsStream("/Nov0596.puz"));
+        long fingerprint = puzFile.getContentFingerprint();
+        puzFile.setCellContents(0, 0, "X");
+        assertEquals(fingerprint, puzFile.getContentFingerprint());
+
+        PuzFile filled = new PuzFile(
+                ContentFingerprintTest.class.getResourceAsStream("/3x3_filled.puz"));
+        PuzFile empty = new PuzFile(ContentFingerprintTest.class.getResourceAsStream("/3x3.puz"));
+        assertEquals(empty.getContentFingerprint(), filled.getContentFingerprint());
+    }
+
+    @Test
+    public void differsBetweenPuzzles() throws IOException, URISyntaxException {
+        File resourceDir = new File(
+                ContentFingerprintTest.class.getResource("/3x3.puz").toURI()).getParentFile();
+        File[] files = resourceDir.listFiles(
+                (dir, name) -> name.endsWith(".puz") && !name.equals("3x3_filled.puz"));
+        assert files != null;
+        Map<Long, String> seen = new HashMap<>();
+        for (File file : files) {
+            PuzFile puzFile = new PuzFile(new ByteArrayInputStream(Files.toByteArray(file)));
+            assertNull(file.getName(), seen.put(puzFile.getContentFingerprint(), file.getName()));
+        }
+    }
+
+    @Test
+    public void of_matchesParse() throws IOException {
+        PuzFile puzFile =
+                new PuzFile(ContentFingerprintTest.class.getResourceAsStream("/Sep0520.puz"));
+        byte[] solution = new byte[puzFile.getWidth() * puzFile.getHeight()];
+        String[] clueTexts = new String[puzFile.getNumClues()];
+        for (int row = 0; row < puzFile.getHeight(); row++) {
+            for (int col = 0; col < puzFile.getWidth(); col++) {
+                solution[row * puzFile.getWidth() + col] =
+                        puzFile.isBlack(row, col) ? (byte) '.' : (byte) puzFile.getSolutionLetter(
+                                row, col);
+            }
+        }
+        for (int i = 0; i < clueTexts.length; i++) {
+            clueTexts[i] = puzFile.getClue(i).getText();
+        }
+        assertEquals(puzFile.getContentFingerprint(),
+                ContentFingerprint.of(puzFile.getWidth(), puzFile.getHeight(), solution,
+                        clueTexts));
+    }
+
+    @Test
+    public void of_clueBoundariesMatter() {
+        byte[] solution = "AB".getBytes();
+        long split = ContentFingerprint.of(2, 1, solution, new String[]{"ab", "c"});
+        assertNotEquals(split, ContentFingerprint.of(2, 1, solution, new String[]{"a", "bc"}));
+        assertNotEquals(split, ContentFingerprint.of(2, 1, solution, new String[]{"abc"}));
+        assertNotEquals(split, ContentFingerprint.of(1, 2, solution, new String[]{"ab", "c"}));
+        assertNotEquals(ContentFingerprint.UNKNOWN,
+                ContentFingerprint.of(0, 0, new byte[0], new String[0]));
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import io.github.leffinger.crossyourheart.room.DatabaseStats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for database open and DAO timing.
+ */
+public class DatabaseStatsTest {
+    public interface FakeDao {
+        int count();
+
+        int count(String filter);
+
+        void fail() throws IOException;
+
+        default int countTwice() {
+            return 2 * count();
+        }
+    }
+
+    private static class FakeDaoImpl implements FakeDao {
+        final IOException mException = new IOException("disk full");
+
+        @Override
+        public int count() {
+            return 3;
+        }
+
+        @Override
+        public int count(String filter) {
+            return filter.length();
+        }
+
+        @Override
+        public void fail() throws IOException {
+            throw mException;
+        }
+    }
+
+    @Test
+    public void wrap_timesEachMethod() {
+        DatabaseStats stats = new DatabaseStats();
+        FakeDao dao = stats.wrap(FakeDao.class, new FakeDaoImpl());
+
+        assertEquals(3, dao.count());
+        assertEquals(5, dao.count("abcde"));
+        assertEquals(6, dao.countTwice());
+
+        List<DatabaseStats.MethodStats> methods = stats.getMethodStats();
+        assertEquals(2, methods.size());
+        for (DatabaseStats.MethodStats method : methods) {
+            if (method.name.equals("FakeDao.count")) {
+                // Overloads are counted together. Calls made inside the DAO are not counted.
+                assertEquals(2, method.count);
+            } else {
+                assertEquals("FakeDao.countTwice", method.name);
+                assertEquals(1, method.count);
+            }
+            assertTrue(method.maxNanos <= method.totalNanos);
+        }
+    }
+
+    @Test
+    public void wrap_passesExceptionsThrough() {
+        DatabaseStats stats = new DatabaseStats();
+        FakeDaoImpl impl = new FakeDaoImpl();
+        FakeDao dao = stats.wrap(FakeDao.class, impl);
+        try {
+            dao.fail();
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertSame(impl.mException, e);
+        }
+        assertEquals(1, stats.getMethodStats().get(0).count);
+    }
+
+    @Test
+    public void wrap_objectMethodsNotTimed() {
+        DatabaseStats stats = new DatabaseStats();
+        FakeDaoImpl impl = new FakeDaoImpl();
+        FakeDao dao = stats.wrap(FakeDao.class, impl);
+        assertEquals(impl.toString(), dao.toString());
+        assertTrue(stats.getMethodStats().isEmpty());
+    }
+
+    @Test
+    public void methodStats_mostTotalTimeFirst() {
+        DatabaseStats stats = new DatabaseStats();
+        assertEquals(-1, stats.getOpenMillis());
+        stats.recordOpen(42_000_000);
+        stats.record("PuzzleDao.insert", 1_000_000);
+        stats.record("SearchDao.search", 5_000_000);
+        stats.record("PuzzleDao.insert", 3_000_000);
+        stats.record("SearchDao.search", 2_000_000);
+        stats.record("PuzzleDao.count", 500_000);
+
+        List<DatabaseStats.MethodStats> methods = stats.getMethodStats();
+        assertEquals("SearchDao.search", methods.get(0).name);
+        assertEquals("PuzzleDao.insert", methods.get(1).name);
+        assertEquals("PuzzleDao.count", methods.get(2).name);
+        assertEquals("PuzzleDao.insert: calls=2 mean=2.00ms max=3.00ms total=4.0ms",
+                methods.get(1).toString());
+        assertEquals(42, stats.getOpenMillis());
+        assertTrue(stats.toString().startsWith("open=42ms\n  SearchDao.search"));
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.github.leffinger.crossyourheart.views.FrameStats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameStatsTest {
+
+    @Test
+    public void empty() {
+        FrameStats stats = new FrameStats("test", 8);
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getPercentileNanos(50));
+        assertTrue(stats.toString().startsWith("test: frames=0 "));
+    }
+
+    @Test
+    public void percentiles() {
+        FrameStats stats = new FrameStats("test", 100);
+        for (int i = 1; i <= 100; i++) {
+            stats.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(100, stats.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), stats.getPercentileNanos(50));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(90), stats.getPercentileNanos(90));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), stats.getPercentileNanos(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), stats.getMaxNanos());
+        // 17ms and up miss a 60Hz frame.
+        assertEquals(84, stats.getOverBudget());
+    }
+
+    @Test
+    public void keepsMostRecentSamples() {
+        FrameStats stats = new FrameStats("test", 4);
+        stats.record(1000);
+        for (int i = 0; i < 4; i++) {
+            stats.record(10);
+        }
+        assertEquals(5, stats.getCount());
+        assertEquals(10, stats.getPercentileNanos(100));
+        assertEquals(1000, stats.getMaxNanos());
+
+        stats.reset();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMaxNanos());
+    }
+}
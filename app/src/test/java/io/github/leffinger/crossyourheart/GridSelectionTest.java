@@ -0,0 +1,322 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile;
+import io.github.leffinger.crossyourheart.io.ClueReferences;
+import io.github.leffinger.crossyourheart.viewmodels.GridSelection;
+
+import static io.github.leffinger.crossyourheart.viewmodels.GridSelection.HIGHLIGHTED;
+import static io.github.leffinger.crossyourheart.viewmodels.GridSelection.REFERENCED;
+import static io.github.leffinger.crossyourheart.viewmodels.GridSelection.SELECTED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link GridSelection} reports exactly the cells and clues whose state changed, and
+ * that the cost of a move on grids of increasing size does not grow with the grid. Words are always
+ * five letters long, so a move should visit the same cells on any grid. Timing the moves only runs
+ * with -Dbenchmark=true.
+ */
+public class GridSelectionTest {
+    private static final int WORD_LENGTH = 5;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final int MOVES_PER_ITERATION = 20000;
+
+    private static Grid openGrid() {
+        return openGrid("", "", "", "", "", "");
+    }
+
+    /**
+     * A 3x3 grid with no black squares. Clues 0-2 are the across rows and 3-5 the down columns.
+     */
+    private static Grid openGrid(String... clueTexts) {
+        int[] acrossClue = new int[9];
+        int[] downClue = new int[9];
+        for (int cell = 0; cell < 9; cell++) {
+            acrossClue[cell] = cell / 3;
+            downClue[cell] = 3 + cell % 3;
+        }
+        // Numbered 1, 4 and 5 Across and 1, 2 and 3 Down.
+        int[] numbers = {1, 4, 5, 1, 2, 3};
+        AbstractPuzzleFile.Clue[] clues = new AbstractPuzzleFile.Clue[6];
+        for (int i = 0; i < clues.length; i++) {
+            clues[i] = new AbstractPuzzleFile.Clue(clueTexts[i]);
+            clues[i].setNumber(numbers[i]);
+            clues[i].setAcross(i < 3);
+        }
+        return new Grid(acrossClue, downClue, ClueReferences.find(clues));
+    }
+
+    @Test
+    public void select_firstMove() {
+        Grid grid = openGrid();
+        grid.selection.select(0, 0);
+        assertEquals(SELECTED | HIGHLIGHTED, grid.selection.getCellState(0));
+        assertEquals(HIGHLIGHTED, grid.selection.getCellState(1));
+        assertEquals(HIGHLIGHTED, grid.selection.getCellState(2));
+        assertEquals(0, grid.selection.getCellState(3));
+        assertEquals(3, grid.changedCells.size());
+        assertTrue(grid.changedClues.isEmpty());
+    }
+
+    @Test
+    public void select_withinClue_reportsTwoCells() {
+        Grid grid = openGrid();
+        grid.selection.select(0, 0);
+        grid.clear();
+
+        grid.selection.select(1, 0);
+        assertEquals(2, grid.changedCells.size());
+        assertEquals(HIGHLIGHTED, (int) grid.changedCells.get(0));
+        assertEquals(SELECTED | HIGHLIGHTED, (int) grid.changedCells.get(1));
+        assertEquals(2, grid.selection.getLastDispatched());
+    }
+
+    @Test
+    public void select_sameCellAndClue_reportsNothing() {
+        Grid grid = openGrid();
+        grid.selection.select(4, 1);
+        grid.clear();
+
+        grid.selection.select(4, 1);
+        assertTrue(grid.changedCells.isEmpty());
+        assertEquals(0, grid.selection.getLastVisited());
+    }
+
+    @Test
+    public void select_toggleDirection() {
+        Grid grid = openGrid();
+        grid.selection.select(4, 1);  // middle row
+        grid.clear();
+
+        grid.selection.select(4, 4);  // middle column
+        // 3 and 5 leave the row, 1 and 7 join the column, 4 stays selected and highlighted.
+        assertEquals(4, grid.changedCells.size());
+        assertEquals(0, (int) grid.changedCells.get(3));
+        assertEquals(0, (int) grid.changedCells.get(5));
+        assertEquals(HIGHLIGHTED, (int) grid.changedCells.get(1));
+        assertEquals(HIGHLIGHTED, (int) grid.changedCells.get(7));
+        assertEquals(SELECTED | HIGHLIGHTED, grid.selection.getCellState(4));
+    }
+
+    @Test
+    public void select_references() {
+        // Row 0 mentions column 2, and row 1 mentions columns 0 and 2.
+        Grid grid = openGrid("See 3-Down", "With 1- and 3-Down, a hint", "", "", "", "");
+
+        grid.selection.select(0, 0);
+        assertTrue(grid.selection.isClueReferenced(5));
+        assertEquals(Boolean.TRUE, grid.changedClues.get(5));
+        assertEquals(SELECTED | HIGHLIGHTED, grid.selection.getCellState(0));
+        assertEquals(HIGHLIGHTED | REFERENCED, grid.selection.getCellState(2));
+        assertEquals(REFERENCED, grid.selection.getCellState(5));
+        assertEquals(REFERENCED, grid.selection.getCellState(8));
+        // Cells in the middle of row 0 are referenced through their down clue only if it is
+        // referenced.
+        assertEquals(HIGHLIGHTED, grid.selection.getCellState(1));
+        grid.clear();
+
+        // Column 2 stays referenced, so only column 0 is reported.
+        grid.selection.select(3, 1);
+        assertEquals(1, grid.changedClues.size());
+        assertEquals(Boolean.TRUE, grid.changedClues.get(3));
+        assertEquals(SELECTED | HIGHLIGHTED | REFERENCED, grid.selection.getCellState(3));
+        assertEquals(HIGHLIGHTED | REFERENCED, grid.selection.getCellState(5));
+        assertEquals(REFERENCED, grid.selection.getCellState(0));
+        assertEquals(REFERENCED, grid.selection.getCellState(2));
+        grid.clear();
+
+        grid.selection.select(-1, -1);
+        assertEquals(Boolean.FALSE, grid.changedClues.get(3));
+        assertEquals(Boolean.FALSE, grid.changedClues.get(5));
+        for (int cell = 0; cell < 9; cell++) {
+            assertEquals(0, grid.selection.getCellState(cell));
+        }
+    }
+
+    @Test
+    public void clueCells_inReadingOrder() {
+        Grid grid = openGrid();
+        assertArrayEquals(new int[]{3, 4, 5}, grid.selection.getClueCells(1));
+        assertArrayEquals(new int[]{1, 4, 7}, grid.selection.getClueCells(4));
+    }
+
+    @Test
+    public void blackSquares_haveNoState() {
+        Grid grid = Grid.create(13, 13, WORD_LENGTH);
+        for (int cell = 0; cell < 13 * 13; cell++) {
+            if (grid.acrossClue[cell] < 0) {
+                assertEquals(-1, grid.downClue[cell]);
+            }
+        }
+        grid.selection.select(0, grid.acrossClue[0]);
+        for (int cell = 0; cell < 13 * 13; cell++) {
+            if (grid.acrossClue[cell] < 0) {
+                assertFalse(grid.changedCells.containsKey(cell));
+            }
+        }
+    }
+
+    @Test
+    public void cellsVisited_independentOfGridSize() {
+        int maxVisited = -1;
+        for (int size : new int[]{17, 53, 149}) {
+            Grid grid = Grid.create(size, size, WORD_LENGTH);
+            int[] moves = randomWalk(grid, MOVES_PER_ITERATION);
+            int visited = 0;
+            for (int i = 0; i < moves.length; i += 2) {
+                grid.selection.select(moves[i], moves[i + 1]);
+                visited = Math.max(visited, grid.selection.getLastVisited());
+            }
+
+            // Old cell, new cell and the cells of two clues, regardless of the grid.
+            assertTrue(visited <= 2 + 2 * WORD_LENGTH);
+            if (maxVisited >= 0) {
+                assertEquals(maxVisited, visited);
+            }
+            maxVisited = visited;
+        }
+    }
+
+    @Test
+    public void dispatchCost_independentOfGridSize() {
+        Assume.assumeTrue("Run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        for (int size : new int[]{17, 53, 149}) {
+            Grid grid = Grid.create(size, size, WORD_LENGTH);
+            int[] moves = randomWalk(grid, MOVES_PER_ITERATION);
+
+            int visited = 0;
+            double[] results = new double[MEASUREMENT_ITERATIONS];
+            for (int iteration = -WARMUP_ITERATIONS; iteration < MEASUREMENT_ITERATIONS;
+                 iteration++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < moves.length; i += 2) {
+                    grid.selection.select(moves[i], moves[i + 1]);
+                    visited = Math.max(visited, grid.selection.getLastVisited());
+                }
+                long elapsed = System.nanoTime() - start;
+                if (iteration >= 0) {
+                    results[iteration] = elapsed / (moves.length / 2.0);
+                }
+            }
+            report(size, results, visited);
+        }
+    }
+
+    /** Returns (cell, clue) pairs for a walk that moves within words and switches direction. */
+    private static int[] randomWalk(Grid grid, int numMoves) {
+        Random random = new Random(42);
+        List<Integer> whiteCells = new ArrayList<>();
+        for (int cell = 0; cell < grid.acrossClue.length; cell++) {
+            if (grid.acrossClue[cell] >= 0) {
+                whiteCells.add(cell);
+            }
+        }
+        int[] moves = new int[numMoves * 2];
+        for (int i = 0; i < numMoves; i++) {
+            int cell = whiteCells.get(random.nextInt(whiteCells.size()));
+            moves[2 * i] = cell;
+            moves[2 * i + 1] = random.nextBoolean() ? grid.acrossClue[cell] : grid.downClue[cell];
+        }
+        return moves;
+    }
+
+    private static void report(int size, double[] results, int visited) {
+        double mean = 0;
+        for (double result : results) {
+            mean += result;
+        }
+        mean /= results.length;
+        double variance = 0;
+        for (double result : results) {
+            variance += (result - mean) * (result - mean);
+        }
+        double stddev = Math.sqrt(variance / (results.length - 1));
+        System.out.println(String.format(Locale.US,
+                "%3dx%-3d %8.1f +/- %6.1f ns/move, at most %d cells visited (of %d)", size, size,
+                mean, stddev, visited, size * size));
+    }
+
+    /**
+     * A synthetic grid where every (wordLength + 1)th row and column is black, so that every word
+     * has the same length.
+     */
+    private static class Grid {
+        final int[] acrossClue;
+        final int[] downClue;
+        final GridSelection selection;
+        final Map<Integer, Integer> changedCells = new HashMap<>();
+        final Map<Integer, Boolean> changedClues = new HashMap<>();
+
+        Grid(int[] acrossClue, int[] downClue, ClueReferences references) {
+            this.acrossClue = acrossClue;
+            this.downClue = downClue;
+            selection = new GridSelection(acrossClue, downClue, references,
+                    new GridSelection.Listener() {
+                        @Override
+                        public void onCellStateChanged(int cell, int state) {
+                            changedCells.put(cell, state);
+                        }
+
+                        @Override
+                        public void onClueReferencedChanged(int clue, boolean referenced) {
+                            changedClues.put(clue, referenced);
+                        }
+                    });
+        }
+
+        static Grid create(int height, int width, int wordLength) {
+            int[] acrossClue = new int[height * width];
+            int[] downClue = new int[height * width];
+            int numClues = 0;
+            Map<Integer, Integer> acrossStarts = new HashMap<>();
+            Map<Integer, Integer> downStarts = new HashMap<>();
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    int cell = row * width + col;
+                    if (isBlack(row, col, wordLength)) {
+                        acrossClue[cell] = downClue[cell] = -1;
+                        continue;
+                    }
+                    int acrossStart = row * width + col - col % (wordLength + 1);
+                    int downStart = (row - row % (wordLength + 1)) * width + col;
+                    if (!acrossStarts.containsKey(acrossStart)) {
+                        acrossStarts.put(acrossStart, numClues++);
+                    }
+                    if (!downStarts.containsKey(downStart)) {
+                        downStarts.put(downStart, numClues++);
+                    }
+                    acrossClue[cell] = acrossStarts.get(acrossStart);
+                    downClue[cell] = downStarts.get(downStart);
+                }
+            }
+            AbstractPuzzleFile.Clue[] clues = new AbstractPuzzleFile.Clue[numClues];
+            for (int i = 0; i < numClues; i++) {
+                clues[i] = new AbstractPuzzleFile.Clue("");
+                clues[i].setNumber(i + 1);
+            }
+            return new Grid(acrossClue, downClue, ClueReferences.find(clues));
+        }
+
+        private static boolean isBlack(int row, int col, int wordLength) {
+            return row % (wordLength + 1) == wordLength || col % (wordLength + 1) == wordLength;
+        }
+
+        void clear() {
+            changedCells.clear();
+            changedClues.clear();
+        }
+    }
+}
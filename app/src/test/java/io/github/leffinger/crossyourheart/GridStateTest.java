@@ -0,0 +1,89 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import io.github.leffinger.crossyourheart.views.GridState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GridStateTest {
+
+    @Test
+    public void newState_allDirty() {
+        GridState state = new GridState(5, 3);
+        assertTrue(state.isDirty());
+        assertEquals(0, state.getDirtyTop());
+        assertEquals(0, state.getDirtyLeft());
+        assertEquals(2, state.getDirtyBottom());
+        assertEquals(4, state.getDirtyRight());
+        assertEquals("", state.getContents(0));
+    }
+
+    @Test
+    public void setters_reportChanges() {
+        GridState state = new GridState(5, 3);
+        state.clearDirty();
+
+        assertTrue(state.setFlag(7, GridState.SELECTED, true));
+        assertFalse(state.setFlag(7, GridState.SELECTED, true));
+        assertTrue(state.setFlag(7, GridState.PENCIL, true));
+        assertEquals(GridState.SELECTED | GridState.PENCIL, state.getFlags(7));
+        assertTrue(state.setFlag(7, GridState.SELECTED, false));
+        assertFalse(state.hasFlag(7, GridState.SELECTED));
+
+        assertTrue(state.setContents(7, "A"));
+        assertFalse(state.setContents(7, "A"));
+        assertFalse(state.setContents(8, ""));
+        assertFalse(state.setContents(8, null));
+
+        assertTrue(state.setNumber(7, 12));
+        assertFalse(state.setNumber(7, 12));
+        assertEquals(12, state.getNumber(7));
+    }
+
+    @Test
+    public void dirtyRect_coversChangedCells() {
+        GridState state = new GridState(5, 3);
+        state.clearDirty();
+        assertFalse(state.isDirty());
+
+        state.setFlag(7, GridState.HIGHLIGHTED, true);  // row 1, col 2
+        assertTrue(state.isDirty());
+        assertEquals(1, state.getDirtyTop());
+        assertEquals(2, state.getDirtyLeft());
+        assertEquals(1, state.getDirtyBottom());
+        assertEquals(2, state.getDirtyRight());
+
+        state.setContents(10, "B");  // row 2, col 0
+        assertEquals(1, state.getDirtyTop());
+        assertEquals(0, state.getDirtyLeft());
+        assertEquals(2, state.getDirtyBottom());
+        assertEquals(2, state.getDirtyRight());
+
+        // No change, so the rectangle does not grow.
+        state.setContents(4, "");
+        assertEquals(1, state.getDirtyTop());
+        assertEquals(2, state.getDirtyRight());
+
+        state.clearDirty();
+        assertFalse(state.isDirty());
+    }
+
+    @Test
+    public void clear_resetsCellsForReuse() {
+        GridState state = new GridState(5, 1);
+        state.setFlag(3, GridState.PENCIL, true);
+        state.setContents(3, "A");
+        state.setNumber(0, 12);
+        state.clearDirty();
+
+        state.clear();
+        assertEquals(0, state.getFlags(3));
+        assertEquals("", state.getContents(3));
+        assertEquals(0, state.getNumber(0));
+        assertEquals(0, state.getDirtyLeft());
+        assertEquals(4, state.getDirtyRight());
+    }
+}
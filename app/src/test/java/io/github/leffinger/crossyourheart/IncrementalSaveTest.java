@@ -0,0 +1,128 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that saving a puzzle back to the file it was read from produces exactly the same bytes as
+ * writing it out from scratch.
+ */
+public class IncrementalSaveTest {
+    private static final String[] FILES =
+            {"3x3.puz", "3x3_filled.puz", "wsj200827.puz", "mgwcc647.puz", "Nov0596.puz",
+                    "lollapuzzoola2.puz"};
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void incrementalSave_matchesFullSave() throws IOException {
+        for (String filename : FILES) {
+            File file = copyResource(filename);
+            PuzFile puzFile = PuzFile.readPuzzleFile(file);
+
+            // Fill in a few cells, one save at a time.
+            int count = 0;
+            for (int row = 0; row < puzFile.getHeight() && count < 5; row++) {
+                for (int col = 0; col < puzFile.getWidth() && count < 5; col++) {
+                    if (puzFile.isBlack(row, col)) {
+                        continue;
+                    }
+                    puzFile.setCellContents(row, col, puzFile.getSolution(row, col).substring(0, 1));
+                    puzFile.savePuzzleFile(file);
+                    assertMatchesFullSave(filename, puzFile, file);
+                    count++;
+                }
+            }
+
+            // Clear a cell and change the timer.
+            puzFile.setCellContents(0, puzFile.isBlack(0, 0) ? 1 : 0, "");
+            puzFile.setTimerInfo(new AbstractPuzzleFile.TimerInfo(12345, false));
+            puzFile.savePuzzleFile(file);
+            assertMatchesFullSave(filename, puzFile, file);
+        }
+    }
+
+    @Test
+    public void incrementalSave_rebusChangesSectionSize() throws IOException {
+        File file = copyResource("3x3_filled.puz");
+        PuzFile puzFile = PuzFile.readPuzzleFile(file);
+
+        puzFile.setCellContents(1, 0, "ABCDEF");
+        puzFile.savePuzzleFile(file);
+        assertMatchesFullSave("3x3_filled.puz", puzFile, file);
+
+        puzFile.setCellContents(1, 0, "X");
+        puzFile.savePuzzleFile(file);
+        assertMatchesFullSave("3x3_filled.puz", puzFile, file);
+        assertEquals("X", PuzFile.readPuzzleFile(file).getCellContents(1, 0));
+    }
+
+    @Test
+    public void incrementalSave_fileChangedOnDisk() throws IOException {
+        File file = copyResource("3x3.puz");
+        PuzFile puzFile = PuzFile.readPuzzleFile(file);
+
+        // Replace the file behind the puzzle's back; the next save must rewrite all of it.
+        Files.write(new byte[]{1, 2, 3}, file);
+        puzFile.setCellContents(0, 0, "A");
+        puzFile.savePuzzleFile(file);
+        assertMatchesFullSave("3x3.puz", puzFile, file);
+    }
+
+    private File copyResource(String filename) throws IOException {
+        File file = mTemporaryFolder.newFile();
+        try (InputStream inputStream = IncrementalSaveTest.class.getResourceAsStream(
+                "/" + filename)) {
+            Files.write(ByteStreams.toByteArray(inputStream), file);
+        }
+        return file;
+    }
+
+    private void assertMatchesFullSave(String filename, PuzFile puzFile, File file)
+            throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            PuzFile.verifyPuzFile(inputStream);
+        }
+        // A PuzFile that has never seen this file has to write everything.
+        File fullFile = mTemporaryFolder.newFile();
+        cloneOf(puzFile).savePuzzleFile(fullFile);
+        assertArrayEquals(filename, Files.toByteArray(fullFile), Files.toByteArray(file));
+        assertFalse(new File(file.getAbsolutePath() + ".jnl").exists());
+        assertFalse(new File(file.getAbsolutePath() + ".bk").exists());
+    }
+
+    /** Copies the puzzle via serialization, which forgets what is on disk. */
+    private static PuzFile cloneOf(PuzFile puzFile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+            outputStream.writeObject(puzFile);
+        }
+        try (ObjectInputStream inputStream = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (PuzFile) inputStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
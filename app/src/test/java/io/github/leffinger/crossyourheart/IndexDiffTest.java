@@ -0,0 +1,73 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.leffinger.crossyourheart.io.IndexDiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexDiffTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File newFile(String name, int size) throws IOException {
+        File file = mTemporaryFolder.newFile(name);
+        Files.write(new byte[size], file);
+        return file;
+    }
+
+    @Test
+    public void unchanged() throws IOException {
+        File a = newFile("a.puz", 10);
+        File b = newFile("b.puz", 20);
+        Map<String, IndexDiff.Fingerprint> indexed = new HashMap<>();
+        indexed.put("a.puz", IndexDiff.Fingerprint.of(a));
+        indexed.put("b.puz", IndexDiff.Fingerprint.of(b));
+
+        IndexDiff diff = IndexDiff.compute(new File[]{a, b}, indexed);
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void addedChangedRemoved() throws IOException {
+        File kept = newFile("kept.puz", 10);
+        File resized = newFile("resized.puz", 10);
+        File touched = newFile("touched.puz", 10);
+        File added = newFile("added.puz", 10);
+
+        Map<String, IndexDiff.Fingerprint> indexed = new HashMap<>();
+        indexed.put("kept.puz", IndexDiff.Fingerprint.of(kept));
+        indexed.put("resized.puz", new IndexDiff.Fingerprint(11, resized.lastModified()));
+        indexed.put("touched.puz", new IndexDiff.Fingerprint(10, touched.lastModified() - 1000));
+        indexed.put("gone.puz", new IndexDiff.Fingerprint(10, 0));
+
+        IndexDiff diff =
+                IndexDiff.compute(new File[]{kept, resized, touched, added}, indexed);
+        assertEquals(Collections.singletonList(added), diff.added);
+        assertEquals(2, diff.changed.size());
+        assertTrue(diff.changed.contains(resized));
+        assertTrue(diff.changed.contains(touched));
+        assertEquals(Collections.singletonList("gone.puz"), diff.removed);
+    }
+
+    @Test
+    public void unknownFingerprint_isChanged() throws IOException {
+        // Rows indexed before fingerprints existed have a size of 0 or -1.
+        File file = newFile("old.puz", 10);
+        IndexDiff diff = IndexDiff.compute(new File[]{file},
+                Collections.singletonMap("old.puz", new IndexDiff.Fingerprint(-1, -1)));
+        assertEquals(Collections.singletonList(file), diff.changed);
+    }
+}
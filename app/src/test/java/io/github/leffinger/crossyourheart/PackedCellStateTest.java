@@ -0,0 +1,115 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import io.github.leffinger.crossyourheart.io.PackedCellState;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the packed per-puzzle cell state.
+ */
+public class PackedCellStateTest {
+
+    @Test
+    public void roundTrip_withoutTimestamps() throws IOException {
+        PackedCellState state = new PackedCellState(15, 15, false);
+        state.set(PackedCellState.PENCIL, 0, true);
+        state.set(PackedCellState.PENCIL, 224, true);
+        state.set(PackedCellState.REVEALED, 64, true);
+        state.set(PackedCellState.MARKED_INCORRECT, 63, true);
+
+        byte[] bytes = state.toBytes();
+        assertEquals(6 + 4 * 4 * 8, bytes.length);
+        PackedCellState decoded = PackedCellState.fromBytes(bytes);
+        assertEquals(state, decoded);
+        assertFalse(decoded.hasTimestamps());
+        assertTrue(decoded.get(PackedCellState.PENCIL, 14, 14));
+        assertTrue(decoded.get(PackedCellState.REVEALED, 4, 4));
+        assertFalse(decoded.get(PackedCellState.MARKED_CORRECT, 4, 4));
+        assertEquals(2, decoded.count(PackedCellState.PENCIL));
+        assertEquals(0, decoded.getTimestamp(0));
+    }
+
+    @Test
+    public void roundTrip_withTimestamps() throws IOException {
+        PackedCellState state = new PackedCellState(5, 3, true);
+        state.set(PackedCellState.MARKED_CORRECT, 7, true);
+        state.setTimestamp(7, 1_600_000_000_000L);
+
+        PackedCellState decoded = PackedCellState.fromBytes(state.toBytes());
+        assertEquals(state, decoded);
+        assertEquals(1_600_000_000_000L, decoded.getTimestamp(7));
+        assertEquals(0, decoded.getTimestamp(6));
+    }
+
+    @Test
+    public void set_clearsBits() {
+        PackedCellState state = new PackedCellState(21, 21, false);
+        state.set(PackedCellState.PENCIL, 100, true);
+        state.set(PackedCellState.PENCIL, 100, false);
+        assertFalse(state.get(PackedCellState.PENCIL, 100));
+        assertEquals(0, state.count(PackedCellState.PENCIL));
+    }
+
+    @Test
+    public void nextSet_visitsMarkedCellsInOrder() {
+        PackedCellState state = new PackedCellState(21, 21, false);
+        int[] marked = {0, 63, 64, 200, 440};
+        for (int cell : marked) {
+            state.set(PackedCellState.REVEALED, cell, true);
+        }
+        int[] visited = new int[marked.length];
+        int count = 0;
+        for (int cell = state.nextSet(PackedCellState.REVEALED, 0); cell >= 0;
+             cell = state.nextSet(PackedCellState.REVEALED, cell + 1)) {
+            visited[count++] = cell;
+        }
+        assertEquals(marked.length, count);
+        assertArrayEquals(marked, visited);
+        assertEquals(-1, state.nextSet(PackedCellState.PENCIL, 0));
+        assertEquals(-1, state.nextSet(PackedCellState.REVEALED, 441));
+    }
+
+    @Test
+    public void resize_keepsRowsAndColumns() {
+        // Migrated state is laid out by the largest column seen, not the real grid width.
+        PackedCellState migrated = new PackedCellState(3, 2, false);
+        migrated.set(PackedCellState.PENCIL, 1 * 3 + 2, true);
+
+        PackedCellState resized = migrated.resize(15, 15, true);
+        assertTrue(resized.hasTimestamps());
+        assertTrue(resized.get(PackedCellState.PENCIL, 1, 2));
+        assertTrue(resized.get(PackedCellState.PENCIL, 1 * 15 + 2));
+        assertEquals(1, resized.count(PackedCellState.PENCIL));
+
+        PackedCellState shrunk = resized.resize(2, 2, false);
+        assertEquals(0, shrunk.count(PackedCellState.PENCIL));
+    }
+
+    @Test
+    public void fromBytes_rejectsMalformedInput() {
+        byte[] bytes = new PackedCellState(15, 15, false).toBytes();
+        for (byte[] malformed : new byte[][]{new byte[0], Arrays.copyOf(bytes, bytes.length - 1),
+                                             Arrays.copyOf(bytes, bytes.length + 1)}) {
+            try {
+                PackedCellState.fromBytes(malformed);
+                fail("accepted " + malformed.length + " bytes");
+            } catch (IOException expected) {
+            }
+        }
+        bytes[0] = 99;
+        try {
+            PackedCellState.fromBytes(bytes);
+            fail("accepted unknown version");
+        } catch (IOException expected) {
+        }
+    }
+}
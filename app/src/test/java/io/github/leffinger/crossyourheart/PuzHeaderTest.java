@@ -0,0 +1,106 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+
+import io.github.leffinger.crossyourheart.io.ContentFingerprint;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+import io.github.leffinger.crossyourheart.io.PuzHeader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the header and grid tiers agree with the full model.
+ */
+public class PuzHeaderTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void tiers_matchFullModel() throws IOException, URISyntaxException {
+        File resourceDir =
+                new File(PuzHeaderTest.class.getResource("/3x3.puz").toURI()).getParentFile();
+        File[] files = resourceDir.listFiles((dir, name) -> name.endsWith(".puz"));
+        assert files != null;
+        for (File file : files) {
+            byte[] bytes = Files.toByteArray(file);
+            PuzFile puzFile = new PuzFile(new ByteArrayInputStream(bytes));
+            PuzHeader header = PuzHeader.parse(ByteBuffer.wrap(bytes), false);
+            PuzHeader withGrid = PuzHeader.parse(ByteBuffer.wrap(bytes), true);
+            PuzHeader withText = PuzHeader.parse(ByteBuffer.wrap(bytes), false, true);
+            PuzHeader full = PuzHeader.parse(ByteBuffer.wrap(bytes), true, true);
+
+            for (PuzHeader h : new PuzHeader[]{header, withGrid, withText, full}) {
+                String name = file.getName();
+                assertEquals(name, puzFile.getTitle(), h.getTitle());
+                assertEquals(name, puzFile.getAuthor(), h.getAuthor());
+                assertEquals(name, puzFile.getCopyright(), h.getCopyright());
+                assertEquals(name, puzFile.getHeaderChecksum(), h.getHeaderChecksum());
+                assertEquals(name, puzFile.getFileChecksum(), h.getFileChecksum());
+                assertEquals(name, puzFile.getScrambleState(), h.getScrambleState());
+                assertEquals(name, puzFile.getWidth(), h.getWidth());
+                assertEquals(name, puzFile.getHeight(), h.getHeight());
+                assertEquals(name, puzFile.getNumClues(), h.getNumClues());
+            }
+            assertFalse(header.hasGrid());
+            assertTrue(withGrid.hasGrid());
+            assertFalse(withGrid.hasText());
+            assertTrue(withText.hasText());
+            assertEquals(file.getName(), puzFile.getNote(), withText.getNote());
+            for (int i = 0; i < puzFile.getNumClues(); i++) {
+                assertEquals(file.getName(), puzFile.getClue(i).getText(),
+                        withText.getClueTexts()[i]);
+            }
+            assertEquals(file.getName(), puzFile.getContentFingerprint(),
+                    full.getContentFingerprint());
+            assertEquals(ContentFingerprint.UNKNOWN, withGrid.getContentFingerprint());
+            assertEquals(ContentFingerprint.UNKNOWN, withText.getContentFingerprint());
+            assertEquals(file.getName(), puzFile.isSolved(), withGrid.isSolved());
+            assertEquals(file.getName(), puzFile.isEmpty(), withGrid.isEmpty());
+        }
+    }
+
+    @Test
+    public void gridTier_solvedPuzzle() throws IOException {
+        PuzFile puzFile =
+                new PuzFile(PuzHeaderTest.class.getResourceAsStream("/Nov0596.puz"));
+        for (int row = 0; row < puzFile.getHeight(); row++) {
+            for (int col = 0; col < puzFile.getWidth(); col++) {
+                if (!puzFile.isBlack(row, col)) {
+                    puzFile.setCellContents(row, col, puzFile.getSolution(row, col));
+                }
+            }
+        }
+        File file = mTemporaryFolder.newFile();
+        puzFile.savePuzzleFile(file);
+
+        PuzHeader header = PuzHeader.readPuzzleFile(file, true);
+        assertTrue(header.isSolved());
+        assertFalse(header.isEmpty());
+    }
+
+    @Test
+    public void headerTier_gridNotAvailable() throws IOException {
+        byte[] bytes = ByteStreams.toByteArray(PuzHeaderTest.class.getResourceAsStream("/3x3.puz"));
+        PuzHeader header = PuzHeader.parse(ByteBuffer.wrap(bytes), false);
+        try {
+            header.isSolved();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
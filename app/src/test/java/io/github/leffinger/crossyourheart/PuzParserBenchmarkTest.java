@@ -0,0 +1,178 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.Files;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares the stream parser with the buffer parser over every puzzle in the test resources: both
+ * must produce the same model, and their parse times are reported JMH-style (warmup iterations,
+ * then measured iterations with mean and standard deviation). The timing only runs with
+ * -Dbenchmark=true.
+ */
+public class PuzParserBenchmarkTest {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final int PASSES_PER_ITERATION = 20;
+
+    private static List<File> sFiles;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void findCorpus() throws URISyntaxException {
+        File resourceDir =
+                new File(PuzParserBenchmarkTest.class.getResource("/3x3.puz").toURI())
+                        .getParentFile();
+        File[] files = resourceDir.listFiles((dir, name) -> name.endsWith(".puz"));
+        assert files != null;
+        Arrays.sort(files);
+        sFiles = Arrays.asList(files);
+    }
+
+    @Test
+    public void bufferParser_matchesStreamParser() throws IOException {
+        assertFalse(sFiles.isEmpty());
+        for (File file : sFiles) {
+            byte[] bytes = Files.toByteArray(file);
+            PuzFile fromStream = new PuzFile(new ByteArrayInputStream(bytes));
+            assertSameModel(file.getName(), fromStream, PuzFile.parse(ByteBuffer.wrap(bytes)));
+            assertSameModel(file.getName(), fromStream, PuzFile.parse(map(file)));
+        }
+    }
+
+    @Test
+    public void compareParsers() throws IOException {
+        Assume.assumeTrue("Run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        List<byte[]> corpus = new ArrayList<>();
+        for (File file : sFiles) {
+            corpus.add(Files.toByteArray(file));
+        }
+
+        Parser stream = bytes -> new PuzFile(new ByteArrayInputStream(bytes));
+        Parser buffer = bytes -> PuzFile.parse(ByteBuffer.wrap(bytes));
+        report("stream", measure(corpus, stream));
+        report("buffer", measure(corpus, buffer));
+
+        List<ByteBuffer> mapped = new ArrayList<>();
+        for (File file : sFiles) {
+            mapped.add(map(file));
+        }
+        report("mapped", measure(mapped.size(), i -> {
+            ByteBuffer duplicate = mapped.get(i).duplicate();
+            return PuzFile.parse(duplicate);
+        }));
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static double[] measure(List<byte[]> corpus, Parser parser) throws IOException {
+        return measure(corpus.size(), i -> parser.parse(corpus.get(i)));
+    }
+
+    /** Returns the mean time per file, in microseconds, for each measured iteration. */
+    private static double[] measure(int numFiles, IndexedParser parser) throws IOException {
+        double[] results = new double[MEASUREMENT_ITERATIONS];
+        int sink = 0;
+        for (int iteration = -WARMUP_ITERATIONS; iteration < MEASUREMENT_ITERATIONS;
+             iteration++) {
+            long start = System.nanoTime();
+            for (int pass = 0; pass < PASSES_PER_ITERATION; pass++) {
+                for (int i = 0; i < numFiles; i++) {
+                    sink += parser.parse(i).getNumClues();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (iteration >= 0) {
+                results[iteration] = elapsed / 1e3 / PASSES_PER_ITERATION / numFiles;
+            }
+        }
+        if (sink == 42) {
+            System.out.println();  // keep the JIT from discarding the work
+        }
+        return results;
+    }
+
+    private static void report(String name, double[] results) {
+        double mean = 0;
+        for (double result : results) {
+            mean += result;
+        }
+        mean /= results.length;
+        double variance = 0;
+        for (double result : results) {
+            variance += (result - mean) * (result - mean);
+        }
+        double stddev = Math.sqrt(variance / (results.length - 1));
+        System.out.println(String.format(Locale.US, "%-8s %8.1f +/- %6.1f us/file (%d files)",
+                name, mean, stddev, sFiles.size()));
+    }
+
+    private void assertSameModel(String name, PuzFile expected, PuzFile actual)
+            throws IOException {
+        File expectedFile = mTemporaryFolder.newFile();
+        File actualFile = mTemporaryFolder.newFile();
+        expected.savePuzzleFile(expectedFile);
+        actual.savePuzzleFile(actualFile);
+        assertArrayEquals(name, Files.toByteArray(expectedFile), Files.toByteArray(actualFile));
+
+        assertEquals(name, expected.getNumClues(), actual.getNumClues());
+        for (int i = 0; i < expected.getNumClues(); i++) {
+            AbstractPuzzleFile.Clue expectedClue = expected.getClue(i);
+            AbstractPuzzleFile.Clue actualClue = actual.getClue(i);
+            assertEquals(name, expectedClue.getText(), actualClue.getText());
+            assertEquals(name, expectedClue.getNumber(), actualClue.getNumber());
+            assertEquals(name, expectedClue.isAcross(), actualClue.isAcross());
+        }
+        for (int row = 0; row < expected.getHeight(); row++) {
+            for (int col = 0; col < expected.getWidth(); col++) {
+                assertEquals(name, expected.getCellContents(row, col),
+                        actual.getCellContents(row, col));
+                assertEquals(name, expected.getSolution(row, col), actual.getSolution(row, col));
+                assertEquals(name, expected.getAcrossClueIndex(row, col),
+                        actual.getAcrossClueIndex(row, col));
+                assertEquals(name, expected.getDownClueIndex(row, col),
+                        actual.getDownClueIndex(row, col));
+            }
+        }
+        assertEquals(name, expected.isSolved(), actual.isSolved());
+        assertEquals(name, expected.getNumFilledCells(), actual.getNumFilledCells());
+    }
+
+    private interface Parser {
+        PuzFile parse(byte[] bytes) throws IOException;
+    }
+
+    private interface IndexedParser {
+        PuzFile parse(int i) throws IOException;
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import io.github.leffinger.crossyourheart.io.PuzFile;
+import io.github.leffinger.crossyourheart.io.PuzzleCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the cache of parsed puzzles.
+ */
+public class PuzzleCacheTest {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File copyResource(String name) throws IOException {
+        File file = mTemporaryFolder.newFile(name);
+        try (InputStream inputStream = PuzzleCacheTest.class.getResourceAsStream("/" + name)) {
+            Files.write(ByteStreams.toByteArray(inputStream), file);
+        }
+        return file;
+    }
+
+    private static long sizeOf(File file) {
+        PuzzleCache cache = new PuzzleCache(1 << 20);
+        cache.prewarm(Collections.singletonList(file));
+        return cache.getStats().bytes;
+    }
+
+    @Test
+    public void prewarmedPuzzle_takenOnce() throws IOException {
+        File file = copyResource("Nov0596.puz");
+        PuzzleCache cache = new PuzzleCache(1 << 20);
+
+        assertEquals(1, cache.prewarm(Collections.singletonList(file)));
+        // Already cached.
+        assertEquals(0, cache.prewarm(Collections.singletonList(file)));
+
+        PuzFile puzFile = cache.take(file);
+        assertNotNull(puzFile);
+        assertEquals(PuzFile.readPuzzleFile(file).getTitle(), puzFile.getTitle());
+        // Clues are resolved, as they would be after a normal load.
+        puzFile.getAcrossClueIndex(0, 0);
+
+        // The puzzle now belongs to the caller.
+        assertNull(cache.take(file));
+        PuzzleCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.hits);
+        assertEquals(1, stats.misses);
+        assertEquals(1, stats.loads);
+        assertEquals(0, stats.entries);
+        assertEquals(0, stats.bytes);
+    }
+
+    @Test
+    public void changedFile_isMiss() throws IOException {
+        File file = copyResource("Nov0596.puz");
+        PuzzleCache cache = new PuzzleCache(1 << 20);
+        cache.prewarm(Collections.singletonList(file));
+
+        // E.g. the puzzle was played and saved since it was cached.
+        file.setLastModified(file.lastModified() - 10_000);
+        assertNull(cache.take(file));
+        assertEquals(1, cache.getStats().misses);
+    }
+
+    @Test
+    public void unreadableFile_skipped() throws IOException {
+        File bad = mTemporaryFolder.newFile("bad.puz");
+        Files.write(new byte[]{1, 2, 3}, bad);
+        File good = copyResource("Sep0520.puz");
+        PuzzleCache cache = new PuzzleCache(1 << 20);
+
+        assertEquals(1, cache.prewarm(Arrays.asList(bad, good)));
+        assertNull(cache.take(bad));
+        assertNotNull(cache.take(good));
+    }
+
+    @Test
+    public void overBudget_evictsLeastRecentlyUsed() throws IOException {
+        File first = copyResource("Nov0596.puz");
+        File second = copyResource("Sep0520.puz");
+        File third = copyResource("Mar2920.puz");
+
+        // Room for any two of the puzzles, but not all three.
+        long budget = Math.max(sizeOf(first) + sizeOf(second), sizeOf(second) + sizeOf(third));
+
+        PuzzleCache cache = new PuzzleCache(budget);
+        assertEquals(2, cache.prewarm(Arrays.asList(first, second)));
+        assertEquals(1, cache.prewarm(Collections.singletonList(third)));
+        PuzzleCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.entries);
+        assertEquals(1, stats.evictions);
+
+        assertNull(cache.take(first));
+        assertNotNull(cache.take(second));
+        assertNotNull(cache.take(third));
+    }
+
+    @Test
+    public void prewarm_stopsWhenBatchFillsCache() throws IOException {
+        File first = copyResource("Nov0596.puz");
+        File second = copyResource("Sep0520.puz");
+        File third = copyResource("Mar2920.puz");
+
+        long budget = sizeOf(first) + sizeOf(second) / 2;
+
+        // Loading the second puzzle would push out the first, which is more likely to be opened.
+        PuzzleCache cache = new PuzzleCache(budget);
+        assertEquals(2, cache.prewarm(Arrays.asList(first, second, third)));
+        assertEquals(1, cache.getStats().entries);
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import io.github.leffinger.crossyourheart.viewmodels.PuzzleLoadTimings;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for puzzle load stage timings.
+ */
+public class PuzzleLoadTimingsTest {
+    private long mNowNanos = 5_000_000_000L;
+
+    @Test
+    public void stages_measuredFromPreviousStage() {
+        PuzzleLoadTimings timings = new PuzzleLoadTimings("a.puz", () -> mNowNanos);
+        mNowNanos += 12_000_000;
+        timings.endStage(PuzzleLoadTimings.PARSE);
+        mNowNanos += 30_000_000;
+        timings.endStage(PuzzleLoadTimings.BUILD);
+        mNowNanos += 2_500_000;
+        timings.endStage(PuzzleLoadTimings.WIRE);
+        mNowNanos += 15_000_000;
+        timings.endStage(PuzzleLoadTimings.BIND);
+
+        assertEquals(12, timings.getStageMillis(PuzzleLoadTimings.PARSE));
+        assertEquals(30, timings.getStageMillis(PuzzleLoadTimings.BUILD));
+        assertEquals(2, timings.getStageMillis(PuzzleLoadTimings.WIRE));
+        assertEquals(15, timings.getStageMillis(PuzzleLoadTimings.BIND));
+        assertEquals(59, timings.getTotalMillis());
+        assertEquals("a.puz: parse=12ms build=30ms wire=2ms bind=15ms total=59ms",
+                timings.toString());
+    }
+
+    @Test
+    public void unfinishedStage() {
+        PuzzleLoadTimings timings = new PuzzleLoadTimings("a.puz", () -> mNowNanos);
+        mNowNanos += 7_000_000;
+        timings.endStage(PuzzleLoadTimings.PARSE);
+        mNowNanos += 100_000_000;
+
+        assertEquals(-1, timings.getStageMillis(PuzzleLoadTimings.BUILD));
+        assertEquals(7, timings.getTotalMillis());
+        assertEquals("a.puz: parse=7ms total=7ms", timings.toString());
+    }
+}
@@ -231,6 +231,7 @@ public class PuzzleLoaderTest {
         assertEquals(mPuzFile.getAuthor(), savedPuzzle.getAuthor());
         assertTrue(mPuzFile.checkDuplicate(savedPuzzle));
         assertTrue(savedPuzzle.checkDuplicate(mPuzFile));
+        assertEquals(mPuzFile.getContentFingerprint(), savedPuzzle.getContentFingerprint());
     }
 
     @Test
@@ -0,0 +1,68 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile.ScrambleState;
+import io.github.leffinger.crossyourheart.room.PuzzleQuery;
+
+import static org.junit.Assert.assertEquals;
+
+public class PuzzleQuerySqlTest {
+
+    @Test
+    public void firstPage_noFilters() {
+        List<Object> args = new ArrayList<>();
+        String sql = PuzzleQuery.builder().build().toSql(null, 50, args);
+        assertEquals("SELECT * FROM puzzle WHERE 1 ORDER BY filename DESC LIMIT ?", sql);
+        assertEquals(Arrays.<Object>asList(50), args);
+    }
+
+    @Test
+    public void filters() {
+        List<Object> args = new ArrayList<>();
+        String sql = PuzzleQuery.builder()
+                                .setSolved(false)
+                                .setOpened(true)
+                                .setAuthor("Merl Reagle")
+                                .setScrambleState(ScrambleState.LOCKED)
+                                .build()
+                                .toSql(null, 10, args);
+        assertEquals("SELECT * FROM puzzle WHERE 1 AND solved = ? AND opened = ? AND author = ?" +
+                " AND scrambleState = ? ORDER BY filename DESC LIMIT ?", sql);
+        assertEquals(Arrays.<Object>asList(0, 1, "Merl Reagle", "LOCKED", 10), args);
+    }
+
+    @Test
+    public void keyset_newest() {
+        PuzzleQuery query = PuzzleQuery.builder().build();
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(query.keyOf("b.puz", "T", "A"), 5, args);
+        assertEquals("SELECT * FROM puzzle WHERE 1 AND filename < ? ORDER BY filename DESC LIMIT ?",
+                sql);
+        assertEquals(Arrays.<Object>asList("b.puz", 5), args);
+    }
+
+    @Test
+    public void keyset_title() {
+        PuzzleQuery query = PuzzleQuery.builder().setSort(PuzzleQuery.Sort.TITLE).build();
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(query.keyOf("b.puz", "T", "A"), 5, args);
+        assertEquals("SELECT * FROM puzzle WHERE 1 AND (title > ? OR (title = ? AND " +
+                "filename > ?)) ORDER BY title ASC, filename ASC LIMIT ?", sql);
+        assertEquals(Arrays.<Object>asList("T", "T", "b.puz", 5), args);
+    }
+
+    @Test
+    public void keyset_nullAuthor() {
+        PuzzleQuery query = PuzzleQuery.builder().setSort(PuzzleQuery.Sort.AUTHOR).build();
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(query.keyOf("b.puz", "T", null), 5, args);
+        assertEquals("SELECT * FROM puzzle WHERE 1 AND (author IS NOT NULL OR (author IS NULL " +
+                "AND filename > ?)) ORDER BY author ASC, filename ASC LIMIT ?", sql);
+        assertEquals(Arrays.<Object>asList("b.puz", 5), args);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.leffinger.crossyourheart;
+
+import com.google.common.io.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.github.leffinger.crossyourheart.io.PuzHeader;
+import io.github.leffinger.crossyourheart.io.PuzzleScanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PuzzleScannerTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File[] mFiles;
+
+    @Before
+    public void setUp() throws URISyntaxException {
+        File resourceDir =
+                new File(PuzzleScannerTest.class.getResource("/3x3.puz").toURI()).getParentFile();
+        mFiles = resourceDir.listFiles((dir, name) -> name.endsWith(".puz"));
+        assertNotNull(mFiles);
+        Arrays.sort(mFiles);
+    }
+
+    @Test
+    public void scan_matchesSequentialParse() throws IOException {
+        List<PuzzleScanner.Result> results =
+                PuzzleScanner.scan(Arrays.asList(mFiles), 4, null, new AtomicBoolean());
+        assertEquals(mFiles.length, results.size());
+        for (int i = 0; i < mFiles.length; i++) {
+            PuzzleScanner.Result result = results.get(i);
+            assertSame(mFiles[i], result.file);
+            assertNull(result.error);
+            assertEquals(mFiles[i].length(), result.fingerprint.fileSize);
+            assertEquals(mFiles[i].lastModified(), result.fingerprint.lastModified);
+            PuzHeader expected = PuzHeader.readPuzzleFile(mFiles[i], true);
+            assertEquals(expected.getTitle(), result.header.getTitle());
+            assertEquals(expected.getHeaderChecksum(), result.header.getHeaderChecksum());
+            assertEquals(expected.isSolved(), result.header.isSolved());
+        }
+    }
+
+    @Test
+    public void scan_reportsEachFileOnce() {
+        Set<Integer> reported = ConcurrentHashMap.newKeySet();
+        PuzzleScanner.scan(Arrays.asList(mFiles), 4, (done, total) -> {
+            assertEquals(mFiles.length, total);
+            assertTrue(reported.add(done));
+        }, new AtomicBoolean());
+        assertEquals(mFiles.length, reported.size());
+        for (int i = 1; i <= mFiles.length; i++) {
+            assertTrue(reported.contains(i));
+        }
+    }
+
+    @Test
+    public void scan_corruptFile() throws IOException {
+        File corrupt = mTemporaryFolder.newFile("corrupt.puz");
+        Files.write(new byte[]{1, 2, 3}, corrupt);
+        File[] files = Arrays.copyOf(mFiles, mFiles.length + 1);
+        files[mFiles.length] = corrupt;
+
+        List<PuzzleScanner.Result> results =
+                PuzzleScanner.scan(Arrays.asList(files), 2, null, new AtomicBoolean());
+        PuzzleScanner.Result result = results.get(mFiles.length);
+        assertNull(result.header);
+        assertNotNull(result.error);
+        assertNull(results.get(0).error);
+    }
+
+    @Test
+    public void scan_cancelled() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        try {
+            PuzzleScanner.scan(Arrays.asList(mFiles), 1, (done, total) -> cancelled.set(true),
+                    cancelled);
+            fail();
+        } catch (CancellationException expected) {
+        }
+    }
+}
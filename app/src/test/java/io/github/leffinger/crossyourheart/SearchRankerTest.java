@@ -0,0 +1,78 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.github.leffinger.crossyourheart.room.SearchRanker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchRankerTest {
+    private static final int NUM_COLUMNS = 5;  // filename, title, author, notes, clues
+
+    @Test
+    public void toMatchQuery() {
+        assertEquals("river* crossing*", SearchRanker.toMatchQuery("River crossing"));
+        assertEquals("o* neill*", SearchRanker.toMatchQuery("  O'Neill "));
+        // Operators are upper-case in FTS syntax, so lower-casing turns them into plain terms.
+        assertEquals("title* near* or* clues*",
+                SearchRanker.toMatchQuery("title:\"near\" OR -clues*"));
+        assertNull(SearchRanker.toMatchQuery(" \"*- "));
+    }
+
+    @Test
+    public void titleOutranksClue() {
+        // One phrase, found once in the title of one row and once in the clues of another.
+        byte[] inTitle = matchInfo(1000, new int[][]{{0, 0, 0}, {1, 5, 5}, {0, 0, 0},
+                {0, 0, 0}, {0, 40, 30}});
+        byte[] inClues = matchInfo(1000, new int[][]{{0, 0, 0}, {0, 5, 5}, {0, 0, 0},
+                {0, 0, 0}, {1, 40, 30}});
+        SearchRanker.Score titleScore = SearchRanker.score(inTitle);
+        SearchRanker.Score clueScore = SearchRanker.score(inClues);
+        assertEquals(SearchRanker.Field.TITLE, titleScore.bestField);
+        assertEquals(SearchRanker.Field.CLUES, clueScore.bestField);
+        assertTrue(titleScore.score > clueScore.score);
+    }
+
+    @Test
+    public void rareTermOutranksCommonTerm() {
+        byte[] rare = matchInfo(1000, new int[][]{{0, 0, 0}, {0, 0, 0}, {0, 0, 0},
+                {0, 0, 0}, {1, 2, 2}});
+        byte[] common = matchInfo(1000, new int[][]{{0, 0, 0}, {0, 0, 0}, {0, 0, 0},
+                {0, 0, 0}, {1, 900, 800}});
+        assertTrue(SearchRanker.score(rare).score > SearchRanker.score(common).score);
+    }
+
+    @Test
+    public void moreHitsScoreHigher() {
+        byte[] once = matchInfo(100, new int[][]{{0, 0, 0}, {0, 0, 0}, {0, 0, 0},
+                {0, 0, 0}, {1, 10, 5}});
+        byte[] twice = matchInfo(100, new int[][]{{0, 0, 0}, {0, 0, 0}, {0, 0, 0},
+                {0, 0, 0}, {2, 10, 5}});
+        assertTrue(SearchRanker.score(twice).score > SearchRanker.score(once).score);
+    }
+
+    @Test
+    public void filenameColumnIgnored() {
+        byte[] info = matchInfo(100, new int[][]{{3, 3, 3}, {0, 0, 0}, {0, 0, 0},
+                {0, 0, 0}, {0, 0, 0}});
+        SearchRanker.Score score = SearchRanker.score(info);
+        assertEquals(0, score.score, 0);
+        assertNull(score.bestField);
+    }
+
+    /** Builds a 'pcnx' blob for a single phrase. */
+    private static byte[] matchInfo(int numRows, int[][] columns) {
+        ByteBuffer buffer =
+                ByteBuffer.allocate(4 * (3 + 3 * NUM_COLUMNS)).order(ByteOrder.nativeOrder());
+        buffer.putInt(1).putInt(NUM_COLUMNS).putInt(numRows);
+        for (int[] column : columns) {
+            buffer.putInt(column[0]).putInt(column[1]).putInt(column[2]);
+        }
+        return buffer.array();
+    }
+}
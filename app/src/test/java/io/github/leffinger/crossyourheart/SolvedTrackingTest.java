@@ -0,0 +1,63 @@
+package io.github.leffinger.crossyourheart;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.leffinger.crossyourheart.io.AbstractPuzzleFile;
+import io.github.leffinger.crossyourheart.io.PuzFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the running counts behind isSolved(), isEmpty() and progress.
+ */
+public class SolvedTrackingTest {
+
+    private static PuzFile load(String filename) throws IOException {
+        try (InputStream inputStream = SolvedTrackingTest.class.getResourceAsStream(filename)) {
+            return new PuzFile(inputStream);
+        }
+    }
+
+    @Test
+    public void solveCellByCell() throws IOException {
+        PuzFile puzFile = load("/Nov0596.puz");
+        assertEquals(AbstractPuzzleFile.ScrambleState.UNSCRAMBLED, puzFile.getScrambleState());
+        assertTrue(puzFile.isEmpty());
+        assertEquals(0, puzFile.getPercentComplete());
+
+        int whiteCells = puzFile.getNumWhiteCells();
+        int filled = 0;
+        for (int row = 0; row < puzFile.getHeight(); row++) {
+            for (int col = 0; col < puzFile.getWidth(); col++) {
+                if (puzFile.isBlack(row, col)) {
+                    continue;
+                }
+                assertFalse(puzFile.isSolved());
+                puzFile.setCellContents(row, col, puzFile.getSolution(row, col));
+                filled++;
+                assertFalse(puzFile.isEmpty());
+                assertEquals(filled, puzFile.getNumFilledCells());
+                assertEquals(whiteCells - filled, puzFile.getNumCellsRemaining());
+            }
+        }
+        assertTrue(puzFile.isSolved());
+        assertEquals(100, puzFile.getPercentComplete());
+
+        // Wrong letter, then fix it.
+        puzFile.setCellContents(0, 0, "#");
+        assertFalse(puzFile.isSolved());
+        assertEquals(whiteCells, puzFile.getNumFilledCells());
+        puzFile.setCellContents(0, 0, puzFile.getSolution(0, 0));
+        assertTrue(puzFile.isSolved());
+
+        // Clear a cell.
+        puzFile.setCellContents(0, 0, "");
+        assertFalse(puzFile.isSolved());
+        assertEquals(1, puzFile.getNumCellsRemaining());
+    }
+}
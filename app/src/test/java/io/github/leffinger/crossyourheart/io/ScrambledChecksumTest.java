@@ -0,0 +1,125 @@
+package io.github.leffinger.crossyourheart.io;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the incrementally updated scrambled checksum, and for how PuzFile and PuzHeader use it
+ * to decide whether a scrambled puzzle is solved. In the io package, since the checksum is not
+ * part of PuzFile's public API.
+ */
+public class ScrambledChecksumTest {
+
+    private static PuzFile load(String filename) throws IOException {
+        try (InputStream inputStream = ScrambledChecksumTest.class.getResourceAsStream(filename)) {
+            return new PuzFile(inputStream);
+        }
+    }
+
+    @Test
+    public void scrambledChecksum_matchesFullRecomputation() throws IOException {
+        PuzFile puzFile = load("/mgwcc647.puz");
+        assertEquals(AbstractPuzzleFile.ScrambleState.SCRAMBLED, puzFile.getScrambleState());
+
+        Random random = new Random(647);
+        for (int i = 0; i < 2000; i++) {
+            int row = random.nextInt(puzFile.getHeight());
+            int col = random.nextInt(puzFile.getWidth());
+            if (puzFile.isBlack(row, col)) {
+                continue;
+            }
+            String letter = random.nextInt(10) == 0 ? "" :
+                    String.valueOf((char) ('A' + random.nextInt(26)));
+            puzFile.setCellContents(row, col, letter);
+            assertEquals(computeScrambledChecksum(puzFile),
+                    puzFile.getComputedScrambledChecksum());
+            if (puzFile.getNumCellsRemaining() > 0) {
+                assertFalse(puzFile.isSolved());
+            }
+        }
+    }
+
+    @Test
+    public void unfilledGrid_withMatchingChecksum_isNotSolved() throws IOException {
+        byte[] bytes;
+        try (InputStream inputStream = ScrambledChecksumTest.class.getResourceAsStream(
+                "/mgwcc647.puz")) {
+            bytes = ByteStreams.toByteArray(inputStream);
+        }
+        int width = bytes[0x2C] & 0xFF;
+        int height = bytes[0x2D] & 0xFF;
+        int scrambledChecksum = (bytes[0x1E] & 0xFF) | (bytes[0x1F] & 0xFF) << 8;
+        int solutionOffset = 0x34;
+        int gridOffset = solutionOffset + width * height;
+        List<Integer> whiteCells = new ArrayList<>();
+        for (int col = 0; col < width; col++) {
+            for (int row = 0; row < height; row++) {
+                if (bytes[solutionOffset + row * width + col] != '.') {
+                    whiteCells.add(row * width + col);
+                }
+            }
+        }
+
+        // Leave the first cell empty and fill the others with random letters, until some last
+        // byte makes the checksum match. Each try succeeds with a chance of about 1 in 260.
+        byte[] grid = Arrays.copyOfRange(bytes, gridOffset, gridOffset + width * height);
+        int last = whiteCells.get(whiteCells.size() - 1);
+        Random random = new Random(647);
+        boolean found = false;
+        for (int i = 0; i < 100000 && !found; i++) {
+            for (int cell : whiteCells) {
+                grid[cell] = (byte) ('A' + random.nextInt(26));
+            }
+            grid[whiteCells.get(0)] = '-';
+            // The last byte is added to the checksum after the final rotate.
+            grid[last] = 0;
+            int b = (scrambledChecksum - PuzFile.computeScrambledChecksum(grid, width, height)) &
+                    0xFFFF;
+            if (b > 0 && b < 0x100 && PuzFile.isFilled((byte) b)) {
+                grid[last] = (byte) b;
+                found = true;
+            }
+        }
+        assertTrue(found);
+        assertEquals(scrambledChecksum, PuzFile.computeScrambledChecksum(grid, width, height));
+        System.arraycopy(grid, 0, bytes, gridOffset, grid.length);
+
+        PuzFile puzFile = new PuzFile(new ByteArrayInputStream(bytes));
+        assertEquals(AbstractPuzzleFile.ScrambleState.SCRAMBLED, puzFile.getScrambleState());
+        assertEquals(1, puzFile.getNumCellsRemaining());
+        assertFalse(puzFile.isSolved());
+        PuzHeader header = PuzHeader.parse(ByteBuffer.wrap(bytes), true);
+        assertFalse(header.isSolved());
+    }
+
+    /** Straightforward column-major rotate-and-add over the whole grid. */
+    private static int computeScrambledChecksum(PuzFile puzFile) {
+        int cksum = 0;
+        for (int col = 0; col < puzFile.getWidth(); col++) {
+            for (int row = 0; row < puzFile.getHeight(); row++) {
+                if (puzFile.isBlack(row, col)) {
+                    continue;
+                }
+                char letter = puzFile.getCellLetter(row, col);
+                int b = letter == 0 ? '-' : letter;
+                cksum = ((cksum >> 1) | ((cksum & 1) << 15)) + b;
+                cksum &= 0xffff;
+            }
+        }
+        return cksum;
+    }
+}